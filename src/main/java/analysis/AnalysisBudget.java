@@ -0,0 +1,73 @@
+package analysis;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits for one call graph construction, see {@link CallGraphAlgorithm#setBudget(AnalysisBudget)}. A limit of 0
+ * means unlimited. Instances are immutable, the {@code with} methods return a copy.
+ */
+public final class AnalysisBudget {
+    public static final AnalysisBudget UNLIMITED = new AnalysisBudget(0, 0, 0);
+
+    /**
+     * The limit that ran out first.
+     */
+    public enum Limit {
+        WALL_CLOCK, WORK, HEAP
+    }
+
+    private final long wallClockNanos;
+    private final long maxWork;
+    private final long maxHeapBytes;
+
+    private AnalysisBudget(long wallClockNanos, long maxWork, long maxHeapBytes) {
+        this.wallClockNanos = wallClockNanos;
+        this.maxWork = maxWork;
+        this.maxHeapBytes = maxHeapBytes;
+    }
+
+    public AnalysisBudget withWallClock(long amount, TimeUnit unit) {
+        return new AnalysisBudget(unit.toNanos(checkLimit(amount)), maxWork, maxHeapBytes);
+    }
+
+    /**
+     * @param units work units, algorithms charge one per statement or call site they process
+     */
+    public AnalysisBudget withMaxWork(long units) {
+        return new AnalysisBudget(wallClockNanos, checkLimit(units), maxHeapBytes);
+    }
+
+    /**
+     * The ceiling is compared with the used heap of the whole JVM, including garbage that was not collected yet.
+     */
+    public AnalysisBudget withHeapCeiling(long bytes) {
+        return new AnalysisBudget(wallClockNanos, maxWork, checkLimit(bytes));
+    }
+
+    private static long checkLimit(long limit) {
+        if (limit < 0)
+            throw new IllegalArgumentException("Budget limits must not be negative: " + limit);
+        return limit;
+    }
+
+    public long getWallClockNanos() {
+        return wallClockNanos;
+    }
+
+    public long getMaxWork() {
+        return maxWork;
+    }
+
+    public long getMaxHeapBytes() {
+        return maxHeapBytes;
+    }
+
+    public boolean isUnlimited() {
+        return wallClockNanos == 0 && maxWork == 0 && maxHeapBytes == 0;
+    }
+
+    @Override
+    public String toString() {
+        return "AnalysisBudget{wallClockNanos=" + wallClockNanos + ", maxWork=" + maxWork + ", maxHeapBytes=" + maxHeapBytes + '}';
+    }
+}
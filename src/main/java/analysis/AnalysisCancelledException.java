@@ -0,0 +1,13 @@
+package analysis;
+
+/**
+ * Thrown out of {@link CallGraphAlgorithm#constructCallGraph(soot.Scene)} when its {@link CancellationToken} was
+ * cancelled. Unlike an exhausted budget, cancellation does not produce a call graph.
+ */
+public class AnalysisCancelledException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public AnalysisCancelledException() {
+        super("Call graph construction was cancelled");
+    }
+}
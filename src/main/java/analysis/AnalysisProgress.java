@@ -0,0 +1,69 @@
+package analysis;
+
+/**
+ * Snapshot of a running call graph construction.
+ */
+public class AnalysisProgress {
+    private final String algorithm;
+    private final long methodsProcessed;
+    private final int worklistSize;
+    private final int edgesFound;
+    private final long elapsedNanos;
+    private final boolean done;
+
+    public AnalysisProgress(String algorithm, long methodsProcessed, int worklistSize, int edgesFound, long elapsedNanos, boolean done) {
+        this.algorithm = algorithm;
+        this.methodsProcessed = methodsProcessed;
+        this.worklistSize = worklistSize;
+        this.edgesFound = edgesFound;
+        this.elapsedNanos = elapsedNanos;
+        this.done = done;
+    }
+
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * @return how often the algorithm finished processing a method body, a method may be counted more than once
+     */
+    public long getMethodsProcessed() {
+        return methodsProcessed;
+    }
+
+    /**
+     * @return methods already in the call graph that were not processed yet, estimated from the counts since
+     * algorithms do not keep an explicit worklist
+     */
+    public int getWorklistSize() {
+        return worklistSize;
+    }
+
+    public int getEdgesFound() {
+        return edgesFound;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * Extrapolates the time per processed method to the worklist. The worklist grows while new methods are
+     * discovered, so early estimates are too low.
+     */
+    public long getEstimatedRemainingNanos() {
+        if (done || methodsProcessed == 0) return 0;
+        return elapsedNanos / methodsProcessed * worklistSize;
+    }
+
+    public boolean isDone() {
+        return done;
+    }
+
+    @Override
+    public String toString() {
+        return algorithm + ": " + methodsProcessed + " methods processed, " + worklistSize + " in worklist, "
+                + edgesFound + " edges, " + elapsedNanos / 1_000_000 + " ms elapsed"
+                + (done ? ", done" : ", about " + getEstimatedRemainingNanos() / 1_000_000 + " ms left");
+    }
+}
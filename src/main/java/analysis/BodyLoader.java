@@ -0,0 +1,217 @@
+package analysis;
+
+import soot.Body;
+import soot.SootClass;
+import soot.SootMethod;
+
+import java.lang.ref.Reference;
+import java.lang.ref.SoftReference;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Builds Jimple bodies on demand instead of having Soot build them for the whole process dir up front.
+ * <p>
+ * Only methods of application classes get bodies, the same set Soot would build eagerly. Algorithms ask for a
+ * body with {@link #body(SootMethod)} when they reach a method and announce methods they are likely to reach
+ * next with {@link #prefetch(SootMethod)}. Prefetched bodies are built by a bounded thread pool, so by the time
+ * the worklist gets to a callee its body is usually done. Soot synchronizes body construction per method, a
+ * method requested while its prefetch is still running simply waits for it.
+ * <p>
+ * Once an algorithm has the {@link MethodSummary} of a method it does not read the body again, so it can hand the
+ * body back with {@link #release(SootMethod)}. Depending on the {@link Retention} the loader then drops it or only
+ * keeps it softly reachable. A released body that is asked for again is taken back from the soft reference or
+ * rebuilt from the class file, see {@link ClassFileMethodSource}; that also works through
+ * {@link SootMethod#retrieveActiveBody()} after construction. Only bodies the loader built itself are released,
+ * others may have been transformed since jb. Rebuilt bodies are equal but not identical to the released ones:
+ * their locals and statements are new objects, the ones in cached summaries stay those of the first body.
+ */
+public class BodyLoader implements AutoCloseable {
+    public enum Retention {
+        /** Bodies stay active, {@link #release(SootMethod)} does nothing. */
+        KEEP,
+        /** Released bodies are softly reachable, the garbage collector drops them under memory pressure. */
+        SOFT,
+        /** Released bodies are dropped and rebuilt if they are needed again. */
+        RELEASE
+    }
+
+    /**
+     * @return whether SOFT and RELEASE can be used, they rebuild bodies through a Soot internal that only the Soot
+     * version of the build is known to have. A loader asked for them without it keeps bodies instead.
+     */
+    public static boolean canRelease() {
+        return ClassFileMethodSource.isAvailable();
+    }
+
+    // marks a released method whose body is gone for sure
+    private static final Reference<Body> DROPPED = new SoftReference<>(null);
+
+    private final ExecutorService pool;
+    private final Retention retention;
+    private final Map<SootMethod, Future<Body>> prefetched = new ConcurrentHashMap<>();
+    private final Map<SootMethod, Reference<Body>> released = new ConcurrentHashMap<>();
+    private final Set<SootMethod> builtHere = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger bodiesBuilt = new AtomicInteger();
+    private final AtomicInteger bodiesReleased = new AtomicInteger();
+    private final AtomicInteger bodiesRebuilt = new AtomicInteger();
+    private final AtomicInteger bodiesRecovered = new AtomicInteger();
+
+    /**
+     * @param threads size of the prefetch pool, 0 disables prefetching and builds every body on the caller thread
+     */
+    public BodyLoader(int threads) {
+        this(threads, Retention.KEEP);
+    }
+
+    /**
+     * @param threads   size of the prefetch pool, 0 disables prefetching and builds every body on the caller thread
+     * @param retention what {@link #release(SootMethod)} does with a body
+     */
+    public BodyLoader(int threads, Retention retention) {
+        if (threads < 0)
+            throw new IllegalArgumentException("Number of threads must not be negative: " + threads);
+        // without a way to rebuild them, released bodies would be lost
+        this.retention = canRelease() ? retention : Retention.KEEP;
+        pool = threads == 0 ? null : Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "body-loader");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @return the active body of the method, built if necessary, or null if the method cannot have one
+     * @throws RuntimeException if Soot fails to build the body of a method that has a source, it is not taken for a
+     *                          method without body
+     */
+    public Body body(SootMethod method) {
+        if (method.hasActiveBody()) return method.getActiveBody();
+        Reference<Body> kept = released.remove(method);
+        if (kept != null) {
+            Body body = kept.get();
+            if (body == null) return build(method, bodiesRebuilt);
+            method.setActiveBody(body);
+            builtHere.add(method);
+            bodiesRecovered.incrementAndGet();
+            return body;
+        }
+        if (!canHaveBody(method)) return null;
+
+        Future<Body> future = prefetched.get(method);
+        if (future != null) {
+            try {
+                return future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while waiting for body of " + method, e);
+            } catch (ExecutionException e) {
+                // build returns null for methods without body, anything thrown is a failure of the build itself
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+                if (cause instanceof Error) throw (Error) cause;
+                throw new IllegalStateException("Cannot build the body of " + method, cause);
+            }
+        }
+        return build(method, bodiesBuilt);
+    }
+
+    /**
+     * Does not bring back a released body, it is known to exist.
+     */
+    public boolean hasBody(SootMethod method) {
+        return method.hasActiveBody() || released.containsKey(method) || body(method) != null;
+    }
+
+    /**
+     * Schedules the body of the method for construction in the background, no-op if it exists or is scheduled.
+     */
+    public void prefetch(SootMethod method) {
+        if (pool == null || method.hasActiveBody() || released.containsKey(method) || !canHaveBody(method)) return;
+        prefetched.computeIfAbsent(method, m -> pool.submit(() -> build(m, bodiesBuilt)));
+    }
+
+    /**
+     * Hands back the body of a method the caller is done with, see {@link Retention}. Bodies this loader did not
+     * build stay active.
+     */
+    public void release(SootMethod method) {
+        if (retention == Retention.KEEP || !method.hasActiveBody() || !builtHere.remove(method)) return;
+        prefetched.remove(method);
+        released.put(method, retention == Retention.SOFT ? new SoftReference<>(method.getActiveBody()) : DROPPED);
+        method.releaseActiveBody();
+        method.setSource(ClassFileMethodSource.INSTANCE);
+        bodiesReleased.incrementAndGet();
+    }
+
+    /**
+     * Number of bodies this loader has built, bodies that already existed and rebuilt bodies are not counted.
+     */
+    public int getBodiesBuilt() {
+        return bodiesBuilt.get();
+    }
+
+    public int getBodiesReleased() {
+        return bodiesReleased.get();
+    }
+
+    /**
+     * Number of released bodies that were asked for again and had to be built another time.
+     */
+    public int getBodiesRebuilt() {
+        return bodiesRebuilt.get();
+    }
+
+    /**
+     * Number of released bodies that were asked for again and were still softly reachable.
+     */
+    public int getBodiesRecovered() {
+        return bodiesRecovered.get();
+    }
+
+    public Retention getRetention() {
+        return retention;
+    }
+
+    private Body build(SootMethod method, AtomicInteger counter) {
+        boolean existed = method.hasActiveBody();
+        if (!existed && !hasSource(method)) return null;
+        Body body;
+        try {
+            body = method.retrieveActiveBody();
+        } catch (ClassFileMethodSource.MissingClassFileException e) {
+            // a released body whose class file is gone from the class path
+            return null;
+        }
+        if (!existed) {
+            counter.incrementAndGet();
+            if (retention != Retention.KEEP) builtHere.add(method);
+        }
+        return body;
+    }
+
+    /**
+     * The cases in which Soot refuses to build a body because there is nothing to build it from, checked up front
+     * so that every exception of the build itself is a real failure.
+     */
+    public static boolean hasSource(SootMethod method) {
+        SootClass declaringClass = method.getDeclaringClass();
+        return !method.isPhantom() && !declaringClass.isPhantomClass()
+                && declaringClass.resolvingLevel() >= SootClass.BODIES && method.getSource() != null;
+    }
+
+    private static boolean canHaveBody(SootMethod method) {
+        return method.isConcrete() && !method.isPhantom() && method.getDeclaringClass().isApplicationClass();
+    }
+
+    @Override
+    public void close() {
+        if (pool != null) pool.shutdownNow();
+    }
+}
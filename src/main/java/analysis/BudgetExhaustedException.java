@@ -0,0 +1,20 @@
+package analysis;
+
+/**
+ * Thrown by {@link CallGraphAlgorithm#chargeWork(long)} to unwind an analysis whose budget ran out. It never
+ * leaves {@link CallGraphAlgorithm#constructCallGraph(soot.Scene)}, which catches it and falls back.
+ */
+public class BudgetExhaustedException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final AnalysisBudget.Limit limit;
+
+    public BudgetExhaustedException(AnalysisBudget.Limit limit) {
+        super("Analysis budget exhausted: " + limit, null, false, false);
+        this.limit = limit;
+    }
+
+    public AnalysisBudget.Limit getLimit() {
+        return limit;
+    }
+}
@@ -1,69 +1,646 @@
 package analysis;
 
 import soot.SootMethod;
+import soot.Unit;
+import soot.jimple.Stmt;
 
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
 
 public class CallGraph {
     public final String algorithm;
-    private final Set<SootMethod> nodes;
-    private final Set<Edge<SootMethod, SootMethod>> edges;
+    private final MethodIdMap nodes;
+    private final List<SootMethod> methodsById;
+
+    /*
+     * Edges are stored as (source id << 32 | target id) in a primitive hash set, plus successor and predecessor id
+     * lists per node. Neither lookups nor inserts allocate.
+     */
+    private final LongHashSet edges;
+    private int[][] successors;
+    private int[] successorCount;
+    private int[][] predecessors;
+    private int[] predecessorCount;
+
+    /*
+     * Call sites are identified by the unit index of the invoking statement in the caller body, so no Unit has to
+     * be kept alive. Every caller has its call sites as (unit index, target id) pairs in one int array, sorted by
+     * unit index, the targets of a call site in the order they were added. A call site costs two ints, no hash
+     * slot and no object.
+     */
+    private final boolean recordCallSites;
+    private int[][] callSites;
+    private int[] callSiteCount;
+
+    /*
+     * Call sites added with addCallSite refer to an interned target set instead of holding an edge per target.
+     * Every set is stored once with its target ids, in dispatch order and sorted, and the callers that dispatch
+     * through it. A caller has the set as entry ~setId in its successor list, so successors keep the order they
+     * were added in, and each target knows the sets it is in. Edges implied by a set are expanded while
+     * iterating, at the first entry of the caller that holds the target. Explicit edges always come first, adding
+     * one that a set implies already does nothing. Reads keep no scratch state.
+     */
+    private final Map<DispatchTargets, Integer> sharedSetIds = new IdentityHashMap<>();
+    private final List<DispatchTargets> sharedSets = new ArrayList<>();
+    private final List<int[]> sharedSetTargets = new ArrayList<>();
+    private final List<int[]> sharedSetSorted = new ArrayList<>();
+    private int[][] sharedSetCallers = new int[4][];
+    private int[] sharedSetCallerCount = new int[4];
+    private int[][] setsOf;
+    private int[] setsOfCount;
+    private int[][] setsContaining;
+    private int[] setsContainingCount;
+    // (unit index, set id) pairs sorted by unit index, only if call sites are recorded
+    private int[][] sharedSites;
+    private int[] sharedSiteCount;
+
+    // explicit edges plus the distinct edges only implied by shared sets
+    private int edgeCount;
+
+    // set if the algorithm ran out of budget, degraded methods got their edges from the fallback algorithm
+    private AnalysisBudget.Limit exhaustedLimit;
+    private final Set<SootMethod> degradedMethods = new HashSet<>();
 
     public CallGraph(String algorithm) {
+        this(algorithm, false);
+    }
+
+    /**
+     * @param recordCallSites if true, edges can be added together with the index of the invoking unit in the
+     *                        caller body, see {@link #addEdge(SootMethod, SootMethod, int)}
+     */
+    public CallGraph(String algorithm, boolean recordCallSites) {
         this.algorithm = algorithm;
+        this.recordCallSites = recordCallSites;
 
-        nodes = new HashSet<SootMethod>();
-        edges = new HashSet<Edge<SootMethod, SootMethod>>();
+        nodes = new MethodIdMap();
+        methodsById = new ArrayList<SootMethod>();
+        edges = new LongHashSet();
+        successors = new int[16][];
+        successorCount = new int[16];
+        predecessors = new int[16][];
+        predecessorCount = new int[16];
+        setsOf = new int[16][];
+        setsOfCount = new int[16];
+        setsContaining = new int[16][];
+        setsContainingCount = new int[16];
+        sharedSites = new int[16][];
+        sharedSiteCount = new int[16];
+        callSites = new int[16][];
+        callSiteCount = new int[16];
     }
 
     public CallGraph(String algorithm, CallGraph cg) {
-        this(algorithm);
+        this(algorithm, cg.recordCallSites);
 
-        nodes.addAll(cg.nodes);
-        edges.addAll(cg.edges);
+        // ids are handed out in the same order, so the stored ids stay valid
+        for (SootMethod method : cg.methodsById)
+            addNode(method);
+        for (DispatchTargets targets : cg.sharedSets)
+            internSet(targets);
+        // successors in their original order, explicit edges before the sets that would imply them
+        for (int caller = 0; caller < cg.methodsById.size(); caller++) {
+            int[] targets = cg.successors[caller];
+            for (int i = 0; i < cg.successorCount[caller]; i++) {
+                if (targets[i] >= 0) insertEdge(caller, targets[i]);
+                else linkSet(caller, ~targets[i]);
+            }
+            for (int i = 0; i < cg.sharedSiteCount[caller]; i += 2)
+                recordSharedSite(caller, cg.sharedSites[caller][i], cg.sharedSites[caller][i + 1]);
+            if (cg.callSites[caller] != null) callSites[caller] = Arrays.copyOf(cg.callSites[caller], cg.callSiteCount[caller]);
+            callSiteCount[caller] = cg.callSiteCount[caller];
+        }
+        exhaustedLimit = cg.exhaustedLimit;
+        degradedMethods.addAll(cg.degradedMethods);
     }
 
     public void addNode(SootMethod method) {
-        if (nodes.contains(method))
+        if (nodes.containsKey(method))
             throw new IllegalArgumentException("Call graph already contains method: " + method.toString());
-        nodes.add(method);
+        int id = methodsById.size();
+        nodes.put(method, id);
+        methodsById.add(method);
+
+        if (id == successorCount.length) {
+            successors = Arrays.copyOf(successors, id * 2);
+            successorCount = Arrays.copyOf(successorCount, id * 2);
+            predecessors = Arrays.copyOf(predecessors, id * 2);
+            predecessorCount = Arrays.copyOf(predecessorCount, id * 2);
+            setsOf = Arrays.copyOf(setsOf, id * 2);
+            setsOfCount = Arrays.copyOf(setsOfCount, id * 2);
+            setsContaining = Arrays.copyOf(setsContaining, id * 2);
+            setsContainingCount = Arrays.copyOf(setsContainingCount, id * 2);
+            sharedSites = Arrays.copyOf(sharedSites, id * 2);
+            sharedSiteCount = Arrays.copyOf(sharedSiteCount, id * 2);
+            callSites = Arrays.copyOf(callSites, id * 2);
+            callSiteCount = Arrays.copyOf(callSiteCount, id * 2);
+        }
     }
 
     public void addEdge(SootMethod source, SootMethod target) {
-        if (!nodes.contains(source))
+        if (!addEdgeIfAbsent(source, target))
+            throw new IllegalArgumentException("Call graph already contains edge: " + new Edge<>(source, target).toString());
+    }
+
+    /**
+     * Like {@link #addEdge(SootMethod, SootMethod)}, but an existing edge is not an error.
+     *
+     * @return true if the edge was added
+     */
+    public boolean addEdgeIfAbsent(SootMethod source, SootMethod target) {
+        int sourceId = nodes.get(source);
+        int targetId = nodes.get(target);
+        if (sourceId == -1)
             throw new IllegalArgumentException("Call graph does not contain source node. Please add source node first. " + source.toString());
-        if (!nodes.contains(target))
+        if (targetId == -1)
             throw new IllegalArgumentException("Call graph does not contain target node. Please add target node first. " + target.toString());
 
-        Edge<SootMethod, SootMethod> edge = new Edge<>(source, target);
-        if (edges.contains(edge))
-            throw new IllegalArgumentException("Call graph already contains edge: " + edge.toString());
+        return insertEdge(sourceId, targetId);
+    }
+
+    private boolean insertEdge(int sourceId, int targetId) {
+        if (inSharedSet(sourceId, targetId, setsOfCount[sourceId])) return false;
+        if (!edges.addIfAbsent(encode(sourceId, targetId))) return false;
+        edgeCount++;
+
+        successors[sourceId] = append(successors[sourceId], successorCount[sourceId]++, targetId);
+        predecessors[targetId] = append(predecessors[targetId], predecessorCount[targetId]++, sourceId);
+        return true;
+    }
+
+    private static int[] append(int[] list, int size, int value) {
+        if (list == null) list = new int[4];
+        else if (size == list.length) list = Arrays.copyOf(list, size * 2);
+        list[size] = value;
+        return list;
+    }
+
+    /**
+     * Adds a call edge together with its call site. The method-level edge is created if it does not exist yet,
+     * several call sites may share it.
+     *
+     * @param unitIndex position of the invoking statement in the units of the source body, or a
+     *                  {@link #summaryCallSite(int)}
+     */
+    public void addEdge(SootMethod source, SootMethod target, int unitIndex) {
+        if (!recordCallSites)
+            throw new IllegalStateException("Call graph " + algorithm + " does not record call sites");
+        if (hasEdge(source, target, unitIndex))
+            throw new IllegalArgumentException("Call graph already contains edge: " + new Edge<>(source, target) + " at unit " + unitIndex);
+        addEdgeIfAbsent(source, target);
+
+        int sourceId = nodes.get(source);
+        callSites[sourceId] = insertByUnit(callSites[sourceId], callSiteCount[sourceId], unitIndex, nodes.get(target));
+        callSiteCount[sourceId] += 2;
+    }
+
+    /**
+     * Adds a call site that may invoke every method of the target set. Instead of an edge per target, the caller
+     * refers to the set, which is stored once per graph however many call sites use it. The edges it implies are
+     * part of every query, like edges added with {@link #addEdge(SootMethod, SootMethod)}. Targets that are no
+     * nodes yet are added.
+     *
+     * @param unitIndex position of the invoking statement in the units of the caller body, only kept if the graph
+     *                  records call sites
+     * @throws IllegalArgumentException if the call site already dispatches through another set
+     */
+    public void addCallSite(SootMethod caller, int unitIndex, DispatchTargets targets) {
+        int callerId = nodes.get(caller);
+        if (callerId == -1)
+            throw new IllegalArgumentException("Call graph does not contain source node. Please add source node first. " + caller.toString());
+        Integer setId = sharedSetIds.get(targets);
+        if (setId == null) {
+            for (SootMethod target : targets.getTargets()) {
+                if (!nodes.containsKey(target)) addNode(target);
+            }
+            setId = internSet(targets);
+        }
+        if (recordCallSites) {
+            int existing = sharedSetAt(callerId, unitIndex);
+            if (existing == setId) return;
+            if (existing != -1)
+                throw new IllegalArgumentException("Call site at unit " + unitIndex + " of " + caller + " already dispatches to " + sharedSets.get(existing));
+            recordSharedSite(callerId, unitIndex, setId);
+        }
+        linkSet(callerId, setId);
+    }
+
+    private int internSet(DispatchTargets targets) {
+        int setId = sharedSets.size();
+        int[] ids = new int[targets.size()];
+        for (int i = 0; i < ids.length; i++)
+            ids[i] = nodes.get(targets.getTargets().get(i));
+        int[] sorted = ids.clone();
+        Arrays.sort(sorted);
+        sharedSetIds.put(targets, setId);
+        sharedSets.add(targets);
+        sharedSetTargets.add(ids);
+        sharedSetSorted.add(sorted);
+        if (setId == sharedSetCallers.length) {
+            sharedSetCallers = Arrays.copyOf(sharedSetCallers, setId * 2);
+            sharedSetCallerCount = Arrays.copyOf(sharedSetCallerCount, setId * 2);
+        }
+        for (int target : ids)
+            setsContaining[target] = append(setsContaining[target], setsContainingCount[target]++, setId);
+        return setId;
+    }
+
+    private void linkSet(int callerId, int setId) {
+        int[] sets = setsOf[callerId];
+        for (int i = 0; i < setsOfCount[callerId]; i++) {
+            if (sets[i] == setId) return;
+        }
+        // count the edges the set adds before it becomes one of the caller's sets
+        for (int target : sharedSetTargets.get(setId)) {
+            if (!edges.contains(encode(callerId, target)) && !inSharedSet(callerId, target, setsOfCount[callerId]))
+                edgeCount++;
+        }
+        setsOf[callerId] = append(sets, setsOfCount[callerId]++, setId);
+        successors[callerId] = append(successors[callerId], successorCount[callerId]++, ~setId);
+        sharedSetCallers[setId] = append(sharedSetCallers[setId], sharedSetCallerCount[setId]++, callerId);
+    }
 
-        edges.add(edge);
+    private void recordSharedSite(int callerId, int unitIndex, int setId) {
+        sharedSites[callerId] = insertByUnit(sharedSites[callerId], sharedSiteCount[callerId], unitIndex, setId);
+        sharedSiteCount[callerId] += 2;
+    }
+
+    /**
+     * Inserts the (unit index, value) pair into pairs sorted by unit index, after the pairs of the same unit.
+     *
+     * @param size the ints in use, two per pair
+     */
+    private static int[] insertByUnit(int[] sites, int size, int unitIndex, int value) {
+        if (sites == null) sites = new int[4];
+        else if (size == sites.length) sites = Arrays.copyOf(sites, size * 2);
+        // call sites mostly come in unit order, so this rarely moves anything
+        int pos = size;
+        while (pos > 0 && sites[pos - 2] > unitIndex) pos -= 2;
+        System.arraycopy(sites, pos, sites, pos + 2, size - pos);
+        sites[pos] = unitIndex;
+        sites[pos + 1] = value;
+        return sites;
+    }
+
+    /**
+     * @return the position of the first pair of the unit in the call sites of the caller, or where it would be
+     */
+    private int firstCallSiteAt(int callerId, int unitIndex) {
+        int[] sites = callSites[callerId];
+        int low = 0;
+        int high = callSiteCount[callerId] / 2;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sites[mid * 2] < unitIndex) low = mid + 1;
+            else high = mid;
+        }
+        return low * 2;
+    }
+
+    /**
+     * @return the shared set the call site at the unit dispatches through, or -1
+     */
+    private int sharedSetAt(int callerId, int unitIndex) {
+        int[] sites = sharedSites[callerId];
+        int low = 0;
+        int high = sharedSiteCount[callerId] / 2 - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int unit = sites[mid * 2];
+            if (unit < unitIndex) low = mid + 1;
+            else if (unit > unitIndex) high = mid - 1;
+            else return sites[mid * 2 + 1];
+        }
+        return -1;
+    }
+
+    /**
+     * @return true if one of the first setCount sets of the caller contains the target
+     */
+    private boolean inSharedSet(int callerId, int targetId, int setCount) {
+        int[] sets = setsOf[callerId];
+        for (int i = 0; i < setCount; i++) {
+            if (Arrays.binarySearch(sharedSetSorted.get(sets[i]), targetId) >= 0) return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return true if the edge exists and this is the place where iteration visits it: explicit edges first, an
+     * implied edge at the first set of the caller that contains the target
+     */
+    private boolean visitsImplied(int callerId, int targetId, int setIndex) {
+        return !edges.contains(encode(callerId, targetId)) && !inSharedSet(callerId, targetId, setIndex);
+    }
+
+    /**
+     * @return the number of shared target sets, each stored once however many call sites use it
+     */
+    public int sharedSetCount() {
+        return sharedSets.size();
     }
 
     public boolean hasNode(SootMethod m) {
-        return nodes.contains(m);
+        return nodes.containsKey(m);
+    }
+
+    public boolean hasEdge(SootMethod source, SootMethod target) {
+        int sourceId = nodes.get(source);
+        int targetId = nodes.get(target);
+        return sourceId != -1 && targetId != -1
+                && (edges.contains(encode(sourceId, targetId)) || inSharedSet(sourceId, targetId, setsOfCount[sourceId]));
+    }
+
+    public boolean hasEdge(SootMethod source, SootMethod target, int unitIndex) {
+        int sourceId = nodes.get(source);
+        int targetId = nodes.get(target);
+        if (!recordCallSites || sourceId == -1 || targetId == -1) return false;
+        int[] sites = callSites[sourceId];
+        for (int i = firstCallSiteAt(sourceId, unitIndex); i < callSiteCount[sourceId] && sites[i] == unitIndex; i += 2) {
+            if (sites[i + 1] == targetId) return true;
+        }
+        int setId = sharedSetAt(sourceId, unitIndex);
+        return setId != -1 && Arrays.binarySearch(sharedSetSorted.get(setId), targetId) >= 0;
+    }
+
+    public int nodeCount() {
+        return methodsById.size();
+    }
+
+    public int edgeCount() {
+        return edgeCount;
+    }
+
+    public boolean recordsCallSites() {
+        return recordCallSites;
+    }
+
+    /**
+     * @return the methods the call site at the given unit of the caller may invoke
+     */
+    public Collection<SootMethod> targetsOf(SootMethod caller, int unitIndex) {
+        int id = nodes.get(caller);
+        if (id == -1 || !recordCallSites) return Collections.emptyList();
+        List<SootMethod> targets = new ArrayList<>();
+        int[] sites = callSites[id];
+        for (int i = firstCallSiteAt(id, unitIndex); i < callSiteCount[id] && sites[i] == unitIndex; i += 2)
+            targets.add(methodsById.get(sites[i + 1]));
+        int setId = sharedSetAt(id, unitIndex);
+        if (setId == -1) return Collections.unmodifiableList(targets);
+        List<SootMethod> shared = sharedSets.get(setId).getTargets();
+        if (targets.isEmpty()) return shared;
+
+        List<SootMethod> result = new ArrayList<>(targets);
+        for (SootMethod target : shared) {
+            if (!targets.contains(target)) result.add(target);
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * The call sites are found by a pass over all call sites of the source.
+     *
+     * @return the sorted unit indices of all call sites in source that may invoke target
+     */
+    public int[] callSitesOf(SootMethod source, SootMethod target) {
+        int sourceId = nodes.get(source);
+        int targetId = nodes.get(target);
+        if (sourceId == -1 || targetId == -1 || !recordCallSites) return new int[0];
+        int[] explicit = callSites[sourceId];
+        int[] sites = new int[callSiteCount[sourceId] / 2];
+        int count = 0;
+        for (int i = 0; i < callSiteCount[sourceId]; i += 2) {
+            if (explicit[i + 1] == targetId) sites[count++] = explicit[i];
+        }
+        sites = Arrays.copyOf(sites, count);
+        if (!inSharedSet(sourceId, targetId, setsOfCount[sourceId])) return sites;
+
+        // merge in the units of the shared call sites whose set contains the target, both are sorted
+        int[] shared = sharedSites[sourceId];
+        int[] result = new int[sites.length + sharedSiteCount[sourceId] / 2];
+        int size = 0;
+        int i = 0;
+        for (int j = 0; j < sharedSiteCount[sourceId]; j += 2) {
+            if (Arrays.binarySearch(sharedSetSorted.get(shared[j + 1]), targetId) < 0) continue;
+            while (i < sites.length && sites[i] < shared[j]) result[size++] = sites[i++];
+            if (i < sites.length && sites[i] == shared[j]) i++;
+            result[size++] = shared[j];
+        }
+        while (i < sites.length) result[size++] = sites[i++];
+        return Arrays.copyOf(result, size);
+    }
+
+    /**
+     * The call site of the given interface call of a library summary. It stands for calls somewhere in the library
+     * code the summary covers, not for a statement of the summarized method, so it is negative and never collides
+     * with a unit index. The call sites of a summary ascend like unit indices, so they are appended, not inserted.
+     */
+    public static int summaryCallSite(int interfaceCall) {
+        return Integer.MIN_VALUE + interfaceCall;
+    }
+
+    /**
+     * @return whether the call site comes from a library summary and has no statement, see
+     * {@link #summaryCallSite(int)}
+     */
+    public static boolean isSummaryCallSite(int unitIndex) {
+        return unitIndex < 0;
+    }
+
+    /**
+     * Maps a recorded unit index back to the statement. This walks the unit chain of the caller, so it is meant
+     * for reporting, not for hot loops. A body released during construction is built again.
+     *
+     * @throws IllegalArgumentException if the call site comes from a library summary
+     */
+    public static Stmt getCallSiteStmt(SootMethod caller, int unitIndex) {
+        if (isSummaryCallSite(unitIndex))
+            throw new IllegalArgumentException("Call site " + unitIndex + " of " + caller + " comes from a library summary, it has no statement");
+        int index = 0;
+        for (Unit unit : caller.retrieveActiveBody().getUnits()) {
+            if (index++ == unitIndex) return (Stmt) unit;
+        }
+        throw new IndexOutOfBoundsException("No unit " + unitIndex + " in " + caller);
+    }
+
+    private static long encode(int methodId, int value) {
+        return ((long) methodId << 32) | (value & 0xFFFFFFFFL);
+    }
+
+    void setExhaustedLimit(AnalysisBudget.Limit limit) {
+        exhaustedLimit = limit;
+    }
+
+    /**
+     * @return the budget limit the algorithm ran into, or null if it finished within its budget
+     */
+    public AnalysisBudget.Limit getExhaustedLimit() {
+        return exhaustedLimit;
+    }
+
+    /**
+     * @return true if the algorithm ran out of budget and parts of the graph come from its fallback
+     */
+    public boolean isDegraded() {
+        return exhaustedLimit != null;
+    }
+
+    public void markDegraded(SootMethod method) {
+        if (!nodes.containsKey(method))
+            throw new IllegalArgumentException("Call graph does not contain method: " + method.toString());
+        degradedMethods.add(method);
+    }
+
+    /**
+     * The outgoing edges of a degraded method were computed by the fallback algorithm, not by {@link #algorithm}.
+     */
+    public boolean isDegraded(SootMethod method) {
+        return degradedMethods.contains(method);
+    }
+
+    public Set<SootMethod> getDegradedMethods() {
+        return Collections.unmodifiableSet(degradedMethods);
+    }
+
+    public Set<SootMethod> getNodes() {
+        return new AbstractSet<SootMethod>() {
+            @Override
+            public Iterator<SootMethod> iterator() {
+                return Collections.unmodifiableList(methodsById).iterator();
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                return o instanceof SootMethod && nodes.containsKey((SootMethod) o);
+            }
+
+            @Override
+            public int size() {
+                return methodsById.size();
+            }
+        };
+    }
+
+    /**
+     * Materializes all edges as {@link Edge} objects, prefer {@link #forEachEdge(EdgeVisitor)} when just iterating.
+     */
+    public Set<Edge<SootMethod, SootMethod>> getEdges() {
+        Set<Edge<SootMethod, SootMethod>> result = new HashSet<>(edgeCount * 2);
+        forEachEdge((source, target) -> result.add(new Edge<>(source, target)));
+        return Collections.unmodifiableSet(result);
+    }
+
+    /**
+     * Callback for {@link #forEachEdge(EdgeVisitor)}.
+     */
+    public interface EdgeVisitor {
+        void visit(SootMethod source, SootMethod target);
+    }
+
+    /**
+     * Visits every edge without allocating an {@link Edge} per call.
+     */
+    public void forEachEdge(EdgeVisitor visitor) {
+        for (int source = 0; source < methodsById.size(); source++) {
+            SootMethod sourceMethod = methodsById.get(source);
+            forEachSuccessorId(source, target -> visitor.visit(sourceMethod, methodsById.get(target)));
+        }
+    }
+
+    /**
+     * Callback for {@link #forEachEdgeId(IdEdgeVisitor)}.
+     */
+    interface IdEdgeVisitor {
+        void visit(int source, int target);
+    }
+
+    /**
+     * Visits every edge by the ids of its nodes, ids being positions in {@link #getNodes()}.
+     */
+    void forEachEdgeId(IdEdgeVisitor visitor) {
+        for (int source = 0; source < methodsById.size(); source++) {
+            int sourceId = source;
+            forEachSuccessorId(source, target -> visitor.visit(sourceId, target));
+        }
+    }
+
+    public void forEachSuccessor(SootMethod origin, Consumer<SootMethod> consumer) {
+        int id = nodes.get(origin);
+        if (id == -1) return;
+        forEachSuccessorId(id, target -> consumer.accept(methodsById.get(target)));
+    }
+
+    private void forEachSuccessorId(int id, IntConsumer consumer) {
+        int[] targets = successors[id];
+        int setIndex = 0;
+        for (int i = 0; i < successorCount[id]; i++) {
+            if (targets[i] >= 0) {
+                consumer.accept(targets[i]);
+                continue;
+            }
+            for (int target : sharedSetTargets.get(~targets[i])) {
+                if (visitsImplied(id, target, setIndex)) consumer.accept(target);
+            }
+            setIndex++;
+        }
+    }
+
+    public void forEachPredecessor(SootMethod target, Consumer<SootMethod> consumer) {
+        int id = nodes.get(target);
+        if (id == -1) return;
+        int[] sources = predecessors[id];
+        for (int i = 0; i < predecessorCount[id]; i++)
+            consumer.accept(methodsById.get(sources[i]));
+        int[] sets = setsContaining[id];
+        for (int i = 0; i < setsContainingCount[id]; i++) {
+            int setId = sets[i];
+            int[] callers = sharedSetCallers[setId];
+            for (int j = 0; j < sharedSetCallerCount[setId]; j++) {
+                int caller = callers[j];
+                if (visitsImplied(caller, id, indexOfSet(caller, setId))) consumer.accept(methodsById.get(caller));
+            }
+        }
+    }
+
+    private int indexOfSet(int callerId, int setId) {
+        int[] sets = setsOf[callerId];
+        int i = 0;
+        while (sets[i] != setId) i++;
+        return i;
+    }
+
+    /**
+     * Takes an immutable, read-optimized snapshot of the nodes and edges, for graphs that are done and get queried
+     * by several threads. Edges added afterwards are not part of it.
+     */
+    public FrozenCallGraph freeze() {
+        return new FrozenCallGraph(this);
     }
-    public boolean hasEdge(SootMethod source, SootMethod target) { return edges.contains(new Edge<>(source, target));}
 
     public Set<SootMethod> edgesOutOf(SootMethod origin) {
-        if (!nodes.contains(origin)) return Collections.emptySet();
+        if (!nodes.containsKey(origin)) return Collections.emptySet();
 
-        return edges.stream().filter(edge -> edge.source.equals(origin))
-                      .map(edge -> edge.target)
-                      .collect(Collectors.toSet());
+        Set<SootMethod> result = new HashSet<>();
+        forEachSuccessor(origin, result::add);
+        return result;
     }
 
     public Set<SootMethod> edgesInto(SootMethod target) {
-        if (!nodes.contains(target)) return Collections.emptySet();
+        if (!nodes.containsKey(target)) return Collections.emptySet();
 
-        return edges.stream().filter(edge -> edge.target.equals(target))
-                .map(edge -> edge.source)
-                .collect(Collectors.toSet());
+        Set<SootMethod> result = new HashSet<>();
+        forEachPredecessor(target, result::add);
+        return result;
     }
 }
@@ -1,19 +1,537 @@
 package analysis;
 
+import soot.FoundFile;
 import soot.Scene;
+import soot.SootClass;
+import soot.SootField;
 import soot.SootMethod;
+import soot.SourceLocator;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Stream;
+import java.util.zip.CRC32;
 
 public abstract class CallGraphAlgorithm {
+    private boolean recordCallSites;
+    private boolean lazyBodies;
+    private int bodyLoaderThreads = Runtime.getRuntime().availableProcessors();
+    private BodyLoader.Retention bodyRetention = BodyLoader.Retention.KEEP;
+    private LibrarySummaries librarySummaries;
+    private EntryPointProvider entryPointProvider = EntryPoints.mainMethods();
+
+    private AnalysisBudget budget = AnalysisBudget.UNLIMITED;
+    private CallGraphAlgorithm fallbackAlgorithm;
+    private CancellationToken cancellationToken;
+    private ProgressListener progressListener;
+    private CheckpointStore checkpointStore;
+    private long checkpointIntervalNanos;
+
+    // bookkeeping of the running construction, completedMethods is only tracked if the budget is limited
+    private static final int CHECK_INTERVAL = 256;
+    private CallGraph currentCallGraph;
+    private long start;
+    private long workDone;
+    private long workSinceCheck;
+    private long methodsProcessed;
+    private Set<SootMethod> completedMethods;
+    private long sceneFingerprint;
+    private long lastCheckpoint;
+    private long checkpointPauseNanos;
+    private int bodiesReleased;
+    private int bodiesRebuilt;
+
+    // identifies snapshots, see writeCheckpoint
+    private static final int CHECKPOINT_MAGIC = 0x43474350;
+    private static final int CHECKPOINT_VERSION = 1;
+
+    // only set while a call graph is constructed in lazy mode
+    private BodyLoader bodyLoader;
+
     public CallGraph constructCallGraph(Scene scene) {
-        CallGraph cg = new CallGraph(getAlgorithm());
-        populateCallGraph(scene, cg);
+        CallGraph cg = new CallGraph(getAlgorithm(), recordCallSites);
+        currentCallGraph = cg;
+        start = System.nanoTime();
+        workDone = 0;
+        workSinceCheck = 0;
+        methodsProcessed = 0;
+        completedMethods = budget.isUnlimited() ? null : new HashSet<>();
+        checkpointPauseNanos = 0;
+        bodiesReleased = 0;
+        bodiesRebuilt = 0;
+        try {
+            if (cancellationToken != null) cancellationToken.throwIfCancelled();
+            try {
+                if (!lazyBodies) {
+                    resumeAndPopulate(scene, cg);
+                } else {
+                    // snapshots refer to locals by their position in the active body, so checkpointed runs keep them
+                    BodyLoader.Retention retention = checkpointStore != null ? BodyLoader.Retention.KEEP : bodyRetention;
+                    try (BodyLoader loader = new BodyLoader(bodyLoaderThreads, retention)) {
+                        bodyLoader = loader;
+                        resumeAndPopulate(scene, cg);
+                    } finally {
+                        bodiesReleased = bodyLoader.getBodiesReleased();
+                        bodiesRebuilt = bodyLoader.getBodiesRebuilt();
+                        bodyLoader = null;
+                    }
+                }
+            } catch (BudgetExhaustedException e) {
+                completeWithFallback(scene, cg, e.getLimit());
+            }
+            // a finished call graph makes the snapshot useless, a cancelled run keeps it to resume from
+            if (checkpointStore != null) checkpointStore.delete();
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not access checkpoint " + checkpointStore.getFile(), e);
+        } finally {
+            completedMethods = null;
+            currentCallGraph = null;
+        }
+        if (progressListener != null)
+            progressListener.progress(new AnalysisProgress(getAlgorithm(), methodsProcessed, 0, cg.edgeCount(), System.nanoTime() - start, true));
         return cg;
     }
 
+    private void resumeAndPopulate(Scene scene, CallGraph cg) throws IOException {
+        if (checkpointStore != null) {
+            sceneFingerprint = fingerprint(scene);
+            byte[] snapshot = checkpointStore.read();
+            if (snapshot != null) readCheckpoint(new CheckpointInput(snapshot, scene), cg);
+            lastCheckpoint = System.nanoTime();
+        }
+        populateCallGraph(scene, cg);
+    }
+
+    /**
+     * Keeps the edges of all methods the analysis finished and takes the edges of every other method from the
+     * fallback algorithm, which runs without a budget. Those methods are marked as degraded.
+     */
+    private void completeWithFallback(Scene scene, CallGraph cg, AnalysisBudget.Limit limit) {
+        Set<SootMethod> completed = completedMethods;
+        cg.setExhaustedLimit(limit);
+
+        CallGraphAlgorithm fallback = fallbackAlgorithm != null ? fallbackAlgorithm : createFallbackAlgorithm();
+        if (fallback == null) {
+            // nothing cheaper to finish with, the methods the analysis did not get through stay incomplete
+            for (SootMethod method : cg.getNodes()) {
+                if (!completed.contains(method)) cg.markDegraded(method);
+            }
+            return;
+        }
+
+        fallback.setRecordCallSites(recordCallSites);
+        fallback.setLazyBodies(lazyBodies);
+        fallback.setBodyLoaderThreads(bodyLoaderThreads);
+        fallback.setBodyRetention(bodyRetention);
+        fallback.setLibrarySummaries(librarySummaries);
+        fallback.setEntryPointProvider(entryPointProvider);
+        fallback.setCancellationToken(cancellationToken);
+        CallGraph coarse = fallback.constructCallGraph(scene);
+        for (SootMethod method : coarse.getNodes()) {
+            if (!cg.hasNode(method)) cg.addNode(method);
+        }
+        coarse.forEachEdge((source, target) -> {
+            if (completed.contains(source)) return;
+            cg.markDegraded(source);
+            if (!recordCallSites) {
+                cg.addEdgeIfAbsent(source, target);
+                return;
+            }
+            for (int unitIndex : coarse.callSitesOf(source, target)) {
+                if (!cg.hasEdge(source, target, unitIndex)) cg.addEdge(source, target, unitIndex);
+            }
+        });
+    }
+
+    /**
+     * The algorithm that finishes the call graph when the budget runs out, null if there is none. The fallback
+     * should be cheaper than this algorithm and at least as sound.
+     */
+    protected CallGraphAlgorithm createFallbackAlgorithm() {
+        return null;
+    }
+
+    /**
+     * Limits wall clock time, work and heap of every {@link #constructCallGraph(Scene)}. When a limit is reached
+     * the analysis stops, and the methods it did not finish get their edges from the fallback algorithm, see
+     * {@link CallGraph#getDegradedMethods()}.
+     */
+    public void setBudget(AnalysisBudget budget) {
+        if (budget == null)
+            throw new IllegalArgumentException("Budget must not be null, use AnalysisBudget.UNLIMITED instead");
+        this.budget = budget;
+    }
+
+    /**
+     * Overrides {@link #createFallbackAlgorithm()}. Call site recording and body loading settings of this
+     * algorithm are copied to the fallback when it runs.
+     */
+    public void setFallbackAlgorithm(CallGraphAlgorithm fallbackAlgorithm) {
+        this.fallbackAlgorithm = fallbackAlgorithm;
+    }
+
+    /**
+     * Lets another thread stop {@link #constructCallGraph(Scene)}, which then throws
+     * {@link AnalysisCancelledException}. The token is also handed to the fallback algorithm.
+     */
+    public void setCancellationToken(CancellationToken cancellationToken) {
+        this.cancellationToken = cancellationToken;
+    }
+
+    public CancellationToken getCancellationToken() {
+        return cancellationToken;
+    }
+
+    public void setProgressListener(ProgressListener progressListener) {
+        this.progressListener = progressListener;
+    }
+
+    /**
+     * Takes a snapshot of the solver state at most once per interval and hands it to the store, which writes it in
+     * the background. If the store holds a snapshot of the same algorithm on the same program when
+     * {@link #constructCallGraph(Scene)} starts, the analysis resumes from it and reaches the same call graph as
+     * an uninterrupted run. The snapshot is deleted once the call graph is complete.
+     *
+     * @param store null disables checkpoints
+     * @throws UnsupportedOperationException if the algorithm cannot take snapshots, see {@link #supportsCheckpoints()}
+     */
+    public void setCheckpoints(CheckpointStore store, long interval, TimeUnit unit) {
+        if (store != null && !supportsCheckpoints())
+            throw new UnsupportedOperationException(getAlgorithm() + " does not support checkpoints");
+        this.checkpointStore = store;
+        this.checkpointIntervalNanos = unit.toNanos(interval);
+    }
+
+    /**
+     * @return how long the last {@link #constructCallGraph(Scene)} was paused to encode snapshots, in nanoseconds
+     */
+    public long getCheckpointPauseNanos() {
+        return checkpointPauseNanos;
+    }
+
+    /**
+     * Algorithms that return true call {@link #checkpointIfDue()} whenever their state is consistent and
+     * implement {@link #writeCheckpointState(CheckpointOutput)} and {@link #readCheckpointState(CheckpointInput)}.
+     */
+    protected boolean supportsCheckpoints() {
+        return false;
+    }
+
+    /**
+     * Writes the state of the algorithm besides the call graph, which is part of every snapshot.
+     */
+    protected void writeCheckpointState(CheckpointOutput out) throws IOException {
+    }
+
+    /**
+     * Reads what {@link #writeCheckpointState(CheckpointOutput)} wrote. It is called before
+     * {@link #populateCallGraph(Scene, CallGraph)}, which then continues from the restored state.
+     */
+    protected void readCheckpointState(CheckpointInput in) throws IOException {
+    }
+
+    /**
+     * Takes a snapshot if checkpoints are enabled and the interval passed since the last one. Only the encoding
+     * happens on the calling thread.
+     */
+    protected final void checkpointIfDue() {
+        if (checkpointStore == null || System.nanoTime() - lastCheckpoint < checkpointIntervalNanos) return;
+        long pauseStart = System.nanoTime();
+        try {
+            CheckpointOutput out = new CheckpointOutput();
+            writeCheckpoint(out);
+            checkpointStore.write(out.toByteArray());
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not encode checkpoint", e);
+        }
+        lastCheckpoint = System.nanoTime();
+        checkpointPauseNanos += lastCheckpoint - pauseStart;
+    }
+
+    private void writeCheckpoint(CheckpointOutput out) throws IOException {
+        out.writeInt(CHECKPOINT_MAGIC);
+        out.writeInt(CHECKPOINT_VERSION);
+        out.writeString(getAlgorithm());
+        out.writeLong(sceneFingerprint);
+        out.writeBoolean(recordCallSites);
+        out.writeLong(System.nanoTime() - start);
+        out.writeLong(workDone);
+        out.writeLong(methodsProcessed);
+
+        CallGraph cg = currentCallGraph;
+        out.writeInt(cg.nodeCount());
+        for (SootMethod node : cg.getNodes())
+            out.writeMethod(node);
+        out.writeInt(cg.edgeCount());
+        IOException[] failure = new IOException[1];
+        cg.forEachEdge((source, target) -> {
+            if (failure[0] != null) return;
+            try {
+                out.writeMethod(source);
+                out.writeMethod(target);
+                if (!recordCallSites) return;
+                int[] callSites = cg.callSitesOf(source, target);
+                out.writeInt(callSites.length);
+                for (int unitIndex : callSites)
+                    out.writeInt(unitIndex);
+            } catch (IOException e) {
+                failure[0] = e;
+            }
+        });
+        if (failure[0] != null) throw failure[0];
+
+        out.writeBoolean(completedMethods != null);
+        if (completedMethods != null) {
+            out.writeInt(completedMethods.size());
+            for (SootMethod method : completedMethods)
+                out.writeMethod(method);
+        }
+        writeCheckpointState(out);
+    }
+
+    /**
+     * Restores the call graph and the bookkeeping of the snapshot. Snapshots of another algorithm, program or
+     * format are ignored, the analysis starts from scratch then.
+     */
+    private void readCheckpoint(CheckpointInput in, CallGraph cg) throws IOException {
+        if (in.readInt() != CHECKPOINT_MAGIC || in.readInt() != CHECKPOINT_VERSION
+                || !in.readString().equals(getAlgorithm()) || in.readLong() != sceneFingerprint
+                || in.readBoolean() != recordCallSites)
+            return;
+        start = System.nanoTime() - in.readLong();
+        workDone = in.readLong();
+        methodsProcessed = in.readLong();
+
+        int nodeCount = in.readInt();
+        for (int i = 0; i < nodeCount; i++)
+            cg.addNode(in.readMethod());
+        int edgeCount = in.readInt();
+        for (int i = 0; i < edgeCount; i++) {
+            SootMethod source = in.readMethod();
+            SootMethod target = in.readMethod();
+            if (!recordCallSites) {
+                cg.addEdge(source, target);
+                continue;
+            }
+            int callSites = in.readInt();
+            // edges can exist without a call site, if they were added without one
+            if (callSites == 0) cg.addEdge(source, target);
+            for (int j = 0; j < callSites; j++)
+                cg.addEdge(source, target, in.readInt());
+        }
+
+        boolean hasCompleted = in.readBoolean();
+        if (hasCompleted) {
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                SootMethod method = in.readMethod();
+                if (completedMethods != null) completedMethods.add(method);
+            }
+        }
+        readCheckpointState(in);
+    }
+
+    // taken before the analysis builds bodies, which can add classes to the scene. Covers the signatures of every
+    // application class and the bytes of its class file, so an edit of a method body changes it as well
+    private static long fingerprint(Scene scene) throws IOException {
+        long hash = 17;
+        CRC32 classFile = new CRC32();
+        byte[] buffer = new byte[1 << 13];
+        for (SootClass sootClass : scene.getApplicationClasses()) {
+            hash = hash * 31 + sootClass.getName().hashCode();
+            for (SootField field : sootClass.getFields())
+                hash = hash * 31 + field.getSignature().hashCode();
+            for (SootMethod method : sootClass.getMethods())
+                hash = hash * 31 + method.getSignature().hashCode();
+            FoundFile file = SourceLocator.v().lookupInClassPath(sootClass.getName().replace('.', '/') + ".class");
+            if (file == null) continue;
+            classFile.reset();
+            try (InputStream in = file.inputStream()) {
+                int read;
+                while ((read = in.read(buffer)) > 0)
+                    classFile.update(buffer, 0, read);
+            } finally {
+                file.close();
+            }
+            hash = hash * 31 + classFile.getValue();
+        }
+        return hash;
+    }
+
+    /**
+     * Accounts for work done by the analysis and is the place where algorithms get stopped: the cancellation
+     * token is checked on every call, time and heap only every few hundred units, when progress is reported as
+     * well.
+     *
+     * @throws BudgetExhaustedException  if a limit of the budget is reached
+     * @throws AnalysisCancelledException if the cancellation token was cancelled
+     */
+    protected final void chargeWork(long units) {
+        if (cancellationToken != null && cancellationToken.isCancelled())
+            throw new AnalysisCancelledException();
+        workDone += units;
+        if (budget.getMaxWork() != 0 && workDone > budget.getMaxWork())
+            throw new BudgetExhaustedException(AnalysisBudget.Limit.WORK);
+
+        workSinceCheck += units;
+        if (workSinceCheck < CHECK_INTERVAL) return;
+        workSinceCheck = 0;
+        if (progressListener != null && currentCallGraph != null) {
+            int worklist = (int) Math.max(0, currentCallGraph.nodeCount() - methodsProcessed);
+            progressListener.progress(new AnalysisProgress(getAlgorithm(), methodsProcessed, worklist,
+                    currentCallGraph.edgeCount(), System.nanoTime() - start, false));
+        }
+        checkLimits();
+    }
+
+    /**
+     * Checks the cancellation token and the time and heap limits of the budget right away, for algorithms that
+     * wait for work done elsewhere and have nothing to charge in the meantime.
+     *
+     * @throws BudgetExhaustedException  if the wall-clock or heap limit is reached
+     * @throws AnalysisCancelledException if the cancellation token was cancelled
+     */
+    protected final void checkLimits() {
+        if (cancellationToken != null && cancellationToken.isCancelled())
+            throw new AnalysisCancelledException();
+        if (budget.getWallClockNanos() != 0 && System.nanoTime() - start > budget.getWallClockNanos())
+            throw new BudgetExhaustedException(AnalysisBudget.Limit.WALL_CLOCK);
+        if (budget.getMaxHeapBytes() != 0) {
+            Runtime runtime = Runtime.getRuntime();
+            if (runtime.totalMemory() - runtime.freeMemory() > budget.getMaxHeapBytes())
+                throw new BudgetExhaustedException(AnalysisBudget.Limit.HEAP);
+        }
+    }
+
+    /**
+     * Tells the bookkeeping that all outgoing edges of the method are in the call graph, so they survive a
+     * fallback. Also counts processed methods for progress reports.
+     */
+    protected final void markCompleted(SootMethod method) {
+        methodsProcessed++;
+        if (completedMethods != null) completedMethods.add(method);
+    }
+
+    /**
+     * If enabled, the constructed call graph records the invoking unit of every edge.
+     */
+    public void setRecordCallSites(boolean recordCallSites) {
+        this.recordCallSites = recordCallSites;
+    }
+
+    /**
+     * If enabled, bodies of application methods are only built once the algorithm reaches them, with the callees
+     * of every processed method prefetched in parallel. This only pays off if Soot did not build all bodies
+     * already, i.e. the scene was set up with {@code Scene.loadNecessaryClasses()} but the body packs were not run.
+     */
+    public void setLazyBodies(boolean lazyBodies) {
+        this.lazyBodies = lazyBodies;
+    }
+
+    public boolean isLazyBodies() {
+        return lazyBodies;
+    }
+
+    /**
+     * Size of the thread pool that prefetches bodies in lazy mode, 0 builds them on the analysis thread only.
+     */
+    public void setBodyLoaderThreads(int bodyLoaderThreads) {
+        if (bodyLoaderThreads < 0)
+            throw new IllegalArgumentException("Number of threads must not be negative: " + bodyLoaderThreads);
+        this.bodyLoaderThreads = bodyLoaderThreads;
+    }
+
+    /**
+     * What happens to a body in lazy mode once the algorithm has its summary, see {@link BodyLoader.Retention}.
+     * Anything but KEEP bounds the heap to the bodies in flight, at the cost of rebuilding bodies that are needed
+     * again, e.g. by {@link CallGraph#getCallSiteStmt(SootMethod, int)}. Runs with checkpoints always keep bodies,
+     * and so does every run if {@link BodyLoader#canRelease()} is false.
+     * <p>
+     * This only pays off under a tight heap limit. With the default heap the collector lets released bodies pile
+     * up, and the peak heap of construction is about the same in every mode; only the heap retained afterwards is
+     * smaller. Under an {@code -Xmx} that KEEP runs out of, SOFT and RELEASE finish.
+     */
+    public void setBodyRetention(BodyLoader.Retention bodyRetention) {
+        this.bodyRetention = bodyRetention;
+    }
+
+    /**
+     * @return how many bodies the last {@link #constructCallGraph(Scene)} released after summarizing them
+     */
+    public int getBodiesReleased() {
+        return bodiesReleased;
+    }
+
+    /**
+     * @return how many released bodies the last {@link #constructCallGraph(Scene)} had to build again
+     */
+    public int getBodiesRebuilt() {
+        return bodiesRebuilt;
+    }
+
+    /**
+     * Calls into the library get the effect of the library code from its summary, see {@link LibrarySummaries}.
+     * Algorithms that support summaries apply them instead of walking library bodies. The call sites of a
+     * summarized method do not point into a body, see {@link CallGraph#summaryCallSite(int)}.
+     *
+     * @param librarySummaries null to leave calls into the library as they are
+     */
+    public void setLibrarySummaries(LibrarySummaries librarySummaries) {
+        this.librarySummaries = librarySummaries;
+    }
+
+    /**
+     * Which methods of the application classes the call graph starts from, {@link EntryPoints#mainMethods()} by
+     * default. Algorithms on the same scene with the same provider share one discovery, see {@link EntryPoints}.
+     */
+    public void setEntryPointProvider(EntryPointProvider entryPointProvider) {
+        if (entryPointProvider == null) throw new IllegalArgumentException("Entry point provider must not be null");
+        this.entryPointProvider = entryPointProvider;
+    }
+
     protected Stream<SootMethod> getEntryPoints(Scene scene) {
-        return scene.getApplicationClasses().stream().flatMap(c -> c.getMethods().stream()).filter(m -> m.getName().contains("main") && m.hasActiveBody());
+        // The index is a snapshot, building bodies in lazy mode can resolve further classes into the scene
+        return EntryPoints.of(scene, entryPointProvider).stream().filter(this::hasBody);
+    }
+
+    /**
+     * Use this instead of {@link SootMethod#hasActiveBody()}, in lazy mode it builds the body on first access.
+     */
+    protected boolean hasBody(SootMethod method) {
+        return bodyLoader == null ? method.hasActiveBody() : bodyLoader.hasBody(method);
+    }
+
+    /**
+     * The library summary of the method, or null if there are no summaries or they do not cover it.
+     *
+     * @param followSpecialCalls whether the algorithm walks the targets of special calls, see
+     *                           {@link LibrarySummaries#summaryOf(Scene, SootMethod, boolean)}
+     */
+    protected LibrarySummaries.Summary librarySummary(Scene scene, SootMethod method, boolean followSpecialCalls) {
+        return librarySummaries == null ? null : MethodResolution.summaryOf(librarySummaries, scene, method, followSpecialCalls);
+    }
+
+    /**
+     * The summary of the method's body. In lazy mode the bodies of the declared call targets are prefetched, as
+     * the algorithm is likely to visit them next, and the body is released once it is summarized.
+     */
+    protected MethodSummary summarize(Scene scene, SootMethod method) {
+        MethodSummaries summaries = MethodSummaries.forScene(scene);
+        // a summarized method does not need its body, it may have been released
+        if (bodyLoader != null && !summaries.isSummarized(method)) bodyLoader.body(method);
+        MethodSummary summary = summaries.get(method);
+        if (bodyLoader != null) {
+            bodyLoader.release(method);
+            for (int i = 0; i < summary.invokeCount(); i++) {
+                SootMethod target = MethodResolution.targetOf(summary.invokeExpr(i));
+                // a summarized library method is never walked
+                if (librarySummaries == null || !librarySummaries.covers(target)) bodyLoader.prefetch(target);
+            }
+        }
+        return summary;
     }
 
     protected abstract void populateCallGraph(Scene scene, CallGraph cg);
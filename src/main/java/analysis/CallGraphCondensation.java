@@ -0,0 +1,219 @@
+package analysis;
+
+import soot.SootMethod;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Condenses a finished {@link CallGraph} into the DAG of its strongly connected components.
+ * <p>
+ * Methods get dense int ids and every SCC gets an id as well. SCC ids are handed out in the order Tarjan's
+ * algorithm completes them, so every edge of the DAG goes from a larger to a smaller SCC id: iterating ids in
+ * ascending order visits callees before callers.
+ */
+public class CallGraphCondensation {
+    private final List<SootMethod> methods;
+    private final Map<SootMethod, Integer> ids;
+
+    private final int[][] successors;
+    private final int[] sccOf;
+    private final int[][] sccMembers;
+    private final int[][] sccSuccessors;
+    private final boolean[] cyclic;
+
+    public CallGraphCondensation(CallGraph cg) {
+        methods = new ArrayList<>(cg.getNodes());
+        ids = new HashMap<>(methods.size() * 2);
+        for (int i = 0; i < methods.size(); i++)
+            ids.put(methods.get(i), i);
+
+        successors = buildAdjacency(cg);
+        sccOf = new int[methods.size()];
+        int sccCount = computeSccs();
+
+        sccMembers = groupMembers(sccCount);
+        cyclic = new boolean[sccCount];
+        sccSuccessors = buildDag(sccCount);
+    }
+
+    private int[][] buildAdjacency(CallGraph cg) {
+        int n = methods.size();
+        int[] degree = new int[n];
+        cg.forEachEdge((source, target) -> degree[ids.get(source)]++);
+
+        int[][] adjacency = new int[n][];
+        for (int i = 0; i < n; i++)
+            adjacency[i] = new int[degree[i]];
+
+        Arrays.fill(degree, 0);
+        cg.forEachEdge((source, target) -> {
+            int sourceId = ids.get(source);
+            adjacency[sourceId][degree[sourceId]++] = ids.get(target);
+        });
+        return adjacency;
+    }
+
+    /**
+     * Iterative version of Tarjan's algorithm, the call chains of real programs are deep enough to overflow the
+     * Java stack with the recursive one.
+     */
+    private int computeSccs() {
+        int n = methods.size();
+        int[] index = new int[n];
+        int[] low = new int[n];
+        boolean[] onStack = new boolean[n];
+        int[] stack = new int[n];
+        int[] callStack = new int[n];
+        int[] edgePos = new int[n];
+        Arrays.fill(index, -1);
+
+        int sp = 0;
+        int counter = 0;
+        int sccCount = 0;
+        for (int root = 0; root < n; root++) {
+            if (index[root] != -1) continue;
+
+            int csp = 0;
+            index[root] = low[root] = counter++;
+            stack[sp++] = root;
+            onStack[root] = true;
+            callStack[csp] = root;
+            edgePos[csp++] = 0;
+
+            while (csp > 0) {
+                int v = callStack[csp - 1];
+                int[] succ = successors[v];
+                if (edgePos[csp - 1] < succ.length) {
+                    int w = succ[edgePos[csp - 1]++];
+                    if (index[w] == -1) {
+                        index[w] = low[w] = counter++;
+                        stack[sp++] = w;
+                        onStack[w] = true;
+                        callStack[csp] = w;
+                        edgePos[csp++] = 0;
+                    } else if (onStack[w]) {
+                        low[v] = Math.min(low[v], index[w]);
+                    }
+                } else {
+                    csp--;
+                    if (low[v] == index[v]) {
+                        int w;
+                        do {
+                            w = stack[--sp];
+                            onStack[w] = false;
+                            sccOf[w] = sccCount;
+                        } while (w != v);
+                        sccCount++;
+                    }
+                    if (csp > 0) {
+                        int u = callStack[csp - 1];
+                        low[u] = Math.min(low[u], low[v]);
+                    }
+                }
+            }
+        }
+        return sccCount;
+    }
+
+    private int[][] groupMembers(int sccCount) {
+        int[] size = new int[sccCount];
+        for (int scc : sccOf)
+            size[scc]++;
+
+        int[][] members = new int[sccCount][];
+        for (int i = 0; i < sccCount; i++)
+            members[i] = new int[size[i]];
+
+        Arrays.fill(size, 0);
+        for (int m = 0; m < sccOf.length; m++)
+            members[sccOf[m]][size[sccOf[m]]++] = m;
+        return members;
+    }
+
+    private int[][] buildDag(int sccCount) {
+        int[][] dag = new int[sccCount][];
+        // mark[t] == s + 1 means t is already recorded as successor of s
+        int[] mark = new int[sccCount];
+        int[] buffer = new int[sccCount];
+        for (int s = 0; s < sccCount; s++) {
+            int count = 0;
+            cyclic[s] = sccMembers[s].length > 1;
+            for (int m : sccMembers[s]) {
+                for (int w : successors[m]) {
+                    int t = sccOf[w];
+                    if (t == s) {
+                        cyclic[s] = true;
+                    } else if (mark[t] != s + 1) {
+                        mark[t] = s + 1;
+                        buffer[count++] = t;
+                    }
+                }
+            }
+            dag[s] = Arrays.copyOf(buffer, count);
+        }
+        return dag;
+    }
+
+    public int methodCount() {
+        return methods.size();
+    }
+
+    public int sccCount() {
+        return sccMembers.length;
+    }
+
+    /**
+     * @return the dense id of the method, or -1 if it is not part of the call graph
+     */
+    public int idOf(SootMethod method) {
+        Integer id = ids.get(method);
+        return id == null ? -1 : id;
+    }
+
+    public SootMethod methodOf(int id) {
+        return methods.get(id);
+    }
+
+    public List<SootMethod> getMethods() {
+        return Collections.unmodifiableList(methods);
+    }
+
+    public int sccOf(int methodId) {
+        return sccOf[methodId];
+    }
+
+    /**
+     * @return the SCC of the method, or -1 if it is not part of the call graph
+     */
+    public int sccOf(SootMethod method) {
+        int id = idOf(method);
+        return id == -1 ? -1 : sccOf[id];
+    }
+
+    /**
+     * The returned arrays are shared, callers must not modify them.
+     */
+    public int[] members(int scc) {
+        return sccMembers[scc];
+    }
+
+    /**
+     * Callee SCCs of the given SCC, without the SCC itself. The returned arrays are shared, callers must not
+     * modify them.
+     */
+    public int[] sccSuccessors(int scc) {
+        return sccSuccessors[scc];
+    }
+
+    /**
+     * An SCC is cyclic if it has more than one method or its single method calls itself.
+     */
+    public boolean isCyclic(int scc) {
+        return cyclic[scc];
+    }
+}
@@ -0,0 +1,290 @@
+package analysis;
+
+import soot.SootMethod;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+
+/**
+ * Differences between two call graphs, e.g. of two algorithms on the same program or of one algorithm on two
+ * releases of it. Methods are matched by signature, so the graphs may come from different scenes.
+ * <p>
+ * Both graphs are mapped to canonical ids, the ranks of their signatures among the signatures of both graphs, and
+ * the edges of each are packed as (source id << 32 | target id) into one primitive array and sorted. In that order
+ * callers come in signature order and the edges of a caller are consecutive, so a single merge pass over the two
+ * arrays finds the added and removed nodes and edges and the callers whose callees changed, and writes them out as
+ * it goes. Besides the graphs themselves, a diff holds every signature once, a few bits per method and eight bytes
+ * per edge, nothing per difference.
+ * <p>
+ * The report has one line per difference, ordered by the signature of the caller, "first" and "second" being the
+ * graphs in argument order:
+ * <pre>
+ * --- &lt;first algorithm&gt;
+ * +++ &lt;second algorithm&gt;
+ * - node &lt;signature&gt;                   only in the first graph
+ * + node &lt;signature&gt;                   only in the second graph
+ * - edge &lt;source&gt; -&gt; &lt;target&gt;         only in the first graph
+ * + edge &lt;source&gt; -&gt; &lt;target&gt;         only in the second graph
+ * ~ callees &lt;signature&gt; 12 -&gt; 9        out-degrees of a caller whose callees changed, after its edges
+ * # &lt;summary&gt;
+ * </pre>
+ */
+public final class CallGraphDiff {
+    private CallGraphDiff() {
+    }
+
+    /**
+     * Callback of a graph that visits its edges by node id, {@link CallGraph} and {@link FrozenCallGraph} alike.
+     */
+    private interface EdgeSource {
+        void forEachEdgeId(CallGraph.IdEdgeVisitor visitor);
+    }
+
+    /**
+     * @return the summary of the differences, without a report
+     */
+    public static Summary diff(CallGraph first, CallGraph second) {
+        try {
+            return diff(first, second, (Writer) null);
+        } catch (IOException e) {
+            throw new IllegalStateException("Nothing is written without a report", e);
+        }
+    }
+
+    /**
+     * Writes the report to the file, replacing it.
+     */
+    public static Summary diff(CallGraph first, CallGraph second, File report) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(report.toPath(), StandardCharsets.UTF_8)) {
+            return diff(first, second, writer);
+        }
+    }
+
+    /**
+     * @param report where the differences are written as they are found, or null for the summary only. It is
+     *               neither buffered nor closed here.
+     */
+    public static Summary diff(CallGraph first, CallGraph second, Writer report) throws IOException {
+        return diff(first.algorithm, first.getNodes(), first.edgeCount(), first::forEachEdgeId,
+                second.algorithm, second.getNodes(), second.edgeCount(), second::forEachEdgeId, report);
+    }
+
+    /**
+     * Like {@link #diff(CallGraph, CallGraph, Writer)}, for snapshots.
+     */
+    public static Summary diff(FrozenCallGraph first, FrozenCallGraph second, Writer report) throws IOException {
+        return diff(first.algorithm, first.getNodes(), first.edgeCount(), first::forEachEdgeId,
+                second.algorithm, second.getNodes(), second.edgeCount(), second::forEachEdgeId, report);
+    }
+
+    private static Summary diff(String firstAlgorithm, Collection<SootMethod> firstNodes, int firstEdgeCount, EdgeSource firstSource,
+                                String secondAlgorithm, Collection<SootMethod> secondNodes, int secondEdgeCount, EdgeSource secondSource,
+                                Writer report) throws IOException {
+        String[] firstSignatures = signatures(firstNodes);
+        String[] secondSignatures = signatures(secondNodes);
+        String[] canonical = union(firstSignatures, secondSignatures);
+
+        BitSet inFirst = new BitSet(canonical.length);
+        BitSet inSecond = new BitSet(canonical.length);
+        long[] firstEdges = edges(firstSignatures, firstEdgeCount, firstSource, canonical, inFirst);
+        long[] secondEdges = edges(secondSignatures, secondEdgeCount, secondSource, canonical, inSecond);
+
+        if (report != null) {
+            report.write("--- " + firstAlgorithm + "\n");
+            report.write("+++ " + secondAlgorithm + "\n");
+        }
+        int commonNodes = 0;
+        int commonEdges = 0;
+        int changedCallers = 0;
+        int i = 0;
+        int j = 0;
+        for (int method = 0; method < canonical.length; method++) {
+            if (inFirst.get(method) && inSecond.get(method)) commonNodes++;
+            else if (report != null) report.write((inFirst.get(method) ? "- node " : "+ node ") + canonical[method] + "\n");
+
+            int firstEnd = runEnd(firstEdges, i, method);
+            int secondEnd = runEnd(secondEdges, j, method);
+            int firstDegree = firstEnd - i;
+            int secondDegree = secondEnd - j;
+            boolean changed = false;
+            while (i < firstEnd || j < secondEnd) {
+                if (j == secondEnd || i < firstEnd && firstEdges[i] < secondEdges[j]) {
+                    changed = true;
+                    if (report != null) writeEdge(report, "- edge ", canonical, firstEdges[i]);
+                    i++;
+                } else if (i == firstEnd || secondEdges[j] < firstEdges[i]) {
+                    changed = true;
+                    if (report != null) writeEdge(report, "+ edge ", canonical, secondEdges[j]);
+                    j++;
+                } else {
+                    commonEdges++;
+                    i++;
+                    j++;
+                }
+            }
+            if (changed) {
+                changedCallers++;
+                if (report != null)
+                    report.write("~ callees " + canonical[method] + " " + firstDegree + " -> " + secondDegree + "\n");
+            }
+        }
+
+        Summary summary = new Summary(inFirst.cardinality(), inSecond.cardinality(), commonNodes,
+                firstEdges.length, secondEdges.length, commonEdges, changedCallers);
+        if (report != null) report.write("# " + summary + "\n");
+        return summary;
+    }
+
+    private static String[] signatures(Collection<SootMethod> nodes) {
+        String[] signatures = new String[nodes.size()];
+        int i = 0;
+        for (SootMethod node : nodes)
+            signatures[i++] = node.getSignature();
+        return signatures;
+    }
+
+    /**
+     * @return the distinct signatures of both arrays, sorted
+     */
+    private static String[] union(String[] first, String[] second) {
+        String[] all = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, all, first.length, second.length);
+        Arrays.parallelSort(all);
+        int size = 0;
+        for (String signature : all) {
+            if (size == 0 || !all[size - 1].equals(signature)) all[size++] = signature;
+        }
+        return Arrays.copyOf(all, size);
+    }
+
+    /**
+     * Maps the nodes, given in id order, to canonical ids, marks them in the node set and collects the edges in
+     * canonical order.
+     */
+    private static long[] edges(String[] signatures, int edgeCount, EdgeSource source, String[] canonical, BitSet nodeSet) {
+        int[] canonicalIds = new int[signatures.length];
+        for (int i = 0; i < signatures.length; i++) {
+            canonicalIds[i] = Arrays.binarySearch(canonical, signatures[i]);
+            nodeSet.set(canonicalIds[i]);
+        }
+
+        long[] edges = new long[edgeCount];
+        int[] size = {0};
+        source.forEachEdgeId((caller, callee) -> edges[size[0]++] = (long) canonicalIds[caller] << 32 | canonicalIds[callee]);
+        Arrays.parallelSort(edges, 0, size[0]);
+        // methods with the same signature, e.g. from phantom classes, share their id and may duplicate edges
+        int distinct = 0;
+        for (int e = 0; e < size[0]; e++) {
+            if (distinct == 0 || edges[distinct - 1] != edges[e]) edges[distinct++] = edges[e];
+        }
+        return distinct == edges.length ? edges : Arrays.copyOf(edges, distinct);
+    }
+
+    // end of the edges of the caller that start at from
+    private static int runEnd(long[] edges, int from, int caller) {
+        int end = from;
+        while (end < edges.length && (int) (edges[end] >>> 32) == caller) end++;
+        return end;
+    }
+
+    private static void writeEdge(Writer report, String prefix, String[] canonical, long edge) throws IOException {
+        report.write(prefix);
+        report.write(canonical[(int) (edge >>> 32)]);
+        report.write(" -> ");
+        report.write(canonical[(int) edge]);
+        report.write('\n');
+    }
+
+    /**
+     * Counts of a diff, "first" and "second" being the graphs in argument order. Nodes and edges are counted by
+     * signature, so methods of a graph that share a signature count once.
+     */
+    public static final class Summary {
+        private final int firstNodes;
+        private final int secondNodes;
+        private final int commonNodes;
+        private final int firstEdges;
+        private final int secondEdges;
+        private final int commonEdges;
+        private final int changedCallers;
+
+        Summary(int firstNodes, int secondNodes, int commonNodes, int firstEdges, int secondEdges, int commonEdges, int changedCallers) {
+            this.firstNodes = firstNodes;
+            this.secondNodes = secondNodes;
+            this.commonNodes = commonNodes;
+            this.firstEdges = firstEdges;
+            this.secondEdges = secondEdges;
+            this.commonEdges = commonEdges;
+            this.changedCallers = changedCallers;
+        }
+
+        public int getFirstNodes() {
+            return firstNodes;
+        }
+
+        public int getSecondNodes() {
+            return secondNodes;
+        }
+
+        public int getCommonNodes() {
+            return commonNodes;
+        }
+
+        public int getRemovedNodes() {
+            return firstNodes - commonNodes;
+        }
+
+        public int getAddedNodes() {
+            return secondNodes - commonNodes;
+        }
+
+        public int getFirstEdges() {
+            return firstEdges;
+        }
+
+        public int getSecondEdges() {
+            return secondEdges;
+        }
+
+        public int getCommonEdges() {
+            return commonEdges;
+        }
+
+        public int getRemovedEdges() {
+            return firstEdges - commonEdges;
+        }
+
+        public int getAddedEdges() {
+            return secondEdges - commonEdges;
+        }
+
+        /**
+         * @return the number of methods whose callees differ between the graphs, methods in one graph only included
+         * if they have callees there
+         */
+        public int getChangedCallers() {
+            return changedCallers;
+        }
+
+        /**
+         * @return true if both graphs have the same nodes and edges
+         */
+        public boolean isEmpty() {
+            return getRemovedNodes() == 0 && getAddedNodes() == 0 && getRemovedEdges() == 0 && getAddedEdges() == 0;
+        }
+
+        @Override
+        public String toString() {
+            return "nodes " + firstNodes + " -> " + secondNodes + " (-" + getRemovedNodes() + " +" + getAddedNodes() + "), "
+                    + "edges " + firstEdges + " -> " + secondEdges + " (-" + getRemovedEdges() + " +" + getAddedEdges() + "), "
+                    + changedCallers + " callers changed";
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package analysis;
+
+import soot.SootMethod;
+import soot.jimple.InterfaceInvokeExpr;
+import soot.jimple.InvokeExpr;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * The steps CHA takes for the call sites of one method: an edge to a target, or descending into it. Algorithms
+ * that split CHA over threads or processes record the steps of every method where its body is, and replay them
+ * in one place to get exactly the call graph of {@link analysis.exercise1.CHAAlgorithm}.
+ */
+public final class CallSteps {
+    /**
+     * Marks methods without body, CHA does not descend into them.
+     */
+    public static final CallSteps NO_BODY = new CallSteps();
+
+    private SootMethod[] targets = new SootMethod[4];
+    private int[] units = new int[4];
+    private boolean[] descend = new boolean[4];
+    private int size;
+
+    /**
+     * The decisions of CHAAlgorithm.flowThroughMethod for the call sites of the summary, recorded instead of
+     * applied.
+     */
+    public static CallSteps of(MethodSummary summary, HierarchyIndex hierarchy) {
+        CallSteps result = new CallSteps();
+        for (int i = 0; i < summary.invokeCount(); i++) {
+            int unitIndex = summary.invokeUnit(i);
+            InvokeExpr invokeExpr = summary.invokeExpr(i);
+            SootMethod target = MethodResolution.targetOf(invokeExpr);
+            result.add(target, unitIndex, false);
+            if (invokeExpr instanceof InterfaceInvokeExpr) {
+                for (SootMethod dispatched : MethodResolution.resolveAbstractDispatch(hierarchy, target.getDeclaringClass(), target))
+                    result.add(dispatched, unitIndex, false);
+            } else {
+                result.add(target, unitIndex, true);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The decisions of CHAAlgorithm.flowThroughLibrary for a library method with a summary: an edge to every
+     * interface call of the summary and its dispatch targets, at {@link CallGraph#summaryCallSite(int) summary call
+     * sites}. CHA does not descend from a summary.
+     */
+    public static CallSteps ofLibrary(LibrarySummaries.Summary summary, HierarchyIndex hierarchy) {
+        CallSteps result = new CallSteps();
+        List<SootMethod> interfaceCalls = summary.getInterfaceCalls();
+        for (int i = 0; i < interfaceCalls.size(); i++) {
+            SootMethod method = interfaceCalls.get(i);
+            int callSite = CallGraph.summaryCallSite(i);
+            result.add(method, callSite, false);
+            for (SootMethod dispatched : MethodResolution.resolveAbstractDispatch(hierarchy, method.getDeclaringClass(), method))
+                result.add(dispatched, callSite, false);
+        }
+        return result;
+    }
+
+    public void add(SootMethod target, int unitIndex, boolean descendInto) {
+        if (this == NO_BODY)
+            throw new UnsupportedOperationException("NO_BODY has no steps");
+        if (size == targets.length) {
+            targets = Arrays.copyOf(targets, size * 2);
+            units = Arrays.copyOf(units, size * 2);
+            descend = Arrays.copyOf(descend, size * 2);
+        }
+        targets[size] = target;
+        units[size] = unitIndex;
+        descend[size++] = descendInto;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public SootMethod target(int i) {
+        return targets[i];
+    }
+
+    public int unitIndex(int i) {
+        return units[i];
+    }
+
+    /**
+     * @return true if CHA descends into the target at step i, false if the step adds an edge
+     */
+    public boolean descends(int i) {
+        return descend[i];
+    }
+
+    /**
+     * Applies the recorded steps depth-first from the entry points, in the order the recursion of CHAAlgorithm
+     * would. Like CHA, every method is replayed once, with an explicit stack instead of recursion. Work is charged
+     * to the algorithm, one unit per step.
+     *
+     * @param stepsOf the steps of every method CHA reaches, {@link #NO_BODY} for methods without body
+     */
+    public static void replay(CallGraphAlgorithm algorithm, List<SootMethod> entryPoints,
+                              Function<SootMethod, CallSteps> stepsOf, CallGraph callGraph) {
+        Set<SootMethod> replayed = new HashSet<>();
+        List<SootMethod> methodStack = new ArrayList<>();
+        List<Integer> positionStack = new ArrayList<>();
+        for (SootMethod entryPoint : entryPoints) {
+            if (stepsOf.apply(entryPoint) == NO_BODY || !replayed.add(entryPoint)) continue;
+            addNode(entryPoint, callGraph);
+            methodStack.add(entryPoint);
+            positionStack.add(0);
+            while (!methodStack.isEmpty()) {
+                int top = methodStack.size() - 1;
+                SootMethod method = methodStack.get(top);
+                CallSteps steps = stepsOf.apply(method);
+                int position = positionStack.get(top);
+                if (position == steps.size) {
+                    methodStack.remove(top);
+                    positionStack.remove(top);
+                    algorithm.markCompleted(method);
+                    continue;
+                }
+                positionStack.set(top, position + 1);
+                algorithm.chargeWork(1);
+
+                SootMethod target = steps.targets[position];
+                if (!steps.descend[position]) {
+                    addNode(target, callGraph);
+                    addEdge(method, target, steps.units[position], callGraph);
+                } else if (stepsOf.apply(target) != NO_BODY && replayed.add(target)) {
+                    methodStack.add(target);
+                    positionStack.add(0);
+                }
+            }
+        }
+    }
+
+    private static void addNode(SootMethod method, CallGraph callGraph) {
+        if (!callGraph.hasNode(method)) callGraph.addNode(method);
+    }
+
+    private static void addEdge(SootMethod source, SootMethod target, int unitIndex, CallGraph callGraph) {
+        if (callGraph.recordsCallSites()) {
+            if (!callGraph.hasEdge(source, target, unitIndex)) callGraph.addEdge(source, target, unitIndex);
+        } else {
+            callGraph.addEdgeIfAbsent(source, target);
+        }
+    }
+}
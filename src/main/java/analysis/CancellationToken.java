@@ -0,0 +1,25 @@
+package analysis;
+
+/**
+ * Lets another thread stop a running call graph construction, see
+ * {@link CallGraphAlgorithm#setCancellationToken(CancellationToken)}. Algorithms check the token in their inner
+ * loops, which costs one volatile read. A token cannot be reset, use a new one for the next run.
+ */
+public class CancellationToken {
+    private volatile boolean cancelled;
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * @throws AnalysisCancelledException if the token was cancelled
+     */
+    public void throwIfCancelled() {
+        if (cancelled) throw new AnalysisCancelledException();
+    }
+}
@@ -0,0 +1,98 @@
+package analysis;
+
+import soot.Local;
+import soot.Scene;
+import soot.SootClass;
+import soot.SootField;
+import soot.SootMethod;
+import soot.Type;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decodes a snapshot of {@link CheckpointOutput} against a scene. Methods the scene does not know are added as
+ * phantoms, like the analysis did when it resolved them. Bodies of methods whose locals are read are built if
+ * they do not exist yet.
+ */
+public final class CheckpointInput {
+    private final DataInputStream in;
+    private final Scene scene;
+    private final List<String> strings = new ArrayList<>();
+    private final Map<SootMethod, List<Local>> locals = new HashMap<>();
+
+    CheckpointInput(byte[] snapshot, Scene scene) {
+        this.in = new DataInputStream(new ByteArrayInputStream(snapshot));
+        this.scene = scene;
+    }
+
+    public Scene getScene() {
+        return scene;
+    }
+
+    public int readInt() throws IOException {
+        return (int) readLong();
+    }
+
+    public long readLong() throws IOException {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+    }
+
+    public boolean readBoolean() throws IOException {
+        return in.readBoolean();
+    }
+
+    public String readString() throws IOException {
+        int index = readInt();
+        if (index != 0) return strings.get(index - 1);
+        String value = in.readUTF();
+        strings.add(value);
+        return value;
+    }
+
+    public SootMethod readMethod() throws IOException {
+        String signature = readString();
+        return MethodResolution.methodOf(scene, signature, readBoolean());
+    }
+
+    public SootClass readClass() throws IOException {
+        return scene.getSootClassUnsafe(readString(), true);
+    }
+
+    public SootField readField() throws IOException {
+        String signature = readString();
+        SootField field = scene.grabField(signature);
+        if (field == null)
+            throw new IOException("Snapshot refers to unknown field " + signature);
+        return field;
+    }
+
+    public Type readType() throws IOException {
+        return scene.getTypeUnsafe(readString(), true);
+    }
+
+    /**
+     * Reads a local of the given method, the counterpart of {@link CheckpointOutput#writeLocal(SootMethod, Local)}.
+     *
+     * @throws IOException if the body of the method does not match the one the snapshot was taken from
+     */
+    public Local readLocal(SootMethod method) throws IOException {
+        int index = readInt();
+        String name = readString();
+        List<Local> bodyLocals = locals.computeIfAbsent(method, m -> m.isConcrete() ? new ArrayList<>(m.retrieveActiveBody().getLocals()) : null);
+        Local local = bodyLocals != null && index < bodyLocals.size() ? bodyLocals.get(index) : null;
+        if (local == null || !local.getName().equals(name))
+            throw new IOException("Snapshot does not match the body of " + method + ", local " + name + " at " + index);
+        return local;
+    }
+}
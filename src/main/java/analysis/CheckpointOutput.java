@@ -0,0 +1,97 @@
+package analysis;
+
+import soot.Local;
+import soot.SootClass;
+import soot.SootField;
+import soot.SootMethod;
+import soot.Type;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Encodes a checkpoint into a compact binary snapshot. Numbers are variable length, and every string, e.g. a
+ * method signature, is written once and referred to by its index afterwards. Soot objects are written by name,
+ * so a snapshot can be read into a freshly loaded scene, see {@link CheckpointInput}.
+ */
+public final class CheckpointOutput {
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(1 << 16);
+    private final DataOutputStream out = new DataOutputStream(bytes);
+    private final Map<String, Integer> strings = new HashMap<>();
+    // locals by the method whose body holds them
+    private final Map<SootMethod, Map<Local, Integer>> localIndices = new HashMap<>();
+
+    CheckpointOutput() {
+    }
+
+    public void writeInt(int value) throws IOException {
+        writeLong(value & 0xFFFFFFFFL);
+    }
+
+    public void writeLong(long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    public void writeBoolean(boolean value) throws IOException {
+        out.writeBoolean(value);
+    }
+
+    public void writeString(String value) throws IOException {
+        Integer index = strings.get(value);
+        if (index != null) {
+            writeInt(index + 1);
+            return;
+        }
+        writeInt(0);
+        out.writeUTF(value);
+        strings.put(value, strings.size());
+    }
+
+    public void writeMethod(SootMethod method) throws IOException {
+        writeString(method.getSignature());
+        writeBoolean(method.isStatic());
+    }
+
+    public void writeClass(SootClass sootClass) throws IOException {
+        writeString(sootClass.getName());
+    }
+
+    public void writeField(SootField field) throws IOException {
+        writeString(field.getSignature());
+    }
+
+    public void writeType(Type type) throws IOException {
+        writeString(type.toString());
+    }
+
+    /**
+     * Writes a local by its position in the locals of the body of the method. The method itself is not written,
+     * the reader has to know it, e.g. because it was written right before.
+     */
+    public void writeLocal(SootMethod method, Local local) throws IOException {
+        Map<Local, Integer> indices = localIndices.computeIfAbsent(method, m -> {
+            Map<Local, Integer> result = new IdentityHashMap<>();
+            for (Local l : m.getActiveBody().getLocals())
+                result.put(l, result.size());
+            return result;
+        });
+        Integer index = indices.get(local);
+        if (index == null)
+            throw new IllegalArgumentException("Local " + local + " is not in the body of " + method);
+        writeInt(index);
+        writeString(local.getName());
+    }
+
+    byte[] toByteArray() throws IOException {
+        out.flush();
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,143 @@
+package analysis;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * The file that holds the latest checkpoint of an analysis, see
+ * {@link CallGraphAlgorithm#setCheckpoints(CheckpointStore, long, java.util.concurrent.TimeUnit)}.
+ * <p>
+ * Snapshots are written by a background thread, the analysis only pays for encoding them. If snapshots come in
+ * faster than the disk takes them, only the newest waiting one is written. A snapshot is written to a temporary
+ * file first and moved over the old one, so a crash while writing leaves the previous snapshot intact.
+ */
+public class CheckpointStore implements AutoCloseable {
+    private final File file;
+    private final File tempFile;
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "checkpoint-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // guarded by this
+    private byte[] waiting;
+    private Future<?> inFlight;
+    private IOException failure;
+    private int snapshotsWritten;
+    private long lastSnapshotBytes;
+
+    public CheckpointStore(File file) {
+        this.file = file;
+        this.tempFile = new File(file.getPath() + ".tmp");
+    }
+
+    /**
+     * Schedules the snapshot for writing and returns immediately. A snapshot that is still waiting is replaced.
+     *
+     * @throws IllegalStateException if an earlier snapshot could not be written
+     */
+    public synchronized void write(byte[] snapshot) {
+        throwFailure();
+        boolean scheduled = waiting != null;
+        waiting = snapshot;
+        if (!scheduled) inFlight = writer.submit(this::writeWaiting);
+    }
+
+    private void writeWaiting() {
+        byte[] snapshot;
+        synchronized (this) {
+            snapshot = waiting;
+            waiting = null;
+        }
+        try {
+            try (FileOutputStream out = new FileOutputStream(tempFile)) {
+                out.write(snapshot);
+                out.getFD().sync();
+            }
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            synchronized (this) {
+                snapshotsWritten++;
+                lastSnapshotBytes = snapshot.length;
+            }
+        } catch (IOException e) {
+            synchronized (this) {
+                if (failure == null) failure = e;
+            }
+        }
+    }
+
+    /**
+     * Waits until every scheduled snapshot is on disk.
+     *
+     * @throws IllegalStateException if a snapshot could not be written
+     */
+    public void awaitWrites() {
+        Future<?> pending;
+        synchronized (this) {
+            pending = inFlight;
+        }
+        if (pending != null) {
+            try {
+                pending.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while waiting for the checkpoint writer", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Checkpoint writer failed", e.getCause());
+            }
+        }
+        synchronized (this) {
+            throwFailure();
+        }
+    }
+
+    /**
+     * @return the latest snapshot, or null if there is none
+     */
+    public byte[] read() throws IOException {
+        awaitWrites();
+        return file.exists() ? Files.readAllBytes(file.toPath()) : null;
+    }
+
+    /**
+     * Removes the snapshot, once the analysis finished it is of no use anymore.
+     */
+    public void delete() throws IOException {
+        awaitWrites();
+        Files.deleteIfExists(file.toPath());
+    }
+
+    private void throwFailure() {
+        if (failure != null)
+            throw new IllegalStateException("Could not write checkpoint " + file, failure);
+    }
+
+    public synchronized int getSnapshotsWritten() {
+        return snapshotsWritten;
+    }
+
+    public synchronized long getLastSnapshotBytes() {
+        return lastSnapshotBytes;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    @Override
+    public void close() {
+        try {
+            awaitWrites();
+        } finally {
+            writer.shutdown();
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package analysis;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.commons.JSRInlinerAdapter;
+import org.objectweb.asm.tree.InsnList;
+import soot.Body;
+import soot.FoundFile;
+import soot.MethodSource;
+import soot.SootMethod;
+import soot.SourceLocator;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.util.List;
+
+/**
+ * Builds the body of a method again from the class file of its declaring class, for bodies {@link BodyLoader}
+ * released. Soot forgets the source of a method once it has built its body, and keeping the sources alive would
+ * cost about as much as a third of the bodies. So a released method gets this source instead, which holds no state
+ * per method: it reads the code of the one method from the class file and hands it to the source Soot would have
+ * made for it, which runs jb as usual.
+ * <p>
+ * Resolving the class with Soot's own class source would be simpler, but every {@link SootMethod} Soot creates stays
+ * in the scene's method numberer, so each rebuild would leak the whole class.
+ * <p>
+ * The source Soot makes is {@code soot.asm.AsmMethodSource}, whose constructor is package-private. It is looked up
+ * reflectively with the signature of Soot 4.2.1, the version in the pom. A Soot without that constructor does not
+ * break loading this class, {@link #isAvailable()} is false then and {@link BodyLoader} keeps every body.
+ */
+final class ClassFileMethodSource implements MethodSource {
+    static final ClassFileMethodSource INSTANCE = new ClassFileMethodSource();
+
+    // package-private in Soot, MethodBuilder is the only one making them. Null if this Soot has no such constructor
+    private static final Constructor<?> ASM_METHOD_SOURCE = asmMethodSource();
+
+    private ClassFileMethodSource() {
+    }
+
+    private static Constructor<?> asmMethodSource() {
+        try {
+            // AsmMethodSource(int maxLocals, InsnList insns, List localVars, List tryCatchBlocks, String module)
+            Constructor<?> constructor = Class.forName("soot.asm.AsmMethodSource")
+                    .getDeclaredConstructor(int.class, InsnList.class, List.class, List.class, String.class);
+            constructor.setAccessible(true);
+            return constructor;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // another Soot version, or a security manager or module system that does not let us in
+            return null;
+        }
+    }
+
+    /**
+     * @return false if the Soot on the class path cannot be made to rebuild bodies, bodies must not be released then
+     */
+    static boolean isAvailable() {
+        return ASM_METHOD_SOURCE != null;
+    }
+
+    /**
+     * The class file the released body came from is not on the class path anymore, so the method has no body now.
+     */
+    static final class MissingClassFileException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        MissingClassFileException(String message) {
+            super(message);
+        }
+    }
+
+    @Override
+    public Body getBody(SootMethod method, String phaseName) {
+        if (ASM_METHOD_SOURCE == null)
+            throw new IllegalStateException("This Soot version cannot rebuild " + method + " from its class file");
+        String className = method.getDeclaringClass().getName();
+        FoundFile file = SourceLocator.v().lookupInClassPath(className.replace('.', '/') + ".class");
+        if (file == null) throw new MissingClassFileException("No class file for " + className + " to rebuild " + method);
+        JSRInlinerAdapter code;
+        try (InputStream in = file.inputStream()) {
+            code = read(new ClassReader(in), method);
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot read the class file of " + className, e);
+        } finally {
+            file.close();
+        }
+        if (code == null || code.instructions.size() == 0)
+            throw new RuntimeException("The class file of " + className + " has no code for " + method);
+
+        try {
+            MethodSource source = (MethodSource) ASM_METHOD_SOURCE.newInstance(code.maxLocals, code.instructions,
+                    code.localVariables, code.tryCatchBlocks, method.getDeclaringClass().moduleName);
+            return source.getBody(method, phaseName);
+        } catch (InstantiationException | IllegalAccessException | InvocationTargetException e) {
+            throw new RuntimeException("Cannot rebuild " + method, e);
+        }
+    }
+
+    // the code of the method with subroutines inlined, like Soot's MethodBuilder has it, or null
+    private static JSRInlinerAdapter read(ClassReader reader, SootMethod method) {
+        // <C: name(desc)>
+        String signature = method.getBytecodeSignature();
+        String nameAndDescriptor = signature.substring(signature.indexOf(": ") + 2, signature.length() - 1);
+        JSRInlinerAdapter[] code = new JSRInlinerAdapter[1];
+        reader.accept(new ClassVisitor(Opcodes.ASM8) {
+            @Override
+            public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+                if (!nameAndDescriptor.equals(name + descriptor)) return null;
+                code[0] = new JSRInlinerAdapter(null, access, name, descriptor, signature, exceptions);
+                return code[0];
+            }
+        }, ClassReader.SKIP_FRAMES);
+        return code[0];
+    }
+}
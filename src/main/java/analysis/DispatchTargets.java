@@ -0,0 +1,50 @@
+package analysis;
+
+import soot.SootClass;
+import soot.SootMethod;
+import soot.util.NumberedString;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The implementations a call on a receiver of the declared type may reach, for one sub-signature. Instances are
+ * immutable and interned by {@link HierarchyIndex#dispatchTargets(SootClass, SootMethod)}, so every call site of
+ * e.g. {@code Collection.iterator()} shares one of them. A {@link CallGraph} keeps such call sites as a reference
+ * to the set instead of an edge per target, see {@link CallGraph#addCallSite(SootMethod, int, DispatchTargets)}.
+ */
+public final class DispatchTargets {
+    private final SootClass declaredType;
+    private final NumberedString subSignature;
+    private final List<SootMethod> targets;
+
+    public DispatchTargets(SootClass declaredType, NumberedString subSignature, List<SootMethod> targets) {
+        this.declaredType = declaredType;
+        this.subSignature = subSignature;
+        this.targets = Collections.unmodifiableList(targets);
+    }
+
+    public SootClass getDeclaredType() {
+        return declaredType;
+    }
+
+    public NumberedString getSubSignature() {
+        return subSignature;
+    }
+
+    /**
+     * @return the distinct targets, in the order of {@link HierarchyIndex#getConcreteSubtypes(SootClass)}
+     */
+    public List<SootMethod> getTargets() {
+        return targets;
+    }
+
+    public int size() {
+        return targets.size();
+    }
+
+    @Override
+    public String toString() {
+        return declaredType.getName() + ": " + subSignature + " -> " + targets.size() + " targets";
+    }
+}
@@ -0,0 +1,15 @@
+package analysis;
+
+import soot.SootMethod;
+
+/**
+ * Decides which methods of the application classes a call graph starts from, see
+ * {@link CallGraphAlgorithm#setEntryPointProvider(EntryPointProvider)}. {@link EntryPoints} has the built-in ones.
+ * <p>
+ * Providers are asked about every method of every application class once per scene, from several threads at once,
+ * so they must not change the scene. The answers are cached per provider, by {@link Object#equals(Object)}: a
+ * provider without value equality should be reused rather than created per call graph.
+ */
+public interface EntryPointProvider {
+    boolean isEntryPoint(SootMethod method);
+}
@@ -0,0 +1,165 @@
+package analysis;
+
+import soot.Modifier;
+import soot.Scene;
+import soot.SootClass;
+import soot.SootMethod;
+import soot.Type;
+import soot.VoidType;
+import soot.tagkit.AnnotationTag;
+import soot.tagkit.Tag;
+import soot.tagkit.VisibilityAnnotationTag;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Entry points of a {@link Scene}, discovered once per {@link EntryPointProvider} and shared by all algorithms,
+ * together with the built-in providers.
+ * <p>
+ * Discovery asks the provider about every method of every application class, with the classes split among the
+ * threads of the common fork-join pool. The result lists the entry points in the order of the application classes
+ * and their methods, whatever the number of threads. It describes the classes the scene had when the provider was
+ * first asked for; code that loads further application classes has to call {@link #invalidate(Scene)}.
+ */
+public final class EntryPoints {
+    private static final Map<Scene, Map<EntryPointProvider, List<SootMethod>>> perScene = new WeakHashMap<>();
+
+    // JUnit 4 and 5 methods that run when the test class runs
+    private static final Set<String> JUNIT_ANNOTATIONS = new HashSet<>(Arrays.asList(
+            "Lorg/junit/Test;", "Lorg/junit/Before;", "Lorg/junit/After;", "Lorg/junit/BeforeClass;", "Lorg/junit/AfterClass;",
+            "Lorg/junit/jupiter/api/Test;", "Lorg/junit/jupiter/api/BeforeEach;", "Lorg/junit/jupiter/api/AfterEach;",
+            "Lorg/junit/jupiter/api/BeforeAll;", "Lorg/junit/jupiter/api/AfterAll;", "Lorg/junit/jupiter/api/RepeatedTest;",
+            "Lorg/junit/jupiter/api/TestFactory;", "Lorg/junit/jupiter/params/ParameterizedTest;"));
+
+    private static final EntryPointProvider MAIN_METHODS = EntryPoints::isMainMethod;
+    private static final EntryPointProvider PUBLIC_API = EntryPoints::isPublicApi;
+    private static final EntryPointProvider JUNIT_TESTS = method -> isJUnit4Or5(method) || isJUnit3(method);
+
+    private EntryPoints() {
+    }
+
+    /**
+     * @return the methods of the application classes the provider accepts, computed on the first call for this
+     * scene and provider
+     */
+    public static List<SootMethod> of(Scene scene, EntryPointProvider provider) {
+        Map<EntryPointProvider, List<SootMethod>> byProvider;
+        synchronized (EntryPoints.class) {
+            byProvider = perScene.computeIfAbsent(scene, s -> new ConcurrentHashMap<>());
+        }
+        return byProvider.computeIfAbsent(provider, p -> discover(scene, p));
+    }
+
+    public static synchronized void invalidate(Scene scene) {
+        perScene.remove(scene);
+    }
+
+    private static List<SootMethod> discover(Scene scene, EntryPointProvider provider) {
+        // the chain of application classes does not split, a list does
+        List<SootClass> classes = new ArrayList<>(scene.getApplicationClasses());
+        return Collections.unmodifiableList(classes.parallelStream()
+                .flatMap(c -> c.getMethods().stream().filter(provider::isEntryPoint))
+                .collect(Collectors.toList()));
+    }
+
+    /**
+     * {@code public static void main(String[])}, the default of every algorithm.
+     */
+    public static EntryPointProvider mainMethods() {
+        return MAIN_METHODS;
+    }
+
+    /**
+     * Everything a client of a library can call: public methods and constructors of public classes, and the
+     * protected ones of public classes that can be extended. Bridges and other synthetic methods are left out, the
+     * methods they forward to are entry points themselves.
+     */
+    public static EntryPointProvider publicApi() {
+        return PUBLIC_API;
+    }
+
+    /**
+     * Methods a test runner calls: those annotated as tests or test fixtures for JUnit 4 or 5, and the public
+     * {@code test*} methods, {@code setUp} and {@code tearDown} of JUnit 3 test cases.
+     */
+    public static EntryPointProvider junitTests() {
+        return JUNIT_TESTS;
+    }
+
+    /**
+     * The methods with the given signatures, e.g. {@code <a.B: void run()>}. Methods outside the application
+     * classes are not entry points, not even when they are listed. Providers of the same signatures are equal, so
+     * they share one discovery per scene however often they are created.
+     */
+    public static EntryPointProvider methods(Collection<String> signatures) {
+        return new ListedMethods(signatures);
+    }
+
+    private static final class ListedMethods implements EntryPointProvider {
+        private final Set<String> signatures;
+
+        ListedMethods(Collection<String> signatures) {
+            this.signatures = new HashSet<>(signatures);
+        }
+
+        @Override
+        public boolean isEntryPoint(SootMethod method) {
+            return signatures.contains(method.getSignature());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof ListedMethods && signatures.equals(((ListedMethods) o).signatures);
+        }
+
+        @Override
+        public int hashCode() {
+            return signatures.hashCode();
+        }
+    }
+
+    private static boolean isMainMethod(SootMethod method) {
+        if (!method.isPublic() || !method.isStatic() || !method.getName().equals("main")) return false;
+        if (!(method.getReturnType() instanceof VoidType) || method.getParameterCount() != 1) return false;
+        Type parameter = method.getParameterType(0);
+        return parameter.toString().equals("java.lang.String[]");
+    }
+
+    private static boolean isPublicApi(SootMethod method) {
+        SootClass declaringClass = method.getDeclaringClass();
+        if (!declaringClass.isPublic() || (method.getModifiers() & Modifier.SYNTHETIC) != 0) return false;
+        if (method.isStaticInitializer()) return false;
+        return method.isPublic() || method.isProtected() && !declaringClass.isFinal();
+    }
+
+    private static boolean isJUnit4Or5(SootMethod method) {
+        Tag tag = method.getTag("VisibilityAnnotationTag");
+        if (tag == null || ((VisibilityAnnotationTag) tag).getAnnotations() == null) return false;
+        for (AnnotationTag annotation : ((VisibilityAnnotationTag) tag).getAnnotations()) {
+            if (JUNIT_ANNOTATIONS.contains(annotation.getType())) return true;
+        }
+        return false;
+    }
+
+    private static boolean isJUnit3(SootMethod method) {
+        if (method.isStatic() || method.getParameterCount() != 0) return false;
+        // the fixture methods are protected in TestCase
+        String name = method.getName();
+        boolean runs = name.startsWith("test") ? method.isPublic() : (name.equals("setUp") || name.equals("tearDown")) && !method.isPrivate();
+        if (!runs) return false;
+        for (SootClass c = method.getDeclaringClass(); c.hasSuperclass(); c = c.getSuperclass()) {
+            if (c.getSuperclass().getName().equals("junit.framework.TestCase")) return true;
+        }
+        return false;
+    }
+}
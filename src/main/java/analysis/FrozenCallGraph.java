@@ -0,0 +1,297 @@
+package analysis;
+
+import soot.SootMethod;
+
+import java.util.AbstractList;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Immutable snapshot of a {@link CallGraph} for read-heavy workloads, see {@link CallGraph#freeze()}.
+ * <p>
+ * Adjacency is stored in compressed sparse row form: the successors of node {@code i} are
+ * {@code successorIds[successorStart[i] .. successorStart[i + 1])}, sorted by node id, and likewise for the
+ * predecessors. So there is no spare hash capacity, {@link #hasEdge(SootMethod, SootMethod)} is a binary search and
+ * the neighbour collections are views on the arrays, nothing is copied. Node ids are the ones of the call graph,
+ * in the order the nodes were added.
+ * <p>
+ * All state is written in the constructor and held in final fields, so a snapshot can be handed to other threads
+ * without synchronization and read by any number of them at once, without locks. Call sites are not part of the
+ * snapshot.
+ */
+public final class FrozenCallGraph {
+    public final String algorithm;
+    private final SootMethod[] methods;
+    private final MethodIdMap ids;
+    private final int[] successorStart;
+    private final int[] successorIds;
+    private final int[] predecessorStart;
+    private final int[] predecessorIds;
+    private final AnalysisBudget.Limit exhaustedLimit;
+    private final BitSet degraded;
+
+    FrozenCallGraph(CallGraph cg) {
+        algorithm = cg.algorithm;
+        int n = cg.nodeCount();
+        methods = cg.getNodes().toArray(new SootMethod[n]);
+        ids = new MethodIdMap(n);
+        for (int i = 0; i < n; i++)
+            ids.put(methods[i], i);
+
+        // one pass to count the degrees, one to fill the rows
+        int[] outDegree = new int[n];
+        int[] inDegree = new int[n];
+        cg.forEachEdge((source, target) -> {
+            outDegree[ids.get(source)]++;
+            inDegree[ids.get(target)]++;
+        });
+        successorStart = offsets(outDegree);
+        predecessorStart = offsets(inDegree);
+        successorIds = new int[successorStart[n]];
+        predecessorIds = new int[predecessorStart[n]];
+        int[] successorFill = Arrays.copyOf(successorStart, n);
+        int[] predecessorFill = Arrays.copyOf(predecessorStart, n);
+        cg.forEachEdge((source, target) -> {
+            int sourceId = ids.get(source);
+            int targetId = ids.get(target);
+            successorIds[successorFill[sourceId]++] = targetId;
+            predecessorIds[predecessorFill[targetId]++] = sourceId;
+        });
+        for (int i = 0; i < n; i++) {
+            Arrays.sort(successorIds, successorStart[i], successorStart[i + 1]);
+            Arrays.sort(predecessorIds, predecessorStart[i], predecessorStart[i + 1]);
+        }
+
+        exhaustedLimit = cg.getExhaustedLimit();
+        degraded = new BitSet(n);
+        for (SootMethod method : cg.getDegradedMethods())
+            degraded.set(ids.get(method));
+    }
+
+    private static int[] offsets(int[] degrees) {
+        int[] start = new int[degrees.length + 1];
+        for (int i = 0; i < degrees.length; i++)
+            start[i + 1] = start[i] + degrees[i];
+        return start;
+    }
+
+    public int nodeCount() {
+        return methods.length;
+    }
+
+    public int edgeCount() {
+        return successorIds.length;
+    }
+
+    public boolean hasNode(SootMethod method) {
+        return ids.containsKey(method);
+    }
+
+    /**
+     * @return the id of the method, or -1 if it is no node
+     */
+    public int idOf(SootMethod method) {
+        return ids.get(method);
+    }
+
+    public SootMethod methodOf(int id) {
+        return methods[id];
+    }
+
+    public boolean hasEdge(SootMethod source, SootMethod target) {
+        int sourceId = ids.get(source);
+        int targetId = ids.get(target);
+        return sourceId != -1 && targetId != -1
+                && Arrays.binarySearch(successorIds, successorStart[sourceId], successorStart[sourceId + 1], targetId) >= 0;
+    }
+
+    /**
+     * @return the nodes in id order
+     */
+    public List<SootMethod> getNodes() {
+        return Collections.unmodifiableList(Arrays.asList(methods));
+    }
+
+    /**
+     * @return the callees of the method in id order, a view on the snapshot
+     */
+    public List<SootMethod> successors(SootMethod origin) {
+        int id = ids.get(origin);
+        return id == -1 ? Collections.<SootMethod>emptyList() : new Row(successorIds, successorStart[id], successorStart[id + 1]);
+    }
+
+    /**
+     * @return the callers of the method in id order, a view on the snapshot
+     */
+    public List<SootMethod> predecessors(SootMethod target) {
+        int id = ids.get(target);
+        return id == -1 ? Collections.<SootMethod>emptyList() : new Row(predecessorIds, predecessorStart[id], predecessorStart[id + 1]);
+    }
+
+    /**
+     * Like {@link CallGraph#edgesOutOf(SootMethod)}, but a view whose contains is a binary search.
+     */
+    public Set<SootMethod> edgesOutOf(SootMethod origin) {
+        int id = ids.get(origin);
+        return id == -1 ? Collections.<SootMethod>emptySet() : new RowSet(successorIds, successorStart[id], successorStart[id + 1]);
+    }
+
+    /**
+     * Like {@link CallGraph#edgesInto(SootMethod)}, but a view whose contains is a binary search.
+     */
+    public Set<SootMethod> edgesInto(SootMethod target) {
+        int id = ids.get(target);
+        return id == -1 ? Collections.<SootMethod>emptySet() : new RowSet(predecessorIds, predecessorStart[id], predecessorStart[id + 1]);
+    }
+
+    public int outDegree(SootMethod origin) {
+        int id = ids.get(origin);
+        return id == -1 ? 0 : successorStart[id + 1] - successorStart[id];
+    }
+
+    public int inDegree(SootMethod target) {
+        int id = ids.get(target);
+        return id == -1 ? 0 : predecessorStart[id + 1] - predecessorStart[id];
+    }
+
+    public void forEachSuccessor(SootMethod origin, Consumer<SootMethod> consumer) {
+        int id = ids.get(origin);
+        if (id == -1) return;
+        for (int i = successorStart[id]; i < successorStart[id + 1]; i++)
+            consumer.accept(methods[successorIds[i]]);
+    }
+
+    public void forEachPredecessor(SootMethod target, Consumer<SootMethod> consumer) {
+        int id = ids.get(target);
+        if (id == -1) return;
+        for (int i = predecessorStart[id]; i < predecessorStart[id + 1]; i++)
+            consumer.accept(methods[predecessorIds[i]]);
+    }
+
+    /**
+     * Visits the edges ordered by source id, then target id.
+     */
+    public void forEachEdge(CallGraph.EdgeVisitor visitor) {
+        for (int source = 0; source < methods.length; source++) {
+            for (int i = successorStart[source]; i < successorStart[source + 1]; i++)
+                visitor.visit(methods[source], methods[successorIds[i]]);
+        }
+    }
+
+    void forEachEdgeId(CallGraph.IdEdgeVisitor visitor) {
+        for (int source = 0; source < methods.length; source++) {
+            for (int i = successorStart[source]; i < successorStart[source + 1]; i++)
+                visitor.visit(source, successorIds[i]);
+        }
+    }
+
+    public AnalysisBudget.Limit getExhaustedLimit() {
+        return exhaustedLimit;
+    }
+
+    public boolean isDegraded() {
+        return exhaustedLimit != null;
+    }
+
+    public boolean isDegraded(SootMethod method) {
+        int id = ids.get(method);
+        return id != -1 && degraded.get(id);
+    }
+
+    /**
+     * A row of one of the adjacency arrays, as methods.
+     */
+    private final class Row extends AbstractList<SootMethod> implements RandomAccess {
+        private final int[] row;
+        private final int from;
+        private final int to;
+
+        Row(int[] row, int from, int to) {
+            this.row = row;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public SootMethod get(int index) {
+            if (index < 0 || index >= to - from) throw new IndexOutOfBoundsException("Index " + index + ", size " + (to - from));
+            return methods[row[from + index]];
+        }
+
+        @Override
+        public int size() {
+            return to - from;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return indexIn(row, from, to, o) >= 0;
+        }
+
+        @Override
+        public int indexOf(Object o) {
+            int index = indexIn(row, from, to, o);
+            return index < 0 ? -1 : index - from;
+        }
+
+        @Override
+        public int lastIndexOf(Object o) {
+            return indexOf(o);
+        }
+    }
+
+    private final class RowSet extends AbstractSet<SootMethod> {
+        private final int[] row;
+        private final int from;
+        private final int to;
+
+        RowSet(int[] row, int from, int to) {
+            this.row = row;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public Iterator<SootMethod> iterator() {
+            return new Iterator<SootMethod>() {
+                private int next = from;
+
+                @Override
+                public boolean hasNext() {
+                    return next < to;
+                }
+
+                @Override
+                public SootMethod next() {
+                    if (next >= to) throw new NoSuchElementException();
+                    return methods[row[next++]];
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return to - from;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return indexIn(row, from, to, o) >= 0;
+        }
+    }
+
+    // rows are sorted and free of duplicates
+    private int indexIn(int[] row, int from, int to, Object o) {
+        if (!(o instanceof SootMethod)) return -1;
+        int id = ids.get((SootMethod) o);
+        return id == -1 ? -1 : Arrays.binarySearch(row, from, to, id);
+    }
+}
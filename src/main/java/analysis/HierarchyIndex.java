@@ -0,0 +1,259 @@
+package analysis;
+
+import soot.Scene;
+import soot.SootClass;
+import soot.SootMethod;
+import soot.util.NumberedString;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Class hierarchy of a {@link Scene}, computed once and shared by all algorithms.
+ * <p>
+ * Classes are numbered by a pre-order walk over the superclass tree, so the subclasses of a class form the
+ * contiguous range {@code [pre, end)} and a subclass check is two int comparisons. Every type also has a bitset
+ * of all interfaces it implements or extends, transitively, so interface checks are a single bit test. On top of
+ * that, each type knows its concrete subtypes, and dispatch results are cached per declared class and
+ * sub-signature.
+ * <p>
+ * The index describes the classes the scene had when it was built. Code that loads further classes has to call
+ * {@link #invalidate(Scene)}.
+ */
+public class HierarchyIndex {
+    private static final Map<Scene, HierarchyIndex> perScene = new WeakHashMap<>();
+
+    private final Map<SootClass, Integer> ids = new HashMap<>();
+    private final List<SootClass> classes = new ArrayList<>();
+
+    // superclass tree numbering, only meaningful for non-interface types
+    private final int[] pre;
+    private final int[] end;
+    private final SootClass[] byPre;
+
+    private final int[] interfaceIds;
+    private final BitSet[] superInterfaces;
+    private final List<SootClass>[] concreteImplementers;
+
+    private final Map<SootClass, Map<NumberedString, DispatchTargets>> dispatchCache = new ConcurrentHashMap<>();
+
+    public static synchronized HierarchyIndex forScene(Scene scene) {
+        return perScene.computeIfAbsent(scene, HierarchyIndex::new);
+    }
+
+    public static synchronized void invalidate(Scene scene) {
+        perScene.remove(scene);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public HierarchyIndex(Scene scene) {
+        for (SootClass sootClass : scene.getClasses()) {
+            ids.put(sootClass, classes.size());
+            classes.add(sootClass);
+        }
+        int n = classes.size();
+
+        pre = new int[n];
+        end = new int[n];
+        byPre = new SootClass[n];
+        int treeSize = numberClassTree();
+
+        interfaceIds = new int[n];
+        int interfaceCount = 0;
+        for (int i = 0; i < n; i++)
+            interfaceIds[i] = classes.get(i).isInterface() ? interfaceCount++ : -1;
+
+        superInterfaces = new BitSet[n];
+        for (int i = 0; i < n; i++)
+            computeSuperInterfaces(i);
+
+        concreteImplementers = new List[interfaceCount];
+        for (int i = 0; i < interfaceCount; i++)
+            concreteImplementers[i] = new ArrayList<>();
+        for (int p = 0; p < treeSize; p++) {
+            SootClass sootClass = byPre[p];
+            if (!isConcrete(sootClass)) continue;
+            BitSet implemented = superInterfaces[ids.get(sootClass)];
+            for (int i = implemented.nextSetBit(0); i >= 0; i = implemented.nextSetBit(i + 1))
+                concreteImplementers[i].add(sootClass);
+        }
+    }
+
+    /**
+     * @return the number of classes in the tree, the remaining slots of byPre belong to interfaces and stay empty
+     */
+    private int numberClassTree() {
+        int n = classes.size();
+        List<Integer>[] children = childrenLists(n);
+
+        int counter = 0;
+        int[] stack = new int[n];
+        int[] childPos = new int[n];
+        for (int root = 0; root < n; root++) {
+            SootClass rootClass = classes.get(root);
+            if (rootClass.isInterface() || hasKnownSuperclass(rootClass)) continue;
+
+            int sp = 0;
+            stack[sp] = root;
+            childPos[sp++] = 0;
+            byPre[counter] = rootClass;
+            pre[root] = counter++;
+            while (sp > 0) {
+                int v = stack[sp - 1];
+                List<Integer> vChildren = children[v];
+                if (vChildren != null && childPos[sp - 1] < vChildren.size()) {
+                    int child = vChildren.get(childPos[sp - 1]++);
+                    byPre[counter] = classes.get(child);
+                    pre[child] = counter++;
+                    stack[sp] = child;
+                    childPos[sp++] = 0;
+                } else {
+                    end[v] = counter;
+                    sp--;
+                }
+            }
+        }
+        return counter;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private List<Integer>[] childrenLists(int n) {
+        List<Integer>[] children = new List[n];
+        for (int i = 0; i < n; i++) {
+            SootClass sootClass = classes.get(i);
+            if (sootClass.isInterface() || !hasKnownSuperclass(sootClass)) continue;
+            int parent = ids.get(sootClass.getSuperclass());
+            if (children[parent] == null) children[parent] = new ArrayList<>();
+            children[parent].add(i);
+        }
+        return children;
+    }
+
+    private boolean hasKnownSuperclass(SootClass sootClass) {
+        return sootClass.hasSuperclass() && ids.containsKey(sootClass.getSuperclass());
+    }
+
+    private BitSet computeSuperInterfaces(int id) {
+        if (superInterfaces[id] != null) return superInterfaces[id];
+
+        SootClass sootClass = classes.get(id);
+        BitSet result = new BitSet();
+        // set before recursing, so a broken cyclic hierarchy cannot loop forever
+        superInterfaces[id] = result;
+        if (interfaceIds[id] != -1) result.set(interfaceIds[id]);
+        if (!sootClass.isInterface() && hasKnownSuperclass(sootClass))
+            result.or(computeSuperInterfaces(ids.get(sootClass.getSuperclass())));
+        for (SootClass superInterface : sootClass.getInterfaces()) {
+            Integer superId = ids.get(superInterface);
+            if (superId != null) result.or(computeSuperInterfaces(superId));
+        }
+        return result;
+    }
+
+    // the same notion Hierarchy uses, so phantom classes count as concrete
+    private static boolean isConcrete(SootClass sootClass) {
+        return !sootClass.isInterface() && !sootClass.isAbstract();
+    }
+
+    public boolean contains(SootClass sootClass) {
+        return ids.containsKey(sootClass);
+    }
+
+    /**
+     * @return true if sub is the same class as sup or extends it, interfaces are not considered
+     */
+    public boolean isSubclassIncluding(SootClass sub, SootClass sup) {
+        Integer subId = ids.get(sub);
+        Integer supId = ids.get(sup);
+        if (subId == null || supId == null || sub.isInterface() || sup.isInterface()) return false;
+        return pre[supId] <= pre[subId] && pre[subId] < end[supId];
+    }
+
+    /**
+     * @return true if a value of type sub can be stored in a variable of type sup
+     */
+    public boolean isSubtypeIncluding(SootClass sub, SootClass sup) {
+        if (sub == sup) return true;
+        Integer subId = ids.get(sub);
+        Integer supId = ids.get(sup);
+        if (subId == null || supId == null) return false;
+
+        if (sup.isInterface())
+            return superInterfaces[subId].get(interfaceIds[supId]);
+        if (sub.isInterface())
+            return sup.getName().equals("java.lang.Object");
+        return pre[supId] <= pre[subId] && pre[subId] < end[supId];
+    }
+
+    /**
+     * @return all concrete classes that are subtypes of the given type, including the type itself
+     */
+    public List<SootClass> getConcreteSubtypes(SootClass type) {
+        Integer id = ids.get(type);
+        if (id == null) return Collections.emptyList();
+        if (type.isInterface()) return Collections.unmodifiableList(concreteImplementers[interfaceIds[id]]);
+
+        List<SootClass> result = new ArrayList<>();
+        for (int i = pre[id]; i < end[id]; i++) {
+            if (isConcrete(byPre[i])) result.add(byPre[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Walks up the superclass chain of the receiver to the first declaration of the method that is visible from
+     * the receiver, like {@link soot.Hierarchy#resolveConcreteDispatch(SootClass, SootMethod)}.
+     *
+     * @return the implementation, or null if there is none, e.g. because the hierarchy contains phantom classes
+     */
+    public SootMethod resolveConcreteDispatch(SootClass receiver, SootMethod method) {
+        NumberedString subSignature = method.getNumberedSubSignature();
+        for (SootClass current = receiver; current != null; current = current.hasSuperclass() ? current.getSuperclass() : null) {
+            SootMethod candidate = current.getMethodUnsafe(subSignature);
+            if (candidate != null && isVisible(receiver, candidate)) return candidate;
+        }
+        return null;
+    }
+
+    private static boolean isVisible(SootClass from, SootMethod member) {
+        if (member.isPublic() || member.isProtected()) return true;
+        if (member.isPrivate()) return from == member.getDeclaringClass();
+        return from.getPackageName().equals(member.getDeclaringClass().getPackageName());
+    }
+
+    /**
+     * The implementations a call to the method on a receiver of the declared type may reach, the same set as
+     * {@link soot.Hierarchy#resolveAbstractDispatch(SootClass, SootMethod)}. Results are cached.
+     */
+    public List<SootMethod> resolveAbstractDispatch(SootClass declaredType, SootMethod method) {
+        return dispatchTargets(declaredType, method).getTargets();
+    }
+
+    /**
+     * Like {@link #resolveAbstractDispatch(SootClass, SootMethod)}, but returns the interned set itself. Calls with
+     * the same declared type and sub-signature get the same instance.
+     */
+    public DispatchTargets dispatchTargets(SootClass declaredType, SootMethod method) {
+        Map<NumberedString, DispatchTargets> perClass = dispatchCache.computeIfAbsent(declaredType, c -> new ConcurrentHashMap<>());
+        return perClass.computeIfAbsent(method.getNumberedSubSignature(), s -> {
+            Set<SootMethod> targets = new LinkedHashSet<>();
+            for (SootClass receiver : getConcreteSubtypes(declaredType)) {
+                SootMethod target = resolveConcreteDispatch(receiver, method);
+                if (target != null) targets.add(target);
+            }
+            return new DispatchTargets(declaredType, s, new ArrayList<>(targets));
+        });
+    }
+
+    public int classCount() {
+        return classes.size();
+    }
+}
@@ -0,0 +1,83 @@
+package analysis;
+
+/**
+ * Maps objects to int ids without boxing. Keys are compared by reference and hashed with
+ * {@link System#identityHashCode(Object)}, which is what Soot's methods, locals and fields use for equality anyway.
+ * Entries cannot be removed.
+ */
+public class IdentityIdMap<K> {
+    private Object[] keys;
+    private int[] values;
+    private int mask;
+    private int size;
+
+    public IdentityIdMap() {
+        this(16);
+    }
+
+    public IdentityIdMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(2, expectedSize * 2) - 1) << 1;
+        keys = new Object[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    /**
+     * @return the id of the key, or -1 if it has none
+     */
+    public int get(K key) {
+        int slot = slot(key);
+        Object current;
+        while ((current = keys[slot]) != null) {
+            if (current == key) return values[slot];
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    public boolean containsKey(K key) {
+        return get(key) != -1;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the key already has an id or the id is negative
+     */
+    public void put(K key, int id) {
+        if (id < 0)
+            throw new IllegalArgumentException("Ids must not be negative: " + id);
+        int slot = slot(key);
+        while (keys[slot] != null) {
+            if (keys[slot] == key)
+                throw new IllegalArgumentException("Key already has an id: " + key);
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = id;
+        if (++size * 2 > keys.length) grow();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private int slot(Object key) {
+        int h = System.identityHashCode(key) * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    private void grow() {
+        Object[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new Object[oldKeys.length * 2];
+        values = new int[oldKeys.length * 2];
+        mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] == null) continue;
+            int slot = slot(oldKeys[i]);
+            while (keys[slot] != null)
+                slot = (slot + 1) & mask;
+            keys[slot] = oldKeys[i];
+            values[slot] = oldValues[i];
+        }
+    }
+}
@@ -0,0 +1,315 @@
+package analysis;
+
+import java.util.Arrays;
+
+/**
+ * Directed graph over int nodes that keeps its strongly connected components and a topological order of them up to
+ * date while edges are inserted, so analyses that discover edges on the fly never have to rerun Tarjan.
+ * <p>
+ * Insertion follows Pearce and Kelly's dynamic topological sort: every component has an order value, and an edge
+ * that goes backwards in that order only triggers a search over the components whose order lies between its two
+ * ends. If the forward search from the target reaches the source, the edge closes a cycle and all components on
+ * it are merged into one. Otherwise the affected components are reordered within the order values they already
+ * had. Edges that agree with the current order cost one hash set insert.
+ * <p>
+ * Components are identified by a representative node, see {@link #sccOf(int)}. Representatives change when
+ * components merge. Edges cannot be removed.
+ */
+public class IncrementalSccGraph {
+    private int nodeCount;
+
+    private final LongHashSet edges = new LongHashSet();
+    private int[][] successors = new int[16][];
+    private int[] successorCount = new int[16];
+    private int[][] predecessors = new int[16][];
+    private int[] predecessorCount = new int[16];
+
+    // union-find over nodes, the root of a node is the representative of its component
+    private int[] parent = new int[16];
+    // members of a component form a circular list, so merging two components is a pointer swap
+    private int[] nextMember = new int[16];
+    private int[] componentSize = new int[16];
+    // order value of a component, stored at its representative
+    private int[] order = new int[16];
+    private int nextOrder;
+    private int sccCount;
+
+    // search state, visited[c] == stamp marks component c as seen by the current search
+    private int[] forwardVisited = new int[16];
+    private int[] backwardVisited = new int[16];
+    private int stamp;
+    private int[] stack = new int[16];
+    private int[] forward = new int[16];
+    private int[] backward = new int[16];
+
+    private long merges;
+    private long reorderedComponents;
+
+    /**
+     * @return the id of the new node, ids are handed out densely starting at 0
+     */
+    public int addNode() {
+        int id = nodeCount++;
+        if (id == parent.length) grow(id * 2);
+        parent[id] = id;
+        nextMember[id] = id;
+        componentSize[id] = 1;
+        order[id] = nextOrder++;
+        sccCount++;
+        return id;
+    }
+
+    private void grow(int capacity) {
+        successors = Arrays.copyOf(successors, capacity);
+        successorCount = Arrays.copyOf(successorCount, capacity);
+        predecessors = Arrays.copyOf(predecessors, capacity);
+        predecessorCount = Arrays.copyOf(predecessorCount, capacity);
+        parent = Arrays.copyOf(parent, capacity);
+        nextMember = Arrays.copyOf(nextMember, capacity);
+        componentSize = Arrays.copyOf(componentSize, capacity);
+        order = Arrays.copyOf(order, capacity);
+        forwardVisited = Arrays.copyOf(forwardVisited, capacity);
+        backwardVisited = Arrays.copyOf(backwardVisited, capacity);
+        stack = Arrays.copyOf(stack, capacity);
+        forward = Arrays.copyOf(forward, capacity);
+        backward = Arrays.copyOf(backward, capacity);
+    }
+
+    /**
+     * Inserts the edge and restores the component partition and their order.
+     *
+     * @return true if the edge was added, false if it already existed
+     */
+    public boolean addEdge(int source, int target) {
+        checkNode(source);
+        checkNode(target);
+        if (!edges.addIfAbsent(((long) source << 32) | target)) return false;
+
+        successors[source] = append(successors[source], successorCount[source]++, target);
+        predecessors[target] = append(predecessors[target], predecessorCount[target]++, source);
+
+        int sourceScc = sccOf(source);
+        int targetScc = sccOf(target);
+        if (sourceScc != targetScc && order[targetScc] < order[sourceScc])
+            restoreOrder(sourceScc, targetScc);
+        return true;
+    }
+
+    private static int[] append(int[] list, int size, int value) {
+        if (list == null) list = new int[4];
+        else if (size == list.length) list = Arrays.copyOf(list, size * 2);
+        list[size] = value;
+        return list;
+    }
+
+    private void checkNode(int node) {
+        if (node < 0 || node >= nodeCount)
+            throw new IllegalArgumentException("Graph does not contain node " + node);
+    }
+
+    /**
+     * The new edge goes from sourceScc back to targetScc, which comes earlier in the order.
+     */
+    private void restoreOrder(int sourceScc, int targetScc) {
+        int upperBound = order[sourceScc];
+        int lowerBound = order[targetScc];
+        stamp++;
+
+        // components reachable from the target that are not behind the source
+        int forwardCount = search(targetScc, upperBound, true);
+        boolean cycle = forwardVisited[sourceScc] == stamp;
+        // components that reach the source and are not before the target; without a cycle the two sets are disjoint
+        int backwardCount = search(sourceScc, lowerBound, false);
+
+        // the order values of all affected components are reused, the smallest ones go to the backward set
+        int[] pool = new int[forwardCount + backwardCount];
+        int poolSize = 0;
+        for (int i = 0; i < forwardCount; i++)
+            pool[poolSize++] = order[forward[i]];
+        for (int i = 0; i < backwardCount; i++) {
+            if (forwardVisited[backward[i]] != stamp) pool[poolSize++] = order[backward[i]];
+        }
+        Arrays.sort(pool, 0, poolSize);
+
+        int next = 0;
+        long[] sorted = sortByOrder(backward, backwardCount);
+        for (long entry : sorted) {
+            int scc = (int) entry;
+            // components on the cycle are merged below and get one order value after the backward set
+            if (cycle && forwardVisited[scc] == stamp) continue;
+            order[scc] = pool[next++];
+        }
+        if (cycle) {
+            int merged = -1;
+            for (int i = 0; i < forwardCount; i++) {
+                int scc = forward[i];
+                if (backwardVisited[scc] != stamp) continue;
+                merged = merged == -1 ? scc : union(merged, scc);
+            }
+            order[merged] = pool[next++];
+        }
+        // the forward set takes the largest values, a merge leaves unused ones in the middle
+        sorted = sortByOrder(forward, forwardCount);
+        int remaining = 0;
+        for (long entry : sorted) {
+            if (!cycle || backwardVisited[(int) entry] != stamp) remaining++;
+        }
+        next = poolSize - remaining;
+        for (long entry : sorted) {
+            int scc = (int) entry;
+            if (cycle && backwardVisited[scc] == stamp) continue;
+            order[scc] = pool[next++];
+        }
+        reorderedComponents += poolSize;
+    }
+
+    /**
+     * Depth-first search over components, forwards along successors or backwards along predecessors, that only
+     * enters components whose order value lies within the bound. The found components are collected in
+     * {@link #forward} or {@link #backward}.
+     *
+     * @return the number of components found, including the start
+     */
+    private int search(int start, int bound, boolean forwards) {
+        int[] visited = forwards ? forwardVisited : backwardVisited;
+        int[] found = forwards ? forward : backward;
+        int count = 0;
+        int sp = 0;
+        visited[start] = stamp;
+        found[count++] = start;
+        stack[sp++] = start;
+        while (sp > 0) {
+            int scc = stack[--sp];
+            int member = scc;
+            do {
+                int[] neighbours = forwards ? successors[member] : predecessors[member];
+                int degree = forwards ? successorCount[member] : predecessorCount[member];
+                for (int i = 0; i < degree; i++) {
+                    int next = sccOf(neighbours[i]);
+                    if (visited[next] == stamp) continue;
+                    if (forwards ? order[next] > bound : order[next] < bound) continue;
+                    visited[next] = stamp;
+                    found[count++] = next;
+                    stack[sp++] = next;
+                }
+                member = nextMember[member];
+            } while (member != scc);
+        }
+        return count;
+    }
+
+    private long[] sortByOrder(int[] sccs, int count) {
+        long[] sorted = new long[count];
+        for (int i = 0; i < count; i++)
+            sorted[i] = ((long) order[sccs[i]] << 32) | sccs[i];
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    private int union(int first, int second) {
+        // the larger component stays representative so that find paths stay short
+        int root = componentSize[first] >= componentSize[second] ? first : second;
+        int child = root == first ? second : first;
+        parent[child] = root;
+        componentSize[root] += componentSize[child];
+        int rootNext = nextMember[root];
+        nextMember[root] = nextMember[child];
+        nextMember[child] = rootNext;
+        sccCount--;
+        merges++;
+        return root;
+    }
+
+    /**
+     * @return the representative node of the component that contains the node
+     */
+    public int sccOf(int node) {
+        int root = node;
+        while (parent[root] != root)
+            root = parent[root];
+        // path compression
+        while (parent[node] != root) {
+            int next = parent[node];
+            parent[node] = root;
+            node = next;
+        }
+        return root;
+    }
+
+    public boolean inSameScc(int first, int second) {
+        return sccOf(first) == sccOf(second);
+    }
+
+    /**
+     * @return all nodes in the component of the given node
+     */
+    public int[] members(int node) {
+        int scc = sccOf(node);
+        int[] result = new int[componentSize[scc]];
+        int member = scc;
+        int i = 0;
+        do {
+            result[i++] = member;
+            member = nextMember[member];
+        } while (member != scc);
+        return result;
+    }
+
+    public int sccSize(int node) {
+        return componentSize[sccOf(node)];
+    }
+
+    /**
+     * Position of the component of the node in the topological order. The values are not dense, but for every
+     * edge between two components the source has the smaller one.
+     */
+    public int topologicalIndex(int node) {
+        return order[sccOf(node)];
+    }
+
+    /**
+     * @return the representatives of all components, sources first
+     */
+    public int[] sccsInTopologicalOrder() {
+        long[] sorted = new long[sccCount];
+        int count = 0;
+        for (int node = 0; node < nodeCount; node++) {
+            if (parent[node] == node) sorted[count++] = ((long) order[node] << 32) | node;
+        }
+        Arrays.sort(sorted);
+        int[] result = new int[count];
+        for (int i = 0; i < count; i++)
+            result[i] = (int) sorted[i];
+        return result;
+    }
+
+    public boolean hasEdge(int source, int target) {
+        return source >= 0 && target >= 0 && edges.contains(((long) source << 32) | target);
+    }
+
+    public int nodeCount() {
+        return nodeCount;
+    }
+
+    public int edgeCount() {
+        return edges.size();
+    }
+
+    public int sccCount() {
+        return sccCount;
+    }
+
+    /**
+     * @return how many component merges edge insertions caused so far
+     */
+    public long getMergeCount() {
+        return merges;
+    }
+
+    /**
+     * @return how many components got a new order value so far, summed over all insertions
+     */
+    public long getReorderedCount() {
+        return reorderedComponents;
+    }
+}
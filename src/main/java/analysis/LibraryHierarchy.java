@@ -0,0 +1,354 @@
+package analysis;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import soot.ArrayType;
+import soot.BooleanType;
+import soot.ByteType;
+import soot.CharType;
+import soot.DoubleType;
+import soot.FloatType;
+import soot.IntType;
+import soot.LongType;
+import soot.RefType;
+import soot.Scene;
+import soot.ShortType;
+import soot.SootClass;
+import soot.SootMethod;
+import soot.Type;
+import soot.VoidType;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * The class hierarchy of a library jar, cached on disk so the jar does not have to be resolved by Soot on every
+ * run: classes with their modifiers, superclass and interfaces, and the signatures and modifiers of their methods.
+ * Snapshots are keyed by the SHA-256 of the jar, a changed jar gets a new snapshot.
+ * <p>
+ * {@link #install(Scene)} adds the classes to a scene before {@link Scene#loadNecessaryClasses()}, with the
+ * library jar left off the Soot class path. Soot then takes them as resolved and only loads the application
+ * classes, so {@link HierarchyIndex} and with it CHA and RTA dispatch over the library types of the snapshot.
+ * Library methods have no bodies, like excluded classes with {@code no_bodies_for_excluded}. Fields are not part
+ * of the snapshot, Soot adds the ones application code refers to as phantoms.
+ * <p>
+ * Dispatch covers every class of the jar, not just the ones Soot would have resolved, so call sites on library
+ * interfaces may get more targets than with the jar on the class path.
+ */
+public final class LibraryHierarchy {
+    private static final int MAGIC = 0x4C494248;
+    private static final int VERSION = 1;
+
+    private final String jarHash;
+    private final List<ClassEntry> classes;
+    private final boolean fromCache;
+
+    private static final class ClassEntry {
+        final String name;
+        final int modifiers;
+        // null for java.lang.Object
+        final String superName;
+        final String[] interfaces;
+        final List<String> methodNames = new ArrayList<>();
+        final List<String> methodDescriptors = new ArrayList<>();
+        final List<Integer> methodModifiers = new ArrayList<>();
+
+        ClassEntry(String name, int modifiers, String superName, String[] interfaces) {
+            this.name = name;
+            this.modifiers = modifiers;
+            this.superName = superName;
+            this.interfaces = interfaces;
+        }
+    }
+
+    private LibraryHierarchy(String jarHash, List<ClassEntry> classes, boolean fromCache) {
+        this.jarHash = jarHash;
+        this.classes = classes;
+        this.fromCache = fromCache;
+    }
+
+    /**
+     * The hierarchy of the jar, read from the cache directory if it holds a snapshot of this jar content, scanned
+     * from the jar and written to the cache otherwise.
+     */
+    public static LibraryHierarchy forJar(File jar, File cacheDirectory) throws IOException {
+        String hash = sha256(jar);
+        File snapshot = new File(cacheDirectory, hash + ".hierarchy");
+        if (snapshot.exists()) {
+            LibraryHierarchy cached = read(snapshot, hash);
+            if (cached != null) return cached;
+        }
+        LibraryHierarchy scanned = new LibraryHierarchy(hash, scan(jar), false);
+        if (!cacheDirectory.isDirectory() && !cacheDirectory.mkdirs())
+            throw new IOException("Cannot create cache directory " + cacheDirectory);
+        scanned.write(snapshot);
+        return scanned;
+    }
+
+    static String sha256(File jar) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is required on every Java platform", e);
+        }
+        byte[] buffer = new byte[1 << 16];
+        try (InputStream in = new FileInputStream(jar)) {
+            int read;
+            while ((read = in.read(buffer)) > 0)
+                digest.update(buffer, 0, read);
+        }
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest())
+            hex.append(String.format("%02x", b));
+        return hex.toString();
+    }
+
+    // class headers and method signatures only, code, debug info and frames are skipped
+    private static List<ClassEntry> scan(File jar) throws IOException {
+        List<ClassEntry> result = new ArrayList<>();
+        try (ZipFile zip = new ZipFile(jar)) {
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (!entry.getName().endsWith(".class") || entry.getName().endsWith("module-info.class")) continue;
+                try (InputStream in = zip.getInputStream(entry)) {
+                    ClassReader reader = new ClassReader(in);
+                    reader.accept(new ClassVisitor(Opcodes.ASM8) {
+                        private ClassEntry current;
+
+                        @Override
+                        public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+                            String[] interfaceNames = new String[interfaces == null ? 0 : interfaces.length];
+                            for (int i = 0; i < interfaceNames.length; i++)
+                                interfaceNames[i] = interfaces[i].replace('/', '.');
+                            // ACC_SUPER shares its bit with synchronized, Soot drops it as well
+                            current = new ClassEntry(name.replace('/', '.'), access & ~Opcodes.ACC_SUPER & 0xFFFF,
+                                    superName == null ? null : superName.replace('/', '.'), interfaceNames);
+                            result.add(current);
+                        }
+
+                        @Override
+                        public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+                            current.methodNames.add(name);
+                            current.methodDescriptors.add(descriptor);
+                            current.methodModifiers.add(access & 0xFFFF);
+                            return null;
+                        }
+                    }, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Writes to a temporary file first and moves it into place, readers never see half a snapshot.
+     */
+    private void write(File snapshot) throws IOException {
+        File tempFile = new File(snapshot.getPath() + ".tmp");
+        Map<String, Integer> pool = new HashMap<>();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(jarHash);
+            out.writeInt(classes.size());
+            for (ClassEntry entry : classes) {
+                writeString(out, pool, entry.name);
+                out.writeInt(entry.modifiers);
+                writeString(out, pool, entry.superName == null ? "" : entry.superName);
+                out.writeShort(entry.interfaces.length);
+                for (String name : entry.interfaces)
+                    writeString(out, pool, name);
+                out.writeShort(entry.methodNames.size());
+                for (int i = 0; i < entry.methodNames.size(); i++) {
+                    writeString(out, pool, entry.methodNames.get(i));
+                    writeString(out, pool, entry.methodDescriptors.get(i));
+                    out.writeShort(entry.methodModifiers.get(i));
+                }
+            }
+        }
+        Files.move(tempFile.toPath(), snapshot.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // a string is written once, later uses refer to it by its index + 1
+    static void writeString(DataOutputStream out, Map<String, Integer> pool, String value) throws IOException {
+        Integer index = pool.get(value);
+        if (index != null) {
+            out.writeInt(index + 1);
+            return;
+        }
+        out.writeInt(0);
+        out.writeUTF(value);
+        pool.put(value, pool.size());
+    }
+
+    /**
+     * @return the snapshot, or null if it is of another format version or another jar
+     */
+    private static LibraryHierarchy read(File snapshot, String expectedHash) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshot), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || !in.readUTF().equals(expectedHash)) return null;
+            List<String> pool = new ArrayList<>();
+            int classCount = in.readInt();
+            List<ClassEntry> classes = new ArrayList<>(classCount);
+            for (int c = 0; c < classCount; c++) {
+                String name = readString(in, pool);
+                int modifiers = in.readInt();
+                String superName = readString(in, pool);
+                String[] interfaces = new String[in.readUnsignedShort()];
+                for (int i = 0; i < interfaces.length; i++)
+                    interfaces[i] = readString(in, pool);
+                ClassEntry entry = new ClassEntry(name, modifiers, superName.isEmpty() ? null : superName, interfaces);
+                int methodCount = in.readUnsignedShort();
+                for (int i = 0; i < methodCount; i++) {
+                    entry.methodNames.add(readString(in, pool));
+                    entry.methodDescriptors.add(readString(in, pool));
+                    entry.methodModifiers.add(in.readUnsignedShort());
+                }
+                classes.add(entry);
+            }
+            return new LibraryHierarchy(expectedHash, classes, true);
+        }
+    }
+
+    static String readString(DataInputStream in, List<String> pool) throws IOException {
+        int index = in.readInt();
+        if (index != 0) return pool.get(index - 1);
+        String value = in.readUTF();
+        pool.add(value);
+        return value;
+    }
+
+    /**
+     * Adds the classes of the snapshot to the scene as resolved library classes with method signatures but no
+     * bodies. Classes the scene already has are left alone, so application classes shadow library ones.
+     *
+     * @return the number of classes added
+     */
+    public int install(Scene scene) {
+        List<ClassEntry> added = new ArrayList<>();
+        for (ClassEntry entry : classes) {
+            if (scene.containsClass(entry.name)) continue;
+            SootClass sootClass = new SootClass(entry.name, entry.modifiers);
+            scene.addClass(sootClass);
+            sootClass.setLibraryClass();
+            added.add(entry);
+        }
+        // supertypes and signatures can refer to any class, so they are set once all classes exist
+        for (ClassEntry entry : added) {
+            SootClass sootClass = scene.getSootClass(entry.name);
+            if (entry.superName != null) sootClass.setSuperclass(classOrPhantom(scene, entry.superName));
+            for (String name : entry.interfaces)
+                sootClass.addInterface(classOrPhantom(scene, name));
+            for (int i = 0; i < entry.methodNames.size(); i++) {
+                // nothing outside the library can call or dispatch to them, and SootMethod is not cheap to create
+                if ((entry.methodModifiers.get(i) & Opcodes.ACC_PRIVATE) != 0) continue;
+                List<Type> types = parseDescriptor(entry.methodDescriptors.get(i));
+                Type returnType = types.remove(types.size() - 1);
+                sootClass.addMethod(new SootMethod(entry.methodNames.get(i), types, returnType, entry.methodModifiers.get(i)));
+            }
+            // Soot must not look for the class file, it is not on the class path
+            sootClass.setResolvingLevel(SootClass.BODIES);
+        }
+        return added.size();
+    }
+
+    /**
+     * Supertypes from other jars become phantoms, as they would with {@code allow_phantom_refs} and the jar on the
+     * class path. They count as resolved, {@link HierarchyIndex} asks them whether they are interfaces.
+     */
+    private static SootClass classOrPhantom(Scene scene, String name) {
+        // a class only named in a signature so far exists but is dangling
+        SootClass sootClass = scene.getSootClassUnsafe(name, false);
+        if (sootClass != null && sootClass.resolvingLevel() > SootClass.DANGLING) return sootClass;
+        if (sootClass == null) {
+            sootClass = new SootClass(name);
+            scene.addClass(sootClass);
+        }
+        sootClass.setPhantomClass();
+        sootClass.setResolvingLevel(SootClass.BODIES);
+        return sootClass;
+    }
+
+    /**
+     * @return the parameter types, followed by the return type
+     */
+    static List<Type> parseDescriptor(String descriptor) {
+        List<Type> types = new ArrayList<>();
+        int pos = 1;
+        while (pos < descriptor.length()) {
+            if (descriptor.charAt(pos) == ')') {
+                pos++;
+                continue;
+            }
+            int dimensions = 0;
+            while (descriptor.charAt(pos) == '[') {
+                dimensions++;
+                pos++;
+            }
+            Type type;
+            char tag = descriptor.charAt(pos);
+            if (tag == 'L') {
+                int end = descriptor.indexOf(';', pos);
+                type = RefType.v(descriptor.substring(pos + 1, end).replace('/', '.'));
+                pos = end + 1;
+            } else {
+                type = primitive(tag);
+                pos++;
+            }
+            types.add(dimensions == 0 ? type : ArrayType.v(type, dimensions));
+        }
+        return types;
+    }
+
+    private static Type primitive(char tag) {
+        switch (tag) {
+            case 'Z': return BooleanType.v();
+            case 'B': return ByteType.v();
+            case 'C': return CharType.v();
+            case 'S': return ShortType.v();
+            case 'I': return IntType.v();
+            case 'J': return LongType.v();
+            case 'F': return FloatType.v();
+            case 'D': return DoubleType.v();
+            case 'V': return VoidType.v();
+            default: throw new IllegalArgumentException("Unknown type descriptor " + tag);
+        }
+    }
+
+    public String getJarHash() {
+        return jarHash;
+    }
+
+    public int classCount() {
+        return classes.size();
+    }
+
+    /**
+     * @return true if the hierarchy was read from a snapshot, false if the jar was scanned
+     */
+    public boolean isFromCache() {
+        return fromCache;
+    }
+}
@@ -0,0 +1,518 @@
+package analysis;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import soot.Scene;
+import soot.SootClass;
+import soot.SootMethod;
+import soot.Type;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Call and allocation summaries of the methods of a library jar, scanned once and cached on disk like
+ * {@link LibraryHierarchy} snapshots, keyed by the SHA-256 of the jar.
+ * <p>
+ * The algorithms only walk bodies they have, and library classes get none with {@code no_bodies_for_excluded} or
+ * from a {@link LibraryHierarchy} snapshot, so a call into the library ends at the library method. What the library
+ * does with the objects of the program is lost, e.g. {@code Arrays.sort} calling {@code compareTo} on them. Walking
+ * the library instead, with its classes as application classes, costs thousands of bodies that are the same in
+ * every run. A summary stands for that walk: with {@link CallGraphAlgorithm#setLibrarySummaries(LibrarySummaries)}
+ * CHA and RTA apply the summary of a library method where the program calls it, and never walk the library body,
+ * even if there is one.
+ * <p>
+ * The scan reads the code of every method with ASM, Soot builds no bodies. Per method it keeps the methods called,
+ * resolved along the supertypes like Soot resolves a method reference, apart by kind: static and virtual calls,
+ * special calls, and interface calls. A summary covers the library methods a walk from the method reaches through
+ * static and virtual calls, with {@code followSpecialCalls} through special calls as well, like CHA and unlike RTA.
+ * Neither algorithm walks the targets of interface calls, so the summary does not either: they are what the library
+ * may call back into the program with. The declaring classes of special call targets are what RTA takes as
+ * instantiated. Summaries are computed on first use and kept for the lifetime of this object.
+ */
+public final class LibrarySummaries {
+    private static final int MAGIC = 0x4C494253;
+    private static final int VERSION = 1;
+
+    private static final int CALL = 0;
+    private static final int SPECIAL = 1;
+    private static final int INTERFACE = 2;
+
+    private final String jarHash;
+    private final boolean fromCache;
+
+    private final String[] classNames;
+    private final Map<String, Integer> classIds = new HashMap<>();
+    // the methods of class c are classMethods[c] until classMethods[c + 1]
+    private final int[] classMethods;
+    private final String[] methodNames;
+    private final String[] methodDescriptors;
+    private final int[] methodModifiers;
+    private final int[] methodClass;
+    // per kind, the calls of method m are targets[starts[m]] until targets[starts[m + 1]], as method ids
+    private final int[][] starts;
+    private final int[][] targets;
+
+    private final Map<Long, Closure> closures = new ConcurrentHashMap<>();
+
+    /**
+     * What the library may do when the program calls a method of it, see {@link #summaryOf(Scene, SootMethod, boolean)}.
+     */
+    public static final class Summary {
+        private final List<SootMethod> interfaceCalls;
+        private final List<SootClass> instantiatedClasses;
+        private final int methodCount;
+
+        private Summary(List<SootMethod> interfaceCalls, List<SootClass> instantiatedClasses, int methodCount) {
+            this.interfaceCalls = interfaceCalls;
+            this.instantiatedClasses = instantiatedClasses;
+            this.methodCount = methodCount;
+        }
+
+        /**
+         * The declared methods of the interface calls in the covered methods, in the order the walk met them.
+         * Methods of classes the scene does not know are left out, no class of the program implements them.
+         */
+        public List<SootMethod> getInterfaceCalls() {
+            return interfaceCalls;
+        }
+
+        /**
+         * The declaring classes of the special call targets in the covered methods that the scene knows.
+         */
+        public List<SootClass> getInstantiatedClasses() {
+            return instantiatedClasses;
+        }
+
+        /**
+         * @return the number of library methods with code the summary covers, the method itself included
+         */
+        public int getMethodCount() {
+            return methodCount;
+        }
+    }
+
+    // scene independent, in ids of the jar
+    private static final class Closure {
+        final int[] interfaceCalls;
+        final int[] instantiatedClasses;
+        final int methodCount;
+
+        Closure(int[] interfaceCalls, int[] instantiatedClasses, int methodCount) {
+            this.interfaceCalls = interfaceCalls;
+            this.instantiatedClasses = instantiatedClasses;
+            this.methodCount = methodCount;
+        }
+    }
+
+    private LibrarySummaries(String jarHash, boolean fromCache, String[] classNames, int[] classMethods,
+                             String[] methodNames, String[] methodDescriptors, int[] methodModifiers,
+                             int[][] starts, int[][] targets) {
+        this.jarHash = jarHash;
+        this.fromCache = fromCache;
+        this.classNames = classNames;
+        this.classMethods = classMethods;
+        this.methodNames = methodNames;
+        this.methodDescriptors = methodDescriptors;
+        this.methodModifiers = methodModifiers;
+        this.starts = starts;
+        this.targets = targets;
+        methodClass = new int[methodNames.length];
+        for (int c = 0; c < classNames.length; c++) {
+            classIds.putIfAbsent(classNames[c], c);
+            Arrays.fill(methodClass, classMethods[c], classMethods[c + 1], c);
+        }
+    }
+
+    /**
+     * The summaries of the jar, read from the cache directory if it holds a snapshot of this jar content, scanned
+     * from the jar and written to the cache otherwise.
+     */
+    public static LibrarySummaries forJar(File jar, File cacheDirectory) throws IOException {
+        String hash = LibraryHierarchy.sha256(jar);
+        File snapshot = new File(cacheDirectory, hash + ".summaries");
+        if (snapshot.exists()) {
+            LibrarySummaries cached = read(snapshot, hash);
+            if (cached != null) return cached;
+        }
+        LibrarySummaries scanned = scan(jar, hash);
+        if (!cacheDirectory.isDirectory() && !cacheDirectory.mkdirs())
+            throw new IOException("Cannot create cache directory " + cacheDirectory);
+        scanned.write(snapshot);
+        return scanned;
+    }
+
+    /**
+     * @return true if the jar has code for the method, abstract and native methods have none
+     */
+    public boolean covers(SootMethod method) {
+        return methodId(method) != -1;
+    }
+
+    /**
+     * The summary of a library method, or null if the jar has no code for it. Classes of the jar count as library
+     * classes even if the scene has them as application classes.
+     *
+     * @param followSpecialCalls whether the library methods reached through special calls are covered as well
+     */
+    public Summary summaryOf(Scene scene, SootMethod method, boolean followSpecialCalls) {
+        int id = methodId(method);
+        if (id == -1) return null;
+        Closure closure = closures.computeIfAbsent((long) id << 1 | (followSpecialCalls ? 1 : 0),
+                key -> walk(id, followSpecialCalls));
+
+        List<SootMethod> interfaceCalls = new ArrayList<>(closure.interfaceCalls.length);
+        for (int target : closure.interfaceCalls) {
+            SootMethod sootMethod = sootMethod(scene, target);
+            if (sootMethod != null) interfaceCalls.add(sootMethod);
+        }
+        List<SootClass> instantiated = new ArrayList<>(closure.instantiatedClasses.length);
+        for (int c : closure.instantiatedClasses) {
+            SootClass sootClass = sootClass(scene, c);
+            if (sootClass != null) instantiated.add(sootClass);
+        }
+        return new Summary(Collections.unmodifiableList(interfaceCalls), Collections.unmodifiableList(instantiated),
+                closure.methodCount);
+    }
+
+    private int methodId(SootMethod method) {
+        Integer c = classIds.get(method.getDeclaringClass().getName());
+        if (c == null) return -1;
+        // <C: name(descriptor)>
+        String signature = method.getBytecodeSignature();
+        String descriptor = signature.substring(signature.indexOf('('), signature.length() - 1);
+        int m = declared(c, method.getName(), descriptor);
+        return m == -1 || !hasCode(m) ? -1 : m;
+    }
+
+    private int declared(int c, String name, String descriptor) {
+        for (int m = classMethods[c]; m < classMethods[c + 1]; m++) {
+            if (methodNames[m].equals(name) && methodDescriptors[m].equals(descriptor)) return m;
+        }
+        return -1;
+    }
+
+    private boolean hasCode(int m) {
+        return (methodModifiers[m] & (Opcodes.ACC_ABSTRACT | Opcodes.ACC_NATIVE)) == 0;
+    }
+
+    private Closure walk(int start, boolean followSpecialCalls) {
+        BitSet reached = new BitSet(methodNames.length);
+        BitSet interfaceSeen = new BitSet(methodNames.length);
+        BitSet classSeen = new BitSet(classNames.length);
+        Ints interfaceCalls = new Ints();
+        Ints instantiated = new Ints();
+        Ints worklist = new Ints();
+        int methodCount = 0;
+        reached.set(start);
+        worklist.add(start);
+        while (worklist.size > 0) {
+            int m = worklist.values[--worklist.size];
+            if (hasCode(m)) methodCount++;
+            for (int i = starts[CALL][m]; i < starts[CALL][m + 1]; i++) {
+                int target = targets[CALL][i];
+                if (!reached.get(target)) {
+                    reached.set(target);
+                    worklist.add(target);
+                }
+            }
+            for (int i = starts[SPECIAL][m]; i < starts[SPECIAL][m + 1]; i++) {
+                int target = targets[SPECIAL][i];
+                if (!classSeen.get(methodClass[target])) {
+                    classSeen.set(methodClass[target]);
+                    instantiated.add(methodClass[target]);
+                }
+                if (followSpecialCalls && !reached.get(target)) {
+                    reached.set(target);
+                    worklist.add(target);
+                }
+            }
+            for (int i = starts[INTERFACE][m]; i < starts[INTERFACE][m + 1]; i++) {
+                int target = targets[INTERFACE][i];
+                if (!interfaceSeen.get(target)) {
+                    interfaceSeen.set(target);
+                    interfaceCalls.add(target);
+                }
+            }
+        }
+        return new Closure(interfaceCalls.toArray(), instantiated.toArray(), methodCount);
+    }
+
+    private SootMethod sootMethod(Scene scene, int m) {
+        SootClass sootClass = sootClass(scene, methodClass[m]);
+        if (sootClass == null) return null;
+        List<Type> types = LibraryHierarchy.parseDescriptor(methodDescriptors[m]);
+        Type returnType = types.remove(types.size() - 1);
+        return sootClass.getMethodUnsafe(methodNames[m], types, returnType);
+    }
+
+    private SootClass sootClass(Scene scene, int c) {
+        // looking up a class only named in a signature so far would make it dangling, HierarchyIndex must not see it
+        if (!scene.containsClass(classNames[c])) return null;
+        SootClass sootClass = scene.getSootClass(classNames[c]);
+        return sootClass.resolvingLevel() < SootClass.HIERARCHY ? null : sootClass;
+    }
+
+    // method code without debug info and frames, then the call targets are resolved once all classes are known
+    private static LibrarySummaries scan(File jar, String hash) throws IOException {
+        Scanner scanner = new Scanner();
+        try (ZipFile zip = new ZipFile(jar)) {
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (!entry.getName().endsWith(".class") || entry.getName().endsWith("module-info.class")) continue;
+                try (InputStream in = zip.getInputStream(entry)) {
+                    new ClassReader(in).accept(scanner, ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+                }
+            }
+        }
+        return scanner.finish(hash);
+    }
+
+    private static final class Scanner extends ClassVisitor {
+        final List<String> classNames = new ArrayList<>();
+        final List<String> superNames = new ArrayList<>();
+        final List<String[]> interfaces = new ArrayList<>();
+        final Ints classMethods = new Ints();
+        final List<String> methodNames = new ArrayList<>();
+        final List<String> methodDescriptors = new ArrayList<>();
+        final Ints methodModifiers = new Ints();
+        final Map<String, String> strings = new HashMap<>();
+        // calls refer to the pool of method references until they are resolved
+        final Ints[] starts = {new Ints(), new Ints(), new Ints()};
+        final Ints[] references = {new Ints(), new Ints(), new Ints()};
+        final Map<String, Integer> referenceIds = new HashMap<>();
+        final List<String[]> referencesById = new ArrayList<>();
+
+        Scanner() {
+            super(Opcodes.ASM8);
+        }
+
+        @Override
+        public void visit(int version, int access, String name, String signature, String superName, String[] interfaceNames) {
+            classNames.add(name.replace('/', '.'));
+            superNames.add(superName == null ? null : superName.replace('/', '.'));
+            String[] names = new String[interfaceNames == null ? 0 : interfaceNames.length];
+            for (int i = 0; i < names.length; i++)
+                names[i] = interfaceNames[i].replace('/', '.');
+            interfaces.add(names);
+            classMethods.add(methodNames.size());
+        }
+
+        @Override
+        public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+            methodNames.add(intern(name));
+            methodDescriptors.add(intern(descriptor));
+            methodModifiers.add(access & 0xFFFF);
+            for (int kind = CALL; kind <= INTERFACE; kind++)
+                starts[kind].add(references[kind].size);
+            return new MethodVisitor(Opcodes.ASM8) {
+                @Override
+                public void visitMethodInsn(int opcode, String owner, String name, String descriptor, boolean isInterface) {
+                    // methods of array types are the ones of Object, clone() aside
+                    if (owner.charAt(0) == '[') return;
+                    int kind = opcode == Opcodes.INVOKEINTERFACE ? INTERFACE : opcode == Opcodes.INVOKESPECIAL ? SPECIAL : CALL;
+                    references[kind].add(reference(owner.replace('/', '.'), name, descriptor));
+                }
+            };
+        }
+
+        private String intern(String value) {
+            String pooled = strings.putIfAbsent(value, value);
+            return pooled == null ? value : pooled;
+        }
+
+        private int reference(String owner, String name, String descriptor) {
+            String key = owner + '.' + name + descriptor;
+            Integer id = referenceIds.get(key);
+            if (id != null) return id;
+            referenceIds.put(key, referencesById.size());
+            referencesById.add(new String[]{owner, name, descriptor});
+            return referencesById.size() - 1;
+        }
+
+        LibrarySummaries finish(String hash) {
+            classMethods.add(methodNames.size());
+            Map<String, Integer> classIds = new HashMap<>();
+            for (int c = 0; c < classNames.size(); c++)
+                classIds.putIfAbsent(classNames.get(c), c);
+
+            int[] resolved = new int[referencesById.size()];
+            for (int r = 0; r < resolved.length; r++) {
+                String[] reference = referencesById.get(r);
+                resolved[r] = resolve(classIds, reference[0], reference[1], reference[2]);
+            }
+            int[][] resolvedStarts = new int[3][];
+            int[][] resolvedTargets = new int[3][];
+            for (int kind = CALL; kind <= INTERFACE; kind++) {
+                starts[kind].add(references[kind].size);
+                // references into other jars are dropped
+                Ints kindStarts = new Ints();
+                Ints kindTargets = new Ints();
+                for (int m = 0; m < methodNames.size(); m++) {
+                    kindStarts.add(kindTargets.size);
+                    for (int i = starts[kind].values[m]; i < starts[kind].values[m + 1]; i++) {
+                        int target = resolved[references[kind].values[i]];
+                        if (target != -1) kindTargets.add(target);
+                    }
+                }
+                kindStarts.add(kindTargets.size);
+                resolvedStarts[kind] = kindStarts.toArray();
+                resolvedTargets[kind] = kindTargets.toArray();
+            }
+            return new LibrarySummaries(hash, false, classNames.toArray(new String[0]), classMethods.toArray(),
+                    methodNames.toArray(new String[0]), methodDescriptors.toArray(new String[0]),
+                    methodModifiers.toArray(), resolvedStarts, resolvedTargets);
+        }
+
+        // the class and its superclasses first, then their interfaces breadth first, -1 if none declares it
+        private int resolve(Map<String, Integer> classIds, String owner, String name, String descriptor) {
+            Deque<Integer> pending = new ArrayDeque<>();
+            for (Integer c = classIds.get(owner); c != null; c = superNames.get(c) == null ? null : classIds.get(superNames.get(c))) {
+                int m = declared(c, name, descriptor);
+                if (m != -1) return m;
+                pending.add(c);
+            }
+            BitSet seen = new BitSet();
+            while (!pending.isEmpty()) {
+                int c = pending.poll();
+                for (String interfaceName : interfaces.get(c)) {
+                    Integer i = classIds.get(interfaceName);
+                    if (i == null || seen.get(i)) continue;
+                    seen.set(i);
+                    int m = declared(i, name, descriptor);
+                    if (m != -1) return m;
+                    pending.add(i);
+                }
+            }
+            return -1;
+        }
+
+        private int declared(int c, String name, String descriptor) {
+            for (int m = classMethods.values[c]; m < classMethods.values[c + 1]; m++) {
+                if (methodNames.get(m).equals(name) && methodDescriptors.get(m).equals(descriptor)) return m;
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * Writes to a temporary file first and moves it into place, readers never see half a snapshot.
+     */
+    private void write(File snapshot) throws IOException {
+        File tempFile = new File(snapshot.getPath() + ".tmp");
+        Map<String, Integer> pool = new HashMap<>();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(jarHash);
+            out.writeInt(classNames.length);
+            for (int c = 0; c < classNames.length; c++) {
+                LibraryHierarchy.writeString(out, pool, classNames[c]);
+                out.writeInt(classMethods[c + 1] - classMethods[c]);
+            }
+            for (int m = 0; m < methodNames.length; m++) {
+                LibraryHierarchy.writeString(out, pool, methodNames[m]);
+                LibraryHierarchy.writeString(out, pool, methodDescriptors[m]);
+                out.writeShort(methodModifiers[m]);
+            }
+            for (int kind = CALL; kind <= INTERFACE; kind++) {
+                out.writeInt(targets[kind].length);
+                for (int m = 0; m < methodNames.length; m++)
+                    out.writeShort(starts[kind][m + 1] - starts[kind][m]);
+                for (int target : targets[kind])
+                    out.writeInt(target);
+            }
+        }
+        Files.move(tempFile.toPath(), snapshot.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @return the snapshot, or null if it is of another format version or another jar
+     */
+    private static LibrarySummaries read(File snapshot, String expectedHash) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshot), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || !in.readUTF().equals(expectedHash)) return null;
+            List<String> pool = new ArrayList<>();
+            String[] classNames = new String[in.readInt()];
+            int[] classMethods = new int[classNames.length + 1];
+            for (int c = 0; c < classNames.length; c++) {
+                classNames[c] = LibraryHierarchy.readString(in, pool);
+                classMethods[c + 1] = classMethods[c] + in.readInt();
+            }
+            int methodCount = classMethods[classNames.length];
+            String[] methodNames = new String[methodCount];
+            String[] methodDescriptors = new String[methodCount];
+            int[] methodModifiers = new int[methodCount];
+            for (int m = 0; m < methodCount; m++) {
+                methodNames[m] = LibraryHierarchy.readString(in, pool);
+                methodDescriptors[m] = LibraryHierarchy.readString(in, pool);
+                methodModifiers[m] = in.readUnsignedShort();
+            }
+            int[][] starts = new int[3][methodCount + 1];
+            int[][] targets = new int[3][];
+            for (int kind = CALL; kind <= INTERFACE; kind++) {
+                targets[kind] = new int[in.readInt()];
+                for (int m = 0; m < methodCount; m++)
+                    starts[kind][m + 1] = starts[kind][m] + in.readUnsignedShort();
+                for (int i = 0; i < targets[kind].length; i++)
+                    targets[kind][i] = in.readInt();
+            }
+            return new LibrarySummaries(expectedHash, true, classNames, classMethods, methodNames, methodDescriptors,
+                    methodModifiers, starts, targets);
+        }
+    }
+
+    public String getJarHash() {
+        return jarHash;
+    }
+
+    public int methodCount() {
+        return methodNames.length;
+    }
+
+    /**
+     * @return true if the summaries were read from a snapshot, false if the jar was scanned
+     */
+    public boolean isFromCache() {
+        return fromCache;
+    }
+
+    private static final class Ints {
+        int[] values = new int[16];
+        int size;
+
+        void add(int value) {
+            if (size == values.length) values = Arrays.copyOf(values, size * 2);
+            values[size++] = value;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package analysis;
+
+import java.util.function.LongConsumer;
+
+/**
+ * Open-addressing hash set of primitive longs with linear probing, nothing is allocated per operation.
+ * <p>
+ * Used to store call edges as {@code source id << 32 | target id}. Elements cannot be removed.
+ */
+public class LongHashSet {
+    private static final long EMPTY = 0L;
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private long[] table;
+    private int mask;
+    private int size;
+    // EMPTY marks free slots, so the element 0 is tracked separately
+    private boolean containsEmpty;
+
+    public LongHashSet() {
+        this(16);
+    }
+
+    public LongHashSet(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(2, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        table = new long[capacity];
+        mask = capacity - 1;
+    }
+
+    /**
+     * @return true if the value was added, false if it was already contained
+     */
+    public boolean addIfAbsent(long value) {
+        if (value == EMPTY) {
+            if (containsEmpty) return false;
+            containsEmpty = true;
+            size++;
+            return true;
+        }
+
+        int slot = slot(value);
+        while (table[slot] != EMPTY) {
+            if (table[slot] == value) return false;
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = value;
+        if (++size > table.length * LOAD_FACTOR) grow();
+        return true;
+    }
+
+    public boolean contains(long value) {
+        if (value == EMPTY) return containsEmpty;
+
+        int slot = slot(value);
+        while (table[slot] != EMPTY) {
+            if (table[slot] == value) return true;
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void forEach(LongConsumer consumer) {
+        if (containsEmpty) consumer.accept(EMPTY);
+        for (long value : table) {
+            if (value != EMPTY) consumer.accept(value);
+        }
+    }
+
+    private int slot(long value) {
+        // spread the bits of both packed ids over the slot index
+        long h = value * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    private void grow() {
+        long[] old = table;
+        table = new long[old.length * 2];
+        mask = table.length - 1;
+        for (long value : old) {
+            if (value == EMPTY) continue;
+            int slot = slot(value);
+            while (table[slot] != EMPTY)
+                slot = (slot + 1) & mask;
+            table[slot] = value;
+        }
+    }
+}
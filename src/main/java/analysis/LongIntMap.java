@@ -0,0 +1,103 @@
+package analysis;
+
+/**
+ * Open-addressing hash map from primitive longs to non-negative ints with linear probing, nothing is allocated
+ * per operation.
+ * <p>
+ * Used to number pairs of ids packed as {@code first << 32 | second}. Entries cannot be removed.
+ */
+public class LongIntMap {
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private long[] keys;
+    // value + 1, so 0 marks free slots and every key can be stored
+    private int[] values;
+    private int mask;
+    private int size;
+
+    public LongIntMap() {
+        this(16);
+    }
+
+    public LongIntMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(2, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        keys = new long[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    /**
+     * @return the value of the key, or -1 if it has none
+     */
+    public int get(long key) {
+        int slot = slot(key);
+        while (values[slot] != 0) {
+            if (keys[slot] == key) return values[slot] - 1;
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the key already has a value or the value is negative
+     */
+    public void put(long key, int value) {
+        if (value < 0)
+            throw new IllegalArgumentException("Values must not be negative: " + value);
+        int slot = slot(key);
+        while (values[slot] != 0) {
+            if (keys[slot] == key)
+                throw new IllegalArgumentException("Key already has a value: " + key);
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value + 1;
+        if (++size > keys.length * LOAD_FACTOR) grow();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Calls the consumer with every key and its value, in no particular order.
+     */
+    public void forEach(EntryConsumer consumer) {
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (values[slot] != 0) consumer.accept(keys[slot], values[slot] - 1);
+        }
+    }
+
+    public interface EntryConsumer {
+        void accept(long key, int value);
+    }
+
+    /**
+     * @return the bytes of the tables, for memory accounting
+     */
+    public long tableBytes() {
+        return (long) keys.length * (Long.BYTES + Integer.BYTES);
+    }
+
+    private int slot(long key) {
+        // spread the bits of both packed ids over the slot index
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new long[oldKeys.length * 2];
+        values = new int[oldKeys.length * 2];
+        mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] == 0) continue;
+            int slot = slot(oldKeys[i]);
+            while (values[slot] != 0)
+                slot = (slot + 1) & mask;
+            keys[slot] = oldKeys[i];
+            values[slot] = oldValues[i];
+        }
+    }
+}
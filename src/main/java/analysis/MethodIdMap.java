@@ -0,0 +1,18 @@
+package analysis;
+
+import soot.SootMethod;
+
+/**
+ * Maps methods to int ids without boxing. {@link SootMethod} uses identity equality, so the map compares keys by
+ * reference. Entries cannot be removed.
+ */
+public class MethodIdMap extends IdentityIdMap<SootMethod> {
+
+    public MethodIdMap() {
+        super();
+    }
+
+    public MethodIdMap(int expectedSize) {
+        super(expectedSize);
+    }
+}
@@ -0,0 +1,73 @@
+package analysis;
+
+import soot.Scene;
+import soot.SootClass;
+import soot.SootMethod;
+import soot.Type;
+import soot.jimple.InvokeExpr;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Method resolution for code that runs on several threads. Resolving a method reference can add a phantom method
+ * to its class, and Soot does not synchronize that, so resolution and dispatch lookups that read the method
+ * lists of classes go through one lock. Single-threaded code pays an uncontended lock.
+ */
+public final class MethodResolution {
+    private static final Object LOCK = new Object();
+
+    private MethodResolution() {
+    }
+
+    public static SootMethod targetOf(InvokeExpr invokeExpr) {
+        synchronized (LOCK) {
+            return invokeExpr.getMethod();
+        }
+    }
+
+    /**
+     * {@link HierarchyIndex#resolveAbstractDispatch(SootClass, SootMethod)} under the resolution lock.
+     */
+    public static List<SootMethod> resolveAbstractDispatch(HierarchyIndex hierarchy, SootClass declaredType, SootMethod method) {
+        synchronized (LOCK) {
+            return hierarchy.resolveAbstractDispatch(declaredType, method);
+        }
+    }
+
+    /**
+     * {@link LibrarySummaries#summaryOf(Scene, SootMethod, boolean)} under the resolution lock, it looks up the
+     * methods of the summary in their classes.
+     */
+    public static LibrarySummaries.Summary summaryOf(LibrarySummaries summaries, Scene scene, SootMethod method,
+                                                     boolean followSpecialCalls) {
+        synchronized (LOCK) {
+            return summaries.summaryOf(scene, method, followSpecialCalls);
+        }
+    }
+
+    /**
+     * The method with the given signature, for signatures that come from another scene. Methods and classes the
+     * scene does not know are added as phantoms, like Soot does when it resolves a reference to them.
+     */
+    public static SootMethod methodOf(Scene scene, String signature, boolean isStatic) {
+        synchronized (LOCK) {
+            SootMethod method = scene.grabMethod(signature);
+            if (method != null) return method;
+
+            SootClass declaringClass = scene.getSootClassUnsafe(scene.signatureToClass(signature), true);
+            String subSignature = scene.signatureToSubsignature(signature);
+            int nameStart = subSignature.indexOf(' ');
+            int paramsStart = subSignature.indexOf('(');
+            Type returnType = scene.getTypeUnsafe(subSignature.substring(0, nameStart), true);
+            String name = subSignature.substring(nameStart + 1, paramsStart);
+            List<Type> parameterTypes = new ArrayList<>();
+            String params = subSignature.substring(paramsStart + 1, subSignature.length() - 1);
+            if (!params.isEmpty()) {
+                for (String param : params.split(","))
+                    parameterTypes.add(scene.getTypeUnsafe(param, true));
+            }
+            return scene.makeMethodRef(declaringClass, name, parameterTypes, returnType, isStatic).resolve();
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package analysis;
+
+import soot.Scene;
+import soot.SootMethod;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Cache of {@link MethodSummary} per method, shared by all algorithms that run on the same {@link Scene}.
+ * <p>
+ * The first request for a method walks its active body once, every later request of any algorithm gets the same
+ * summary. Bodies are expected not to change after they were summarized; code that transforms bodies has to call
+ * {@link #invalidate(SootMethod)}.
+ */
+public class MethodSummaries {
+    private static final Map<Scene, MethodSummaries> perScene = new WeakHashMap<>();
+
+    private final Map<SootMethod, MethodSummary> summaries = new ConcurrentHashMap<>();
+    private final AtomicInteger bodiesIndexed = new AtomicInteger();
+
+    public static synchronized MethodSummaries forScene(Scene scene) {
+        return perScene.computeIfAbsent(scene, s -> new MethodSummaries());
+    }
+
+    /**
+     * @return the summary of the method's active body, or an empty summary if the method has none
+     */
+    public MethodSummary get(SootMethod method) {
+        MethodSummary summary = summaries.get(method);
+        if (summary != null) return summary;
+        if (!method.hasActiveBody()) return MethodSummary.EMPTY;
+
+        return summaries.computeIfAbsent(method, m -> {
+            bodiesIndexed.incrementAndGet();
+            return MethodSummary.of(m.getActiveBody());
+        });
+    }
+
+    public boolean isSummarized(SootMethod method) {
+        return summaries.containsKey(method);
+    }
+
+    public void invalidate(SootMethod method) {
+        summaries.remove(method);
+    }
+
+    /**
+     * Number of bodies walked so far, each body is only counted once unless it was invalidated.
+     */
+    public int getBodiesIndexed() {
+        return bodiesIndexed.get();
+    }
+}
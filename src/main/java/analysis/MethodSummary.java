@@ -0,0 +1,306 @@
+package analysis;
+
+import soot.Body;
+import soot.Local;
+import soot.SootField;
+import soot.Type;
+import soot.Unit;
+import soot.Value;
+import soot.jimple.AssignStmt;
+import soot.jimple.CastExpr;
+import soot.jimple.FieldRef;
+import soot.jimple.IdentityStmt;
+import soot.jimple.InvokeExpr;
+import soot.jimple.NewExpr;
+import soot.jimple.ParameterRef;
+import soot.jimple.ReturnStmt;
+import soot.jimple.Stmt;
+import soot.jimple.ThisRef;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The facts the call graph algorithms need from a method body, extracted in a single pass over its units.
+ * <p>
+ * Every kind of fact is stored as parallel arrays sorted by the index of the unit it comes from, so the unit
+ * index doubles as call site id (see {@link CallGraph#addEdge(soot.SootMethod, soot.SootMethod, int)}) and facts
+ * of different kinds can be merged back into body order. Use {@link MethodSummaries} to get the cached summary of
+ * a method instead of building one directly.
+ */
+public final class MethodSummary {
+    static final MethodSummary EMPTY = new MethodSummary();
+
+    private final int unitCount;
+
+    private final int[] invokeUnits;
+    private final InvokeExpr[] invokeExprs;
+    private final boolean[] invokeAssignsResult;
+
+    private final int[] allocationUnits;
+    private final Value[] allocationTargets;
+    private final Type[] allocationTypes;
+
+    private final int[] assignmentUnits;
+    private final Value[] assignmentLefts;
+    private final Value[] assignmentRights;
+
+    private final int[] castUnits;
+    private final Value[] castOps;
+    private final Type[] castTypes;
+
+    private final int[] returnUnits;
+    private final Value[] returnValues;
+
+    private final int[] fieldUnits;
+    private final SootField[] fields;
+    private final boolean[] fieldWrites;
+
+    private final Local thisLocal;
+    private final Local[] parameterLocals;
+
+    private MethodSummary() {
+        this(new Builder());
+    }
+
+    private MethodSummary(Builder b) {
+        unitCount = b.unitCount;
+        invokeUnits = toArray(b.invokeUnits);
+        invokeExprs = b.invokeExprs.toArray(new InvokeExpr[0]);
+        invokeAssignsResult = toBooleanArray(b.invokeAssignsResult);
+        allocationUnits = toArray(b.allocationUnits);
+        allocationTargets = b.allocationTargets.toArray(new Value[0]);
+        allocationTypes = b.allocationTypes.toArray(new Type[0]);
+        assignmentUnits = toArray(b.assignmentUnits);
+        assignmentLefts = b.assignmentLefts.toArray(new Value[0]);
+        assignmentRights = b.assignmentRights.toArray(new Value[0]);
+        castUnits = toArray(b.castUnits);
+        castOps = b.castOps.toArray(new Value[0]);
+        castTypes = b.castTypes.toArray(new Type[0]);
+        returnUnits = toArray(b.returnUnits);
+        returnValues = b.returnValues.toArray(new Value[0]);
+        fieldUnits = toArray(b.fieldUnits);
+        fields = b.fields.toArray(new SootField[0]);
+        fieldWrites = toBooleanArray(b.fieldWrites);
+        thisLocal = b.thisLocal;
+        parameterLocals = b.parameterLocals.toArray(new Local[0]);
+    }
+
+    static MethodSummary of(Body body) {
+        Builder b = new Builder();
+        for (Unit unit : body.getUnits())
+            b.add((Stmt) unit);
+        return new MethodSummary(b);
+    }
+
+    public int unitCount() {
+        return unitCount;
+    }
+
+    // call sites, including the ones whose result is assigned
+
+    public int invokeCount() {
+        return invokeUnits.length;
+    }
+
+    public int invokeUnit(int i) {
+        return invokeUnits[i];
+    }
+
+    public InvokeExpr invokeExpr(int i) {
+        return invokeExprs[i];
+    }
+
+    /**
+     * @return true if the call site is the right side of an assignment, false for a plain invoke statement
+     */
+    public boolean invokeAssignsResult(int i) {
+        return invokeAssignsResult[i];
+    }
+
+    // x = new T
+
+    public int allocationCount() {
+        return allocationUnits.length;
+    }
+
+    public int allocationUnit(int i) {
+        return allocationUnits[i];
+    }
+
+    public Value allocationTarget(int i) {
+        return allocationTargets[i];
+    }
+
+    public Type allocationType(int i) {
+        return allocationTypes[i];
+    }
+
+    // every assignment, including allocations, casts, field accesses and assigned call results
+
+    public int assignmentCount() {
+        return assignmentUnits.length;
+    }
+
+    public int assignmentUnit(int i) {
+        return assignmentUnits[i];
+    }
+
+    public Value assignmentLeft(int i) {
+        return assignmentLefts[i];
+    }
+
+    public Value assignmentRight(int i) {
+        return assignmentRights[i];
+    }
+
+    // x = (T) y
+
+    public int castCount() {
+        return castUnits.length;
+    }
+
+    public int castUnit(int i) {
+        return castUnits[i];
+    }
+
+    public Value castOp(int i) {
+        return castOps[i];
+    }
+
+    public Type castType(int i) {
+        return castTypes[i];
+    }
+
+    // return x, void returns are not recorded
+
+    public int returnCount() {
+        return returnUnits.length;
+    }
+
+    public int returnUnit(int i) {
+        return returnUnits[i];
+    }
+
+    public Value returnValue(int i) {
+        return returnValues[i];
+    }
+
+    // reads and writes of instance and static fields
+
+    public int fieldAccessCount() {
+        return fieldUnits.length;
+    }
+
+    public int fieldAccessUnit(int i) {
+        return fieldUnits[i];
+    }
+
+    public SootField field(int i) {
+        return fields[i];
+    }
+
+    public boolean isFieldWrite(int i) {
+        return fieldWrites[i];
+    }
+
+    // this and the parameters, bound by the identity statements at the start of the body
+
+    /**
+     * @return the local holding this, null for static methods
+     */
+    public Local thisLocal() {
+        return thisLocal;
+    }
+
+    /**
+     * @return the local the parameter with the given index is bound to, null if the body does not bind it
+     */
+    public Local parameterLocal(int index) {
+        return index < parameterLocals.length ? parameterLocals[index] : null;
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++)
+            array[i] = list.get(i);
+        return array;
+    }
+
+    private static boolean[] toBooleanArray(List<Boolean> list) {
+        boolean[] array = new boolean[list.size()];
+        for (int i = 0; i < array.length; i++)
+            array[i] = list.get(i);
+        return array;
+    }
+
+    private static class Builder {
+        int unitCount;
+        final List<Integer> invokeUnits = new ArrayList<>();
+        final List<InvokeExpr> invokeExprs = new ArrayList<>();
+        final List<Boolean> invokeAssignsResult = new ArrayList<>();
+        final List<Integer> allocationUnits = new ArrayList<>();
+        final List<Value> allocationTargets = new ArrayList<>();
+        final List<Type> allocationTypes = new ArrayList<>();
+        final List<Integer> assignmentUnits = new ArrayList<>();
+        final List<Value> assignmentLefts = new ArrayList<>();
+        final List<Value> assignmentRights = new ArrayList<>();
+        final List<Integer> castUnits = new ArrayList<>();
+        final List<Value> castOps = new ArrayList<>();
+        final List<Type> castTypes = new ArrayList<>();
+        final List<Integer> returnUnits = new ArrayList<>();
+        final List<Value> returnValues = new ArrayList<>();
+        final List<Integer> fieldUnits = new ArrayList<>();
+        final List<SootField> fields = new ArrayList<>();
+        final List<Boolean> fieldWrites = new ArrayList<>();
+        Local thisLocal;
+        final List<Local> parameterLocals = new ArrayList<>();
+
+        void add(Stmt stmt) {
+            int unit = unitCount++;
+            if (stmt.containsInvokeExpr()) {
+                invokeUnits.add(unit);
+                invokeExprs.add(stmt.getInvokeExpr());
+                invokeAssignsResult.add(stmt instanceof AssignStmt);
+            }
+            if (stmt.containsFieldRef()) {
+                FieldRef fieldRef = stmt.getFieldRef();
+                fieldUnits.add(unit);
+                fields.add(fieldRef.getField());
+                fieldWrites.add(stmt instanceof AssignStmt && ((AssignStmt) stmt).getLeftOp() == fieldRef);
+            }
+
+            if (stmt instanceof AssignStmt) {
+                AssignStmt assign = (AssignStmt) stmt;
+                Value left = assign.getLeftOp();
+                Value right = assign.getRightOp();
+                assignmentUnits.add(unit);
+                assignmentLefts.add(left);
+                assignmentRights.add(right);
+                if (right instanceof NewExpr) {
+                    allocationUnits.add(unit);
+                    allocationTargets.add(left);
+                    allocationTypes.add(((NewExpr) right).getBaseType());
+                } else if (right instanceof CastExpr) {
+                    castUnits.add(unit);
+                    castOps.add(((CastExpr) right).getOp());
+                    castTypes.add(((CastExpr) right).getCastType());
+                }
+            } else if (stmt instanceof ReturnStmt) {
+                returnUnits.add(unit);
+                returnValues.add(((ReturnStmt) stmt).getOp());
+            } else if (stmt instanceof IdentityStmt) {
+                IdentityStmt identity = (IdentityStmt) stmt;
+                Value right = identity.getRightOp();
+                if (right instanceof ThisRef) {
+                    thisLocal = (Local) identity.getLeftOp();
+                } else if (right instanceof ParameterRef) {
+                    int index = ((ParameterRef) right).getIndex();
+                    while (parameterLocals.size() <= index)
+                        parameterLocals.add(null);
+                    parameterLocals.set(index, (Local) identity.getLeftOp());
+                }
+            }
+        }
+    }
+}
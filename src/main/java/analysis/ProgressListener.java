@@ -0,0 +1,10 @@
+package analysis;
+
+/**
+ * Receives progress of a call graph construction, see
+ * {@link CallGraphAlgorithm#setProgressListener(ProgressListener)}. It is called on the analysis thread every few
+ * hundred work units and once at the end, so it should return quickly.
+ */
+public interface ProgressListener {
+    void progress(AnalysisProgress progress);
+}
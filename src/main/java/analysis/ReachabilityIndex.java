@@ -0,0 +1,119 @@
+package analysis;
+
+import soot.SootMethod;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Answers transitive reachability questions on a finished {@link CallGraph}.
+ * <p>
+ * The call graph is condensed into its SCC DAG and for every SCC the set of reachable SCCs is stored as a bitset.
+ * Closures are computed callee-first, so building the index costs one bitset union per DAG edge and needs
+ * {@code sccCount^2 / 8} bytes in the worst case. After that a pairwise query is a hash lookup plus a single bit
+ * test, the bulk queries are linear in the size of their answer (callees) or the number of SCCs (callers).
+ * <p>
+ * The index is a snapshot: edges added to the call graph afterwards are not seen.
+ */
+public class ReachabilityIndex {
+    private final CallGraphCondensation condensation;
+    private final BitSet[] closures;
+    private final long buildTimeNanos;
+
+    public ReachabilityIndex(CallGraph cg) {
+        long start = System.nanoTime();
+        condensation = new CallGraphCondensation(cg);
+
+        int sccCount = condensation.sccCount();
+        closures = new BitSet[sccCount];
+        // callee SCCs always have smaller ids, so their closures are done once we get to the caller
+        for (int scc = 0; scc < sccCount; scc++) {
+            BitSet closure = new BitSet(scc + 1);
+            closure.set(scc);
+            for (int succ : condensation.sccSuccessors(scc))
+                closure.or(closures[succ]);
+            closures[scc] = closure;
+        }
+        buildTimeNanos = System.nanoTime() - start;
+    }
+
+    /**
+     * @return true if there is a (possibly empty) call chain from source to target
+     */
+    public boolean reaches(SootMethod source, SootMethod target) {
+        int sourceScc = condensation.sccOf(source);
+        int targetScc = condensation.sccOf(target);
+        if (sourceScc == -1 || targetScc == -1) return false;
+        return closures[sourceScc].get(targetScc);
+    }
+
+    /**
+     * All methods reachable from the given method through at least one call. The method itself is only part of
+     * the result if it is (mutually) recursive.
+     */
+    public Set<SootMethod> transitiveCallees(SootMethod method) {
+        int scc = condensation.sccOf(method);
+        if (scc == -1) return Collections.emptySet();
+
+        Set<SootMethod> callees = new HashSet<>();
+        BitSet closure = closures[scc];
+        for (int s = closure.nextSetBit(0); s >= 0; s = closure.nextSetBit(s + 1)) {
+            if (s == scc && !condensation.isCyclic(scc)) continue;
+            for (int m : condensation.members(s))
+                callees.add(condensation.methodOf(m));
+        }
+        return callees;
+    }
+
+    /**
+     * All methods that reach the given method through at least one call. The method itself is only part of the
+     * result if it is (mutually) recursive.
+     */
+    public Set<SootMethod> transitiveCallers(SootMethod method) {
+        int scc = condensation.sccOf(method);
+        if (scc == -1) return Collections.emptySet();
+
+        Set<SootMethod> callers = new HashSet<>();
+        // only SCCs with a larger id can reach this one
+        for (int s = scc; s < closures.length; s++) {
+            if (!closures[s].get(scc)) continue;
+            if (s == scc && !condensation.isCyclic(scc)) continue;
+            for (int m : condensation.members(s))
+                callers.add(condensation.methodOf(m));
+        }
+        return callers;
+    }
+
+    /**
+     * Filters the given entry points down to those that reach the target.
+     */
+    public Set<SootMethod> entryPointsReaching(Collection<SootMethod> entryPoints, SootMethod target) {
+        int targetScc = condensation.sccOf(target);
+        if (targetScc == -1) return Collections.emptySet();
+
+        Set<SootMethod> result = new HashSet<>();
+        for (SootMethod entryPoint : entryPoints) {
+            int scc = condensation.sccOf(entryPoint);
+            if (scc != -1 && closures[scc].get(targetScc))
+                result.add(entryPoint);
+        }
+        return result;
+    }
+
+    public CallGraphCondensation getCondensation() {
+        return condensation;
+    }
+
+    public long getBuildTimeNanos() {
+        return buildTimeNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "ReachabilityIndex(" + condensation.methodCount() + " methods, " + condensation.sccCount() +
+                " SCCs, built in " + buildTimeNanos / 1_000_000 + "ms)";
+    }
+}
@@ -0,0 +1,199 @@
+package analysis;
+
+import soot.SootMethod;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.concurrent.CountedCompleter;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs a task per SCC of a finished {@link CallGraph} on a fork-join pool, in dependency order: bottom-up, an SCC
+ * runs once all SCCs it calls are done, or top-down, once all SCCs that call it are done. SCCs that do not depend
+ * on each other run in parallel. This is the traversal interprocedural clients such as summary computations need,
+ * without each of them walking {@link CallGraph#edgesOutOf(SootMethod)} by hand.
+ * <p>
+ * Within a recursive SCC the methods depend on each other, so the task of a cyclic SCC runs again until it
+ * reports that nothing changed. The task of an acyclic SCC runs once. Everything a task wrote is visible to the
+ * tasks of the SCCs that depend on it.
+ */
+public class SccScheduler {
+    public enum Order {
+        /** Callees before callers. */
+        BOTTOM_UP,
+        /** Callers before callees. */
+        TOP_DOWN
+    }
+
+    /**
+     * The work for one SCC. It may run on any thread of the pool, concurrently with the tasks of independent SCCs.
+     */
+    public interface SccTask {
+        /**
+         * @param methods the methods of the SCC, in call graph order
+         * @return true if the results of the SCC changed. Only cyclic SCCs are asked, they run until it is false
+         */
+        boolean process(int scc, List<SootMethod> methods);
+    }
+
+    private final CallGraphCondensation condensation;
+    private final Order order;
+    // the SCCs that wait for an SCC, and the number of SCCs each one waits for
+    private final int[][] dependents;
+    private final int[] prerequisites;
+    private CancellationToken cancellationToken;
+
+    private final AtomicLong taskRuns = new AtomicLong();
+
+    public SccScheduler(CallGraph cg, Order order) {
+        this(new CallGraphCondensation(cg), order);
+    }
+
+    public SccScheduler(CallGraphCondensation condensation, Order order) {
+        this.condensation = condensation;
+        this.order = order;
+        int sccCount = condensation.sccCount();
+        int[] callerCount = new int[sccCount];
+        for (int scc = 0; scc < sccCount; scc++) {
+            for (int callee : condensation.sccSuccessors(scc))
+                callerCount[callee]++;
+        }
+
+        if (order == Order.TOP_DOWN) {
+            dependents = new int[sccCount][];
+            prerequisites = callerCount;
+            for (int scc = 0; scc < sccCount; scc++)
+                dependents[scc] = condensation.sccSuccessors(scc);
+        } else {
+            // the callers of every SCC, the DAG only has callee lists
+            dependents = new int[sccCount][];
+            for (int scc = 0; scc < sccCount; scc++)
+                dependents[scc] = new int[callerCount[scc]];
+            int[] fill = new int[sccCount];
+            prerequisites = new int[sccCount];
+            for (int scc = 0; scc < sccCount; scc++) {
+                int[] callees = condensation.sccSuccessors(scc);
+                prerequisites[scc] = callees.length;
+                for (int callee : callees)
+                    dependents[callee][fill[callee]++] = scc;
+            }
+        }
+    }
+
+    /**
+     * Checked before every task run, a cancelled run throws {@link AnalysisCancelledException}.
+     */
+    public void setCancellationToken(CancellationToken cancellationToken) {
+        this.cancellationToken = cancellationToken;
+    }
+
+    /**
+     * Runs the task for every SCC on the common pool and returns when all are done.
+     */
+    public void run(SccTask task) {
+        run(task, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Runs the task for every SCC on the given pool and returns when all are done. If a task throws, no further
+     * tasks are started and the exception is rethrown here.
+     */
+    public void run(SccTask task, ForkJoinPool pool) {
+        taskRuns.set(0);
+        pool.invoke(new Schedule(task));
+    }
+
+    public CallGraphCondensation getCondensation() {
+        return condensation;
+    }
+
+    public Order getOrder() {
+        return order;
+    }
+
+    /**
+     * @return how often tasks ran in the last {@link #run(SccTask)}, fixpoint iterations included
+     */
+    public long getTaskRuns() {
+        return taskRuns.get();
+    }
+
+    /**
+     * Forks the SCCs without prerequisites and completes once every SCC did, each SCC holds one pending count.
+     */
+    @SuppressWarnings("serial") // tasks are never serialized, they refer to the scheduler
+    private final class Schedule extends CountedCompleter<Void> {
+        private final SccTask task;
+        private final AtomicIntegerArray waitingFor = new AtomicIntegerArray(prerequisites);
+
+        Schedule(SccTask task) {
+            this.task = task;
+        }
+
+        @Override
+        public void compute() {
+            for (int scc = 0; scc < prerequisites.length; scc++) {
+                if (prerequisites[scc] != 0) continue;
+                addToPendingCount(1);
+                new SccAction(this, scc).fork();
+            }
+            tryComplete();
+        }
+    }
+
+    @SuppressWarnings("serial") // tasks are never serialized, they refer to the scheduler
+    private final class SccAction extends CountedCompleter<Void> {
+        private final Schedule schedule;
+        private final int scc;
+
+        SccAction(Schedule schedule, int scc) {
+            super(schedule);
+            this.schedule = schedule;
+            this.scc = scc;
+        }
+
+        @Override
+        public void compute() {
+            // a failed task completed the schedule abnormally, the rest is not worth running
+            if (!schedule.isCompletedAbnormally()) {
+                List<SootMethod> methods = new Members(condensation.members(scc));
+                boolean cyclic = condensation.isCyclic(scc);
+                boolean changed;
+                do {
+                    if (cancellationToken != null) cancellationToken.throwIfCancelled();
+                    taskRuns.incrementAndGet();
+                    changed = schedule.task.process(scc, methods);
+                } while (cyclic && changed);
+
+                // the decrement publishes what the task wrote to the thread that picks up the dependent
+                for (int dependent : dependents[scc]) {
+                    if (schedule.waitingFor.decrementAndGet(dependent) == 0) {
+                        schedule.addToPendingCount(1);
+                        new SccAction(schedule, dependent).fork();
+                    }
+                }
+            }
+            tryComplete();
+        }
+    }
+
+    private final class Members extends AbstractList<SootMethod> {
+        private final int[] ids;
+
+        Members(int[] ids) {
+            this.ids = ids;
+        }
+
+        @Override
+        public SootMethod get(int index) {
+            return condensation.methodOf(ids[index]);
+        }
+
+        @Override
+        public int size() {
+            return ids.length;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package analysis;
+
+import soot.Scene;
+import soot.SootClass;
+import soot.SootMethod;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Assignment of classes to shards by package, or by module if a module depth is given: classes whose packages
+ * share the first depth segments stay together. The modules of the application classes are packed into shards
+ * largest first onto the lightest shard, measured in methods. Library packages are not part of the plan, they are
+ * spread by hash.
+ */
+public final class ShardPlan {
+    private final int shardCount;
+    private final int moduleDepth;
+    private final Map<String, Integer> shardOfModule = new HashMap<>();
+
+    public ShardPlan(Scene scene, int shardCount, int moduleDepth) {
+        if (shardCount < 1)
+            throw new IllegalArgumentException("Need at least one shard: " + shardCount);
+        if (moduleDepth < 0)
+            throw new IllegalArgumentException("Module depth must not be negative: " + moduleDepth);
+        this.shardCount = shardCount;
+        this.moduleDepth = moduleDepth;
+
+        Map<String, Integer> methodsPerModule = new HashMap<>();
+        for (SootClass sootClass : scene.getApplicationClasses())
+            methodsPerModule.merge(moduleOf(sootClass), sootClass.getMethodCount(), Integer::sum);
+
+        List<Map.Entry<String, Integer>> modules = new ArrayList<>(methodsPerModule.entrySet());
+        modules.sort(Map.Entry.<String, Integer>comparingByValue(Comparator.reverseOrder()).thenComparing(Map.Entry.comparingByKey()));
+        long[] load = new long[shardCount];
+        for (Map.Entry<String, Integer> module : modules) {
+            int lightest = 0;
+            for (int i = 1; i < shardCount; i++) {
+                if (load[i] < load[lightest]) lightest = i;
+            }
+            load[lightest] += module.getValue();
+            shardOfModule.put(module.getKey(), lightest);
+        }
+    }
+
+    public int shardOf(SootMethod method) {
+        return shardOf(method.getDeclaringClass());
+    }
+
+    public int shardOf(SootClass sootClass) {
+        String module = moduleOf(sootClass);
+        Integer shard = shardOfModule.get(module);
+        return shard != null ? shard : Math.floorMod(module.hashCode(), shardCount);
+    }
+
+    public String moduleOf(SootClass sootClass) {
+        String packageName = sootClass.getPackageName();
+        if (moduleDepth == 0) return packageName;
+        int end = -1;
+        for (int i = 0; i < moduleDepth; i++) {
+            end = packageName.indexOf('.', end + 1);
+            if (end == -1) return packageName;
+        }
+        return packageName.substring(0, end);
+    }
+
+    public int getShardCount() {
+        return shardCount;
+    }
+}
@@ -0,0 +1,362 @@
+package analysis.daemon;
+
+import analysis.CallGraph;
+import analysis.CallGraphAlgorithm;
+import analysis.FrozenCallGraph;
+import analysis.LibraryHierarchy;
+import analysis.ReachabilityIndex;
+import analysis.exercise1.CHAAlgorithm;
+import analysis.exercise2.RTAAlgorithm;
+import soot.G;
+import soot.Scene;
+import soot.SootMethod;
+import soot.options.Options;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Keeps a loaded Soot scene and its call graph in one long-running JVM and answers callee, caller and
+ * reachability queries over loopback TCP, see {@link Protocol} for the messages. Clients such as IDE plugins or
+ * commit hooks then pay neither for JVM startup and warm-up nor for class loading and call graph construction.
+ * <p>
+ * Queries are answered from an immutable generation: the {@link FrozenCallGraph} of the call graph, a
+ * {@link ReachabilityIndex} and the signatures of all nodes, computed once at load time. So a query never touches
+ * Soot, connections are served concurrently and a query costs a hash lookup plus the size of its answer.
+ * <p>
+ * RELOAD builds the next generation from the class files: Soot cannot replace a class once it is resolved, so the
+ * scene is loaded again as a whole. With {@link #setLibrarySnapshot(File, File)} the library comes from a
+ * {@link LibraryHierarchy} snapshot and only the application classes are read again. Reloads are serialized, the
+ * queries of other connections keep being answered from the previous generation until the new one is swapped in.
+ */
+public class AnalysisDaemon implements AutoCloseable {
+    private final List<String> sootArguments;
+    private final Supplier<? extends CallGraphAlgorithm> algorithms;
+    private File libraryJar;
+    private File libraryCache;
+
+    private volatile Generation current;
+    private int generations;
+    private ServerSocket server;
+    private Thread acceptor;
+    private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+
+    // per query, from the parsed request to the answer handed to the socket
+    private final LongAdder queries = new LongAdder();
+    private final LongAdder queryNanos = new LongAdder();
+    private final LongAccumulator maxQueryNanos = new LongAccumulator(Math::max, 0);
+    private final AtomicLong threadIds = new AtomicLong();
+
+    /**
+     * @param sootArguments Soot command line options for the scene, as for {@code soot.Main}
+     * @param algorithms    creates the algorithm for every load, so each one starts from fresh state
+     */
+    public AnalysisDaemon(List<String> sootArguments, Supplier<? extends CallGraphAlgorithm> algorithms) {
+        this.sootArguments = new ArrayList<>(sootArguments);
+        this.algorithms = algorithms;
+    }
+
+    /**
+     * Installs the hierarchy of the jar from a snapshot in the cache directory before each load. The jar must not
+     * be on the Soot class path then.
+     */
+    public void setLibrarySnapshot(File jar, File cacheDirectory) {
+        this.libraryJar = jar;
+        this.libraryCache = cacheDirectory;
+    }
+
+    /**
+     * Loads the first generation and starts accepting connections on the loopback address.
+     *
+     * @param port the port, 0 for any free one
+     * @return the port the daemon listens on
+     */
+    public synchronized int start(int port) throws IOException {
+        if (server != null) throw new IllegalStateException("The daemon is already running");
+        reload();
+        server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        acceptor = new Thread(this::accept, "daemon-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        return server.getLocalPort();
+    }
+
+    /**
+     * Loads the scene and builds the call graph again, then swaps in the new generation.
+     */
+    public synchronized Generation reload() throws IOException {
+        long start = System.nanoTime();
+        G.reset();
+        if (!Options.v().parse(sootArguments.toArray(new String[0])))
+            throw new IllegalArgumentException("Invalid Soot options: " + sootArguments);
+        if (libraryJar != null) LibraryHierarchy.forJar(libraryJar, libraryCache).install(Scene.v());
+        Scene.v().loadNecessaryClasses();
+        CallGraph cg = algorithms.get().constructCallGraph(Scene.v());
+        current = new Generation(++generations, cg, System.nanoTime() - start);
+        return current;
+    }
+
+    public Generation getGeneration() {
+        return current;
+    }
+
+    public int getPort() {
+        return server == null ? -1 : server.getLocalPort();
+    }
+
+    public long getQueries() {
+        return queries.sum();
+    }
+
+    /**
+     * Blocks until the daemon is closed.
+     */
+    public void awaitTermination() throws InterruptedException {
+        Thread thread;
+        synchronized (this) {
+            thread = acceptor;
+        }
+        if (thread != null) thread.join();
+    }
+
+    /**
+     * Stops accepting connections and closes the open ones.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (server == null) return;
+        server.close();
+        for (Socket socket : connections)
+            socket.close();
+    }
+
+    private void accept() {
+        while (!server.isClosed()) {
+            Socket socket;
+            try {
+                socket = server.accept();
+            } catch (IOException e) {
+                // closed
+                return;
+            }
+            connections.add(socket);
+            Thread thread = new Thread(() -> serve(socket), "daemon-connection-" + threadIds.incrementAndGet());
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    private void serve(Socket accepted) {
+        try (Socket socket = accepted) {
+            socket.setTcpNoDelay(true);
+            BufferedReader in = Protocol.reader(socket);
+            BufferedWriter out = Protocol.writer(socket);
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (Protocol.is(line, Protocol.QUIT)) {
+                    out.write(Protocol.BYE + "\n");
+                    out.flush();
+                    return;
+                }
+                try {
+                    answer(line, out);
+                } catch (RuntimeException e) {
+                    out.write(Protocol.ERROR + " " + String.valueOf(e).replace('\n', ' ') + "\n");
+                }
+                // answers are batched while the client has more requests in flight
+                if (!in.ready()) out.flush();
+            }
+        } catch (IOException e) {
+            // the client went away or the daemon was closed
+        } finally {
+            connections.remove(accepted);
+        }
+    }
+
+    private void answer(String line, BufferedWriter out) throws IOException {
+        if (Protocol.is(line, Protocol.RELOAD)) {
+            Generation generation;
+            try {
+                generation = reload();
+            } catch (IOException e) {
+                // the library snapshot, the connection itself is fine
+                out.write(Protocol.ERROR + " " + e + "\n");
+                return;
+            }
+            out.write(Protocol.RELOADED + " " + generation.number + " " + generation.nodeCount() + " " + generation.edgeCount()
+                    + " " + generation.loadNanos / 1_000_000 + "\n");
+            return;
+        }
+        if (Protocol.is(line, Protocol.STATS)) {
+            Generation generation = current;
+            long count = queries.sum();
+            out.write(Protocol.STATS + " " + generation.number + " " + generation.nodeCount() + " " + generation.edgeCount()
+                    + " " + generation.loadNanos / 1_000_000 + " " + count + " " + micros(count == 0 ? 0 : (double) queryNanos.sum() / count)
+                    + " " + micros(maxQueryNanos.get()) + "\n");
+            return;
+        }
+
+        long start = System.nanoTime();
+        // one generation per query, a reload in between must not mix two
+        Generation generation = current;
+        if (Protocol.is(line, Protocol.CALLEES) || Protocol.is(line, Protocol.CALLERS)) {
+            boolean callees = Protocol.is(line, Protocol.CALLEES);
+            String signature = Protocol.argument(line, callees ? Protocol.CALLEES : Protocol.CALLERS);
+            int id = generation.idOf(signature);
+            if (id == -1) {
+                out.write(Protocol.UNKNOWN + " " + signature + "\n");
+            } else {
+                StringBuilder answer = new StringBuilder();
+                int[] neighbours = callees ? generation.callees(id) : generation.callers(id);
+                answer.append(Protocol.METHODS).append(' ').append(neighbours.length).append('\n');
+                for (int neighbour : neighbours)
+                    answer.append(generation.signatures[neighbour]).append('\n');
+                out.write(answer.toString());
+            }
+        } else if (Protocol.is(line, Protocol.REACHES)) {
+            String[] pair = Protocol.signaturePair(Protocol.argument(line, Protocol.REACHES));
+            if (pair == null) throw new IllegalArgumentException("REACHES needs two signatures: " + line);
+            int source = generation.idOf(pair[0]);
+            int target = generation.idOf(pair[1]);
+            if (source == -1) {
+                out.write(Protocol.UNKNOWN + " " + pair[0] + "\n");
+            } else if (target == -1) {
+                out.write(Protocol.UNKNOWN + " " + pair[1] + "\n");
+            } else {
+                out.write((generation.reaches(source, target) ? Protocol.YES : Protocol.NO) + "\n");
+            }
+        } else {
+            throw new IllegalArgumentException("Unknown request: " + line);
+        }
+        long elapsed = System.nanoTime() - start;
+        queries.increment();
+        queryNanos.add(elapsed);
+        maxQueryNanos.accumulate(elapsed);
+    }
+
+    private static String micros(double nanos) {
+        return String.format(Locale.ROOT, "%.1f", nanos / 1000);
+    }
+
+    /**
+     * The call graph and indexes queries are answered from. Immutable, the signatures are computed up front so
+     * answering needs no Soot state, which the next reload resets.
+     */
+    public static final class Generation {
+        private final int number;
+        private final long loadNanos;
+        private final FrozenCallGraph cg;
+        private final ReachabilityIndex reachability;
+        private final String[] signatures;
+        private final Map<String, Integer> ids;
+
+        Generation(int number, CallGraph cg, long loadNanos) {
+            this.number = number;
+            this.cg = cg.freeze();
+            this.reachability = new ReachabilityIndex(cg);
+            this.signatures = new String[this.cg.nodeCount()];
+            this.ids = new HashMap<>(2 * signatures.length);
+            for (int id = 0; id < signatures.length; id++) {
+                signatures[id] = this.cg.methodOf(id).getSignature();
+                ids.put(signatures[id], id);
+            }
+            this.loadNanos = loadNanos;
+        }
+
+        int idOf(String signature) {
+            Integer id = ids.get(signature);
+            return id == null ? -1 : id;
+        }
+
+        int[] callees(int id) {
+            return neighbours(cg.successors(cg.methodOf(id)));
+        }
+
+        int[] callers(int id) {
+            return neighbours(cg.predecessors(cg.methodOf(id)));
+        }
+
+        private int[] neighbours(List<SootMethod> methods) {
+            int[] result = new int[methods.size()];
+            for (int i = 0; i < result.length; i++)
+                result[i] = cg.idOf(methods.get(i));
+            return result;
+        }
+
+        boolean reaches(int source, int target) {
+            return reachability.reaches(cg.methodOf(source), cg.methodOf(target));
+        }
+
+        public int getNumber() {
+            return number;
+        }
+
+        public long getLoadNanos() {
+            return loadNanos;
+        }
+
+        public int nodeCount() {
+            return cg.nodeCount();
+        }
+
+        public int edgeCount() {
+            return cg.edgeCount();
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 2) {
+            System.err.println("Usage: AnalysisDaemon <port> cha|rta [-library <jar> <cacheDir>] <soot options>");
+            System.exit(2);
+        }
+        int port = Integer.parseInt(args[0]);
+        Supplier<CallGraphAlgorithm> algorithms;
+        switch (args[1]) {
+            case "cha":
+                algorithms = CHAAlgorithm::new;
+                break;
+            case "rta":
+                algorithms = RTAAlgorithm::new;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown algorithm: " + args[1]);
+        }
+        int sootStart = 2;
+        File jar = null;
+        File cache = null;
+        if (args.length > 4 && args[2].equals("-library")) {
+            jar = new File(args[3]);
+            cache = new File(args[4]);
+            sootStart = 5;
+        }
+        Supplier<CallGraphAlgorithm> lazy = () -> {
+            CallGraphAlgorithm algorithm = algorithms.get();
+            algorithm.setLazyBodies(true);
+            return algorithm;
+        };
+        AnalysisDaemon daemon = new AnalysisDaemon(Arrays.asList(args).subList(sootStart, args.length), lazy);
+        if (jar != null) daemon.setLibrarySnapshot(jar, cache);
+        int actualPort = daemon.start(port);
+        Generation generation = daemon.getGeneration();
+        System.out.println("Listening on " + actualPort + ", " + generation.nodeCount() + " nodes, " + generation.edgeCount()
+                + " edges, loaded in " + generation.getLoadNanos() / 1_000_000 + " ms");
+        daemon.awaitTermination();
+    }
+}
@@ -0,0 +1,79 @@
+package analysis.daemon;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The line protocol of {@link AnalysisDaemon}. One message per line, UTF-8, the keyword first. Methods are given
+ * by their Soot signature, e.g. {@code <a.B: void m(int)>}, the two of a REACHES are separated by a space.
+ * <pre>
+ * client: CALLEES signature
+ * client: CALLERS signature
+ * daemon: METHODS count, followed by count lines with a signature each
+ * client: REACHES sourceSignature targetSignature
+ * daemon: YES or NO
+ * daemon: UNKNOWN signature, for a method that is no node of the call graph
+ * client: RELOAD
+ * daemon: RELOADED generation nodes edges loadMillis
+ * client: STATS
+ * daemon: STATS generation nodes edges loadMillis queries meanMicros maxMicros
+ * client: QUIT
+ * daemon: BYE, then it closes the connection
+ * daemon: ERROR message
+ * </pre>
+ * Every request is answered, in the order the requests arrived.
+ */
+final class Protocol {
+    static final String CALLEES = "CALLEES";
+    static final String CALLERS = "CALLERS";
+    static final String METHODS = "METHODS";
+    static final String REACHES = "REACHES";
+    static final String YES = "YES";
+    static final String NO = "NO";
+    static final String UNKNOWN = "UNKNOWN";
+    static final String RELOAD = "RELOAD";
+    static final String RELOADED = "RELOADED";
+    static final String STATS = "STATS";
+    static final String QUIT = "QUIT";
+    static final String BYE = "BYE";
+    static final String ERROR = "ERROR";
+
+    private Protocol() {
+    }
+
+    static BufferedReader reader(Socket socket) throws IOException {
+        return new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+    }
+
+    static BufferedWriter writer(Socket socket) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return the part of the line after the keyword
+     */
+    static String argument(String line, String keyword) {
+        return line.length() > keyword.length() ? line.substring(keyword.length() + 1) : "";
+    }
+
+    static boolean is(String line, String keyword) {
+        return line.startsWith(keyword) && (line.length() == keyword.length() || line.charAt(keyword.length()) == ' ');
+    }
+
+    /**
+     * Splits the argument of a REACHES. A signature ends with {@code >} and no return type does, so the first
+     * {@code "> <"} is the boundary.
+     *
+     * @return source and target signature, or null if the argument is not two signatures
+     */
+    static String[] signaturePair(String argument) {
+        int boundary = argument.indexOf("> <");
+        if (boundary == -1) return null;
+        return new String[]{argument.substring(0, boundary + 1), argument.substring(boundary + 2)};
+    }
+}
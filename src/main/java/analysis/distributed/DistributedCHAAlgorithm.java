@@ -0,0 +1,470 @@
+package analysis.distributed;
+
+import analysis.CallGraph;
+import analysis.CallGraphAlgorithm;
+import analysis.CallSteps;
+import analysis.HierarchyIndex;
+import analysis.LibrarySummaries;
+import analysis.MethodResolution;
+import analysis.ShardPlan;
+import soot.PhaseOptions;
+import soot.Scene;
+import soot.SootClass;
+import soot.SootMethod;
+import soot.options.Options;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * CHA over several worker JVMs, each with its own Soot scene, so that the bodies of a large program do not have
+ * to fit into one heap. The result is the call graph of {@link analysis.exercise1.CHAAlgorithm}, like
+ * {@link analysis.exercise1.ShardedCHAAlgorithm} produces it with threads.
+ * <p>
+ * The coordinator starts one {@link ShardWorker} per shard of the {@link ShardPlan} and talks to them over
+ * loopback sockets, see {@link Protocol}. It sends every method CHA reaches to the worker that owns its package,
+ * the worker builds the body and answers with the call steps. Targets CHA descends into go back out to their
+ * owners, so call sites that cross shards are exchanged through the coordinator. Once no visit is outstanding the
+ * workers are shut down and the steps are replayed into the scene of the coordinator. Methods a worker knows but
+ * the coordinator does not, e.g. phantoms, are added to the coordinator's scene as phantoms.
+ * <p>
+ * Workers are started with the Soot options of the coordinator and build their bodies from the class files. Each
+ * worker loads the application classes of the other shards as phantoms, see {@link ShardWorker}. With lazy bodies
+ * the coordinator's scene only needs the classes, it builds no body besides those of the entry points, but it is
+ * the caller's scene and stays fully loaded: the plan and the replay need every class.
+ * Without, the coordinator only sends methods that have a body in its scene; call site indices match as long as
+ * those bodies were not transformed after jb. Every worker indexes the whole class hierarchy before it builds any
+ * body, so classes Soot generates while building bodies, e.g. for lambdas, are not dispatch targets. Library
+ * summaries are applied by the coordinator, the workers never walk a summarized method.
+ */
+public class DistributedCHAAlgorithm extends CallGraphAlgorithm {
+    private final int workerCount;
+    private int moduleDepth;
+    private String javaCommand = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+    private String workerClasspath = System.getProperty("java.class.path");
+    private List<String> workerJvmOptions = new ArrayList<>();
+    private List<String> sootArguments;
+    private long connectTimeoutMillis = TimeUnit.SECONDS.toMillis(60);
+
+    // statistics of the last run
+    private int[] methodsPerWorker = new int[0];
+    private int[] bodiesPerWorker = new int[0];
+    private long[] heapPerWorker = new long[0];
+    private int crossShardCalls;
+
+    public DistributedCHAAlgorithm(int workerCount) {
+        if (workerCount < 1)
+            throw new IllegalArgumentException("Need at least one worker: " + workerCount);
+        this.workerCount = workerCount;
+    }
+
+    @Override
+    protected String getAlgorithm() {
+        return "CHA";
+    }
+
+    /**
+     * Shards by modules instead of packages, see {@link ShardPlan}. 0, the default, uses the whole package name.
+     */
+    public void setModuleDepth(int moduleDepth) {
+        if (moduleDepth < 0)
+            throw new IllegalArgumentException("Module depth must not be negative: " + moduleDepth);
+        this.moduleDepth = moduleDepth;
+    }
+
+    /**
+     * The java executable for the workers, by default the one of this JVM.
+     */
+    public void setJavaCommand(String javaCommand) {
+        this.javaCommand = javaCommand;
+    }
+
+    /**
+     * Class path of the worker JVMs, it needs this project and Soot. By default the class path of this JVM.
+     */
+    public void setWorkerClasspath(String workerClasspath) {
+        this.workerClasspath = workerClasspath;
+    }
+
+    /**
+     * Options for the worker JVMs, e.g. {@code -Xmx2g}.
+     */
+    public void setWorkerJvmOptions(List<String> workerJvmOptions) {
+        this.workerJvmOptions = new ArrayList<>(workerJvmOptions);
+    }
+
+    /**
+     * Soot command line options the workers set up their scene with. By default they are taken from the current
+     * {@link Options}, which covers class path, process dirs, includes and excludes, phantom refs and jb options.
+     */
+    public void setSootArguments(List<String> sootArguments) {
+        this.sootArguments = new ArrayList<>(sootArguments);
+    }
+
+    public void setConnectTimeout(long amount, TimeUnit unit) {
+        this.connectTimeoutMillis = unit.toMillis(amount);
+    }
+
+    @Override
+    protected void populateCallGraph(Scene scene, CallGraph callGraph) {
+        List<SootMethod> entryPoints = getEntryPoints(scene).collect(Collectors.toList());
+        Session session = new Session(scene, new ShardPlan(scene, workerCount, moduleDepth));
+        try {
+            session.start();
+            session.run(entryPoints);
+        } finally {
+            session.close();
+        }
+        CallSteps.replay(this, entryPoints, session.steps::get, callGraph);
+    }
+
+    /**
+     * One run: the worker processes, their connections and the steps received so far. Only the thread that runs
+     * the algorithm touches the scene, reader threads merely parse lines into messages.
+     */
+    private final class Session {
+        private final Scene scene;
+        private final ShardPlan plan;
+        private final Process[] processes = new Process[workerCount];
+        private final Socket[] sockets = new Socket[workerCount];
+        private final BufferedWriter[] writers = new BufferedWriter[workerCount];
+        private final boolean[] unflushed = new boolean[workerCount];
+        private final BlockingQueue<Message> inbox = new LinkedBlockingQueue<>();
+        private ServerSocket server;
+
+        private final Set<SootMethod> visited = new HashSet<>();
+        private final Map<SootMethod, CallSteps> steps = new HashMap<>();
+        private final Map<String, SootMethod> bySignature = new HashMap<>();
+        private int outstanding;
+        private boolean completed;
+
+        Session(Scene scene, ShardPlan plan) {
+            this.scene = scene;
+            this.plan = plan;
+            methodsPerWorker = new int[workerCount];
+            bodiesPerWorker = new int[workerCount];
+            heapPerWorker = new long[workerCount];
+            crossShardCalls = 0;
+        }
+
+        void start() {
+            try {
+                server = new ServerSocket(0, workerCount, InetAddress.getLoopbackAddress());
+                server.setSoTimeout((int) Math.min(Integer.MAX_VALUE, connectTimeoutMillis));
+                List<String> arguments = sootArguments != null ? sootArguments : currentSootArguments();
+                for (int i = 0; i < workerCount; i++) {
+                    List<String> command = new ArrayList<>();
+                    command.add(javaCommand);
+                    command.addAll(workerJvmOptions);
+                    command.addAll(Arrays.asList("-cp", workerClasspath, ShardWorker.class.getName(),
+                            String.valueOf(server.getLocalPort()), String.valueOf(i), isLazyBodies() ? "lazy" : "eager"));
+                    command.addAll(arguments);
+                    processes[i] = new ProcessBuilder(command).inheritIO().start();
+                }
+                for (int i = 0; i < workerCount; i++) {
+                    Socket socket = server.accept();
+                    BufferedReader reader = Protocol.reader(socket);
+                    String hello = reader.readLine();
+                    if (hello == null || !Protocol.is(hello, Protocol.HELLO))
+                        throw new IllegalStateException("Unexpected greeting from worker: " + hello);
+                    int shard = Integer.parseInt(Protocol.argument(hello, Protocol.HELLO));
+                    sockets[shard] = socket;
+                    writers[shard] = Protocol.writer(socket);
+                    // the worker only needs the bodies of its own shard, the rest of the program is phantom there
+                    for (SootClass sootClass : scene.getApplicationClasses()) {
+                        if (plan.shardOf(sootClass) != shard)
+                            writers[shard].write(Protocol.PHANTOM + " " + sootClass.getName() + "\n");
+                    }
+                    writers[shard].write(Protocol.LOAD + "\n");
+                    writers[shard].flush();
+                    Thread thread = new Thread(() -> receive(shard, reader), "cha-worker-" + shard);
+                    thread.setDaemon(true);
+                    thread.start();
+                }
+            } catch (SocketTimeoutException e) {
+                throw new IllegalStateException("Workers did not connect within " + connectTimeoutMillis + " ms", e);
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not start workers", e);
+            }
+        }
+
+        void run(List<SootMethod> entryPoints) {
+            for (SootMethod entryPoint : entryPoints)
+                visit(entryPoint);
+            try {
+                while (outstanding > 0) {
+                    Message message = inbox.poll();
+                    if (message == null) {
+                        flush();
+                        // bounded wait, so cancellation and the budget are noticed while the workers are busy
+                        message = inbox.poll(100, TimeUnit.MILLISECONDS);
+                    }
+                    // the steps are charged when they are replayed, the limits of the budget are checked here as
+                    // the coordinator itself does hardly any work while the workers walk the program
+                    checkLimits();
+                    if (message != null) handle(message);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while waiting for workers", e);
+            }
+            completed = true;
+        }
+
+        private void visit(SootMethod method) {
+            if (!visited.add(method)) return;
+            // summaries are applied here, workers only see methods whose body CHA walks
+            LibrarySummaries.Summary librarySummary = librarySummary(scene, method, true);
+            if (librarySummary != null) {
+                steps.put(method, CallSteps.ofLibrary(librarySummary, HierarchyIndex.forScene(scene)));
+                return;
+            }
+            // without lazy bodies the coordinator's scene knows which methods have one, no need to ask
+            if (!isLazyBodies() && !hasBody(method)) {
+                steps.put(method, CallSteps.NO_BODY);
+                return;
+            }
+            int worker = plan.shardOf(method);
+            String signature = method.getSignature();
+            bySignature.put(signature, method);
+            send(worker, Protocol.VISIT + " " + signature);
+            methodsPerWorker[worker]++;
+            outstanding++;
+        }
+
+        private void handle(Message message) {
+            if (message.failure != null)
+                throw new IllegalStateException("Worker " + message.worker + " failed: " + message.failure);
+            if (message.bye != null) {
+                bodiesPerWorker[message.worker] = (int) message.bye[0];
+                heapPerWorker[message.worker] = message.bye[1];
+                return;
+            }
+            outstanding--;
+            SootMethod method = bySignature.get(message.signature);
+            if (message.steps == null) {
+                steps.put(method, CallSteps.NO_BODY);
+                return;
+            }
+            CallSteps result = new CallSteps();
+            for (String line : message.steps) {
+                int unitEnd = line.indexOf(' ', 2);
+                boolean descend = line.charAt(0) == Protocol.DESCEND;
+                boolean isStatic = line.charAt(unitEnd + 1) == Protocol.STATIC;
+                SootMethod target = methodOf(line.substring(unitEnd + 3), isStatic);
+                result.add(target, Integer.parseInt(line.substring(2, unitEnd)), descend);
+            }
+            steps.put(method, result);
+            for (int i = 0; i < result.size(); i++) {
+                if (!result.descends(i)) continue;
+                if (plan.shardOf(result.target(i)) != message.worker) crossShardCalls++;
+                visit(result.target(i));
+            }
+        }
+
+        private SootMethod methodOf(String signature, boolean isStatic) {
+            return bySignature.computeIfAbsent(signature, s -> MethodResolution.methodOf(scene, s, isStatic));
+        }
+
+        private void send(int worker, String line) {
+            try {
+                writers[worker].write(line);
+                writers[worker].write('\n');
+                unflushed[worker] = true;
+            } catch (IOException e) {
+                throw new IllegalStateException("Lost connection to worker " + worker, e);
+            }
+        }
+
+        private void flush() {
+            for (int i = 0; i < workerCount; i++) {
+                if (!unflushed[i]) continue;
+                try {
+                    writers[i].flush();
+                } catch (IOException e) {
+                    throw new IllegalStateException("Lost connection to worker " + i, e);
+                }
+                unflushed[i] = false;
+            }
+        }
+
+        // runs on the reader thread of the worker
+        private void receive(int worker, BufferedReader reader) {
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (Protocol.is(line, Protocol.STEPS)) {
+                        String argument = Protocol.argument(line, Protocol.STEPS);
+                        int space = argument.indexOf(' ');
+                        int count = Integer.parseInt(argument.substring(0, space));
+                        List<String> lines = new ArrayList<>(count);
+                        for (int i = 0; i < count; i++) {
+                            String step = reader.readLine();
+                            if (step == null) throw new IOException("Connection closed within steps");
+                            lines.add(step);
+                        }
+                        inbox.add(new Message(worker, argument.substring(space + 1), lines));
+                    } else if (Protocol.is(line, Protocol.NO_BODY)) {
+                        inbox.add(new Message(worker, Protocol.argument(line, Protocol.NO_BODY), null));
+                    } else if (Protocol.is(line, Protocol.BYE)) {
+                        String[] values = Protocol.argument(line, Protocol.BYE).split(" ");
+                        inbox.add(Message.bye(worker, Long.parseLong(values[0]), Long.parseLong(values[1])));
+                        return;
+                    } else if (Protocol.is(line, Protocol.ERROR)) {
+                        inbox.add(Message.failure(worker, Protocol.argument(line, Protocol.ERROR)));
+                        return;
+                    } else {
+                        inbox.add(Message.failure(worker, "unknown message " + line));
+                        return;
+                    }
+                }
+                inbox.add(Message.failure(worker, "connection closed"));
+            } catch (IOException | RuntimeException e) {
+                inbox.add(Message.failure(worker, String.valueOf(e)));
+            }
+        }
+
+        void close() {
+            if (completed) {
+                // ask for the statistics of every worker, a worker that does not answer in time is killed below
+                for (int i = 0; i < workerCount; i++) {
+                    if (writers[i] != null) send(i, Protocol.QUIT);
+                }
+                flush();
+                long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+                int byes = 0;
+                try {
+                    while (byes < workerCount && System.nanoTime() < deadline) {
+                        Message message = inbox.poll(100, TimeUnit.MILLISECONDS);
+                        if (message == null || message.bye == null) continue;
+                        byes++;
+                        handle(message);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            for (Socket socket : sockets) {
+                closeQuietly(socket);
+            }
+            closeQuietly(server);
+            for (Process process : processes) {
+                if (process == null) continue;
+                try {
+                    if (!process.waitFor(10, TimeUnit.SECONDS)) process.destroyForcibly();
+                } catch (InterruptedException e) {
+                    process.destroyForcibly();
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        private void closeQuietly(AutoCloseable closeable) {
+            if (closeable == null) return;
+            try {
+                closeable.close();
+            } catch (Exception e) {
+                // nothing left to do with it
+            }
+        }
+    }
+
+    /**
+     * A parsed reply of a worker: steps, no body, the statistics at shutdown, or a failure.
+     */
+    private static final class Message {
+        final int worker;
+        final String signature;
+        final List<String> steps;
+        long[] bye;
+        String failure;
+
+        Message(int worker, String signature, List<String> steps) {
+            this.worker = worker;
+            this.signature = signature;
+            this.steps = steps;
+        }
+
+        static Message bye(int worker, long bodiesBuilt, long usedHeap) {
+            Message message = new Message(worker, null, null);
+            message.bye = new long[]{bodiesBuilt, usedHeap};
+            return message;
+        }
+
+        static Message failure(int worker, String failure) {
+            Message message = new Message(worker, null, null);
+            message.failure = failure;
+            return message;
+        }
+    }
+
+    /**
+     * The current Soot options as command line arguments, as far as they matter for loading classes and bodies.
+     */
+    private static List<String> currentSootArguments() {
+        Options options = Options.v();
+        List<String> arguments = new ArrayList<>();
+        if (options.whole_program()) arguments.add("-w");
+        if (!options.soot_classpath().isEmpty()) arguments.addAll(Arrays.asList("-cp", options.soot_classpath()));
+        for (String dir : options.process_dir())
+            arguments.addAll(Arrays.asList("-process-dir", dir));
+        for (String pattern : options.include())
+            arguments.addAll(Arrays.asList("-i", pattern));
+        for (String pattern : options.exclude())
+            arguments.addAll(Arrays.asList("-x", pattern));
+        if (options.include_all()) arguments.add("-include-all");
+        if (options.no_bodies_for_excluded()) arguments.add("-no-bodies-for-excluded");
+        if (options.allow_phantom_refs()) arguments.add("-allow-phantom-refs");
+        if (options.prepend_classpath()) arguments.add("-pp");
+        if (options.full_resolver()) arguments.add("-full-resolver");
+        for (Map.Entry<String, String> option : PhaseOptions.v().getPhaseOptions("jb").entrySet())
+            arguments.addAll(Arrays.asList("-p", "jb", option.getKey() + ":" + option.getValue()));
+        arguments.addAll(Arrays.asList("-f", "n"));
+        return arguments;
+    }
+
+    /**
+     * @return how many methods each worker was sent in the last run
+     */
+    public int[] getMethodsPerWorker() {
+        return methodsPerWorker.clone();
+    }
+
+    /**
+     * @return how many bodies each worker built in the last run
+     */
+    public int[] getBodiesPerWorker() {
+        return bodiesPerWorker.clone();
+    }
+
+    /**
+     * @return the live heap of each worker at the end of the last run, in bytes
+     */
+    public long[] getHeapPerWorker() {
+        return heapPerWorker.clone();
+    }
+
+    /**
+     * @return how many call sites of the last run descend into a method of another worker
+     */
+    public int getCrossShardCalls() {
+        return crossShardCalls;
+    }
+}
@@ -0,0 +1,74 @@
+package analysis.distributed;
+
+import analysis.CallSteps;
+import soot.SootMethod;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The line protocol between {@link DistributedCHAAlgorithm} and its {@link ShardWorker}s. One message per line,
+ * UTF-8, the keyword first. Method signatures contain spaces and always come last.
+ * <pre>
+ * worker:      HELLO shard
+ * coordinator: PHANTOM className, for every application class of the other shards
+ * coordinator: LOAD
+ * coordinator: VISIT signature
+ * worker:      STEPS count signature, followed by count lines "E|D unitIndex S|I targetSignature"
+ *              (edge or descend, static or instance target)
+ * worker:      NOBODY signature
+ * coordinator: QUIT
+ * worker:      BYE bodiesBuilt liveHeapBytes
+ * worker:      ERROR message
+ * </pre>
+ * Every VISIT is answered with exactly one STEPS or NOBODY, in the order the visits arrived.
+ */
+final class Protocol {
+    static final String HELLO = "HELLO";
+    static final String PHANTOM = "PHANTOM";
+    static final String LOAD = "LOAD";
+    static final String VISIT = "VISIT";
+    static final String STEPS = "STEPS";
+    static final String NO_BODY = "NOBODY";
+    static final String QUIT = "QUIT";
+    static final String BYE = "BYE";
+    static final String ERROR = "ERROR";
+
+    static final char EDGE = 'E';
+    static final char DESCEND = 'D';
+    static final char STATIC = 'S';
+    static final char INSTANCE = 'I';
+
+    private Protocol() {
+    }
+
+    static BufferedReader reader(Socket socket) throws IOException {
+        return new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+    }
+
+    static BufferedWriter writer(Socket socket) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+    }
+
+    static String step(CallSteps steps, int i) {
+        SootMethod target = steps.target(i);
+        return String.valueOf(steps.descends(i) ? DESCEND : EDGE) + ' ' + steps.unitIndex(i) + ' '
+                + (target.isStatic() ? STATIC : INSTANCE) + ' ' + target.getSignature();
+    }
+
+    /**
+     * @return the part of the line after the keyword
+     */
+    static String argument(String line, String keyword) {
+        return line.length() > keyword.length() ? line.substring(keyword.length() + 1) : "";
+    }
+
+    static boolean is(String line, String keyword) {
+        return line.startsWith(keyword) && (line.length() == keyword.length() || line.charAt(keyword.length()) == ' ');
+    }
+}
@@ -0,0 +1,155 @@
+package analysis.distributed;
+
+import analysis.BodyLoader;
+import analysis.CallSteps;
+import analysis.HierarchyIndex;
+import analysis.MethodSummaries;
+import soot.Scene;
+import soot.SootClass;
+import soot.SootMethod;
+import soot.options.Options;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Worker process of {@link DistributedCHAAlgorithm}. It loads its own Soot scene, builds the bodies of the
+ * methods the coordinator sends it and answers with their call steps. The coordinator names the application
+ * classes of the other shards before the scene is loaded, they become phantoms with their signatures but without
+ * instructions, so only the own shard's code is held in this process. The whole class path is still read once,
+ * the hierarchy of every class is needed to dispatch.
+ * <p>
+ * Arguments: the coordinator's port on the loopback address, the shard number, {@code lazy} or {@code eager} for
+ * the body mode of the coordinator, then the Soot options for the scene.
+ */
+public final class ShardWorker {
+    private final Scene scene;
+    private final int shard;
+    private final boolean lazyBodies;
+    private final BodyLoader loader = new BodyLoader(0);
+    private int bodiesBuilt;
+
+    private ShardWorker(Scene scene, int shard, boolean lazyBodies) {
+        this.scene = scene;
+        this.shard = shard;
+        this.lazyBodies = lazyBodies;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.err.println("Usage: ShardWorker <port> <shard> lazy|eager <soot options>");
+            System.exit(2);
+        }
+        int port = Integer.parseInt(args[0]);
+        int shard = Integer.parseInt(args[1]);
+        boolean lazyBodies = args[2].equals("lazy");
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            BufferedReader in = Protocol.reader(socket);
+            BufferedWriter out = Protocol.writer(socket);
+            // connect before loading the scene, the coordinator only waits a bounded time for workers to show up
+            out.write(Protocol.HELLO + " " + shard + "\n");
+            out.flush();
+            List<String> otherShards = new ArrayList<>();
+            String line;
+            while ((line = in.readLine()) != null && Protocol.is(line, Protocol.PHANTOM))
+                otherShards.add(Protocol.argument(line, Protocol.PHANTOM));
+            if (line == null || !Protocol.is(line, Protocol.LOAD))
+                throw new IllegalStateException("Shard " + shard + " expected the classes of the other shards: " + line);
+            try {
+                if (!Options.v().parse(Arrays.copyOfRange(args, 3, args.length)))
+                    throw new IllegalArgumentException("Invalid Soot options: " + Arrays.toString(args));
+                new ShardWorker(loadScene(otherShards), shard, lazyBodies).serve(in, out);
+            } catch (RuntimeException | Error e) {
+                out.write(Protocol.ERROR + " " + String.valueOf(e).replace('\n', ' ') + "\n");
+                out.flush();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Loads the scene with the classes of the other shards excluded, Soot makes them phantoms with their signatures
+     * only. The hierarchy stays complete, which CHA needs to dispatch. Without {@code -no-bodies-for-excluded} the
+     * excludes of the coordinator keep their bodies and would lose them with it, so the worker loads everything.
+     */
+    private static Scene loadScene(List<String> otherShards) {
+        Options options = Options.v();
+        boolean phantoms = options.exclude().isEmpty() || options.no_bodies_for_excluded();
+        if (phantoms) {
+            // the scene reads the excludes once, when it is created
+            List<String> exclude = new ArrayList<>(options.exclude());
+            exclude.addAll(otherShards);
+            options.set_exclude(exclude);
+            options.set_no_bodies_for_excluded(true);
+        }
+        Scene scene = Scene.v();
+        scene.loadNecessaryClasses();
+        if (phantoms) {
+            // phantom methods still hold the instructions Soot read for them
+            for (String name : otherShards) {
+                SootClass sootClass = scene.getSootClassUnsafe(name);
+                if (sootClass == null || !sootClass.isPhantom()) continue;
+                for (SootMethod method : sootClass.getMethods())
+                    method.setSource(null);
+            }
+        }
+        return scene;
+    }
+
+    private void serve(BufferedReader in, BufferedWriter out) throws IOException {
+        // the hierarchy is indexed before the first body, like the single process algorithms on a loaded scene
+        HierarchyIndex hierarchy = HierarchyIndex.forScene(scene);
+        MethodSummaries summaries = MethodSummaries.forScene(scene);
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (Protocol.is(line, Protocol.VISIT)) {
+                    String signature = Protocol.argument(line, Protocol.VISIT);
+                    SootMethod method = scene.grabMethod(signature);
+                    if (method == null || !hasBody(method)) {
+                        out.write(Protocol.NO_BODY + " " + signature + "\n");
+                    } else {
+                        CallSteps steps = CallSteps.of(summaries.get(method), hierarchy);
+                        out.write(Protocol.STEPS + " " + steps.size() + " " + signature + "\n");
+                        for (int i = 0; i < steps.size(); i++)
+                            out.write(Protocol.step(steps, i) + "\n");
+                    }
+                    // answers are batched until the coordinator's queue for this worker is drained
+                    if (!in.ready()) out.flush();
+                } else if (Protocol.is(line, Protocol.QUIT)) {
+                    // live heap, the statistics are only asked for at shutdown
+                    System.gc();
+                    Runtime runtime = Runtime.getRuntime();
+                    out.write(Protocol.BYE + " " + (loader.getBodiesBuilt() + bodiesBuilt) + " " + (runtime.totalMemory() - runtime.freeMemory()) + "\n");
+                    out.flush();
+                    return;
+                } else {
+                    throw new IllegalStateException("Shard " + shard + " got an unknown message: " + line);
+                }
+            }
+        } finally {
+            loader.close();
+        }
+    }
+
+    /**
+     * In lazy mode the same decision as {@link analysis.CallGraphAlgorithm#hasBody(SootMethod)}. Otherwise the
+     * coordinator only sends methods that have a body in its scene, whatever kind of class they are in.
+     */
+    private boolean hasBody(SootMethod method) {
+        if (lazyBodies) return loader.hasBody(method);
+        if (!method.isConcrete()) return false;
+        if (method.hasActiveBody()) return true;
+        // no method source, e.g. excluded from bodies; any other failure to build the body is an error
+        if (!BodyLoader.hasSource(method)) return false;
+        method.retrieveActiveBody();
+        bodiesBuilt++;
+        return true;
+    }
+}
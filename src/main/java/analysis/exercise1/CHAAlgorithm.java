@@ -1,81 +1,148 @@
 package analysis.exercise1;
 
 import analysis.CallGraph;
+import analysis.DispatchTargets;
+import analysis.HierarchyIndex;
+import analysis.LibrarySummaries;
+import analysis.MethodSummary;
 import analysis.CallGraphAlgorithm;
 import soot.*;
 import soot.jimple.InterfaceInvokeExpr;
 import soot.jimple.InvokeExpr;
-import soot.jimple.Stmt;
+import soot.jimple.VirtualInvokeExpr;
 
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
 public class CHAAlgorithm extends CallGraphAlgorithm {
 
+    private boolean followDispatch;
+
     @Override
     protected String getAlgorithm() {
         return "CHA";
     }
 
+    /**
+     * By default CHA links a virtual call to the declared method only, and adds but does not walk the targets of
+     * interface calls. With followDispatch, virtual calls dispatch through the class hierarchy like interface calls,
+     * and the walk descends into every dispatch target. The result contains every edge RTA, VTA and the points-to
+     * analysis can find, which makes it the sound fallback for them when their budget runs out.
+     */
+    public void setFollowDispatch(boolean followDispatch) {
+        this.followDispatch = followDispatch;
+    }
+
+    public boolean isFollowDispatch() {
+        return followDispatch;
+    }
+
+    /**
+     * @return CHA with {@link #setFollowDispatch(boolean) followDispatch}, the fallback of the more precise algorithms
+     */
+    public static CHAAlgorithm soundFallback() {
+        CHAAlgorithm cha = new CHAAlgorithm();
+        cha.setFollowDispatch(true);
+        return cha;
+    }
+
     @Override
     protected void populateCallGraph(Scene scene, CallGraph callGraph) {
         // Your implementation goes here, also feel free to add methods as needed
         // To get your entry points we prepared getEntryPoints(scene) in the superclass for you
 
         // Writing new method, as a usability for recursive calls.
+        // A method is flowed through once, walking it again adds nothing and would not end on recursive calls
+        Set<SootMethod> visited = new HashSet<>();
         this.getEntryPoints(scene).forEach(
-                entryPoint -> constructCHAAlgorithm(callGraph, entryPoint, scene));
+                entryPoint -> constructCHAAlgorithm(callGraph, entryPoint, scene, visited));
     }
 
-    private void constructCHAAlgorithm(CallGraph callGraph, SootMethod method, Scene scene) {
+    private void constructCHAAlgorithm(CallGraph callGraph, SootMethod method, Scene scene, Set<SootMethod> visited) {
+        // A library method with a summary is not walked, even if it has a body
+        LibrarySummaries.Summary librarySummary = librarySummary(scene, method, true);
+        if (librarySummary != null) {
+            if (visited.add(method)) {
+                addNodeToCallGraph(method, callGraph);
+                flowThroughLibrary(method, librarySummary, callGraph, scene, visited);
+            }
+        }
         // To identify method calls, have a look at the body of a method where hasActiveBody() re-
         //turns true
-        if (method.hasActiveBody()) {
+        else if (hasBody(method) && visited.add(method)) {
             // This is a method. So add it to the call graph and mae sure it is not added before
             addNodeToCallGraph(method, callGraph);
             // If we identify a method we need to flow through all the units of the method to find
             // any other possible calls
-            flowThroughMethod(method, callGraph, scene);
+            flowThroughMethod(method, callGraph, scene, visited);
 
         } else { // This is not a method call and out of our scope
         }
     }
 
-    private void flowThroughMethod(SootMethod entryPoint, CallGraph callGraph, Scene scene) {
-        entryPoint.getActiveBody().getUnits().forEach(unit -> {
-            Stmt stmt = (Stmt) unit;
-            // According to our use-case, check whether any method call is made when analyzing the unit.
-            // Method call can be found by containsInvokeExpr() returning true.
-            if (stmt.containsInvokeExpr()) {
-                InvokeExpr invokeExpr = stmt.getInvokeExpr();
-                // Get the name of the invoked method
-                SootMethod method = invokeExpr.getMethod();
-                // Add the new method to the call graph and construct an edge from the current method to new method
-                addNodeToCallGraph(method, callGraph);
-                addEdgeToCallGraph(entryPoint, method, callGraph);
-                // One interesting call site is the method can either be abstract class or interface
-                // , which needs to be handled differently.
-                if (invokeExpr instanceof InterfaceInvokeExpr) {
-                    // https://stackoverflow.com/questions/42570651/how-to-get-the-subclass-of-a-class-by-soot
-                    // To find the methods inside the interface, we need to get the hierarchy of the Scene class
-                    Hierarchy activeHierarchy = scene.getActiveHierarchy();
-//                    FastHierarchy fastHierarchy = scene.getFastHierarchy();
-                    // resolveAbstractDispatch gives a list of possible receiver methods
-                    List<SootMethod> sootMethods = activeHierarchy.resolveAbstractDispatch(method.getDeclaringClass(), method);
-//                    Set<SootMethod> sootMethods = fastHierarchy.resolveAbstractDispatch(method.getDeclaringClass(), method);
-                    for (SootMethod sootMethod : sootMethods) {
-                        addNodeToCallGraph(sootMethod,callGraph);
-                        addEdgeToCallGraph(entryPoint,sootMethod,callGraph);
-                    }
-
-                }
-                else {
-                    // Once the new method is added and edge created, it is now time to construct CHAAlgorithm for
-                    // new (Target) Method
-                    constructCHAAlgorithm(callGraph, method, scene);
+    private void flowThroughMethod(SootMethod entryPoint, CallGraph callGraph, Scene scene, Set<SootMethod> visited) {
+        // The summary lists the call sites of the body in order, together with the position of their unit
+        MethodSummary summary = summarize(scene, entryPoint);
+        chargeWork(1);
+        for (int i = 0; i < summary.invokeCount(); i++) {
+            // Every call site counts against the budget, if there is one
+            chargeWork(1);
+            int unitIndex = summary.invokeUnit(i);
+            InvokeExpr invokeExpr = summary.invokeExpr(i);
+            // Get the name of the invoked method
+            SootMethod method = invokeExpr.getMethod();
+            // Add the new method to the call graph and construct an edge from the current method to new method
+            addNodeToCallGraph(method, callGraph);
+            addEdgeToCallGraph(entryPoint, method, unitIndex, callGraph);
+            // One interesting call site is the method can either be abstract class or interface
+            // , which needs to be handled differently.
+            if (invokeExpr instanceof InterfaceInvokeExpr || followDispatch && invokeExpr instanceof VirtualInvokeExpr) {
+                // https://stackoverflow.com/questions/42570651/how-to-get-the-subclass-of-a-class-by-soot
+                // To find the methods inside the interface, we need the class hierarchy of the Scene. The index is
+                // built once per Scene and caches the dispatch result per declared type and sub-signature
+                HierarchyIndex hierarchy = HierarchyIndex.forScene(scene);
+                // dispatchTargets gives the possible receiver methods as one interned set. Every call site of the
+                // same interface method shares it, the call graph keeps a reference instead of an edge per target
+                DispatchTargets targets = hierarchy.dispatchTargets(method.getDeclaringClass(), method);
+                callGraph.addCallSite(entryPoint, unitIndex, targets);
+                if (followDispatch) {
+                    // the declared method too, its class may have no concrete subtype in the scene
+                    constructCHAAlgorithm(callGraph, method, scene, visited);
+                    for (SootMethod target : targets.getTargets())
+                        constructCHAAlgorithm(callGraph, target, scene, visited);
                 }
             }
-        });
+            else {
+                // Once the new method is added and edge created, it is now time to construct CHAAlgorithm for
+                // new (Target) Method
+                constructCHAAlgorithm(callGraph, method, scene, visited);
+            }
+        }
+        // All call sites have their edges now
+        markCompleted(entryPoint);
+    }
+
+    private void flowThroughLibrary(SootMethod libraryMethod, LibrarySummaries.Summary summary, CallGraph callGraph, Scene scene, Set<SootMethod> visited) {
+        // The summary stands for the library methods the walk would reach from here. Only its interface calls can
+        // lead back into the program, they get call sites like the interface calls of a body
+        chargeWork(1);
+        HierarchyIndex hierarchy = HierarchyIndex.forScene(scene);
+        List<SootMethod> interfaceCalls = summary.getInterfaceCalls();
+        for (int i = 0; i < interfaceCalls.size(); i++) {
+            chargeWork(1);
+            SootMethod method = interfaceCalls.get(i);
+            int callSite = CallGraph.summaryCallSite(i);
+            addNodeToCallGraph(method, callGraph);
+            addEdgeToCallGraph(libraryMethod, method, callSite, callGraph);
+            DispatchTargets targets = hierarchy.dispatchTargets(method.getDeclaringClass(), method);
+            callGraph.addCallSite(libraryMethod, callSite, targets);
+            if (followDispatch) {
+                for (SootMethod target : targets.getTargets())
+                    constructCHAAlgorithm(callGraph, target, scene, visited);
+            }
+        }
+        markCompleted(libraryMethod);
     }
 
     private void addNodeToCallGraph(SootMethod method, CallGraph callGraph) {
@@ -85,12 +152,15 @@ public class CHAAlgorithm extends CallGraphAlgorithm {
         }
     }
 
-    private void addEdgeToCallGraph(SootMethod sourceMethod, SootMethod targetMethod, CallGraph callGraph) {
+    private void addEdgeToCallGraph(SootMethod sourceMethod, SootMethod targetMethod, int unitIndex, CallGraph callGraph) {
         if (!callGraph.hasNode(sourceMethod) || !callGraph.hasNode(targetMethod))
             throw new RuntimeException("Method is not found in the nodes list");
-        // Check if the edge already exists
-        if (!callGraph.hasEdge(sourceMethod, targetMethod))
-            callGraph.addEdge(sourceMethod, targetMethod);
+        // Check if the edge already exists, per call site if the call graph records them
+        if (callGraph.recordsCallSites()) {
+            if (!callGraph.hasEdge(sourceMethod, targetMethod, unitIndex))
+                callGraph.addEdge(sourceMethod, targetMethod, unitIndex);
+        } else
+            callGraph.addEdgeIfAbsent(sourceMethod, targetMethod);
     }
 
 }
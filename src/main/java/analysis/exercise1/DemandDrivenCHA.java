@@ -0,0 +1,132 @@
+package analysis.exercise1;
+
+import analysis.CallGraph;
+import analysis.HierarchyIndex;
+import analysis.MethodSummaries;
+import analysis.MethodSummary;
+import soot.Scene;
+import soot.SootClass;
+import soot.SootMethod;
+import soot.jimple.InterfaceInvokeExpr;
+import soot.jimple.InvokeExpr;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Demand-driven variant of {@link CHAAlgorithm}: instead of building the whole call graph from the entry points,
+ * clients ask for the callees or callers of single methods.
+ * <p>
+ * A callee query only looks at the body of the queried method and resolves its call sites with the same rules as
+ * {@link CHAAlgorithm} (declared target, plus all implementations for interface calls). A caller query has to
+ * find the call sites that may dispatch to the method. Dispatch never changes the sub-signature, so the first
+ * caller query does one cheap pass over all application bodies that only records which sub-signatures each
+ * method invokes, after that only the candidate callers get resolved. Every answer is memoized and shared by
+ * later queries.
+ */
+public class DemandDrivenCHA {
+    private final Scene scene;
+    private final CallGraph resolved = new CallGraph("CHA-demand");
+    private final Map<SootMethod, Set<SootMethod>> callees = new HashMap<>();
+    private final Map<SootMethod, Set<SootMethod>> callers = new HashMap<>();
+
+    // sub-signature -> methods that contain a call site with this sub-signature
+    private Map<String, List<SootMethod>> callSitesBySubSignature;
+    private int bodiesResolved;
+
+    public DemandDrivenCHA(Scene scene) {
+        this.scene = scene;
+    }
+
+    public Set<SootMethod> calleesOf(SootMethod method) {
+        Set<SootMethod> result = callees.get(method);
+        if (result == null) {
+            result = resolveCallees(method);
+            callees.put(method, result);
+        }
+        return result;
+    }
+
+    public Set<SootMethod> callersOf(SootMethod method) {
+        Set<SootMethod> result = callers.get(method);
+        if (result == null) {
+            result = new HashSet<>();
+            for (SootMethod candidate : candidateCallers(method.getSubSignature())) {
+                if (calleesOf(candidate).contains(method))
+                    result.add(candidate);
+            }
+            result = Collections.unmodifiableSet(result);
+            callers.put(method, result);
+        }
+        return result;
+    }
+
+    /**
+     * The part of the CHA call graph that was resolved by the queries so far: it contains exactly the out-edges of
+     * every method whose callees were asked for, directly or through a caller query.
+     */
+    public CallGraph getResolvedCallGraph() {
+        return resolved;
+    }
+
+    /**
+     * Number of method bodies whose call sites were resolved so far.
+     */
+    public int getBodiesResolved() {
+        return bodiesResolved;
+    }
+
+    private Set<SootMethod> resolveCallees(SootMethod method) {
+        if (!method.hasActiveBody()) return Collections.emptySet();
+
+        bodiesResolved++;
+        Set<SootMethod> targets = new LinkedHashSet<>();
+        MethodSummary summary = MethodSummaries.forScene(scene).get(method);
+        for (int i = 0; i < summary.invokeCount(); i++) {
+            InvokeExpr invokeExpr = summary.invokeExpr(i);
+            SootMethod target = invokeExpr.getMethod();
+            targets.add(target);
+            if (invokeExpr instanceof InterfaceInvokeExpr) {
+                HierarchyIndex hierarchy = HierarchyIndex.forScene(scene);
+                targets.addAll(hierarchy.resolveAbstractDispatch(target.getDeclaringClass(), target));
+            }
+        }
+
+        addNode(method);
+        for (SootMethod target : targets) {
+            addNode(target);
+            resolved.addEdgeIfAbsent(method, target);
+        }
+        return Collections.unmodifiableSet(targets);
+    }
+
+    private List<SootMethod> candidateCallers(String subSignature) {
+        if (callSitesBySubSignature == null) {
+            callSitesBySubSignature = new HashMap<>();
+            for (SootClass sootClass : scene.getApplicationClasses()) {
+                for (SootMethod method : sootClass.getMethods()) {
+                    if (!method.hasActiveBody()) continue;
+
+                    Set<String> invoked = new HashSet<>();
+                    MethodSummary summary = MethodSummaries.forScene(scene).get(method);
+                    for (int i = 0; i < summary.invokeCount(); i++)
+                        invoked.add(summary.invokeExpr(i).getMethodRef().getSubSignature().getString());
+                    for (String invokedSubSignature : invoked)
+                        callSitesBySubSignature.computeIfAbsent(invokedSubSignature, k -> new ArrayList<>()).add(method);
+                }
+            }
+        }
+        return callSitesBySubSignature.getOrDefault(subSignature, Collections.emptyList());
+    }
+
+    private void addNode(SootMethod method) {
+        if (!resolved.hasNode(method))
+            resolved.addNode(method);
+    }
+}
@@ -0,0 +1,197 @@
+package analysis.exercise1;
+
+import analysis.CallGraph;
+import analysis.CallSteps;
+import analysis.CancellationToken;
+import analysis.HierarchyIndex;
+import analysis.LibrarySummaries;
+import analysis.ShardPlan;
+import soot.Scene;
+import soot.SootMethod;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+/**
+ * CHA that splits the work over shards of packages and produces exactly the call graph of {@link CHAAlgorithm},
+ * including the order in which nodes and edges are added.
+ * <p>
+ * Application packages are packed into shards by method count, every shard has its own thread. A shard
+ * summarizes the bodies of its methods and resolves their call sites into a list of steps, the partial call
+ * graph of the shard. Callees CHA descends into are handed to the shard that owns their package, so only
+ * reachable methods are processed. Once all shards are idle, the final step replays the steps from the entry
+ * points in the order CHA would visit them and stitches the partial graphs into one {@link CallGraph}. The replay
+ * does not touch bodies and is cheap compared to the shard phase. Library methods with a summary get the steps of
+ * their summary instead of being walked, as in CHA.
+ */
+public class ShardedCHAAlgorithm extends CHAAlgorithm {
+    private final int shardCount;
+    private int moduleDepth;
+
+    // statistics of the last run
+    private int[] methodsPerShard = new int[0];
+    private int crossShardCalls;
+
+    public ShardedCHAAlgorithm(int shardCount) {
+        if (shardCount < 1)
+            throw new IllegalArgumentException("Need at least one shard: " + shardCount);
+        this.shardCount = shardCount;
+    }
+
+    /**
+     * Shards by modules instead of packages, see {@link ShardPlan}. 0, the default, uses the whole package name.
+     */
+    public void setModuleDepth(int moduleDepth) {
+        if (moduleDepth < 0)
+            throw new IllegalArgumentException("Module depth must not be negative: " + moduleDepth);
+        this.moduleDepth = moduleDepth;
+    }
+
+    /**
+     * Not supported, the shards record and replay the steps of plain CHA.
+     */
+    @Override
+    public void setFollowDispatch(boolean followDispatch) {
+        if (followDispatch)
+            throw new UnsupportedOperationException("Sharded CHA does not follow dispatch, use CHAAlgorithm");
+    }
+
+    /**
+     * State of one run, shard i only ever touches visited.get(i) and steps.get(i) from its own thread.
+     */
+    private final class Run {
+        private final Scene scene;
+        private final HierarchyIndex hierarchy;
+        private final ShardPlan plan;
+        private final ExecutorService[] executors = new ExecutorService[shardCount];
+        private final List<Set<SootMethod>> visited = new ArrayList<>();
+        private final List<Map<SootMethod, CallSteps>> steps = new ArrayList<>();
+        private final AtomicInteger pending = new AtomicInteger();
+        private final AtomicInteger crossShard = new AtomicInteger();
+        private final CountDownLatch idle = new CountDownLatch(1);
+        private final AtomicReference<Throwable> failure = new AtomicReference<>();
+        private final CancellationToken cancellationToken = getCancellationToken();
+
+        Run(Scene scene) {
+            this.scene = scene;
+            this.hierarchy = HierarchyIndex.forScene(scene);
+            this.plan = new ShardPlan(scene, shardCount, moduleDepth);
+            for (int i = 0; i < shardCount; i++) {
+                int shard = i;
+                executors[i] = Executors.newSingleThreadExecutor(r -> {
+                    Thread thread = new Thread(r, "cha-shard-" + shard);
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                visited.add(new HashSet<>());
+                steps.add(new HashMap<>());
+            }
+        }
+
+        void start(List<SootMethod> entryPoints) {
+            // held until all entry points are submitted, so that an early finish does not look like idle shards
+            pending.incrementAndGet();
+            for (SootMethod entryPoint : entryPoints)
+                submit(entryPoint);
+            if (pending.decrementAndGet() == 0) idle.countDown();
+        }
+
+        void submit(SootMethod method) {
+            pending.incrementAndGet();
+            executors[plan.shardOf(method)].execute(() -> {
+                try {
+                    if (failure.get() == null && (cancellationToken == null || !cancellationToken.isCancelled()))
+                        process(method);
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                } finally {
+                    if (pending.decrementAndGet() == 0) idle.countDown();
+                }
+            });
+        }
+
+        private void process(SootMethod method) {
+            int shard = plan.shardOf(method);
+            if (!visited.get(shard).add(method)) return;
+            // like CHA, a library method with a summary is not walked, even if it has a body
+            LibrarySummaries.Summary librarySummary = librarySummary(scene, method, true);
+            if (librarySummary != null) {
+                steps.get(shard).put(method, CallSteps.ofLibrary(librarySummary, hierarchy));
+                return;
+            }
+            if (!hasBody(method)) {
+                steps.get(shard).put(method, CallSteps.NO_BODY);
+                return;
+            }
+
+            CallSteps result = CallSteps.of(summarize(scene, method), hierarchy);
+            for (int i = 0; i < result.size(); i++) {
+                if (!result.descends(i)) continue;
+                SootMethod target = result.target(i);
+                if (plan.shardOf(target) != shard) crossShard.incrementAndGet();
+                submit(target);
+            }
+            steps.get(shard).put(method, result);
+        }
+
+        CallSteps stepsOf(SootMethod method) {
+            return steps.get(plan.shardOf(method)).get(method);
+        }
+
+        void awaitIdle() {
+            try {
+                idle.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while waiting for shards", e);
+            } finally {
+                for (ExecutorService executor : executors)
+                    executor.shutdownNow();
+            }
+            Throwable t = failure.get();
+            if (t instanceof RuntimeException) throw (RuntimeException) t;
+            if (t instanceof Error) throw (Error) t;
+        }
+    }
+
+    @Override
+    protected void populateCallGraph(Scene scene, CallGraph callGraph) {
+        List<SootMethod> entryPoints = getEntryPoints(scene).collect(Collectors.toList());
+        Run run = new Run(scene);
+        run.start(entryPoints);
+        run.awaitIdle();
+        // a cancelled run stops the shards early, chargeWork below throws for it
+        chargeWork(0);
+
+        methodsPerShard = new int[shardCount];
+        for (int i = 0; i < shardCount; i++)
+            methodsPerShard[i] = run.steps.get(i).size();
+        crossShardCalls = run.crossShard.get();
+
+        CallSteps.replay(this, entryPoints, run::stepsOf, callGraph);
+    }
+
+    /**
+     * @return how many methods each shard processed in the last run
+     */
+    public int[] getMethodsPerShard() {
+        return methodsPerShard.clone();
+    }
+
+    /**
+     * @return how many call sites of the last run descend into a method of another shard
+     */
+    public int getCrossShardCalls() {
+        return crossShardCalls;
+    }
+}
@@ -2,21 +2,26 @@ package analysis.exercise2;
 
 
 import analysis.CallGraph;
+import analysis.CallGraphAlgorithm;
+import analysis.HierarchyIndex;
+import analysis.LibrarySummaries;
+import analysis.MethodSummary;
 import analysis.exercise1.CHAAlgorithm;
-import soot.Hierarchy;
 import soot.Scene;
 import soot.SootClass;
 import soot.SootMethod;
 import soot.jimple.InstanceInvokeExpr;
 import soot.jimple.InvokeExpr;
-import soot.jimple.Stmt;
 import soot.jimple.internal.JAssignStmt;
 import soot.jimple.internal.JInterfaceInvokeExpr;
 import soot.jimple.internal.JNewExpr;
 import soot.jimple.internal.JSpecialInvokeExpr;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 public class RTAAlgorithm extends CHAAlgorithm  {
 
@@ -29,72 +34,163 @@ public class RTAAlgorithm extends CHAAlgorithm  {
     // So Creating one set for storing all the initialized Classes
     HashSet<SootClass> intializedClasses = new HashSet<>();
 
+    // Interface call edges to classes that are not initialized yet, added once the class is. Every method is
+    // walked once, so an interface call site has to learn about the classes initialized after it was walked
+    private final HashMap<SootClass, List<PendingEdge>> pendingEdges = new HashMap<>();
+
+    // Callers with pending edges are not complete, a fallback has to fill in the edges they may still get. The
+    // count is kept per caller, those done with their walk wait for it to drop to zero
+    private final HashMap<SootMethod, Integer> pendingEdgeCounts = new HashMap<>();
+    private final HashSet<SootMethod> waitingForEdges = new HashSet<>();
+
+    // CHA walks every method RTA walks, and adds every interface target whatever was initialized. Following
+    // dispatch keeps the fallback the same for all algorithms that are more precise than CHA
+    @Override
+    protected CallGraphAlgorithm createFallbackAlgorithm() {
+        return CHAAlgorithm.soundFallback();
+    }
+
+    // RTA only dispatches interface calls, and only to initialized classes
+    @Override
+    public void setFollowDispatch(boolean followDispatch) {
+        if (followDispatch)
+            throw new UnsupportedOperationException("RTA does not follow dispatch, use CHAAlgorithm");
+    }
+
     @Override
     protected void populateCallGraph(Scene scene, CallGraph callGraph) {
         // Your implementation goes here, also feel free to add methods as needed
         // To get your entry points we prepared getEntryPoints(scene) in the superclass for you
         //RTA only takes into account that the program ACTUALLY INSTANTIATES. (Instantiation is creating an object)
+        // Every run starts from a program that has initialized nothing
+        intializedClasses.clear();
+        pendingEdges.clear();
+        pendingEdgeCounts.clear();
+        waitingForEdges.clear();
         // Writing new method, as a usability for recursive calls.
+        // A method is flowed through once, walking it again adds nothing and would not end on recursive calls
+        Set<SootMethod> visited = new HashSet<>();
         this.getEntryPoints(scene).forEach(
-                entryPoint -> constructRTAAlgorithm(callGraph, entryPoint, scene));
-
+                entryPoint -> constructRTAAlgorithm(callGraph, entryPoint, scene, visited));
+        // The walk is over, the edges still pending are to classes the program never initializes
+        waitingForEdges.forEach(this::markCompleted);
     }
 
-    private void constructRTAAlgorithm(CallGraph callGraph, SootMethod method, Scene scene){
-        if (method.hasActiveBody()) {
+    private void constructRTAAlgorithm(CallGraph callGraph, SootMethod method, Scene scene, Set<SootMethod> visited){
+        // A library method with a summary is not walked, even if it has a body. RTA does not walk constructors
+        LibrarySummaries.Summary librarySummary = librarySummary(scene, method, false);
+        if (librarySummary != null) {
+            if (visited.add(method)) {
+                addNodeToCallGraph(method, callGraph);
+                flowThroughLibrary(method, librarySummary, callGraph, scene);
+            }
+        }
+        else if (hasBody(method) && visited.add(method)) {
             // This is a method. So add it to the call graph and mae sure it is not added before
             addNodeToCallGraph(method, callGraph);
             // If we identify a method we need to flow through all the units of the method to find
             // any other possible calls
-            flowThroughMethod(method, callGraph, scene);
+            flowThroughMethod(method, callGraph, scene, visited);
 
         } else { // This is not a method call and out of our scope
         }
     }
 
-    private void flowThroughMethod(SootMethod entryPoint, CallGraph callGraph, Scene scene) {
-        entryPoint.getActiveBody().getUnits().forEach(unit -> {
-            Stmt stmt = (Stmt) unit;
-            // According to our use-case, check whether any method call is made when analyzing the unit.
-            // Method call can be found by containsInvokeExpr() returning true.
-            if (stmt.containsInvokeExpr()) {
-                InvokeExpr invokeExpr = stmt.getInvokeExpr();
-                // Get the name of the invoked method
-                SootMethod method = invokeExpr.getMethod();
-                // Add the new method to the call graph and construct an edge from the current method to new method
-                addNodeToCallGraph(method, callGraph);
-                addEdgeToCallGraph(entryPoint, method, callGraph);
-                //According to our usecase, we need to store all the classes initiliazed.
-                // For the class to be initialized it should have the new() Operator. So check all the statements for that
-                if(invokeExpr instanceof JSpecialInvokeExpr){
-                    intializedClasses.add(method.getDeclaringClass());
-                }
-                // One interesting call site is the method can either be abstract class or interface
-                // , which needs to be handled differently.
-                else if(invokeExpr instanceof JInterfaceInvokeExpr){
-                    // https://stackoverflow.com/questions/42570651/how-to-get-the-subclass-of-a-class-by-soot
-                    // To find the methods inside the interface, we need to get the hierarchy of the Scene class
-                    Hierarchy activeHierarchy = scene.getActiveHierarchy();
-//                    FastHierarchy fastHierarchy = scene.getFastHierarchy();
-                    // resolveAbstractDispatch gives a list of possible receiver methods
-                    List<SootMethod> sootMethods = activeHierarchy.resolveAbstractDispatch(method.getDeclaringClass(), method);
-//                    Set<SootMethod> sootMethods = fastHierarchy.resolveAbstractDispatch(method.getDeclaringClass(), method);
-                    for (SootMethod sootMethod : sootMethods) {
-                        // Only initialized classes should be added to the call graph
-                        if(intializedClasses.contains(sootMethod.getDeclaringClass())) {
-                            addNodeToCallGraph(sootMethod, callGraph);
-                            addEdgeToCallGraph(entryPoint, sootMethod, callGraph);
-                        }
-                    }
-                }
-                else{
-                    // Once the new method is added and edge created, it is now time to construct CHAAlgorithm for
-                    // new (Target) Method
-                    constructRTAAlgorithm(callGraph, method, scene);
+    private void flowThroughMethod(SootMethod entryPoint, CallGraph callGraph, Scene scene, Set<SootMethod> visited) {
+        // The summary lists the call sites of the body in order, together with the position of their unit
+        MethodSummary summary = summarize(scene, entryPoint);
+        chargeWork(1);
+        for (int i = 0; i < summary.invokeCount(); i++) {
+            // Every call site counts against the budget, if there is one
+            chargeWork(1);
+            int unitIndex = summary.invokeUnit(i);
+            InvokeExpr invokeExpr = summary.invokeExpr(i);
+            // Get the name of the invoked method
+            SootMethod method = invokeExpr.getMethod();
+            // Add the new method to the call graph and construct an edge from the current method to new method
+            addNodeToCallGraph(method, callGraph);
+            addEdgeToCallGraph(entryPoint, method, unitIndex, callGraph);
+            //According to our usecase, we need to store all the classes initiliazed.
+            // For the class to be initialized it should have the new() Operator. So check all the statements for that
+            if(invokeExpr instanceof JSpecialInvokeExpr){
+                initializeClass(method.getDeclaringClass(), callGraph);
+            }
+            // One interesting call site is the method can either be abstract class or interface
+            // , which needs to be handled differently.
+            else if(invokeExpr instanceof JInterfaceInvokeExpr){
+                // https://stackoverflow.com/questions/42570651/how-to-get-the-subclass-of-a-class-by-soot
+                // To find the methods inside the interface, we need the class hierarchy of the Scene. The index is
+                // built once per Scene and caches the dispatch result per declared type and sub-signature
+                HierarchyIndex hierarchy = HierarchyIndex.forScene(scene);
+                // resolveAbstractDispatch gives a list of possible receiver methods
+                List<SootMethod> sootMethods = hierarchy.resolveAbstractDispatch(method.getDeclaringClass(), method);
+                for (SootMethod sootMethod : sootMethods) {
+                    // Only initialized classes should be added to the call graph
+                    addEdgeOnceInitialized(entryPoint, sootMethod, unitIndex, callGraph);
                 }
+            }
+            else{
+                // Once the new method is added and edge created, it is now time to construct CHAAlgorithm for
+                // new (Target) Method
+                constructRTAAlgorithm(callGraph, method, scene, visited);
+            }
+
+        }
+        // All call sites have their edges now, unless some wait for their class to be initialized
+        completeOnceNothingPending(entryPoint);
+    }
+
+    private void flowThroughLibrary(SootMethod libraryMethod, LibrarySummaries.Summary summary, CallGraph callGraph, Scene scene) {
+        // The summary stands for the library methods the walk would reach from here. The classes they initialize
+        // count like the ones the program initializes, their interface calls can lead back into the program
+        chargeWork(1);
+        for (SootClass sootClass : summary.getInstantiatedClasses())
+            initializeClass(sootClass, callGraph);
+        HierarchyIndex hierarchy = HierarchyIndex.forScene(scene);
+        List<SootMethod> interfaceCalls = summary.getInterfaceCalls();
+        for (int i = 0; i < interfaceCalls.size(); i++) {
+            chargeWork(1);
+            SootMethod method = interfaceCalls.get(i);
+            int callSite = CallGraph.summaryCallSite(i);
+            addNodeToCallGraph(method, callGraph);
+            addEdgeToCallGraph(libraryMethod, method, callSite, callGraph);
+            for (SootMethod sootMethod : hierarchy.resolveAbstractDispatch(method.getDeclaringClass(), method))
+                addEdgeOnceInitialized(libraryMethod, sootMethod, callSite, callGraph);
+        }
+        completeOnceNothingPending(libraryMethod);
+    }
+
+    private void completeOnceNothingPending(SootMethod method) {
+        if (pendingEdgeCounts.containsKey(method))
+            waitingForEdges.add(method);
+        else
+            markCompleted(method);
+    }
 
+    private void addEdgeOnceInitialized(SootMethod caller, SootMethod target, int unitIndex, CallGraph callGraph) {
+        if (intializedClasses.contains(target.getDeclaringClass())) {
+            addNodeToCallGraph(target, callGraph);
+            addEdgeToCallGraph(caller, target, unitIndex, callGraph);
+        } else {
+            pendingEdges.computeIfAbsent(target.getDeclaringClass(), c -> new ArrayList<>())
+                    .add(new PendingEdge(caller, target, unitIndex));
+            pendingEdgeCounts.merge(caller, 1, Integer::sum);
+        }
+    }
+
+    private void initializeClass(SootClass sootClass, CallGraph callGraph) {
+        if (!intializedClasses.add(sootClass)) return;
+        List<PendingEdge> pending = pendingEdges.remove(sootClass);
+        if (pending == null) return;
+        for (PendingEdge edge : pending) {
+            addNodeToCallGraph(edge.target, callGraph);
+            addEdgeToCallGraph(edge.caller, edge.target, edge.unitIndex, callGraph);
+            int remaining = pendingEdgeCounts.merge(edge.caller, -1, Integer::sum);
+            if (remaining == 0) {
+                pendingEdgeCounts.remove(edge.caller);
+                if (waitingForEdges.remove(edge.caller)) markCompleted(edge.caller);
             }
-        });
+        }
     }
 
     private void addNodeToCallGraph(SootMethod method, CallGraph callGraph) {
@@ -105,12 +201,27 @@ public class RTAAlgorithm extends CHAAlgorithm  {
     }
 
 
-    private void addEdgeToCallGraph(SootMethod sourceMethod, SootMethod targetMethod, CallGraph callGraph) {
+    private void addEdgeToCallGraph(SootMethod sourceMethod, SootMethod targetMethod, int unitIndex, CallGraph callGraph) {
         if (!callGraph.hasNode(sourceMethod) || !callGraph.hasNode(targetMethod))
             throw new RuntimeException("Method is not found in the nodes list");
-        // Check if the edge already exists
-        if (!callGraph.hasEdge(sourceMethod, targetMethod))
-            callGraph.addEdge(sourceMethod, targetMethod);
+        // Check if the edge already exists, per call site if the call graph records them
+        if (callGraph.recordsCallSites()) {
+            if (!callGraph.hasEdge(sourceMethod, targetMethod, unitIndex))
+                callGraph.addEdge(sourceMethod, targetMethod, unitIndex);
+        } else
+            callGraph.addEdgeIfAbsent(sourceMethod, targetMethod);
+    }
+
+    private static final class PendingEdge {
+        final SootMethod caller;
+        final SootMethod target;
+        final int unitIndex;
+
+        PendingEdge(SootMethod caller, SootMethod target, int unitIndex) {
+            this.caller = caller;
+            this.target = target;
+            this.unitIndex = unitIndex;
+        }
     }
 
 }
@@ -2,6 +2,11 @@ package analysis.exercise3;
 
 import analysis.CallGraph;
 import analysis.CallGraphAlgorithm;
+import analysis.CheckpointInput;
+import analysis.CheckpointOutput;
+import analysis.HierarchyIndex;
+import analysis.MethodSummaries;
+import analysis.MethodSummary;
 import analysis.exercise1.CHAAlgorithm;
 import org.graphstream.algorithm.TarjanStronglyConnectedComponents;
 import org.graphstream.graph.Edge;
@@ -13,9 +18,9 @@ import org.slf4j.LoggerFactory;
 import soot.*;
 import soot.jimple.FieldRef;
 import soot.jimple.InvokeExpr;
-import soot.jimple.Stmt;
 import soot.jimple.internal.*;
 
+import java.io.IOException;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -31,14 +36,42 @@ public class VTAAlgorithm extends CallGraphAlgorithm {
     // As VTA is a variable type analysis, we need a variable and it's corresponding type to be stored in order to perform VTA
     // So we declare a map to store this data
     // One variable can be of various class types(because of typecast), so declaring the value as a set
-    HashMap<String, Set<SootClass>> variableTypes = new HashMap<>();
+    // Variables are locals and fields, VariableIds numbers them and the type set of a variable is stored at its id
+    private VariableIds variables = new VariableIds();
+    private List<Set<SootClass>> variableTypes = new ArrayList<>();
+    // entry points are processed in order, a resumed run continues after the ones that are done
+    private int entryPointsDone;
+    private boolean restored;
+
+    private MethodSummaries summaries;
+    private HierarchyIndex hierarchy;
+
+    // VTA resolves virtual calls to overriding methods, plain CHA links them to the declared method only. CHA that
+    // follows dispatch never misses a target VTA finds
+    @Override
+    protected CallGraphAlgorithm createFallbackAlgorithm() {
+        return CHAAlgorithm.soundFallback();
+    }
 
     @Override
     protected void populateCallGraph(Scene scene, CallGraph callGraph) {
-        // Form Initial conservative Call Graph, as VTA requires already constructed callgraph
-        CallGraph chaCallGraph = new CHAAlgorithm().constructCallGraph(scene);
-
-        this.getEntryPoints(scene).forEach(entryPoint -> this.constructVTAAlgorithm(callGraph, entryPoint, scene));
+        summaries = MethodSummaries.forScene(scene);
+        hierarchy = HierarchyIndex.forScene(scene);
+
+        // Every run starts from empty type sets, unless they were restored from a checkpoint
+        if (!restored) {
+            variables = new VariableIds();
+            variableTypes = new ArrayList<>();
+            entryPointsDone = 0;
+        }
+        restored = false;
+        List<SootMethod> entryPoints = this.getEntryPoints(scene).collect(Collectors.toList());
+        for (int i = entryPointsDone; i < entryPoints.size(); i++) {
+            this.constructVTAAlgorithm(callGraph, entryPoints.get(i), scene);
+            entryPointsDone = i + 1;
+            // all state is consistent between entry points
+            checkpointIfDue();
+        }
 
         // Your implementation goes here, also feel free to add methods as needed
         // To get your entry points we prepared getEntryPoints(scene) in the superclass for you
@@ -46,7 +79,7 @@ public class VTAAlgorithm extends CallGraphAlgorithm {
     }
 
     private void constructVTAAlgorithm(CallGraph callGraph, SootMethod method, Scene scene) {
-        if (method.hasActiveBody()) {
+        if (hasBody(method)) {
             // This is a method. So add it to the call graph and make sure it is not added before
             callGraph.addNode(method);
             // If we identify a method we need to flow through all the units of the method to find
@@ -58,76 +91,104 @@ public class VTAAlgorithm extends CallGraphAlgorithm {
     }
 
     private void flowThroughMethod(SootMethod entryPoint, CallGraph callGraph, Scene scene) {
-        entryPoint.getActiveBody().getUnits().forEach(unit -> {
-            Stmt stmt = (Stmt) unit;
+        // The summary keeps assignments and call sites apart, so merge them back into body order by their unit index
+        MethodSummary summary = summarize(scene, entryPoint);
+        int assignment = 0;
+        int invoke = 0;
+        while (assignment < summary.assignmentCount() || invoke < summary.invokeCount()) {
+            // Every statement counts against the budget, if there is one
+            chargeWork(1);
+            int assignmentUnit = assignment < summary.assignmentCount() ? summary.assignmentUnit(assignment) : Integer.MAX_VALUE;
+            int invokeUnit = invoke < summary.invokeCount() ? summary.invokeUnit(invoke) : Integer.MAX_VALUE;
             // For a variable to be assigned an object, the unit should be a JAssignStmt
             // In our running example, SomeInterface leaf = new LeafClass();
-            if (stmt instanceof JAssignStmt) {
-                processStmtAsJAssignStmt(stmt);
+            if (assignmentUnit <= invokeUnit) {
+                processStmtAsJAssignStmt(summary.assignmentLeft(assignment), summary.assignmentRight(assignment), entryPoint);
+                assignment++;
+                // An assigned call result shows up as call site as well, it is already handled as assignment
+                if (assignmentUnit == invokeUnit) invoke++;
             }
             // As of the running example, this is one of the call leaf.doSomething(); (Which is a interface call)
             // So need to handle it for the interface as well
-            else if (stmt instanceof JInvokeStmt) {
-                processStmtAsJInvokeStmt(stmt, entryPoint, callGraph);
+            else {
+                processStmtAsJInvokeStmt(summary.invokeExpr(invoke), invokeUnit, entryPoint, callGraph);
+                invoke++;
             }
-        });
+        }
+        markCompleted(entryPoint);
     }
 
-    private void processStmtAsJInvokeStmt(Stmt stmt, SootMethod entryPoint, CallGraph callGraph) {
-        JInvokeStmt jInvokeStmt = (JInvokeStmt) stmt;
-        InvokeExpr invokeExpr = jInvokeStmt.getInvokeExpr();
-        String methodType = null;
+    private void processStmtAsJInvokeStmt(InvokeExpr invokeExpr, int unitIndex, SootMethod entryPoint, CallGraph callGraph) {
+        Value receiver = null;
         SootMethod invokedMethod = null;
         // The invoke expression is of two types, invoking expression in interface(leaf.doSomething(); in SimpleScenario.class)
         // or in normal method (aliasLeaf.doSomething(); in SimpleScenario.class)
         if (invokeExpr instanceof JInterfaceInvokeExpr) {
             JInterfaceInvokeExpr jInterfaceInvokeExpr = (JInterfaceInvokeExpr) invokeExpr;
             // The type of the interface method and the method it invocated needs to be stored
-            methodType = jInterfaceInvokeExpr.getBase().toString();
+            receiver = jInterfaceInvokeExpr.getBase();
             invokedMethod = jInterfaceInvokeExpr.getMethod();
         } else if (invokeExpr instanceof JVirtualInvokeExpr) {
             JVirtualInvokeExpr jVirtualInvokeExpr = (JVirtualInvokeExpr) invokeExpr;
-            methodType = jVirtualInvokeExpr.getBase().toString();
+            receiver = jVirtualInvokeExpr.getBase();
             invokedMethod = jVirtualInvokeExpr.getMethod();
         }
 
-        if (methodType != null && invokedMethod != null) {
-            Set<SootClass> values = variableTypes.get(methodType);
-//            if (values != null && !values.isEmpty()) {
+        if (receiver != null && invokedMethod != null) {
+            Set<SootClass> values = typesOf(variables.idOf(receiver));
+            // Locals of other methods are different variables now, so a receiver may have no types at all
+            if (values != null && !values.isEmpty()) {
                 for (SootClass targetClass : values) {
-                    List<SootMethod> targetClsMthds = targetClass.getMethods();
-                    for (SootMethod sootMethod : targetClsMthds) {
-                        if (sootMethod.getSubSignature().equals(invokedMethod.getSubSignature())) {
-                            addNodeToCallGraph(sootMethod, callGraph);
-                            addEdgeToCallGraph(sootMethod, entryPoint, callGraph);
-                        }
+                    // The method that runs for a receiver of this class, declared in the class itself or inherited
+                    SootMethod sootMethod = hierarchy.resolveConcreteDispatch(targetClass, invokedMethod);
+                    if (sootMethod != null) {
+                        addNodeToCallGraph(sootMethod, callGraph);
+                        addEdgeToCallGraph(sootMethod, entryPoint, unitIndex, callGraph);
                     }
                 }
-//            }
+            }
         }
     }
 
-    private void processStmtAsJAssignStmt(Stmt stmt) {
+    private void processStmtAsJAssignStmt(Value leftOp, Value rightOp, SootMethod method) {
         // The various types a variable can be assigned object is
         // A a (variable) = new A() (class) ---> JNewExpr
         // A b (variable) = a (class) --> JCastExpr
         // So as of the example above, leftop is a variable and the rightop is a classType
-        String variable = ((JAssignStmt) stmt).getLeftOp().toString();
-        Value classType = ((JAssignStmt) stmt).getRightOp();
+        // Only locals and fields are variables, array elements are not tracked
+        int variable = variables.intern(leftOp, method);
+        if (variable == -1) return;
+        Value classType = rightOp;
         // Variable to store the classType of the variable
         SootClass sootClass = null;
 
 
         // Here there comes two cases, A class can either be created already and new object is created.
-        // A a = new A() --> So we already have class A in our HashMap
-        // A b = new A() --> This is the creation of new object for already existing class in our hashmap, in this case just add the variable
-        // The classType can be either a new class invocation or typecast or alias (So classType can be either in key or value in our hashmap)
-        if (variableTypes.containsKey(classType.toString())) {
-            variableTypes.put(variable, variableTypes.get(classType.toString()));
-        } else if (classType instanceof JNewExpr || classType instanceof JCastExpr) {
+        // A a = new A() --> So we already have class A in our type sets
+        // A b = new A() --> This is the creation of new object for already existing class in our type sets, in this case just add the variable
+        // The classType can be either a new class invocation or typecast or alias (So classType can be a variable with types already)
+        Set<SootClass> aliasTypes = typesOf(variables.idOf(classType));
+        if (aliasTypes != null) {
+            setTypes(variable, aliasTypes);
+        } else if (classType instanceof JNewExpr) {
             // A class that models Java's reference types. RefTypes are parametrized by a class name. Two RefType are equal iff they are
             // parametrized by the same class name as a String.
             sootClass = ((RefType) classType.getType()).getSootClass();
+        } else if (classType instanceof JCastExpr && classType.getType() instanceof RefType) {
+            sootClass = ((RefType) classType.getType()).getSootClass();
+            // A cast only lets through the types of the operand that are subtypes of the cast type
+            Set<SootClass> opTypes = typesOf(variables.idOf(((JCastExpr) classType).getOp()));
+            if (opTypes != null && typesOf(variable) == null) {
+                Set<SootClass> castTypes = new HashSet<>();
+                for (SootClass opType : opTypes) {
+                    if (hierarchy.isSubtypeIncluding(opType, sootClass))
+                        castTypes.add(opType);
+                }
+                if (!castTypes.isEmpty()) {
+                    setTypes(variable, castTypes);
+                    sootClass = null;
+                }
+            }
         } else if (classType instanceof JStaticInvokeExpr) {
             // This is a call that invokes method from other class, so the variable will have the return type of that method
             // a = SomeClass.getThis(); -> SomeClass.getThis() return a String
@@ -138,22 +199,118 @@ public class VTAAlgorithm extends CallGraphAlgorithm {
         }
 
         if (sootClass != null) {
-            if(!variableTypes.containsKey(variable)){
-                // We need to add this to the value of the hashmap
-                // So create a set, because our param in hashmap is string
+            if (typesOf(variable) == null) {
+                // We need to add this to the type sets
+                // So create a set, one variable can have several types
                 Set<SootClass> sootClasses = new HashSet<>();
                 sootClasses.add(sootClass);
-                variableTypes.put(variable, sootClasses);
+                setTypes(variable, sootClasses);
             }
         }
 
     }
 
+    @Override
+    protected boolean supportsCheckpoints() {
+        return true;
+    }
+
+    /**
+     * Variables in id order, then the type sets. Variables that share a type set share it after a restore too.
+     */
+    @Override
+    protected void writeCheckpointState(CheckpointOutput out) throws IOException {
+        out.writeInt(entryPointsDone);
+        out.writeInt(variables.size());
+        for (int id = 0; id < variables.size(); id++) {
+            Object key = variables.keyOf(id);
+            boolean isLocal = key instanceof Local;
+            out.writeBoolean(isLocal);
+            if (isLocal) {
+                SootMethod owner = variables.ownerOf(id);
+                out.writeMethod(owner);
+                out.writeLocal(owner, (Local) key);
+            } else {
+                out.writeField((SootField) key);
+            }
+        }
+
+        Map<Set<SootClass>, Integer> sets = new IdentityHashMap<>();
+        out.writeInt(variableTypes.size());
+        for (Set<SootClass> types : variableTypes) {
+            if (types == null) {
+                out.writeInt(0);
+                continue;
+            }
+            Integer index = sets.get(types);
+            if (index != null) {
+                out.writeInt(index + 1);
+                continue;
+            }
+            sets.put(types, sets.size());
+            out.writeInt(sets.size());
+            out.writeInt(types.size());
+            for (SootClass type : types)
+                out.writeClass(type);
+        }
+    }
+
+    @Override
+    protected void readCheckpointState(CheckpointInput in) throws IOException {
+        entryPointsDone = in.readInt();
+        variables = new VariableIds();
+        int variableCount = in.readInt();
+        for (int id = 0; id < variableCount; id++) {
+            if (in.readBoolean()) {
+                SootMethod owner = in.readMethod();
+                variables.intern(in.readLocal(owner), owner);
+            } else {
+                variables.intern(in.readField());
+            }
+        }
+
+        // a set is written in full where it first shows up, later variables refer to it by number
+        List<Set<SootClass>> sets = new ArrayList<>();
+        int typesCount = in.readInt();
+        variableTypes = new ArrayList<>(typesCount);
+        for (int id = 0; id < typesCount; id++) {
+            int index = in.readInt();
+            if (index == 0) {
+                variableTypes.add(null);
+            } else if (index <= sets.size()) {
+                variableTypes.add(sets.get(index - 1));
+            } else {
+                int size = in.readInt();
+                Set<SootClass> types = new HashSet<>();
+                for (int i = 0; i < size; i++)
+                    types.add(in.readClass());
+                sets.add(types);
+                variableTypes.add(types);
+            }
+        }
+        restored = true;
+    }
+
+    /**
+     * @return the types of the variable with the given id, or null if it has none yet
+     */
+    private Set<SootClass> typesOf(int variable) {
+        return variable == -1 || variable >= variableTypes.size() ? null : variableTypes.get(variable);
+    }
+
+    private void setTypes(int variable, Set<SootClass> types) {
+        while (variableTypes.size() <= variable)
+            variableTypes.add(null);
+        variableTypes.set(variable, types);
+    }
+
     private SootClass getRefType(JStaticInvokeExpr invExpr) {
         SootClass sootClass;
-        List<Unit> collect = invExpr.getMethod().getActiveBody().getUnits().stream().filter(unit -> unit instanceof JReturnStmt).collect(Collectors.toList());
-        JReturnStmt returnStmt = (JReturnStmt) collect.get(0);
-        sootClass = ((RefType) returnStmt.getOpBox().getValue().getType()).getSootClass();
+        SootMethod callee = invExpr.getMethod();
+        if (!hasBody(callee)) return null;
+        MethodSummary calleeSummary = summaries.get(callee);
+        Value returnValue = calleeSummary.returnValue(0);
+        sootClass = ((RefType) returnValue.getType()).getSootClass();
         return sootClass;
     }
 
@@ -165,12 +322,15 @@ public class VTAAlgorithm extends CallGraphAlgorithm {
     }
 
 
-    private void addEdgeToCallGraph(SootMethod sourceMethod, SootMethod targetMethod, CallGraph callGraph) {
+    private void addEdgeToCallGraph(SootMethod sourceMethod, SootMethod targetMethod, int unitIndex, CallGraph callGraph) {
         if (!callGraph.hasNode(sourceMethod) || !callGraph.hasNode(targetMethod))
             throw new RuntimeException("Method is not found in the nodes list");
-        // Check if the edge already exists
-        if (!callGraph.hasEdge(targetMethod, sourceMethod))
-            callGraph.addEdge(targetMethod, sourceMethod);
+        // Check if the edge already exists, per call site if the call graph records them
+        if (callGraph.recordsCallSites()) {
+            if (!callGraph.hasEdge(targetMethod, sourceMethod, unitIndex))
+                callGraph.addEdge(targetMethod, sourceMethod, unitIndex);
+        } else
+            callGraph.addEdgeIfAbsent(targetMethod, sourceMethod);
     }
 
 
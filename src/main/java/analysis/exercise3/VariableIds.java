@@ -0,0 +1,86 @@
+package analysis.exercise3;
+
+import analysis.IdentityIdMap;
+import soot.Local;
+import soot.SootField;
+import soot.SootMethod;
+import soot.Value;
+import soot.jimple.FieldRef;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Dense int ids for the values VTA tracks types of. Locals are interned by identity, so equally named locals of
+ * different methods stay apart. Field references are interned by their {@link SootField}: all reads and writes of
+ * a field share one id, whatever the base object of an instance field access is. The method whose body a local
+ * belongs to is kept, checkpoints refer to locals through it.
+ */
+class VariableIds {
+    private final IdentityIdMap<Local> locals = new IdentityIdMap<>();
+    private final IdentityIdMap<SootField> fields = new IdentityIdMap<>();
+    private final List<Object> keys = new ArrayList<>();
+    private final List<SootMethod> owners = new ArrayList<>();
+
+    /**
+     * @return the id of the value, or -1 if it is neither a local nor a field reference, or has no id yet
+     */
+    int idOf(Value value) {
+        if (value instanceof Local) return locals.get((Local) value);
+        if (value instanceof FieldRef) return fields.get(((FieldRef) value).getField());
+        return -1;
+    }
+
+    /**
+     * Like {@link #idOf(Value)}, but hands out a new id to locals and fields that have none yet.
+     *
+     * @param owner the method whose body the value is from
+     */
+    int intern(Value value, SootMethod owner) {
+        if (value instanceof Local) {
+            Local local = (Local) value;
+            int id = locals.get(local);
+            if (id == -1) {
+                id = keys.size();
+                locals.put(local, id);
+                keys.add(local);
+                owners.add(owner);
+            }
+            return id;
+        }
+        if (value instanceof FieldRef) return intern(((FieldRef) value).getField());
+        return -1;
+    }
+
+    /**
+     * The id of the field, a new one if it has none yet. Static and instance fields alike, no reference needed.
+     */
+    int intern(SootField field) {
+        int id = fields.get(field);
+        if (id == -1) {
+            id = keys.size();
+            fields.put(field, id);
+            keys.add(field);
+            owners.add(null);
+        }
+        return id;
+    }
+
+    int size() {
+        return keys.size();
+    }
+
+    /**
+     * @return the {@link Local} or {@link SootField} with the given id
+     */
+    Object keyOf(int id) {
+        return keys.get(id);
+    }
+
+    /**
+     * @return the method whose body holds the local with the given id, null for fields
+     */
+    SootMethod ownerOf(int id) {
+        return owners.get(id);
+    }
+}
@@ -0,0 +1,73 @@
+package analysis.exercise4;
+
+/**
+ * How {@link SparkLikeAlgorithm} tells apart the calls of a method. With k-call-site sensitivity a method is
+ * analyzed separately for every chain of the last k call sites leading to it, with k-object sensitivity for every
+ * chain of k allocation sites of the receiver, its allocator's receiver and so on. Static methods analyzed with
+ * object sensitivity share the context of their caller. Objects are told apart by their allocation site and the
+ * last k - 1 elements of the context they were allocated in.
+ */
+public final class ContextSensitivity {
+    public enum Kind {
+        INSENSITIVE, CALL_SITE, OBJECT
+    }
+
+    public static final ContextSensitivity INSENSITIVE = new ContextSensitivity(Kind.INSENSITIVE, 0);
+
+    private final Kind kind;
+    private final int k;
+
+    private ContextSensitivity(Kind kind, int k) {
+        this.kind = kind;
+        this.k = k;
+    }
+
+    public static ContextSensitivity callSites(int k) {
+        return new ContextSensitivity(Kind.CALL_SITE, checkLength(k));
+    }
+
+    public static ContextSensitivity objects(int k) {
+        return new ContextSensitivity(Kind.OBJECT, checkLength(k));
+    }
+
+    private static int checkLength(int k) {
+        if (k < 1) throw new IllegalArgumentException("Context length must be positive: " + k);
+        return k;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * @return the maximal number of elements of a method context, 0 if insensitive
+     */
+    public int getK() {
+        return k;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ContextSensitivity that = (ContextSensitivity) o;
+        return kind == that.kind && k == that.k;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * kind.hashCode() + k;
+    }
+
+    @Override
+    public String toString() {
+        switch (kind) {
+            case CALL_SITE:
+                return k + "-call-site";
+            case OBJECT:
+                return k + "-object";
+            default:
+                return "insensitive";
+        }
+    }
+}
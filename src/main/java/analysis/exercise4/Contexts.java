@@ -0,0 +1,98 @@
+package analysis.exercise4;
+
+import analysis.LongIntMap;
+
+import java.util.Arrays;
+
+/**
+ * Hash-consed contexts: every distinct sequence of context elements has exactly one int id, so contexts compare by
+ * id and key maps as ints. A context other than {@link #EMPTY} is the pair of its most recent element and the
+ * context before it, and each pair is stored once, so a context costs one table entry whatever its length and all
+ * contexts with a common tail share it. Elements are non-negative call site or allocation site ids.
+ */
+public final class Contexts {
+    public static final int EMPTY = 0;
+
+    private final LongIntMap ids = new LongIntMap();
+    private int[] heads = new int[16];
+    private int[] tails = new int[16];
+    private int[] lengths = new int[16];
+    private int size = 1;
+
+    /**
+     * @return the context of the element followed by the first k - 1 elements of the given context
+     */
+    public int push(int context, int element, int k) {
+        return cons(element, truncate(context, k - 1));
+    }
+
+    /**
+     * @return the context of the most recent elements of the given context, at most length of them
+     */
+    public int truncate(int context, int length) {
+        if (lengths[context] <= length) return context;
+        if (length == 0) return EMPTY;
+        return cons(heads[context], truncate(tails[context], length - 1));
+    }
+
+    private int cons(int head, int tail) {
+        if (head < 0) throw new IllegalArgumentException("Context elements must not be negative: " + head);
+        long key = (long) head << 32 | tail;
+        int id = ids.get(key);
+        if (id != -1) return id;
+
+        id = size++;
+        if (id == heads.length) {
+            heads = Arrays.copyOf(heads, id * 2);
+            tails = Arrays.copyOf(tails, id * 2);
+            lengths = Arrays.copyOf(lengths, id * 2);
+        }
+        heads[id] = head;
+        tails[id] = tail;
+        lengths[id] = lengths[tail] + 1;
+        ids.put(key, id);
+        return id;
+    }
+
+    public int length(int context) {
+        return lengths[context];
+    }
+
+    /**
+     * @return the most recent element of a context other than {@link #EMPTY}
+     */
+    public int head(int context) {
+        return heads[context];
+    }
+
+    /**
+     * @return the context before the most recent element, of a context other than {@link #EMPTY}
+     */
+    public int tail(int context) {
+        return tails[context];
+    }
+
+    /**
+     * @return the elements of the context, the most recent one first
+     */
+    public int[] elements(int context) {
+        int[] elements = new int[lengths[context]];
+        for (int i = 0; i < elements.length; i++, context = tails[context])
+            elements[i] = heads[context];
+        return elements;
+    }
+
+    /**
+     * @return the number of distinct contexts, the empty one included
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the bytes of the tables, for memory accounting
+     */
+    public long tableBytes() {
+        return ids.tableBytes() + 3L * heads.length * Integer.BYTES;
+    }
+}
@@ -0,0 +1,180 @@
+package analysis.exercise4;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Set of abstract object ids, in the representation that is smallest for its size, like Spark's hybrid sets. Most
+ * pointers point to a handful of objects, so small sets are a plain array that is searched linearly, larger ones
+ * an open-addressing table with linear probing. A table that would take more bytes than a bitmap over all object
+ * ids up to its largest element becomes such a bitmap, and a bitmap that would take more bytes than a table for
+ * its elements becomes a table again: large sets are dense in the ids of their objects, unless there are many
+ * objects, as with heap contexts.
+ */
+final class PointsToSet {
+    private static final int LINEAR_LIMIT = 8;
+
+    // object id + 1, 0 marks free slots; null once the set is a bitmap
+    private int[] slots = new int[2];
+    private long[] bits;
+    private int size;
+    private int maxObject = -1;
+
+    /**
+     * @return true if the object was added, false if it was already contained
+     */
+    boolean add(int object) {
+        if (bits != null) {
+            if (object >>> 6 < bits.length || (object >>> 6) + 1 <= tableCapacity(size + 1) / 2) return addBit(object);
+            toTable();
+        }
+        int value = object + 1;
+        if (slots.length <= LINEAR_LIMIT) {
+            for (int i = 0; i < size; i++) {
+                if (slots[i] == value) return false;
+            }
+            if (size < slots.length) {
+                append(value);
+                return true;
+            }
+            if (slots.length < LINEAR_LIMIT) {
+                slots = Arrays.copyOf(slots, slots.length * 2);
+                append(value);
+                return true;
+            }
+            grow(LINEAR_LIMIT * 4);
+            if (bits != null) return addBit(object);
+        }
+
+        int mask = slots.length - 1;
+        int slot = slot(value, mask);
+        while (slots[slot] != 0) {
+            if (slots[slot] == value) return false;
+            slot = (slot + 1) & mask;
+        }
+        slots[slot] = value;
+        maxObject = Math.max(maxObject, object);
+        if (++size * 2 > slots.length) grow(slots.length * 2);
+        return true;
+    }
+
+    boolean contains(int object) {
+        if (bits != null) {
+            int word = object >>> 6;
+            return word < bits.length && (bits[word] & 1L << object) != 0;
+        }
+        int value = object + 1;
+        if (slots.length <= LINEAR_LIMIT) {
+            for (int i = 0; i < size; i++) {
+                if (slots[i] == value) return true;
+            }
+            return false;
+        }
+        int mask = slots.length - 1;
+        int slot = slot(value, mask);
+        while (slots[slot] != 0) {
+            if (slots[slot] == value) return true;
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    int size() {
+        return size;
+    }
+
+    void forEach(IntConsumer consumer) {
+        if (bits != null) {
+            for (int word = 0; word < bits.length; word++) {
+                for (long w = bits[word]; w != 0; w &= w - 1)
+                    consumer.accept(word << 6 | Long.numberOfTrailingZeros(w));
+            }
+            return;
+        }
+        for (int value : slots) {
+            if (value != 0) consumer.accept(value - 1);
+        }
+    }
+
+    int[] toArray() {
+        int[] objects = new int[size];
+        int[] i = {0};
+        forEach(object -> objects[i[0]++] = object);
+        return objects;
+    }
+
+    /**
+     * @return the bytes of the slots or the bitmap, for memory accounting
+     */
+    long slotBytes() {
+        return bits != null ? (long) bits.length * Long.BYTES : (long) slots.length * Integer.BYTES;
+    }
+
+    private void append(int value) {
+        slots[size++] = value;
+        maxObject = Math.max(maxObject, value - 1);
+    }
+
+    // slots of a table that holds the given number of elements at the load factor of grow
+    private static int tableCapacity(int elements) {
+        return Integer.highestOneBit(elements * 2 - 1) << 1;
+    }
+
+    private void toTable() {
+        long[] old = bits;
+        bits = null;
+        slots = new int[Math.max(LINEAR_LIMIT * 4, tableCapacity(size + 1))];
+        size = 0;
+        maxObject = -1;
+        int mask = slots.length - 1;
+        for (int word = 0; word < old.length; word++) {
+            for (long w = old[word]; w != 0; w &= w - 1) {
+                int value = (word << 6 | Long.numberOfTrailingZeros(w)) + 1;
+                int slot = slot(value, mask);
+                while (slots[slot] != 0)
+                    slot = (slot + 1) & mask;
+                slots[slot] = value;
+                maxObject = Math.max(maxObject, value - 1);
+                size++;
+            }
+        }
+    }
+
+    private boolean addBit(int object) {
+        int word = object >>> 6;
+        if (word >= bits.length) bits = Arrays.copyOf(bits, Math.max(word + 1, bits.length * 2));
+        long bit = 1L << object;
+        if ((bits[word] & bit) != 0) return false;
+        bits[word] |= bit;
+        size++;
+        return true;
+    }
+
+    private static int slot(int value, int mask) {
+        int h = value * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    private void grow(int capacity) {
+        int[] old = slots;
+        // one bit per id up to the largest element against four bytes per slot
+        if ((maxObject >>> 6) + 1 <= capacity / 2) {
+            bits = new long[(maxObject >>> 6) + 1];
+            slots = null;
+            size = 0;
+            for (int value : old) {
+                if (value != 0) addBit(value - 1);
+            }
+            return;
+        }
+        slots = new int[capacity];
+        int mask = capacity - 1;
+        for (int value : old) {
+            if (value == 0) continue;
+            int slot = slot(value, mask);
+            while (slots[slot] != 0)
+                slot = (slot + 1) & mask;
+            slots[slot] = value;
+        }
+    }
+}
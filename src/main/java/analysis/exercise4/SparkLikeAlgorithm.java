@@ -2,23 +2,846 @@ package analysis.exercise4;
 
 import analysis.CallGraph;
 import analysis.CallGraphAlgorithm;
+import analysis.CheckpointInput;
+import analysis.CheckpointOutput;
+import analysis.HierarchyIndex;
+import analysis.IdentityIdMap;
+import analysis.LongHashSet;
+import analysis.LongIntMap;
+import analysis.MethodIdMap;
+import analysis.MethodResolution;
+import analysis.MethodSummary;
 import analysis.exercise1.CHAAlgorithm;
+import soot.ArrayType;
+import soot.Local;
+import soot.RefLikeType;
+import soot.RefType;
 import soot.Scene;
+import soot.SootClass;
+import soot.SootField;
+import soot.SootMethod;
+import soot.Type;
+import soot.Value;
+import soot.jimple.AnyNewExpr;
+import soot.jimple.ArrayRef;
+import soot.jimple.CastExpr;
+import soot.jimple.ClassConstant;
+import soot.jimple.DynamicInvokeExpr;
+import soot.jimple.InstanceFieldRef;
+import soot.jimple.InstanceInvokeExpr;
+import soot.jimple.InvokeExpr;
+import soot.jimple.SpecialInvokeExpr;
+import soot.jimple.StaticFieldRef;
+import soot.jimple.StringConstant;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Call graph from an Andersen-style points-to analysis, like Soot's Spark: every allocation site is an abstract
+ * object, instance fields are kept apart per object, and the call graph is built on the fly from the objects that
+ * reach the receivers of calls. Objects only flow into locals and fields whose declared type they fit.
+ * <p>
+ * With a {@link ContextSensitivity} other than insensitive, every method is analyzed once per context it is
+ * reached in. Such a method clone is created the first time a call in that context is found, so only contexts that
+ * actually occur cost anything, and contexts are hash-consed int ids, see {@link Contexts}. The call graph is the
+ * context-insensitive projection: an edge for every call site and target any clone of the caller has.
+ * <p>
+ * Snapshots hold the facts the solver found so far: the contexts, call and allocation sites, objects, method clones
+ * and the points-to sets. A resumed run processes every clone of the snapshot again, which derives the edges and
+ * constraints between pointers anew, and propagates the restored sets along them. The analysis is monotone and
+ * the restored sets are part of its fixed point, so it ends with the call graph of an uninterrupted run.
+ */
 public class SparkLikeAlgorithm extends CallGraphAlgorithm {
 
+    // the pseudo field of the elements of an array object, real fields are numbered from 1
+    private static final int ARRAY_ELEMENTS = 0;
+    private static final int LOAD = 0;
+    private static final int STORE = 1;
+    private static final int CALL = 2;
+    // the kinds of pointers in a snapshot
+    private static final int LOCAL = 0;
+    private static final int INSTANCE_FIELD = 1;
+    private static final int STATIC_FIELD = 2;
+    private static final int[] NONE = new int[0];
+
+    private ContextSensitivity contextSensitivity = ContextSensitivity.INSENSITIVE;
+
+    // the solver of the running construction, and the one a snapshot was read into for the next
+    private Solver solver;
+    private Solver restored;
+
+    // sizes of the last run
+    private int contextCount;
+    private int methodCloneCount;
+    private int objectCount;
+    private int pointerCount;
+    private long pointsToEntryCount;
+    private int contextSensitiveEdgeCount;
+    private long solverBytes;
+
     @Override
     protected String getAlgorithm() {
         return "SparkLike";
     }
 
+    // receiver objects reach overriding methods, so the fallback has to dispatch virtual calls as well
     @Override
-    protected void populateCallGraph(Scene scene, CallGraph cg) {
-        CallGraph initialCallGraph = new CHAAlgorithm().constructCallGraph(scene);
+    protected CallGraphAlgorithm createFallbackAlgorithm() {
+        return CHAAlgorithm.soundFallback();
+    }
+
+    /**
+     * How the calls of a method are told apart, {@link ContextSensitivity#INSENSITIVE} by default.
+     */
+    public void setContextSensitivity(ContextSensitivity contextSensitivity) {
+        if (contextSensitivity == null)
+            throw new IllegalArgumentException("Context sensitivity must not be null, use ContextSensitivity.INSENSITIVE instead");
+        this.contextSensitivity = contextSensitivity;
+    }
 
+    public ContextSensitivity getContextSensitivity() {
+        return contextSensitivity;
+    }
+
+    @Override
+    protected void populateCallGraph(Scene scene, CallGraph cg) {
         // Your implementation goes here, also feel free to add methods as needed
         // To get your entry points we prepared getEntryPoints(scene) in the superclass for you
+        // The call graph grows with the points-to sets, so there is no initial call graph to start from
+        Solver solver = restored != null ? restored : new Solver(scene);
+        restored = null;
+        solver.cg = cg;
+        this.solver = solver;
+        try {
+            getEntryPoints(scene).forEach(solver::addEntryPoint);
+            solver.solve();
+        } finally {
+            this.solver = null;
+        }
+
+        contextCount = solver.contexts.size();
+        methodCloneCount = solver.cloneMethods.size();
+        objectCount = solver.objectCount;
+        pointerCount = solver.pointers.size();
+        contextSensitiveEdgeCount = solver.cloneEdges.size();
+        pointsToEntryCount = 0;
+        for (Pointer pointer : solver.pointers)
+            pointsToEntryCount += pointer.pointsTo.size();
+        solverBytes = solver.bytes();
+    }
+
+    @Override
+    protected boolean supportsCheckpoints() {
+        return true;
+    }
+
+    @Override
+    protected void writeCheckpointState(CheckpointOutput out) throws IOException {
+        out.writeString(contextSensitivity.toString());
+        solver.write(out);
+    }
+
+    @Override
+    protected void readCheckpointState(CheckpointInput in) throws IOException {
+        String sensitivity = in.readString();
+        if (!sensitivity.equals(contextSensitivity.toString()))
+            throw new IllegalStateException("Snapshot was taken with " + sensitivity + " sensitivity, not " + contextSensitivity);
+        restored = new Solver(in.getScene());
+        restored.read(in);
+    }
+
+    /**
+     * @return the number of distinct method contexts and heap contexts of the last run, the empty one included
+     */
+    public int getContextCount() {
+        return contextCount;
+    }
+
+    /**
+     * @return the number of pairs of method and context the last run analyzed
+     */
+    public int getMethodCloneCount() {
+        return methodCloneCount;
+    }
+
+    /**
+     * @return the number of pairs of allocation site and heap context of the last run
+     */
+    public int getObjectCount() {
+        return objectCount;
+    }
+
+    /**
+     * @return the number of locals per context, fields per object and static fields the last run tracked
+     */
+    public int getPointerCount() {
+        return pointerCount;
+    }
 
+    /**
+     * @return the sizes of all points-to sets of the last run added up
+     */
+    public long getPointsToEntryCount() {
+        return pointsToEntryCount;
     }
 
+    /**
+     * @return the number of distinct edges between a call site of a method clone and a method clone
+     */
+    public int getContextSensitiveEdgeCount() {
+        return contextSensitiveEdgeCount;
+    }
+
+    /**
+     * @return an estimate of the bytes the solver's tables and sets took at the end of the last run, they are
+     * released with the run
+     */
+    public long getSolverBytes() {
+        return solverBytes;
+    }
+
+    private static final class Pointer {
+        // objects of other types do not get in, null lets every object in
+        final SootClass filter;
+        final PointsToSet pointsTo = new PointsToSet();
+        // objects added since the pointer was last propagated, they still have to reach successors and constraints
+        int[] pending = NONE;
+        int pendingCount;
+        int[] successors = NONE;
+        int successorCount;
+        Constraint[] constraints;
+        int constraintCount;
+
+        Pointer(SootClass filter) {
+            this.filter = filter;
+        }
+    }
+
+    /**
+     * A statement that depends on the objects of a base pointer: a field or array load into a pointer, a store
+     * from a pointer, or a call on the base as receiver.
+     */
+    private static final class Constraint {
+        final int kind;
+        final int field;
+        final int pointer;
+        // calls only
+        final int callerClone;
+        final InvokeExpr invokeExpr;
+        final int unitIndex;
+        final int callInstance;
+
+        Constraint(int kind, int field, int pointer, int callerClone, InvokeExpr invokeExpr, int unitIndex, int callInstance) {
+            this.kind = kind;
+            this.field = field;
+            this.pointer = pointer;
+            this.callerClone = callerClone;
+            this.invokeExpr = invokeExpr;
+            this.unitIndex = unitIndex;
+            this.callInstance = callInstance;
+        }
+    }
+
+    /**
+     * The state of one run. Ids are dense ints, pairs of ids are keyed as {@code first << 32 | second}.
+     */
+    private final class Solver {
+        final Scene scene;
+        // set when the run starts, a solver restored from a snapshot exists before the call graph
+        CallGraph cg;
+        final HierarchyIndex hierarchy;
+        final ContextSensitivity.Kind kind = contextSensitivity.getKind();
+        final int k = contextSensitivity.getK();
+        final Contexts contexts = new Contexts();
+
+        final MethodIdMap methodIds = new MethodIdMap();
+        final List<SootMethod> methods = new ArrayList<>();
+        final List<MethodSummary> methodSummaries = new ArrayList<>();
+        final IdentityIdMap<Local> localIds = new IdentityIdMap<>();
+        final IdentityIdMap<SootField> fieldIds = new IdentityIdMap<>();
+        final List<SootField> fields = new ArrayList<>();
+
+        final LongIntMap callSites = new LongIntMap();
+        final LongIntMap allocationSites = new LongIntMap();
+        final List<Type> allocationTypes = new ArrayList<>();
+
+        final LongIntMap objectIds = new LongIntMap();
+        int objectCount;
+        int[] objectSites = new int[16];
+        int[] objectHeapContexts = new int[16];
+        SootClass[] objectClasses = new SootClass[16];
+
+        final LongIntMap cloneIds = new LongIntMap();
+        final List<SootMethod> cloneMethods = new ArrayList<>();
+        int[] cloneContexts = new int[16];
+        int[] pendingClones = new int[16];
+        int pendingCloneCount;
+        final LongHashSet cloneEdges = new LongHashSet();
+        int callInstances;
+
+        final LongIntMap localPointers = new LongIntMap();
+        // instance fields per object, static fields under object -1
+        final LongIntMap fieldPointers = new LongIntMap();
+        final List<Pointer> pointers = new ArrayList<>();
+        final LongHashSet edges = new LongHashSet();
+        int[] worklist = new int[16];
+        int worklistSize;
+
+        Solver(Scene scene) {
+            this.scene = scene;
+            this.hierarchy = HierarchyIndex.forScene(scene);
+            // the array elements pseudo field
+            fields.add(null);
+        }
+
+        void addEntryPoint(SootMethod method) {
+            if (!cg.hasNode(method)) cg.addNode(method);
+            reach(method, Contexts.EMPTY);
+        }
+
+        void solve() {
+            // new clones first, their statements add the constraints the pending objects have to go through
+            while (pendingCloneCount > 0 || worklistSize > 0) {
+                // every fact so far is part of the fixed point, so the solver can be snapshot between any two steps
+                checkpointIfDue();
+                if (pendingCloneCount > 0) {
+                    process(pendingClones[--pendingCloneCount]);
+                } else {
+                    propagate(worklist[--worklistSize]);
+                }
+            }
+        }
+
+        /**
+         * @return the clone of the method for the context, -1 if the method has no body to analyze
+         */
+        int reach(SootMethod method, int context) {
+            if (!hasBody(method)) return -1;
+            long key = (long) methodId(method) << 32 | context;
+            int clone = cloneIds.get(key);
+            if (clone != -1) return clone;
+            if (!cg.hasNode(method)) cg.addNode(method);
+            return addClone(key, method, context);
+        }
+
+        private int addClone(long key, SootMethod method, int context) {
+            int clone = cloneMethods.size();
+            cloneIds.put(key, clone);
+            cloneMethods.add(method);
+            cloneContexts = ensure(cloneContexts, clone);
+            cloneContexts[clone] = context;
+            pendingClones = ensure(pendingClones, pendingCloneCount);
+            pendingClones[pendingCloneCount++] = clone;
+            return clone;
+        }
+
+        private void process(int clone) {
+            chargeWork(1);
+            SootMethod method = cloneMethods.get(clone);
+            int context = cloneContexts[clone];
+            MethodSummary summary = summary(method);
+            for (int i = 0; i < summary.assignmentCount(); i++) {
+                chargeWork(1);
+                Value left = summary.assignmentLeft(i);
+                Value right = summary.assignmentRight(i);
+                // assigned call results are bound with their call site
+                if (right instanceof InvokeExpr || !(left.getType() instanceof RefLikeType)) continue;
+                assign(method, summary.assignmentUnit(i), left, right, context);
+            }
+
+            // call sites and assignments are both in unit order, so the assignment of a call result is found by merging
+            int assignment = 0;
+            for (int i = 0; i < summary.invokeCount(); i++) {
+                chargeWork(1);
+                int unitIndex = summary.invokeUnit(i);
+                int result = -1;
+                if (summary.invokeAssignsResult(i)) {
+                    while (summary.assignmentUnit(assignment) < unitIndex)
+                        assignment++;
+                    Value left = summary.assignmentLeft(assignment);
+                    if (left instanceof Local && left.getType() instanceof RefLikeType) result = localPointer((Local) left, context);
+                }
+                call(clone, summary.invokeExpr(i), unitIndex, result);
+            }
+        }
+
+        private void assign(SootMethod method, int unitIndex, Value left, Value right, int context) {
+            if (left instanceof Local) {
+                int target = localPointer((Local) left, context);
+                if (right instanceof AnyNewExpr || right instanceof StringConstant || right instanceof ClassConstant) {
+                    addObject(target, object(method, unitIndex, right.getType(), context));
+                } else if (right instanceof Local) {
+                    addEdge(localPointer((Local) right, context), target);
+                } else if (right instanceof CastExpr) {
+                    // the type of the local filters the objects of the operand
+                    Value op = ((CastExpr) right).getOp();
+                    if (op instanceof Local) addEdge(localPointer((Local) op, context), target);
+                } else if (right instanceof InstanceFieldRef) {
+                    InstanceFieldRef ref = (InstanceFieldRef) right;
+                    addConstraint(localPointer((Local) ref.getBase(), context), new Constraint(LOAD, fieldId(ref.getField()), target, -1, null, -1, -1));
+                } else if (right instanceof StaticFieldRef) {
+                    addEdge(staticPointer(((StaticFieldRef) right).getField()), target);
+                } else if (right instanceof ArrayRef) {
+                    ArrayRef ref = (ArrayRef) right;
+                    addConstraint(localPointer((Local) ref.getBase(), context), new Constraint(LOAD, ARRAY_ELEMENTS, target, -1, null, -1, -1));
+                }
+            } else if (right instanceof Local) {
+                int source = localPointer((Local) right, context);
+                if (left instanceof InstanceFieldRef) {
+                    InstanceFieldRef ref = (InstanceFieldRef) left;
+                    addConstraint(localPointer((Local) ref.getBase(), context), new Constraint(STORE, fieldId(ref.getField()), source, -1, null, -1, -1));
+                } else if (left instanceof StaticFieldRef) {
+                    addEdge(source, staticPointer(((StaticFieldRef) left).getField()));
+                } else if (left instanceof ArrayRef) {
+                    ArrayRef ref = (ArrayRef) left;
+                    addConstraint(localPointer((Local) ref.getBase(), context), new Constraint(STORE, ARRAY_ELEMENTS, source, -1, null, -1, -1));
+                }
+            }
+        }
+
+        private void call(int callerClone, InvokeExpr invokeExpr, int unitIndex, int result) {
+            // lambdas and other invokedynamic call sites are not followed
+            if (invokeExpr instanceof DynamicInvokeExpr) return;
+            int callInstance = callInstances++;
+            int context = cloneContexts[callerClone];
+            if (invokeExpr instanceof InstanceInvokeExpr) {
+                // the targets and their contexts depend on the receiver objects
+                Local base = (Local) ((InstanceInvokeExpr) invokeExpr).getBase();
+                addConstraint(localPointer(base, context), new Constraint(CALL, -1, result, callerClone, invokeExpr, unitIndex, callInstance));
+                return;
+            }
+            SootMethod target = MethodResolution.targetOf(invokeExpr);
+            // static methods share the context of their caller under object sensitivity
+            int calleeContext = kind == ContextSensitivity.Kind.CALL_SITE
+                    ? contexts.push(context, callSite(cloneMethods.get(callerClone), unitIndex), k) : context;
+            addCall(callerClone, invokeExpr, unitIndex, result, callInstance, target, calleeContext, -1);
+        }
+
+        private void apply(Constraint constraint, int object) {
+            chargeWork(1);
+            switch (constraint.kind) {
+                case LOAD:
+                    addEdge(fieldPointer(object, constraint.field), constraint.pointer);
+                    break;
+                case STORE:
+                    addEdge(constraint.pointer, fieldPointer(object, constraint.field));
+                    break;
+                default:
+                    SootMethod declared = MethodResolution.targetOf(constraint.invokeExpr);
+                    SootMethod target = constraint.invokeExpr instanceof SpecialInvokeExpr ? declared : dispatch(object, declared);
+                    if (target == null) return;
+                    int calleeContext;
+                    if (kind == ContextSensitivity.Kind.OBJECT) {
+                        calleeContext = contexts.push(objectHeapContexts[object], objectSites[object], k);
+                    } else if (kind == ContextSensitivity.Kind.CALL_SITE) {
+                        SootMethod caller = cloneMethods.get(constraint.callerClone);
+                        calleeContext = contexts.push(cloneContexts[constraint.callerClone], callSite(caller, constraint.unitIndex), k);
+                    } else {
+                        calleeContext = Contexts.EMPTY;
+                    }
+                    addCall(constraint.callerClone, constraint.invokeExpr, constraint.unitIndex, constraint.pointer,
+                            constraint.callInstance, target, calleeContext, object);
+            }
+        }
+
+        private SootMethod dispatch(int object, SootMethod declared) {
+            // the methods of arrays are the ones of Object
+            SootClass receiver = objectClasses[object] != null ? objectClasses[object] : scene.getObjectType().getSootClass();
+            return hierarchy.resolveConcreteDispatch(receiver, declared);
+        }
+
+        /**
+         * Adds the edge to the projection and binds arguments, receiver and result to the clone of the target.
+         */
+        private void addCall(int callerClone, InvokeExpr invokeExpr, int unitIndex, int result, int callInstance,
+                             SootMethod target, int calleeContext, int receiver) {
+            addProjectedEdge(cloneMethods.get(callerClone), target, unitIndex);
+            int callee = reach(target, calleeContext);
+            if (callee == -1) return;
+            MethodSummary calleeSummary = summary(target);
+            // without object sensitivity several receivers share a clone, each of them is this
+            if (receiver != -1 && calleeSummary.thisLocal() != null)
+                addObject(localPointer(calleeSummary.thisLocal(), calleeContext), receiver);
+            if (!cloneEdges.addIfAbsent((long) callInstance << 32 | callee)) return;
+
+            int context = cloneContexts[callerClone];
+            for (int i = 0; i < invokeExpr.getArgCount(); i++) {
+                Value argument = invokeExpr.getArg(i);
+                Local parameter = calleeSummary.parameterLocal(i);
+                if (argument instanceof Local && parameter != null && parameter.getType() instanceof RefLikeType)
+                    addEdge(localPointer((Local) argument, context), localPointer(parameter, calleeContext));
+            }
+            if (result == -1) return;
+            for (int i = 0; i < calleeSummary.returnCount(); i++) {
+                Value returned = calleeSummary.returnValue(i);
+                if (returned instanceof Local) addEdge(localPointer((Local) returned, calleeContext), result);
+            }
+        }
+
+        private void addProjectedEdge(SootMethod source, SootMethod target, int unitIndex) {
+            if (!cg.hasNode(target)) cg.addNode(target);
+            if (!cg.recordsCallSites()) {
+                cg.addEdgeIfAbsent(source, target);
+            } else if (!cg.hasEdge(source, target, unitIndex)) {
+                cg.addEdge(source, target, unitIndex);
+            }
+        }
+
+        private void addEdge(int from, int to) {
+            if (from == to || !edges.addIfAbsent((long) from << 32 | to)) return;
+            Pointer source = pointers.get(from);
+            source.successors = ensure(source.successors, source.successorCount);
+            source.successors[source.successorCount++] = to;
+            // the objects the source has so far, later ones follow the edge when the source is propagated
+            source.pointsTo.forEach(object -> addObject(to, object));
+        }
+
+        private void addConstraint(int base, Constraint constraint) {
+            Pointer pointer = pointers.get(base);
+            if (pointer.constraints == null) {
+                pointer.constraints = new Constraint[2];
+            } else if (pointer.constraintCount == pointer.constraints.length) {
+                pointer.constraints = Arrays.copyOf(pointer.constraints, pointer.constraintCount * 2);
+            }
+            pointer.constraints[pointer.constraintCount++] = constraint;
+            // applying the constraint can add objects to the base itself, e.g. for x = x.next
+            for (int object : pointer.pointsTo.toArray())
+                apply(constraint, object);
+        }
+
+        private void addObject(int target, int object) {
+            Pointer pointer = pointers.get(target);
+            if (!fits(object, pointer.filter) || !pointer.pointsTo.add(object)) return;
+            if (pointer.pendingCount == 0) {
+                worklist = ensure(worklist, worklistSize);
+                worklist[worklistSize++] = target;
+            }
+            pointer.pending = ensure(pointer.pending, pointer.pendingCount);
+            pointer.pending[pointer.pendingCount++] = object;
+        }
+
+        private void propagate(int id) {
+            chargeWork(1);
+            Pointer pointer = pointers.get(id);
+            int[] objects = pointer.pending;
+            int count = pointer.pendingCount;
+            pointer.pending = NONE;
+            pointer.pendingCount = 0;
+            // successors and constraints added from here on got all objects of the pointer when they were added
+            int[] successors = pointer.successors;
+            int successorCount = pointer.successorCount;
+            for (int s = 0; s < successorCount; s++) {
+                for (int i = 0; i < count; i++)
+                    addObject(successors[s], objects[i]);
+            }
+            Constraint[] constraints = pointer.constraints;
+            int constraintCount = pointer.constraintCount;
+            for (int c = 0; c < constraintCount; c++) {
+                for (int i = 0; i < count; i++)
+                    apply(constraints[c], objects[i]);
+            }
+        }
+
+        private boolean fits(int object, SootClass filter) {
+            if (filter == null) return true;
+            SootClass type = objectClasses[object];
+            // an array only fits Object, Cloneable and Serializable, which do not filter
+            if (type == null) return false;
+            if (type.isPhantom() || filter.isPhantom()) return true;
+            return hierarchy.isSubtypeIncluding(type, filter);
+        }
+
+        private SootClass filterOf(Type type) {
+            if (!(type instanceof RefType)) return null;
+            SootClass sootClass = ((RefType) type).getSootClass();
+            String name = sootClass.getName();
+            if (name.equals("java.lang.Object") || name.equals("java.lang.Cloneable") || name.equals("java.io.Serializable"))
+                return null;
+            return sootClass;
+        }
+
+        private int localPointer(Local local, int context) {
+            int localId = localIds.get(local);
+            if (localId == -1) {
+                localId = localIds.size();
+                localIds.put(local, localId);
+            }
+            long key = (long) localId << 32 | context;
+            int id = localPointers.get(key);
+            if (id == -1) {
+                id = newPointer(filterOf(local.getType()));
+                localPointers.put(key, id);
+            }
+            return id;
+        }
+
+        private int fieldPointer(int object, int field) {
+            long key = (long) object << 32 | field;
+            int id = fieldPointers.get(key);
+            if (id == -1) {
+                Type type = field != ARRAY_ELEMENTS ? fields.get(field).getType() : allocationTypes.get(objectSites[object]);
+                if (field == ARRAY_ELEMENTS) type = type instanceof ArrayType ? ((ArrayType) type).getElementType() : null;
+                id = newPointer(filterOf(type));
+                fieldPointers.put(key, id);
+            }
+            return id;
+        }
+
+        private int staticPointer(SootField field) {
+            int fieldId = fieldId(field);
+            long key = 0xFFFFFFFF00000000L | fieldId;
+            int id = fieldPointers.get(key);
+            if (id == -1) {
+                id = newPointer(filterOf(field.getType()));
+                fieldPointers.put(key, id);
+            }
+            return id;
+        }
+
+        private int newPointer(SootClass filter) {
+            pointers.add(new Pointer(filter));
+            return pointers.size() - 1;
+        }
+
+        private int object(SootMethod method, int unitIndex, Type type, int context) {
+            int site = allocationSite(method, unitIndex, type);
+            int heapContext = kind == ContextSensitivity.Kind.INSENSITIVE ? Contexts.EMPTY : contexts.truncate(context, k - 1);
+            return object(site, heapContext, type);
+        }
+
+        private int allocationSite(SootMethod method, int unitIndex, Type type) {
+            long siteKey = (long) methodId(method) << 32 | unitIndex;
+            int site = allocationSites.get(siteKey);
+            if (site == -1) {
+                site = allocationTypes.size();
+                allocationSites.put(siteKey, site);
+                allocationTypes.add(type);
+            }
+            return site;
+        }
+
+        private int object(int site, int heapContext, Type type) {
+            long key = (long) site << 32 | heapContext;
+            int object = objectIds.get(key);
+            if (object != -1) return object;
+
+            object = objectCount++;
+            objectIds.put(key, object);
+            objectSites = ensure(objectSites, object);
+            objectHeapContexts = ensure(objectHeapContexts, object);
+            if (object == objectClasses.length) objectClasses = Arrays.copyOf(objectClasses, object * 2);
+            objectSites[object] = site;
+            objectHeapContexts[object] = heapContext;
+            objectClasses[object] = type instanceof RefType ? ((RefType) type).getSootClass() : null;
+            return object;
+        }
+
+        private int callSite(SootMethod method, int unitIndex) {
+            long key = (long) methodId(method) << 32 | unitIndex;
+            int site = callSites.get(key);
+            if (site == -1) {
+                site = callSites.size();
+                callSites.put(key, site);
+            }
+            return site;
+        }
+
+        private int methodId(SootMethod method) {
+            int id = methodIds.get(method);
+            if (id == -1) {
+                id = methods.size();
+                methodIds.put(method, id);
+                methods.add(method);
+                methodSummaries.add(null);
+            }
+            return id;
+        }
+
+        // summarized once per run, prefetching in lazy mode only pays off the first time
+        private MethodSummary summary(SootMethod method) {
+            int id = methodId(method);
+            MethodSummary summary = methodSummaries.get(id);
+            if (summary == null) {
+                summary = summarize(scene, method);
+                methodSummaries.set(id, summary);
+            }
+            return summary;
+        }
+
+        private int fieldId(SootField field) {
+            int id = fieldIds.get(field);
+            if (id == -1) {
+                id = fields.size();
+                fieldIds.put(field, id);
+                fields.add(field);
+            }
+            return id;
+        }
+
+        /**
+         * Contexts, sites, objects and clones in id order, so their ids stay the same after a restore, then the
+         * points-to sets that are not empty.
+         */
+        void write(CheckpointOutput out) throws IOException {
+            out.writeInt(contexts.size());
+            for (int context = Contexts.EMPTY + 1; context < contexts.size(); context++) {
+                out.writeInt(contexts.head(context));
+                out.writeInt(contexts.tail(context));
+            }
+
+            long[] callSiteKeys = keysById(callSites);
+            out.writeInt(callSiteKeys.length);
+            for (long key : callSiteKeys) {
+                out.writeMethod(methods.get((int) (key >>> 32)));
+                out.writeInt((int) key);
+            }
+            long[] allocationSiteKeys = keysById(allocationSites);
+            out.writeInt(allocationSiteKeys.length);
+            for (int site = 0; site < allocationSiteKeys.length; site++) {
+                out.writeMethod(methods.get((int) (allocationSiteKeys[site] >>> 32)));
+                out.writeInt((int) allocationSiteKeys[site]);
+                out.writeType(allocationTypes.get(site));
+            }
+            out.writeInt(objectCount);
+            for (int object = 0; object < objectCount; object++) {
+                out.writeInt(objectSites[object]);
+                out.writeInt(objectHeapContexts[object]);
+            }
+            out.writeInt(cloneMethods.size());
+            for (int clone = 0; clone < cloneMethods.size(); clone++) {
+                out.writeMethod(cloneMethods.get(clone));
+                out.writeInt(cloneContexts[clone]);
+            }
+
+            // the locals of the solver are all from the bodies of the methods it analyzed
+            Local[] locals = new Local[localIds.size()];
+            SootMethod[] owners = new SootMethod[localIds.size()];
+            for (SootMethod method : methods) {
+                for (Local local : method.getActiveBody().getLocals()) {
+                    int localId = localIds.get(local);
+                    if (localId == -1) continue;
+                    locals[localId] = local;
+                    owners[localId] = method;
+                }
+            }
+            long[] pointerKeys = new long[pointers.size()];
+            boolean[] localPointer = new boolean[pointers.size()];
+            localPointers.forEach((key, id) -> {
+                pointerKeys[id] = key;
+                localPointer[id] = true;
+            });
+            fieldPointers.forEach((key, id) -> pointerKeys[id] = key);
+            int nonEmpty = 0;
+            for (Pointer pointer : pointers) {
+                if (pointer.pointsTo.size() > 0) nonEmpty++;
+            }
+            out.writeInt(nonEmpty);
+            for (int id = 0; id < pointers.size(); id++) {
+                int[] objects = pointers.get(id).pointsTo.toArray();
+                if (objects.length == 0) continue;
+                long key = pointerKeys[id];
+                if (localPointer[id]) {
+                    int localId = (int) (key >>> 32);
+                    if (owners[localId] == null)
+                        throw new IllegalStateException("A local of pointer " + id + " is not in the body of an analyzed method");
+                    out.writeInt(LOCAL);
+                    out.writeMethod(owners[localId]);
+                    out.writeLocal(owners[localId], locals[localId]);
+                    out.writeInt((int) key);
+                } else {
+                    int object = (int) (key >>> 32);
+                    int field = (int) key;
+                    if (object == -1) {
+                        out.writeInt(STATIC_FIELD);
+                        out.writeField(fields.get(field));
+                    } else {
+                        out.writeInt(INSTANCE_FIELD);
+                        out.writeInt(object);
+                        out.writeBoolean(field == ARRAY_ELEMENTS);
+                        if (field != ARRAY_ELEMENTS) out.writeField(fields.get(field));
+                    }
+                }
+                out.writeInt(objects.length);
+                for (int object : objects)
+                    out.writeInt(object);
+            }
+        }
+
+        /**
+         * The counterpart of {@link #write(CheckpointOutput)}. Every restored clone is pending and every restored
+         * object is on the worklist, so solving starts over from the restored facts.
+         */
+        void read(CheckpointInput in) throws IOException {
+            int contextCount = in.readInt();
+            for (int context = Contexts.EMPTY + 1; context < contextCount; context++) {
+                int head = in.readInt();
+                contexts.push(in.readInt(), head, Integer.MAX_VALUE);
+            }
+
+            int callSiteCount = in.readInt();
+            for (int site = 0; site < callSiteCount; site++)
+                callSite(in.readMethod(), in.readInt());
+            int allocationSiteCount = in.readInt();
+            for (int site = 0; site < allocationSiteCount; site++)
+                allocationSite(in.readMethod(), in.readInt(), in.readType());
+            int objects = in.readInt();
+            for (int object = 0; object < objects; object++) {
+                int site = in.readInt();
+                object(site, in.readInt(), allocationTypes.get(site));
+            }
+            int clones = in.readInt();
+            for (int clone = 0; clone < clones; clone++) {
+                SootMethod method = in.readMethod();
+                int context = in.readInt();
+                addClone((long) methodId(method) << 32 | context, method, context);
+            }
+
+            int pointerCount = in.readInt();
+            for (int i = 0; i < pointerCount; i++) {
+                int pointer;
+                switch (in.readInt()) {
+                    case LOCAL:
+                        SootMethod owner = in.readMethod();
+                        Local local = in.readLocal(owner);
+                        pointer = localPointer(local, in.readInt());
+                        break;
+                    case STATIC_FIELD:
+                        pointer = staticPointer(in.readField());
+                        break;
+                    default:
+                        int object = in.readInt();
+                        pointer = fieldPointer(object, in.readBoolean() ? ARRAY_ELEMENTS : fieldId(in.readField()));
+                }
+                int size = in.readInt();
+                for (int j = 0; j < size; j++)
+                    addObject(pointer, in.readInt());
+            }
+        }
+
+        long bytes() {
+            long bytes = contexts.tableBytes() + cloneIds.tableBytes() + localPointers.tableBytes() + fieldPointers.tableBytes()
+                    + objectIds.tableBytes() + callSites.tableBytes() + allocationSites.tableBytes()
+                    + 16L * (edges.size() + cloneEdges.size()) + 12L * objectSites.length;
+            for (Pointer pointer : pointers) {
+                // header, fields and the set object
+                bytes += 64 + pointer.pointsTo.slotBytes() + 4L * (pointer.pending.length + pointer.successors.length);
+                if (pointer.constraints != null) bytes += 4L * pointer.constraints.length + 40L * pointer.constraintCount;
+            }
+            return bytes;
+        }
+    }
+
+    private static long[] keysById(LongIntMap ids) {
+        long[] keys = new long[ids.size()];
+        ids.forEach((key, id) -> keys[id] = key);
+        return keys;
+    }
+
+    private static int[] ensure(int[] array, int index) {
+        if (index < array.length) return array;
+        return Arrays.copyOf(array, Math.max(4, array.length * 2));
+    }
 }
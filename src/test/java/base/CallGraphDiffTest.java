@@ -0,0 +1,171 @@
+package base;
+
+import analysis.CallGraph;
+import analysis.CallGraphDiff;
+import org.junit.Assert;
+import org.junit.Test;
+import soot.BooleanType;
+import soot.SootClass;
+import soot.SootMethod;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+public class CallGraphDiffTest {
+
+    // the methods of a fresh class, as a second scene would have them
+    private static List<SootMethod> methods(String... names) {
+        SootClass testClass = new SootClass("TestClass");
+        List<SootMethod> methods = new ArrayList<>();
+        for (String name : names) {
+            SootMethod method = new SootMethod(name, null, BooleanType.v());
+            testClass.addMethod(method);
+            methods.add(method);
+        }
+        return methods;
+    }
+
+    @Test
+    public void reportsDifferencesBySignature() throws IOException {
+        List<SootMethod> first = methods("a", "b", "c", "d");
+        CallGraph cha = new CallGraph("CHA");
+        for (SootMethod method : first)
+            cha.addNode(method);
+        cha.addEdge(first.get(0), first.get(1));
+        cha.addEdge(first.get(0), first.get(2));
+        cha.addEdge(first.get(2), first.get(3));
+
+        // other method objects with the same signatures, d is gone and e is new
+        List<SootMethod> second = methods("e", "c", "b", "a");
+        CallGraph rta = new CallGraph("RTA");
+        for (SootMethod method : second)
+            rta.addNode(method);
+        rta.addEdge(second.get(3), second.get(2));
+        rta.addEdge(second.get(1), second.get(0));
+
+        StringWriter report = new StringWriter();
+        CallGraphDiff.Summary summary = CallGraphDiff.diff(cha, rta, report);
+        String a = first.get(0).getSignature();
+        String b = first.get(1).getSignature();
+        String c = first.get(2).getSignature();
+        String d = first.get(3).getSignature();
+        String e = second.get(0).getSignature();
+        Assert.assertEquals(Arrays.asList(
+                "--- CHA",
+                "+++ RTA",
+                "- edge " + a + " -> " + c,
+                "~ callees " + a + " 2 -> 1",
+                "- edge " + c + " -> " + d,
+                "+ edge " + c + " -> " + e,
+                "~ callees " + c + " 1 -> 1",
+                "- node " + d,
+                "+ node " + e,
+                "# " + summary), Arrays.asList(report.toString().split("\n")));
+
+        Assert.assertEquals(3, summary.getCommonNodes());
+        Assert.assertEquals(1, summary.getRemovedNodes());
+        Assert.assertEquals(1, summary.getAddedNodes());
+        Assert.assertEquals(1, summary.getCommonEdges());
+        Assert.assertEquals(2, summary.getRemovedEdges());
+        Assert.assertEquals(1, summary.getAddedEdges());
+        Assert.assertEquals(2, summary.getChangedCallers());
+        Assert.assertFalse(summary.isEmpty());
+    }
+
+    @Test
+    public void insertionOrderDoesNotMatter() throws IOException {
+        Random random = new Random(3);
+        String[] names = new String[300];
+        for (int i = 0; i < names.length; i++)
+            names[i] = "m" + i;
+        List<SootMethod> first = methods(names);
+        List<SootMethod> second = methods(names);
+        List<int[]> edges = new ArrayList<>();
+        for (int i = 0; i < 3000; i++)
+            edges.add(new int[]{random.nextInt(names.length), random.nextInt(names.length)});
+
+        CallGraph original = new CallGraph("Original");
+        for (SootMethod method : first)
+            original.addNode(method);
+        for (int[] edge : edges)
+            original.addEdgeIfAbsent(first.get(edge[0]), first.get(edge[1]));
+
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < names.length; i++)
+            order.add(i);
+        Collections.shuffle(order, random);
+        Collections.shuffle(edges, random);
+        CallGraph shuffled = new CallGraph("Shuffled");
+        for (int i : order)
+            shuffled.addNode(second.get(i));
+        for (int[] edge : edges)
+            shuffled.addEdgeIfAbsent(second.get(edge[0]), second.get(edge[1]));
+
+        CallGraphDiff.Summary summary = CallGraphDiff.diff(original, shuffled);
+        Assert.assertTrue(summary.toString(), summary.isEmpty());
+        Assert.assertEquals(original.edgeCount(), summary.getCommonEdges());
+        Assert.assertEquals(0, summary.getChangedCallers());
+
+        // snapshots have the same edges
+        StringWriter report = new StringWriter();
+        Assert.assertTrue(CallGraphDiff.diff(original.freeze(), shuffled.freeze(), report).isEmpty());
+        Assert.assertEquals(3, report.toString().split("\n").length);
+    }
+
+    @Test
+    public void matchesSetDifference() throws IOException {
+        Random random = new Random(5);
+        String[] names = new String[200];
+        for (int i = 0; i < names.length; i++)
+            names[i] = "m" + i;
+        List<SootMethod> first = methods(names);
+        List<SootMethod> second = methods(names);
+        CallGraph before = new CallGraph("Before");
+        CallGraph after = new CallGraph("After");
+        for (int i = 0; i < names.length; i++) {
+            // every tenth method exists in one graph only
+            if (i % 10 != 1) before.addNode(first.get(i));
+            if (i % 10 != 2) after.addNode(second.get(i));
+        }
+        Set<String> beforeEdges = new HashSet<>();
+        Set<String> afterEdges = new HashSet<>();
+        for (int i = 0; i < 4000; i++) {
+            int source = random.nextInt(names.length);
+            int target = random.nextInt(names.length);
+            if (before.hasNode(first.get(source)) && before.hasNode(first.get(target)) && random.nextBoolean()) {
+                before.addEdgeIfAbsent(first.get(source), first.get(target));
+                beforeEdges.add(first.get(source).getSignature() + " -> " + first.get(target).getSignature());
+            }
+            if (after.hasNode(second.get(source)) && after.hasNode(second.get(target)) && random.nextBoolean()) {
+                after.addEdgeIfAbsent(second.get(source), second.get(target));
+                afterEdges.add(second.get(source).getSignature() + " -> " + second.get(target).getSignature());
+            }
+        }
+
+        StringWriter report = new StringWriter();
+        CallGraphDiff.Summary summary = CallGraphDiff.diff(before, after, report);
+        Set<String> removed = new HashSet<>();
+        Set<String> added = new HashSet<>();
+        for (String line : report.toString().split("\n")) {
+            if (line.startsWith("- edge ")) removed.add(line.substring(7));
+            if (line.startsWith("+ edge ")) added.add(line.substring(7));
+        }
+        Set<String> expectedRemoved = new HashSet<>(beforeEdges);
+        expectedRemoved.removeAll(afterEdges);
+        Set<String> expectedAdded = new HashSet<>(afterEdges);
+        expectedAdded.removeAll(beforeEdges);
+        Assert.assertEquals(expectedRemoved, removed);
+        Assert.assertEquals(expectedAdded, added);
+        Assert.assertEquals(expectedRemoved.size(), summary.getRemovedEdges());
+        Assert.assertEquals(expectedAdded.size(), summary.getAddedEdges());
+        Assert.assertEquals(20, summary.getRemovedNodes());
+        Assert.assertEquals(20, summary.getAddedNodes());
+    }
+}
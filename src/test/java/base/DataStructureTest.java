@@ -1,7 +1,10 @@
 package base;
 
 import analysis.CallGraph;
+import analysis.DispatchTargets;
 import analysis.Edge;
+import analysis.FrozenCallGraph;
+import analysis.LongHashSet;
 import org.junit.Assert;
 import org.junit.Rule;
 import org.junit.Test;
@@ -10,6 +13,10 @@ import soot.BooleanType;
 import soot.SootClass;
 import soot.SootMethod;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 public class DataStructureTest {
@@ -163,4 +170,195 @@ public class DataStructureTest {
         Assert.assertArrayEquals(new SootMethod[] {secondMethod}, eOutOfFirst.toArray());
         Assert.assertArrayEquals(new SootMethod[] {firstMethod}, eIntoSecond.toArray());
     }
+
+    @Test
+    public void callGraphCallSites() {
+        SootMethod source = new SootMethod("sourceMethod", null, BooleanType.v());
+        SootMethod target = new SootMethod("targetMethod", null, BooleanType.v());
+        SootMethod other = new SootMethod("otherMethod", null, BooleanType.v());
+        SootClass testClass = new SootClass("TestClass");
+        testClass.addMethod(source);
+        testClass.addMethod(target);
+        testClass.addMethod(other);
+
+        CallGraph testCG = new CallGraph("Test", true);
+        Assert.assertTrue(testCG.recordsCallSites());
+
+        testCG.addNode(source);
+        testCG.addNode(target);
+        testCG.addNode(other);
+        testCG.addEdge(source, target, 7);
+        testCG.addEdge(source, target, 2);
+        testCG.addEdge(source, other, 7);
+
+        Assert.assertTrue(testCG.hasEdge(source, target));
+        Assert.assertTrue(testCG.hasEdge(source, target, 2));
+        Assert.assertFalse(testCG.hasEdge(source, other, 2));
+        Assert.assertEquals(2, testCG.edgesOutOf(source).size());
+        Assert.assertArrayEquals(new int[] {2, 7}, testCG.callSitesOf(source, target));
+        Assert.assertArrayEquals(new int[] {7}, testCG.callSitesOf(source, other));
+        Assert.assertEquals(2, testCG.targetsOf(source, 7).size());
+        Assert.assertTrue(testCG.targetsOf(source, 2).contains(target));
+        Assert.assertTrue(testCG.targetsOf(target, 2).isEmpty());
+
+        // a call site added out of unit order, targets of a call site keep the order they were added in
+        testCG.addEdge(source, other, 2);
+        Assert.assertArrayEquals(new int[] {2, 7}, testCG.callSitesOf(source, other));
+        Assert.assertEquals(Arrays.asList(target, other), testCG.targetsOf(source, 2));
+
+        CallGraph copy = new CallGraph("Copy", testCG);
+        Assert.assertArrayEquals(new int[] {2, 7}, copy.callSitesOf(source, target));
+        Assert.assertEquals(Arrays.asList(target, other), copy.targetsOf(source, 2));
+        Assert.assertEquals(0, new CallGraph("Plain").callSitesOf(source, target).length);
+
+        thrown.expect(IllegalArgumentException.class);
+        testCG.addEdge(source, target, 7);
+    }
+
+    @Test
+    public void longHashSet() {
+        LongHashSet set = new LongHashSet(4);
+        Assert.assertTrue(set.addIfAbsent(0L));
+        Assert.assertFalse(set.addIfAbsent(0L));
+        for (long i = 1; i <= 1000; i++)
+            Assert.assertTrue(set.addIfAbsent(i << 32 | i));
+        Assert.assertFalse(set.addIfAbsent(7L << 32 | 7L));
+
+        Assert.assertEquals(1001, set.size());
+        Assert.assertTrue(set.contains(0L));
+        Assert.assertTrue(set.contains(500L << 32 | 500L));
+        Assert.assertFalse(set.contains(500L));
+
+        long[] sum = {0};
+        set.forEach(v -> sum[0] += v & 0xFFFFFFFFL);
+        Assert.assertEquals(500500, sum[0]);
+    }
+
+    @Test
+    public void callGraphVisitors() {
+        SootMethod source = new SootMethod("sourceMethod", null, BooleanType.v());
+        SootMethod target = new SootMethod("targetMethod", null, BooleanType.v());
+        SootClass testClass = new SootClass("TestClass");
+        testClass.addMethod(source);
+        testClass.addMethod(target);
+
+        CallGraph testCG = new CallGraph("Test");
+        testCG.addNode(source);
+        testCG.addNode(target);
+        Assert.assertTrue(testCG.addEdgeIfAbsent(source, target));
+        Assert.assertFalse(testCG.addEdgeIfAbsent(source, target));
+        Assert.assertTrue(testCG.addEdgeIfAbsent(target, target));
+        Assert.assertEquals(2, testCG.nodeCount());
+        Assert.assertEquals(2, testCG.edgeCount());
+
+        List<Edge<SootMethod, SootMethod>> visited = new ArrayList<>();
+        testCG.forEachEdge((s, t) -> visited.add(new Edge<>(s, t)));
+        Assert.assertEquals(testCG.getEdges(), new HashSet<>(visited));
+
+        List<SootMethod> predecessors = new ArrayList<>();
+        testCG.forEachPredecessor(target, predecessors::add);
+        Assert.assertEquals(2, predecessors.size());
+
+        List<SootMethod> successors = new ArrayList<>();
+        testCG.forEachSuccessor(source, successors::add);
+        Assert.assertArrayEquals(new SootMethod[] {target}, successors.toArray());
+
+        CallGraph copy = new CallGraph("Copy", testCG);
+        Assert.assertTrue(copy.hasEdge(target, target));
+        Assert.assertEquals(2, copy.edgeCount());
+    }
+
+    @Test
+    public void sharedDispatchTargets() {
+        SootClass testClass = new SootClass("TestClass");
+        SootMethod[] m = new SootMethod[5];
+        for (int i = 0; i < m.length; i++) {
+            m[i] = new SootMethod("method" + i, null, BooleanType.v());
+            testClass.addMethod(m[i]);
+        }
+        DispatchTargets first = new DispatchTargets(testClass, m[2].getNumberedSubSignature(), Arrays.asList(m[3], m[2]));
+        DispatchTargets second = new DispatchTargets(testClass, m[4].getNumberedSubSignature(), Arrays.asList(m[4], m[3]));
+
+        CallGraph testCG = new CallGraph("Test", true);
+        testCG.addNode(m[0]);
+        testCG.addNode(m[1]);
+        testCG.addNode(m[3]);
+        testCG.addEdge(m[0], m[3], 1);
+        // targets become nodes, the set is stored once for both callers
+        testCG.addCallSite(m[0], 2, first);
+        testCG.addCallSite(m[0], 5, second);
+        testCG.addCallSite(m[1], 0, first);
+        testCG.addCallSite(m[1], 0, first);
+        Assert.assertEquals(5, testCG.nodeCount());
+        Assert.assertEquals(2, testCG.sharedSetCount());
+        Assert.assertFalse(testCG.addEdgeIfAbsent(m[1], m[2]));
+        Assert.assertEquals(5, testCG.edgeCount());
+
+        // every edge once, explicit ones first, set targets in dispatch order
+        List<SootMethod> successors = new ArrayList<>();
+        testCG.forEachSuccessor(m[0], successors::add);
+        Assert.assertEquals(Arrays.asList(m[3], m[2], m[4]), successors);
+        Assert.assertEquals(new HashSet<>(Arrays.asList(m[0], m[1])), testCG.edgesInto(m[3]));
+        List<SootMethod> predecessors = new ArrayList<>();
+        testCG.forEachPredecessor(m[3], predecessors::add);
+        Assert.assertEquals(2, predecessors.size());
+        Assert.assertEquals(5, testCG.getEdges().size());
+
+        Assert.assertTrue(testCG.hasEdge(m[0], m[4]));
+        Assert.assertFalse(testCG.hasEdge(m[1], m[4]));
+        Assert.assertTrue(testCG.hasEdge(m[0], m[2], 2));
+        Assert.assertFalse(testCG.hasEdge(m[0], m[2], 5));
+        Assert.assertEquals(Arrays.asList(m[4], m[3]), testCG.targetsOf(m[0], 5));
+        Assert.assertArrayEquals(new int[] {1, 2, 5}, testCG.callSitesOf(m[0], m[3]));
+        Assert.assertArrayEquals(new int[] {0}, testCG.callSitesOf(m[1], m[2]));
+
+        CallGraph copy = new CallGraph("Copy", testCG);
+        Assert.assertEquals(testCG.getEdges(), copy.getEdges());
+        Assert.assertEquals(5, copy.edgeCount());
+        Assert.assertArrayEquals(new int[] {1, 2, 5}, copy.callSitesOf(m[0], m[3]));
+
+        thrown.expect(IllegalArgumentException.class);
+        testCG.addCallSite(m[0], 2, second);
+    }
+
+    @Test
+    public void frozenCallGraph() {
+        SootClass testClass = new SootClass("TestClass");
+        SootMethod[] m = new SootMethod[4];
+        CallGraph testCG = new CallGraph("Test");
+        for (int i = 0; i < m.length; i++) {
+            m[i] = new SootMethod("method" + i, null, BooleanType.v());
+            testClass.addMethod(m[i]);
+            testCG.addNode(m[i]);
+        }
+        testCG.addEdge(m[0], m[3]);
+        testCG.addEdge(m[0], m[1]);
+        testCG.addEdge(m[1], m[1]);
+        testCG.addEdge(m[2], m[1]);
+        testCG.markDegraded(m[2]);
+
+        FrozenCallGraph frozen = testCG.freeze();
+        testCG.addEdge(m[3], m[0]);
+        Assert.assertEquals(4, frozen.nodeCount());
+        Assert.assertEquals(4, frozen.edgeCount());
+        Assert.assertEquals(new ArrayList<>(testCG.getNodes()), frozen.getNodes());
+        Assert.assertFalse(frozen.hasEdge(m[3], m[0]));
+        Assert.assertTrue(frozen.hasEdge(m[0], m[3]));
+        Assert.assertTrue(frozen.isDegraded(m[2]));
+        Assert.assertFalse(frozen.isDegraded(m[0]));
+
+        // rows are sorted by node id
+        Assert.assertEquals(Arrays.asList(m[1], m[3]), frozen.successors(m[0]));
+        Assert.assertEquals(Arrays.asList(m[0], m[1], m[2]), frozen.predecessors(m[1]));
+        Assert.assertEquals(testCG.edgesOutOf(m[0]), frozen.edgesOutOf(m[0]));
+        Assert.assertEquals(testCG.edgesInto(m[1]), frozen.edgesInto(m[1]));
+        Assert.assertTrue(frozen.edgesInto(m[1]).contains(m[2]));
+        Assert.assertEquals(1, frozen.successors(m[0]).indexOf(m[3]));
+        Assert.assertEquals(0, frozen.outDegree(m[3]));
+        Assert.assertEquals(3, frozen.inDegree(m[1]));
+
+        List<Edge<SootMethod, SootMethod>> visited = new ArrayList<>();
+        frozen.forEachEdge((s, t) -> visited.add(new Edge<>(s, t)));
+        Assert.assertEquals(Arrays.asList(new Edge<>(m[0], m[1]), new Edge<>(m[0], m[3]), new Edge<>(m[1], m[1]), new Edge<>(m[2], m[1])), visited);
+    }
 }
@@ -0,0 +1,101 @@
+package base;
+
+import analysis.CallGraph;
+import analysis.CallGraphCondensation;
+import analysis.IncrementalSccGraph;
+import org.junit.Assert;
+import org.junit.Test;
+import soot.BooleanType;
+import soot.SootClass;
+import soot.SootMethod;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public class IncrementalSccGraphTest {
+
+    @Test
+    public void cycleIsMerged() {
+        IncrementalSccGraph graph = new IncrementalSccGraph();
+        int a = graph.addNode();
+        int b = graph.addNode();
+        int c = graph.addNode();
+        int d = graph.addNode();
+
+        // d -> c -> b -> a only goes against the insertion order
+        Assert.assertTrue(graph.addEdge(d, c));
+        Assert.assertTrue(graph.addEdge(c, b));
+        Assert.assertTrue(graph.addEdge(b, a));
+        Assert.assertFalse(graph.addEdge(b, a));
+        Assert.assertEquals(4, graph.sccCount());
+        Assert.assertTrue(graph.topologicalIndex(d) < graph.topologicalIndex(c));
+        Assert.assertTrue(graph.topologicalIndex(b) < graph.topologicalIndex(a));
+
+        // a -> c closes the cycle a, c, b
+        graph.addEdge(a, c);
+        Assert.assertEquals(2, graph.sccCount());
+        Assert.assertTrue(graph.inSameScc(a, c));
+        Assert.assertTrue(graph.inSameScc(b, c));
+        Assert.assertFalse(graph.inSameScc(d, a));
+        Assert.assertEquals(3, graph.sccSize(b));
+        int[] members = graph.members(a);
+        Arrays.sort(members);
+        Assert.assertArrayEquals(new int[]{a, b, c}, members);
+        Assert.assertTrue(graph.topologicalIndex(d) < graph.topologicalIndex(a));
+        Assert.assertArrayEquals(new int[]{graph.sccOf(d), graph.sccOf(a)}, graph.sccsInTopologicalOrder());
+        Assert.assertEquals(2, graph.getMergeCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownNode() {
+        IncrementalSccGraph graph = new IncrementalSccGraph();
+        graph.addNode();
+        graph.addEdge(0, 1);
+    }
+
+    @Test
+    public void matchesTarjanAfterEveryInsertion() {
+        Random random = new Random(7);
+        for (int round = 0; round < 20; round++) {
+            int n = 5 + random.nextInt(40);
+            IncrementalSccGraph graph = new IncrementalSccGraph();
+            List<SootMethod> methods = new ArrayList<>();
+            SootClass testClass = new SootClass("TestClass" + round);
+            CallGraph cg = new CallGraph("Test");
+            for (int i = 0; i < n; i++) {
+                Assert.assertEquals(i, graph.addNode());
+                SootMethod method = new SootMethod("m" + i, null, BooleanType.v());
+                testClass.addMethod(method);
+                methods.add(method);
+                cg.addNode(method);
+            }
+
+            int edgeCount = n * (1 + random.nextInt(3));
+            for (int e = 0; e < edgeCount; e++) {
+                int source = random.nextInt(n);
+                int target = random.nextInt(n);
+                Assert.assertEquals(cg.addEdgeIfAbsent(methods.get(source), methods.get(target)), graph.addEdge(source, target));
+                assertConsistent(graph, cg, methods);
+            }
+        }
+    }
+
+    private static void assertConsistent(IncrementalSccGraph graph, CallGraph cg, List<SootMethod> methods) {
+        CallGraphCondensation condensation = new CallGraphCondensation(cg);
+        Assert.assertEquals(condensation.sccCount(), graph.sccCount());
+        for (int i = 0; i < methods.size(); i++) {
+            for (int j = 0; j < methods.size(); j++) {
+                boolean same = condensation.sccOf(methods.get(i)) == condensation.sccOf(methods.get(j));
+                Assert.assertEquals(same, graph.inSameScc(i, j));
+            }
+        }
+        cg.forEachEdge((source, target) -> {
+            int s = methods.indexOf(source);
+            int t = methods.indexOf(target);
+            if (!graph.inSameScc(s, t))
+                Assert.assertTrue(graph.topologicalIndex(s) < graph.topologicalIndex(t));
+        });
+    }
+}
@@ -0,0 +1,94 @@
+package base;
+
+import analysis.CallGraph;
+import analysis.CallGraphCondensation;
+import analysis.ReachabilityIndex;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import soot.BooleanType;
+import soot.SootClass;
+import soot.SootMethod;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+public class ReachabilityIndexTest {
+    private SootMethod main;
+    private SootMethod first;
+    private SootMethod second;
+    private SootMethod third;
+    private SootMethod sink;
+    private SootMethod unrelated;
+    private ReachabilityIndex index;
+
+    @Before
+    public void setUp() {
+        main = new SootMethod("main", null, BooleanType.v());
+        first = new SootMethod("first", null, BooleanType.v());
+        second = new SootMethod("second", null, BooleanType.v());
+        third = new SootMethod("third", null, BooleanType.v());
+        sink = new SootMethod("sink", null, BooleanType.v());
+        unrelated = new SootMethod("unrelated", null, BooleanType.v());
+        SootClass testClass = new SootClass("TestClass");
+        for (SootMethod m : Arrays.asList(main, first, second, third, sink, unrelated))
+            testClass.addMethod(m);
+
+        // main -> first <-> second -> sink, second -> third -> third, unrelated -> sink
+        CallGraph cg = new CallGraph("Test");
+        for (SootMethod m : Arrays.asList(main, first, second, third, sink, unrelated))
+            cg.addNode(m);
+        cg.addEdge(main, first);
+        cg.addEdge(first, second);
+        cg.addEdge(second, first);
+        cg.addEdge(second, sink);
+        cg.addEdge(second, third);
+        cg.addEdge(third, third);
+        cg.addEdge(unrelated, sink);
+
+        index = new ReachabilityIndex(cg);
+    }
+
+    @Test
+    public void condensation() {
+        CallGraphCondensation condensation = index.getCondensation();
+        Assert.assertEquals(6, condensation.methodCount());
+        Assert.assertEquals(5, condensation.sccCount());
+        Assert.assertEquals(condensation.sccOf(first), condensation.sccOf(second));
+        Assert.assertTrue(condensation.isCyclic(condensation.sccOf(first)));
+        Assert.assertTrue(condensation.isCyclic(condensation.sccOf(third)));
+        Assert.assertFalse(condensation.isCyclic(condensation.sccOf(main)));
+        // callees come first
+        Assert.assertTrue(condensation.sccOf(sink) < condensation.sccOf(second));
+        Assert.assertTrue(condensation.sccOf(first) < condensation.sccOf(main));
+    }
+
+    @Test
+    public void pairwise() {
+        Assert.assertTrue(index.reaches(main, sink));
+        Assert.assertTrue(index.reaches(second, first));
+        Assert.assertTrue(index.reaches(main, main));
+        Assert.assertFalse(index.reaches(sink, main));
+        Assert.assertFalse(index.reaches(main, unrelated));
+        Assert.assertFalse(index.reaches(third, sink));
+    }
+
+    @Test
+    public void bulk() {
+        Assert.assertEquals(set(first, second, third, sink), index.transitiveCallees(main));
+        Assert.assertEquals(set(first, second, third, sink), index.transitiveCallees(first));
+        Assert.assertEquals(set(third), index.transitiveCallees(third));
+        Assert.assertEquals(set(), index.transitiveCallees(sink));
+
+        Assert.assertEquals(set(main, first, second, unrelated), index.transitiveCallers(sink));
+        Assert.assertEquals(set(), index.transitiveCallers(main));
+        Assert.assertEquals(set(main, first, second, third), index.transitiveCallers(third));
+
+        Assert.assertEquals(set(main), index.entryPointsReaching(Arrays.asList(main, third), sink));
+    }
+
+    private static Set<SootMethod> set(SootMethod... methods) {
+        return new HashSet<>(Arrays.asList(methods));
+    }
+}
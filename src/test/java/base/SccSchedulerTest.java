@@ -0,0 +1,135 @@
+package base;
+
+import analysis.AnalysisCancelledException;
+import analysis.CallGraph;
+import analysis.CancellationToken;
+import analysis.SccScheduler;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import soot.BooleanType;
+import soot.SootClass;
+import soot.SootMethod;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SccSchedulerTest {
+    private SootMethod main;
+    private SootMethod first;
+    private SootMethod second;
+    private SootMethod third;
+    private SootMethod sink;
+    private SootMethod unrelated;
+    private CallGraph cg;
+    private ForkJoinPool pool;
+
+    @Before
+    public void setUp() {
+        main = new SootMethod("main", null, BooleanType.v());
+        first = new SootMethod("first", null, BooleanType.v());
+        second = new SootMethod("second", null, BooleanType.v());
+        third = new SootMethod("third", null, BooleanType.v());
+        sink = new SootMethod("sink", null, BooleanType.v());
+        unrelated = new SootMethod("unrelated", null, BooleanType.v());
+        SootClass testClass = new SootClass("TestClass");
+        for (SootMethod m : Arrays.asList(main, first, second, third, sink, unrelated))
+            testClass.addMethod(m);
+
+        // main -> first <-> second -> sink, second -> third -> third, unrelated -> sink
+        cg = new CallGraph("Test");
+        for (SootMethod m : Arrays.asList(main, first, second, third, sink, unrelated))
+            cg.addNode(m);
+        cg.addEdge(main, first);
+        cg.addEdge(first, second);
+        cg.addEdge(second, first);
+        cg.addEdge(second, sink);
+        cg.addEdge(second, third);
+        cg.addEdge(third, third);
+        cg.addEdge(unrelated, sink);
+        pool = new ForkJoinPool(4);
+    }
+
+    @Test
+    public void bottomUpComputesSummariesToFixpoint() {
+        // the summary of a method is the set of methods it reaches, built from the summaries of its callees
+        Map<SootMethod, Set<SootMethod>> reached = new ConcurrentHashMap<>();
+        SccScheduler scheduler = new SccScheduler(cg, SccScheduler.Order.BOTTOM_UP);
+        scheduler.run((scc, methods) -> {
+            boolean changed = false;
+            for (SootMethod method : methods) {
+                Set<SootMethod> summary = reached.computeIfAbsent(method, m -> new HashSet<>());
+                for (SootMethod callee : cg.edgesOutOf(method)) {
+                    changed |= summary.add(callee);
+                    Set<SootMethod> calleeSummary = reached.get(callee);
+                    // callees in other SCCs are done, the ones in this SCC may not have started yet
+                    if (calleeSummary != null) changed |= summary.addAll(calleeSummary);
+                }
+            }
+            return changed;
+        }, pool);
+
+        Assert.assertEquals(new HashSet<>(Arrays.asList(first, second, third, sink)), reached.get(main));
+        Assert.assertEquals(new HashSet<>(Arrays.asList(first, second, third, sink)), reached.get(first));
+        Assert.assertEquals(new HashSet<>(Arrays.asList(third)), reached.get(third));
+        Assert.assertEquals(new HashSet<>(Arrays.asList(sink)), reached.get(unrelated));
+        Assert.assertEquals(6, reached.size());
+        // every cyclic SCC ran at least once more than needed to see that nothing changed
+        Assert.assertTrue(scheduler.getTaskRuns() > scheduler.getCondensation().sccCount());
+    }
+
+    @Test
+    public void topDownRunsCallersFirst() {
+        Map<SootMethod, Integer> finished = new ConcurrentHashMap<>();
+        AtomicInteger clock = new AtomicInteger();
+        SccScheduler scheduler = new SccScheduler(cg, SccScheduler.Order.TOP_DOWN);
+        scheduler.run((scc, methods) -> {
+            int time = clock.incrementAndGet();
+            for (SootMethod method : methods)
+                finished.put(method, time);
+            return false;
+        }, pool);
+
+        Assert.assertEquals(6, finished.size());
+        Assert.assertEquals(5, scheduler.getTaskRuns());
+        cg.forEachEdge((source, target) -> {
+            if (finished.get(source).intValue() != finished.get(target).intValue())
+                Assert.assertTrue(source + " before " + target, finished.get(source) < finished.get(target));
+        });
+    }
+
+    @Test
+    public void failingTaskStopsTheRun() {
+        SccScheduler scheduler = new SccScheduler(cg, SccScheduler.Order.BOTTOM_UP);
+        Set<SootMethod> processed = ConcurrentHashMap.newKeySet();
+        try {
+            scheduler.run((scc, methods) -> {
+                if (methods.contains(sink)) throw new IllegalStateException("sink failed");
+                processed.addAll(methods);
+                return false;
+            }, pool);
+            Assert.fail("The exception of the task must be rethrown");
+        } catch (IllegalStateException expected) {
+        }
+        // everything that calls sink waits for it
+        Assert.assertFalse(processed.contains(second));
+        Assert.assertFalse(processed.contains(main));
+        Assert.assertFalse(processed.contains(unrelated));
+
+        CancellationToken token = new CancellationToken();
+        token.cancel();
+        scheduler.setCancellationToken(token);
+        try {
+            scheduler.run((scc, methods) -> false, pool);
+            Assert.fail("Cancelled run must not complete");
+        } catch (AnalysisCancelledException expected) {
+        }
+        Assert.assertEquals(0, scheduler.getTaskRuns());
+    }
+}
@@ -1,11 +1,13 @@
 package base;
 
+import analysis.LibraryHierarchy;
 import com.google.common.collect.Lists;
 import org.junit.Assert;
 import soot.*;
 import soot.options.Options;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.Set;
 
 public abstract class TestSetup {
@@ -34,15 +36,33 @@ public abstract class TestSetup {
 	 * This method provides the options to soot to analyze the respective classes.
 	 */
 	protected static void setupSoot() {
+		String userdir = System.getProperty("user.dir");
+		setOptions(userdir + File.separator + "target" + File.separator + "test-classes"+ File.pathSeparator + "lib"+File.separator+"rt.jar");
+		Scene.v().loadNecessaryClasses();
+	}
+
+	/*
+	 * Same as setupSoot(), but rt.jar is not on the soot classpath: its hierarchy is installed from a snapshot in the
+	 * cache directory, only the application classes are resolved by soot.
+	 */
+	protected static LibraryHierarchy setupSootFromSnapshot(File cacheDirectory) throws IOException {
+		String userdir = System.getProperty("user.dir");
+		setOptions(userdir + File.separator + "target" + File.separator + "test-classes");
+		LibraryHierarchy library = LibraryHierarchy.forJar(new File("lib" + File.separator + "rt.jar"), cacheDirectory);
+		library.install(Scene.v());
+		Scene.v().loadNecessaryClasses();
+		return library;
+	}
+
+	private static void setOptions(String sootCp) {
 		G.reset();
 		String userdir = System.getProperty("user.dir");
-		String sootCp = userdir + File.separator + "target" + File.separator + "test-classes"+ File.pathSeparator + "lib"+File.separator+"rt.jar";
 		Options.v().set_whole_program(true);
 		Options.v().set_soot_classpath(sootCp);
 		Options.v().set_no_bodies_for_excluded(true);
 		Options.v().set_full_resolver(true);
 		Options.v().set_process_dir(Lists.newArrayList(userdir + File.separator + "target" + File.separator + "test-classes"));
-		Options.v().set_exclude(Lists.newArrayList("exercises.*", "base.*"));
+		Options.v().set_exclude(Lists.newArrayList("exercises.*", "base.*", "bench.*"));
 		Options.v().set_allow_phantom_refs(true);
 		Options.v().setPhaseOption("jb", "use-original-names:true");
 		Options.v().set_prepend_classpath(false);
@@ -53,7 +73,6 @@ public abstract class TestSetup {
 		if (c != null)
 			c.setApplicationClass();
 		*/
-		Scene.v().loadNecessaryClasses();
 	}
 
 
@@ -0,0 +1,103 @@
+package bench;
+
+import analysis.CallGraphAlgorithm;
+import analysis.daemon.AnalysisDaemon;
+import analysis.exercise1.CHAAlgorithm;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Round trip latency of {@link AnalysisDaemon} queries from a client on the same machine, against the time a
+ * fresh CHA run over the test classes takes to load the scene and build the call graph. The daemon runs in this
+ * JVM, the client talks to it over loopback TCP like any other, one request at a time. The first pass warms up.
+ * <p>
+ * Arguments: queries per kind (default 20000), {@code snapshot} to take rt.jar from a {@link
+ * analysis.LibraryHierarchy} snapshot.
+ */
+public class AnalysisDaemonBenchmark {
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        boolean snapshot = args.length > 1 && args[1].equals("snapshot");
+        String testClasses = System.getProperty("user.dir") + File.separator + "target" + File.separator + "test-classes";
+        String classpath = snapshot ? testClasses : testClasses + File.pathSeparator + "lib" + File.separator + "rt.jar";
+        List<String> sootArguments = Arrays.asList("-w", "-cp", classpath, "-process-dir", testClasses,
+                "-x", "exercises.*", "-x", "base.*", "-x", "bench.*", "-no-bodies-for-excluded", "-allow-phantom-refs",
+                "-full-resolver", "-p", "jb", "use-original-names:true", "-f", "n");
+
+        try (AnalysisDaemon daemon = new AnalysisDaemon(sootArguments, () -> {
+            CallGraphAlgorithm cha = new CHAAlgorithm();
+            cha.setLazyBodies(true);
+            return cha;
+        })) {
+            if (snapshot) daemon.setLibrarySnapshot(new File("lib/rt.jar"), Files.createTempDirectory("hierarchy").toFile());
+            int port = daemon.start(0);
+            AnalysisDaemon.Generation generation = daemon.getGeneration();
+            System.out.printf("load + CHA %d ms, %d nodes, %d edges%n", generation.getLoadNanos() / 1_000_000,
+                    generation.nodeCount(), generation.edgeCount());
+
+            try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+                socket.setTcpNoDelay(true);
+                BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                BufferedWriter out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+                List<String> signatures = methods(in, out, "CALLEES <target.exercise1.SimpleExample: void main(java.lang.String[])>");
+                signatures.addAll(methods(in, out, "CALLERS <java.lang.Object: void <init>()>"));
+
+                for (int pass = 0; pass < 2; pass++) {
+                    Random random = new Random(42);
+                    for (String kind : new String[]{"CALLEES", "CALLERS", "REACHES"}) {
+                        long[] nanos = new long[count];
+                        for (int i = 0; i < count; i++) {
+                            String signature = signatures.get(random.nextInt(signatures.size()));
+                            String request = kind.equals("REACHES")
+                                    ? kind + " " + signature + " " + signatures.get(random.nextInt(signatures.size()))
+                                    : kind + " " + signature;
+                            long start = System.nanoTime();
+                            if (kind.equals("REACHES")) {
+                                out.write(request + "\n");
+                                out.flush();
+                                in.readLine();
+                            } else {
+                                methods(in, out, request);
+                            }
+                            nanos[i] = System.nanoTime() - start;
+                        }
+                        Arrays.sort(nanos);
+                        System.out.printf("%s %s: median %4d us, p99 %5d us, max %6d us%n", pass == 0 ? "warm-up" : "warm   ",
+                                kind, nanos[count / 2] / 1000, nanos[count * 99 / 100] / 1000, nanos[count - 1] / 1000);
+                    }
+                }
+                out.write("STATS\n");
+                out.flush();
+                System.out.println("daemon side: " + in.readLine());
+
+                long start = System.nanoTime();
+                out.write("RELOAD\n");
+                out.flush();
+                System.out.println(in.readLine() + ", round trip " + (System.nanoTime() - start) / 1_000_000 + " ms");
+            }
+        }
+    }
+
+    private static List<String> methods(BufferedReader in, BufferedWriter out, String request) throws Exception {
+        out.write(request + "\n");
+        out.flush();
+        String answer = in.readLine();
+        List<String> methods = new ArrayList<>();
+        if (!answer.startsWith("METHODS ")) return methods;
+        for (int i = Integer.parseInt(answer.substring("METHODS ".length())); i > 0; i--)
+            methods.add(in.readLine());
+        return methods;
+    }
+}
@@ -0,0 +1,233 @@
+package bench;
+
+import analysis.BodyLoader;
+import analysis.BodyLoader.Retention;
+import analysis.CallGraph;
+import analysis.LibraryHierarchy;
+import analysis.exercise1.CHAAlgorithm;
+import com.google.common.collect.Lists;
+import com.sun.management.GarbageCollectionNotificationInfo;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import soot.G;
+import soot.Scene;
+import soot.SootMethod;
+import soot.options.Options;
+
+import javax.management.NotificationEmitter;
+import javax.management.openmbean.CompositeData;
+import java.io.File;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Heap of lazy CHA with every {@link BodyLoader.Retention} on a generated program, and what it costs to get the
+ * bodies back afterwards. The program has CLASSES classes with METHODS instance and METHODS static methods each,
+ * every method allocates, does some arithmetic and calls random other methods, {@code Main.main} calls into every
+ * class. rt.jar comes from a {@link LibraryHierarchy} snapshot, so the application bodies are most of the heap.
+ * <p>
+ * Every retention runs in a JVM of its own, so no run sees the garbage of another. Peak is the largest heap right
+ * after a collection during construction, retained is the live heap after it, both above the loaded scene. Bodies
+ * back is the time it takes afterwards to get the body of every call graph node once more, one after the other,
+ * which rebuilds every released body.
+ * <p>
+ * With the default heap the peak is about the same for every retention, around 200 MB for 500 classes: the collector
+ * has no reason to run before released bodies pile up. The difference shows under a tight limit, at {@code -Xmx250m}
+ * KEEP runs out of memory while SOFT and RELEASE peak at about 133 MB.
+ * <p>
+ * Arguments: number of classes (default 500), JVM options for the runs, e.g. {@code -Xmx256m}.
+ */
+public class BodyRetentionBenchmark {
+    private static final int METHODS = 10;
+    private static final int CALLS = 12;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 4 && args[0].equals("-run")) {
+            // one run in a child JVM: retention, program dir, snapshot cache
+            runInThread(Retention.valueOf(args[1]), new File(args[2]), new File(args[3]));
+            return;
+        }
+        int classes = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        File dir = Files.createTempDirectory("synthetic").toFile();
+        File cache = Files.createTempDirectory("hierarchy").toFile();
+        try {
+            generate(dir, classes);
+            System.out.println(classes + " classes, " + classes * METHODS * 2 + " methods");
+            for (int round = 0; round < 2; round++) {
+                for (Retention retention : Retention.values()) {
+                    List<String> command = new ArrayList<>();
+                    command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+                    command.addAll(Arrays.asList(args).subList(Math.min(1, args.length), args.length));
+                    command.addAll(Arrays.asList("-cp", System.getProperty("java.class.path"), BodyRetentionBenchmark.class.getName(),
+                            "-run", retention.name(), dir.getPath(), cache.getPath()));
+                    Process process = new ProcessBuilder(command).inheritIO().start();
+                    // running out of heap is a result too
+                    if (process.waitFor() != 0) System.out.println(retention + " failed");
+                }
+            }
+        } finally {
+            delete(dir);
+            delete(cache);
+        }
+    }
+
+    private static void runInThread(Retention retention, File dir, File cache) throws Exception {
+        AtomicLong peak = new AtomicLong();
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            ((NotificationEmitter) collector).addNotificationListener((notification, handback) -> {
+                if (!notification.getType().equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION)) return;
+                GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+                long used = info.getGcInfo().getMemoryUsageAfterGc().values().stream().mapToLong(MemoryUsage::getUsed).sum();
+                peak.accumulateAndGet(used, Math::max);
+            }, null, null);
+        }
+
+        // CHAAlgorithm recurses along call chains
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread thread = new Thread(null, () -> {
+            try {
+                run(dir, cache, retention, peak);
+            } catch (Throwable e) {
+                failure.set(e);
+            }
+        }, "bench", 1L << 30);
+        thread.start();
+        thread.join();
+        if (failure.get() != null) {
+            failure.get().printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    private static void run(File dir, File cache, Retention retention, AtomicLong peak) throws Exception {
+        G.reset();
+        Options.v().set_whole_program(true);
+        Options.v().set_soot_classpath(dir.getPath());
+        Options.v().set_process_dir(Lists.newArrayList(dir.getPath()));
+        Options.v().set_allow_phantom_refs(true);
+        Options.v().set_prepend_classpath(false);
+        Options.v().set_output_format(Options.output_format_none);
+        LibraryHierarchy.forJar(new File("lib" + File.separator + "rt.jar"), cache).install(Scene.v());
+        Scene.v().loadNecessaryClasses();
+        long before = liveHeap();
+        peak.set(0);
+
+        CHAAlgorithm cha = new CHAAlgorithm();
+        cha.setLazyBodies(true);
+        cha.setBodyRetention(retention);
+        long start = System.nanoTime();
+        CallGraph cg = cha.constructCallGraph(Scene.v());
+        long elapsed = System.nanoTime() - start;
+        long peakBytes = peak.get() - before;
+        long retained = liveHeap() - before;
+
+        // one body at a time, the bodies of all nodes at once would not fit where KEEP does not
+        start = System.nanoTime();
+        int bodies = 0;
+        try (BodyLoader loader = new BodyLoader(0, retention)) {
+            for (SootMethod node : cg.getNodes()) {
+                if (loader.body(node) != null) bodies++;
+                loader.release(node);
+            }
+        }
+        long rebuild = System.nanoTime() - start;
+        System.out.printf("%-7s max heap %4d MB, CHA %5d ms, %d nodes, %d edges, peak %4d MB, retained %4d MB, %6d released, %d rebuilt; %d bodies back in %5d ms%n",
+                retention, Runtime.getRuntime().maxMemory() >> 20, elapsed / 1_000_000, cg.nodeCount(), cg.edgeCount(), peakBytes >> 20, retained >> 20,
+                cha.getBodiesReleased(), cha.getBodiesRebuilt(), bodies, rebuild / 1_000_000);
+    }
+
+    static void generate(File dir, int classes) throws Exception {
+        Random random = new Random(42);
+        File pkg = new File(dir, "synthetic");
+        if (!pkg.mkdirs()) throw new IllegalStateException("Cannot create " + pkg);
+        for (int c = 0; c < classes; c++) {
+            ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+            writer.visit(Opcodes.V1_6, Opcodes.ACC_PUBLIC, "synthetic/C" + c, null, "java/lang/Object", null);
+            MethodVisitor init = writer.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+            init.visitCode();
+            init.visitVarInsn(Opcodes.ALOAD, 0);
+            init.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+            init.visitInsn(Opcodes.RETURN);
+            init.visitMaxs(0, 0);
+            init.visitEnd();
+            for (int m = 0; m < METHODS; m++) {
+                method(writer.visitMethod(Opcodes.ACC_PUBLIC, "m" + m, "(I)I", null, null), random, classes, false);
+                method(writer.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "s" + m, "(I)I", null, null), random, classes, true);
+            }
+            writer.visitEnd();
+            Files.write(new File(pkg, "C" + c + ".class").toPath(), writer.toByteArray());
+        }
+
+        ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        writer.visit(Opcodes.V1_6, Opcodes.ACC_PUBLIC, "synthetic/Main", null, "java/lang/Object", null);
+        MethodVisitor main = writer.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "main", "([Ljava/lang/String;)V", null, null);
+        main.visitCode();
+        for (int c = 0; c < classes; c++) {
+            main.visitInsn(Opcodes.ICONST_0);
+            main.visitMethodInsn(Opcodes.INVOKESTATIC, "synthetic/C" + c, "s0", "(I)I", false);
+            main.visitInsn(Opcodes.POP);
+        }
+        main.visitInsn(Opcodes.RETURN);
+        main.visitMaxs(0, 0);
+        main.visitEnd();
+        writer.visitEnd();
+        Files.write(new File(pkg, "Main.class").toPath(), writer.toByteArray());
+    }
+
+    // local 0 or 1 is the int parameter, the next one accumulates the results
+    private static void method(MethodVisitor mv, Random random, int classes, boolean isStatic) {
+        int parameter = isStatic ? 0 : 1;
+        int accumulator = parameter + 1;
+        mv.visitCode();
+        mv.visitVarInsn(Opcodes.ILOAD, parameter);
+        mv.visitVarInsn(Opcodes.ISTORE, accumulator);
+        for (int i = 0; i < CALLS; i++) {
+            String owner = "synthetic/C" + random.nextInt(classes);
+            int target = random.nextInt(METHODS);
+            if (random.nextBoolean()) {
+                mv.visitTypeInsn(Opcodes.NEW, owner);
+                mv.visitInsn(Opcodes.DUP);
+                mv.visitMethodInsn(Opcodes.INVOKESPECIAL, owner, "<init>", "()V", false);
+                mv.visitVarInsn(Opcodes.ILOAD, accumulator);
+                mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, owner, "m" + target, "(I)I", false);
+            } else {
+                mv.visitVarInsn(Opcodes.ILOAD, accumulator);
+                mv.visitMethodInsn(Opcodes.INVOKESTATIC, owner, "s" + target, "(I)I", false);
+            }
+            mv.visitVarInsn(Opcodes.ILOAD, accumulator);
+            mv.visitIntInsn(Opcodes.BIPUSH, i + 3);
+            mv.visitInsn(Opcodes.IMUL);
+            mv.visitInsn(Opcodes.IADD);
+            mv.visitVarInsn(Opcodes.ISTORE, accumulator);
+        }
+        mv.visitVarInsn(Opcodes.ILOAD, accumulator);
+        mv.visitInsn(Opcodes.IRETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children)
+                delete(child);
+        }
+        if (!file.delete()) System.err.println("Cannot delete " + file);
+    }
+
+    private static long liveHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++)
+            System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,113 @@
+package bench;
+
+import analysis.CallGraph;
+import analysis.CallGraphDiff;
+import soot.BooleanType;
+import soot.SootClass;
+import soot.SootMethod;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * {@link CallGraphDiff} against comparing the callees of every method through {@link CallGraph#edgesOutOf}, on two
+ * random graphs with the same signatures but different method objects, as two releases would have them. The second
+ * graph lacks one percent of the methods and five percent of the edges of the first and has two percent edges of
+ * its own. The report is written to a temporary file, the naive comparison only counts.
+ * <p>
+ * Arguments: number of methods (default 500000), callees per method (default 20), "naive" to run the naive
+ * comparison as well.
+ */
+public class CallGraphDiffBenchmark {
+    public static void main(String[] args) throws IOException {
+        int nodes = args.length > 0 ? Integer.parseInt(args[0]) : 500_000;
+        int degree = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        boolean naive = args.length > 2 && args[2].equals("naive");
+
+        Random random = new Random(42);
+        List<SootMethod> firstMethods = methods(nodes);
+        List<SootMethod> secondMethods = methods(nodes);
+        CallGraph first = new CallGraph("First");
+        CallGraph second = new CallGraph("Second");
+        for (int i = 0; i < nodes; i++) {
+            first.addNode(firstMethods.get(i));
+            if (i % 100 != 0) second.addNode(secondMethods.get(i));
+        }
+        for (int i = 0; i < nodes; i++) {
+            for (int d = 0; d < degree; d++) {
+                int target = random.nextInt(nodes);
+                first.addEdgeIfAbsent(firstMethods.get(i), firstMethods.get(target));
+                if (i % 100 != 0 && target % 100 != 0 && random.nextInt(100) >= 5)
+                    second.addEdgeIfAbsent(secondMethods.get(i), secondMethods.get(target));
+            }
+            for (int d = 0; d < degree; d++) {
+                int target = random.nextInt(nodes);
+                if (i % 100 != 0 && target % 100 != 0 && random.nextInt(100) < 2)
+                    second.addEdgeIfAbsent(secondMethods.get(i), secondMethods.get(target));
+            }
+        }
+        System.out.printf("%d and %d methods, %d and %d edges%n", first.nodeCount(), second.nodeCount(), first.edgeCount(), second.edgeCount());
+
+        File report = File.createTempFile("diff", ".txt");
+        try {
+            for (int round = 0; round < 2; round++) {
+                long start = System.nanoTime();
+                CallGraphDiff.Summary summary = CallGraphDiff.diff(first, second, report);
+                long elapsed = System.nanoTime() - start;
+                System.out.printf("diff  %6d ms, report %d MB: %s%n", elapsed / 1_000_000, report.length() >> 20, summary);
+                start = System.nanoTime();
+                CallGraphDiff.diff(first, second);
+                elapsed = System.nanoTime() - start;
+                System.out.printf("diff  %6d ms without report%n", elapsed / 1_000_000);
+            }
+        } finally {
+            if (!report.delete()) System.err.println("Cannot delete " + report);
+        }
+
+        if (!naive) return;
+        long start = System.nanoTime();
+        Map<String, SootMethod> bySignature = new HashMap<>();
+        for (SootMethod method : second.getNodes())
+            bySignature.put(method.getSignature(), method);
+        long removed = 0;
+        long added = 0;
+        for (SootMethod method : first.getNodes()) {
+            Set<String> firstCallees = signatures(first.edgesOutOf(method));
+            SootMethod counterpart = bySignature.get(method.getSignature());
+            Set<String> secondCallees = counterpart == null ? new HashSet<>() : signatures(second.edgesOutOf(counterpart));
+            for (String callee : firstCallees) {
+                if (!secondCallees.contains(callee)) removed++;
+            }
+            for (String callee : secondCallees) {
+                if (!firstCallees.contains(callee)) added++;
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("naive %6d ms, edges -%d +%d%n", elapsed / 1_000_000, removed, added);
+    }
+
+    private static List<SootMethod> methods(int count) {
+        SootClass benchClass = new SootClass("BenchClass");
+        List<SootMethod> methods = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            SootMethod method = new SootMethod("m" + i, null, BooleanType.v());
+            benchClass.addMethod(method);
+            methods.add(method);
+        }
+        return methods;
+    }
+
+    private static Set<String> signatures(Set<SootMethod> methods) {
+        Set<String> signatures = new HashSet<>();
+        for (SootMethod method : methods)
+            signatures.add(method.getSignature());
+        return signatures;
+    }
+}
@@ -0,0 +1,74 @@
+package bench;
+
+import analysis.CallGraph;
+import soot.BooleanType;
+import soot.SootClass;
+import soot.SootMethod;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Heap a {@link CallGraph} spends on call sites: the same random graph is built without and with call sites, the
+ * difference of the live heaps is divided by the number of call sites. Every edge gets its own call sites, each
+ * call site calls one target.
+ * <p>
+ * Arguments: number of methods (default 20000), edges per method (default 8), call sites per edge (default 1).
+ */
+public class CallSiteMemoryBenchmark {
+    public static void main(String[] args) {
+        int nodes = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        int degree = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        int sitesPerEdge = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+
+        List<SootMethod> methods = new ArrayList<>(nodes);
+        SootClass benchClass = new SootClass("BenchClass");
+        for (int i = 0; i < nodes; i++) {
+            SootMethod method = new SootMethod("m" + i, null, BooleanType.v());
+            benchClass.addMethod(method);
+            methods.add(method);
+        }
+
+        for (int round = 0; round < 2; round++) {
+            long before = liveHeap();
+            CallGraph plain = build(methods, degree, sitesPerEdge, false);
+            long plainBytes = liveHeap() - before;
+            before = liveHeap();
+            CallGraph recording = build(methods, degree, sitesPerEdge, true);
+            long recordingBytes = liveHeap() - before;
+
+            long callSites = (long) recording.edgeCount() * sitesPerEdge;
+            System.out.printf("%d edges: %.1f bytes/edge without call sites, %.1f with, %.1f bytes/call site%n",
+                    plain.edgeCount(), (double) plainBytes / plain.edgeCount(), (double) recordingBytes / recording.edgeCount(),
+                    (double) (recordingBytes - plainBytes) / callSites);
+        }
+    }
+
+    private static CallGraph build(List<SootMethod> methods, int degree, int sitesPerEdge, boolean recordCallSites) {
+        Random random = new Random(42);
+        CallGraph cg = new CallGraph("Bench", recordCallSites);
+        for (SootMethod method : methods)
+            cg.addNode(method);
+        for (int i = 0; i < methods.size(); i++) {
+            int unit = 0;
+            for (int d = 0; d < degree; d++) {
+                SootMethod target = methods.get(random.nextInt(methods.size()));
+                if (cg.hasEdge(methods.get(i), target)) continue;
+                for (int s = 0; s < sitesPerEdge; s++) {
+                    if (recordCallSites) cg.addEdge(methods.get(i), target, unit);
+                    else cg.addEdgeIfAbsent(methods.get(i), target);
+                    unit++;
+                }
+            }
+        }
+        return cg;
+    }
+
+    private static long liveHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++)
+            System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
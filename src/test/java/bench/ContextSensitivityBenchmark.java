@@ -0,0 +1,113 @@
+package bench;
+
+import analysis.CallGraph;
+import analysis.exercise4.ContextSensitivity;
+import analysis.exercise4.SparkLikeAlgorithm;
+import com.google.common.collect.Lists;
+import com.sun.management.GarbageCollectionNotificationInfo;
+import soot.G;
+import soot.Scene;
+import soot.options.Options;
+
+import javax.management.NotificationEmitter;
+import javax.management.openmbean.CompositeData;
+import java.io.File;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Time and memory of {@link SparkLikeAlgorithm} without contexts and with k-call-site and k-object sensitivity for
+ * every k up to a maximum, on the test targets with all of rt.jar as application code, so the solver sees every
+ * JDK body reachable from their main methods.
+ * <p>
+ * Every configuration runs in a JVM of its own, so no run sees the garbage of another. Peak is the largest heap
+ * right after a collection during construction, above the loaded scene; solver is the size of the solver's own
+ * tables as it accounts for them. Projection is the context-insensitive call graph the analysis returns.
+ * <p>
+ * Arguments: maximal k (default 2), JVM options for the runs, e.g. {@code -Xmx4g}.
+ */
+public class ContextSensitivityBenchmark {
+    public static void main(String[] args) throws Exception {
+        if (args.length == 3 && args[0].equals("-run")) {
+            // one run in a child JVM: kind, k
+            run(ContextSensitivity.Kind.valueOf(args[1]), Integer.parseInt(args[2]));
+            return;
+        }
+        int maxK = args.length > 0 ? Integer.parseInt(args[0]) : 2;
+        List<String[]> configurations = new ArrayList<>();
+        configurations.add(new String[]{ContextSensitivity.Kind.INSENSITIVE.name(), "0"});
+        for (ContextSensitivity.Kind kind : Arrays.asList(ContextSensitivity.Kind.CALL_SITE, ContextSensitivity.Kind.OBJECT)) {
+            for (int k = 1; k <= maxK; k++)
+                configurations.add(new String[]{kind.name(), String.valueOf(k)});
+        }
+        for (String[] configuration : configurations) {
+            List<String> command = new ArrayList<>();
+            command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+            command.addAll(Arrays.asList(args).subList(Math.min(1, args.length), args.length));
+            command.addAll(Arrays.asList("-cp", System.getProperty("java.class.path"), ContextSensitivityBenchmark.class.getName(),
+                    "-run", configuration[0], configuration[1]));
+            Process process = new ProcessBuilder(command).inheritIO().start();
+            // running out of heap is a result too
+            if (process.waitFor() != 0) System.out.println(configuration[0] + " k=" + configuration[1] + " failed");
+        }
+    }
+
+    private static void run(ContextSensitivity.Kind kind, int k) {
+        AtomicLong peak = new AtomicLong();
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            ((NotificationEmitter) collector).addNotificationListener((notification, handback) -> {
+                if (!notification.getType().equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION)) return;
+                GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+                long used = info.getGcInfo().getMemoryUsageAfterGc().values().stream().mapToLong(MemoryUsage::getUsed).sum();
+                peak.accumulateAndGet(used, Math::max);
+            }, null, null);
+        }
+
+        String targets = System.getProperty("user.dir") + File.separator + "target" + File.separator + "test-classes";
+        G.reset();
+        Options.v().set_whole_program(true);
+        Options.v().set_soot_classpath(targets + File.pathSeparator + "lib" + File.separator + "rt.jar");
+        Options.v().set_process_dir(Lists.newArrayList(targets));
+        Options.v().set_exclude(Lists.newArrayList("exercises.*", "base.*", "bench.*"));
+        Options.v().set_allow_phantom_refs(true);
+        Options.v().set_full_resolver(true);
+        Options.v().set_app(true);
+        Options.v().set_include_all(true);
+        Options.v().set_no_bodies_for_excluded(true);
+        Options.v().set_prepend_classpath(false);
+        Options.v().set_output_format(Options.output_format_none);
+        Scene.v().loadNecessaryClasses();
+
+        ContextSensitivity sensitivity = kind == ContextSensitivity.Kind.CALL_SITE ? ContextSensitivity.callSites(k)
+                : kind == ContextSensitivity.Kind.OBJECT ? ContextSensitivity.objects(k) : ContextSensitivity.INSENSITIVE;
+        // bodies are built on the first run, so the first one includes building them
+        for (int round = 0; round < 2; round++) {
+            SparkLikeAlgorithm spark = new SparkLikeAlgorithm();
+            spark.setLazyBodies(true);
+            spark.setBodyLoaderThreads(0);
+            spark.setContextSensitivity(sensitivity);
+            long before = liveHeap();
+            peak.set(0);
+            long start = System.nanoTime();
+            CallGraph cg = spark.constructCallGraph(Scene.v());
+            long elapsed = System.nanoTime() - start;
+            long peakBytes = Math.max(0, peak.get() - before);
+            System.out.printf("%-12s %7d ms, peak %5d MB, solver %5d MB, %7d clones, %6d contexts, %6d objects, %8d pointers, %9d points-to entries, %8d context edges; projection %d nodes, %d edges%n",
+                    sensitivity, elapsed / 1_000_000, peakBytes >> 20, spark.getSolverBytes() >> 20, spark.getMethodCloneCount(),
+                    spark.getContextCount(), spark.getObjectCount(), spark.getPointerCount(), spark.getPointsToEntryCount(),
+                    spark.getContextSensitiveEdgeCount(), cg.nodeCount(), cg.edgeCount());
+        }
+    }
+
+    private static long liveHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++)
+            System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,127 @@
+package bench;
+
+import analysis.CallGraph;
+import analysis.CallGraphAlgorithm;
+import analysis.exercise1.CHAAlgorithm;
+import analysis.exercise1.ShardedCHAAlgorithm;
+import com.google.common.collect.Lists;
+import soot.G;
+import soot.Scene;
+import soot.SootClass;
+import soot.SootMethod;
+import soot.options.Options;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Memory of CHA call graphs whose interface call sites share interned target sets, compared with the same graph
+ * holding an edge per target. {@link CHAAlgorithm} adds shared call sites; {@link ShardedCHAAlgorithm} with one
+ * shard replays the same steps as explicit edges. Both record call sites.
+ * <p>
+ * Arguments: a jar or directory that becomes the process dir (default lib/rt.jar). All bodies are built before
+ * the first run, so the graphs are the only thing the runs add to the heap.
+ */
+public class DispatchTargetsBenchmark {
+
+    public static void main(String[] args) throws InterruptedException {
+        // CHAAlgorithm recurses along call chains, the JDK needs far more than the default stack
+        Thread thread = new Thread(null, () -> report(args), "bench", 1L << 30);
+        thread.start();
+        thread.join();
+    }
+
+    private static void report(String[] args) {
+        String processDir = args.length > 0 ? args[0] : "lib" + File.separator + "rt.jar";
+        System.out.println("process dir " + processDir);
+        setupScene(processDir);
+        System.out.println(buildBodies() + " bodies built");
+        // builds the summaries and the dispatch cache, both are shared by the measured runs
+        new CHAAlgorithm().constructCallGraph(Scene.v());
+
+        CallGraph shared = run(new CHAAlgorithm(), "shared");
+        CallGraph explicit = run(new ShardedCHAAlgorithm(1), "explicit");
+        System.out.println("    shared target sets " + shared.sharedSetCount() + ", identical: " + signatures(shared).equals(signatures(explicit)));
+
+        for (int round = 0; round < 3; round++) {
+            System.out.printf("edgesOutOf + edgesInto of all nodes: shared %d ms, explicit %d ms%n", queryMillis(shared), queryMillis(explicit));
+        }
+    }
+
+    private static CallGraph run(CallGraphAlgorithm algorithm, String label) {
+        algorithm.setRecordCallSites(true);
+        long before = liveHeap();
+        long start = System.nanoTime();
+        CallGraph cg = algorithm.constructCallGraph(Scene.v());
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("%-8s %7d ms, %d nodes, %d edges, graph %d KB%n", label, elapsed / 1_000_000,
+                cg.nodeCount(), cg.edgeCount(), (liveHeap() - before) >> 10);
+        return cg;
+    }
+
+    private static long queryMillis(CallGraph cg) {
+        long start = System.nanoTime();
+        long total = 0;
+        for (SootMethod node : cg.getNodes())
+            total += cg.edgesOutOf(node).size() + cg.edgesInto(node).size();
+        if (total != 2L * cg.edgeCount())
+            throw new IllegalStateException("Queries found " + total + " edge ends for " + cg.edgeCount() + " edges");
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+
+    private static long liveHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++)
+            System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static void setupScene(String processDir) {
+        G.reset();
+        Options.v().set_whole_program(true);
+        Options.v().set_soot_classpath(processDir + File.pathSeparator + "lib" + File.separator + "rt.jar");
+        Options.v().set_process_dir(Lists.newArrayList(processDir));
+        // Soot excludes the JDK packages by default, benchmarking on the JDK needs them as application classes
+        Options.v().set_include_all(true);
+        Options.v().set_allow_phantom_refs(true);
+        Options.v().set_prepend_classpath(false);
+        Options.v().set_output_format(Options.output_format_none);
+        Scene.v().loadNecessaryClasses();
+    }
+
+    // building a body can add classes for lambdas, so this repeats until no new classes show up
+    private static int buildBodies() {
+        Set<SootClass> done = new HashSet<>();
+        int built = 0;
+        while (true) {
+            List<SootClass> classes = new ArrayList<>(Scene.v().getApplicationClasses());
+            classes.removeAll(done);
+            if (classes.isEmpty()) return built;
+            for (SootClass sootClass : classes) {
+                done.add(sootClass);
+                for (SootMethod method : new ArrayList<>(sootClass.getMethods())) {
+                    if (!method.isConcrete()) continue;
+                    try {
+                        method.retrieveActiveBody();
+                        built++;
+                    } catch (RuntimeException e) {
+                        // bodies Soot cannot build are skipped by both algorithms alike
+                    }
+                }
+            }
+        }
+    }
+
+    // nodes, edges in the order they were added and the call sites of every edge
+    private static String signatures(CallGraph cg) {
+        StringBuilder result = new StringBuilder();
+        cg.getNodes().forEach(m -> result.append(m.getSignature()).append('\n'));
+        cg.forEachEdge((source, target) -> result.append(source.getSignature()).append(" -> ").append(target.getSignature())
+                .append(' ').append(Arrays.toString(cg.callSitesOf(source, target))).append('\n'));
+        return result.toString();
+    }
+}
@@ -0,0 +1,107 @@
+package bench;
+
+import analysis.CallGraph;
+import analysis.HierarchyIndex;
+import analysis.distributed.DistributedCHAAlgorithm;
+import analysis.exercise1.CHAAlgorithm;
+import com.google.common.collect.Lists;
+import soot.G;
+import soot.Scene;
+import soot.options.Options;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Memory and time of {@link DistributedCHAAlgorithm} over worker counts, compared with {@link CHAAlgorithm} in
+ * one process. Both run with lazy bodies, so only the bodies CHA reaches are built, by the workers or by this JVM.
+ * <p>
+ * Arguments: a jar or directory that becomes the process dir (default lib/rt.jar), the heap of every worker
+ * (default 1g), then worker counts (default 1 2 4). Every worker count gets a fresh scene; the single process run
+ * uses the scene of the last distributed run, whose coordinator built no bodies but those of the entry points.
+ */
+public class DistributedCHABenchmark {
+    // classes Soot generates for lambdas are named <enclosing class>$<method>__<counter>
+    private static final Pattern GENERATED_LAMBDA = Pattern.compile("\\$[\\w$]*__\\d+:");
+
+    public static void main(String[] args) throws InterruptedException {
+        // CHAAlgorithm recurses along call chains, the JDK needs far more than the default stack
+        Thread thread = new Thread(null, () -> report(args), "bench", 1L << 30);
+        thread.start();
+        thread.join();
+    }
+
+    private static void report(String[] args) {
+        String processDir = args.length > 0 ? args[0] : "lib" + File.separator + "rt.jar";
+        String workerHeap = args.length > 1 ? args[1] : "1g";
+        int[] workerCounts = args.length > 2
+                ? Arrays.stream(args, 2, args.length).mapToInt(Integer::parseInt).toArray()
+                : new int[]{1, 2, 4};
+        System.out.println("process dir " + processDir + ", " + Runtime.getRuntime().availableProcessors() + " cores, worker heap " + workerHeap);
+
+        String distributedGraph = null;
+        for (int workers : workerCounts) {
+            setupScene(processDir);
+            DistributedCHAAlgorithm distributed = new DistributedCHAAlgorithm(workers);
+            distributed.setLazyBodies(true);
+            distributed.setWorkerJvmOptions(Collections.singletonList("-Xmx" + workerHeap));
+            long start = System.nanoTime();
+            CallGraph cg = distributed.constructCallGraph(Scene.v());
+            long elapsed = System.nanoTime() - start;
+            distributedGraph = signatures(cg);
+            System.out.printf("%d workers %7d ms, %d nodes, %d edges, coordinator %d MB%n", workers, elapsed / 1_000_000,
+                    cg.nodeCount(), cg.edgeCount(), liveHeap() >> 20);
+            System.out.println("    bodies per worker " + Arrays.toString(distributed.getBodiesPerWorker())
+                    + ", live heap per worker MB " + Arrays.toString(Arrays.stream(distributed.getHeapPerWorker()).map(b -> b >> 20).toArray())
+                    + ", cross-shard calls " + distributed.getCrossShardCalls());
+        }
+
+        // like the workers, index the hierarchy before any body is built
+        HierarchyIndex.forScene(Scene.v());
+        CHAAlgorithm cha = new CHAAlgorithm();
+        cha.setLazyBodies(true);
+        long start = System.nanoTime();
+        CallGraph cg = cha.constructCallGraph(Scene.v());
+        long elapsed = System.nanoTime() - start;
+        String singleGraph = signatures(cg);
+        System.out.printf("1 process %7d ms, %d nodes, %d edges, %d MB%n", elapsed / 1_000_000, cg.nodeCount(),
+                cg.edgeCount(), liveHeap() >> 20);
+        // workers never see the lambda classes other processes generate, so they are no dispatch targets there
+        System.out.println("    identical to last distributed run: " + singleGraph.equals(distributedGraph)
+                + ", apart from generated lambda classes: " + withoutGeneratedLambdas(singleGraph).equals(withoutGeneratedLambdas(distributedGraph)));
+    }
+
+    private static void setupScene(String processDir) {
+        G.reset();
+        Options.v().set_whole_program(true);
+        Options.v().set_soot_classpath(processDir + File.pathSeparator + "lib" + File.separator + "rt.jar");
+        Options.v().set_process_dir(Lists.newArrayList(processDir));
+        // Soot excludes the JDK packages by default, benchmarking on the JDK needs them as application classes
+        Options.v().set_include_all(true);
+        Options.v().set_allow_phantom_refs(true);
+        Options.v().set_prepend_classpath(false);
+        Options.v().set_output_format(Options.output_format_none);
+        Scene.v().loadNecessaryClasses();
+    }
+
+    private static long liveHeap() {
+        System.gc();
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static String withoutGeneratedLambdas(String graph) {
+        return Arrays.stream(graph.split("\n")).filter(line -> !GENERATED_LAMBDA.matcher(line).find()).collect(Collectors.joining("\n"));
+    }
+
+    // nodes and edges in the order they were added
+    private static String signatures(CallGraph cg) {
+        StringBuilder result = new StringBuilder();
+        cg.getNodes().forEach(m -> result.append(m.getSignature()).append('\n'));
+        cg.forEachEdge((source, target) -> result.append(source.getSignature()).append(" -> ").append(target.getSignature()).append('\n'));
+        return result.toString();
+    }
+}
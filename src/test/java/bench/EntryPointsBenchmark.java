@@ -0,0 +1,70 @@
+package bench;
+
+import analysis.EntryPointProvider;
+import analysis.EntryPoints;
+import com.google.common.collect.Lists;
+import soot.G;
+import soot.Scene;
+import soot.SootMethod;
+import soot.options.Options;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+/**
+ * Entry point discovery with the JDK loaded as application code ({@code -app -include-all}), so there are a few
+ * thousand application classes. Scan is the name filter every algorithm ran before {@link EntryPoints}, once per
+ * call graph; discovery is the first {@link EntryPoints#of(Scene, EntryPointProvider)} per provider, lookup every
+ * later one. Discovery runs on the common fork-join pool.
+ * <p>
+ * Arguments: lookups per provider (default 1000).
+ */
+public class EntryPointsBenchmark {
+    public static void main(String[] args) {
+        int lookups = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        setOptions();
+        Scene.v().loadNecessaryClasses();
+        Scene scene = Scene.v();
+        System.out.printf("%d application classes, common pool parallelism %d%n", scene.getApplicationClasses().size(),
+                ForkJoinPool.getCommonPoolParallelism());
+
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            List<SootMethod> scanned = scene.getApplicationClasses().stream().flatMap(c -> c.getMethods().stream())
+                    .filter(m -> m.getName().contains("main")).collect(Collectors.toList());
+            System.out.printf("scan      %6d us, %5d methods named *main*%n", (System.nanoTime() - start) / 1000, scanned.size());
+        }
+        report("main     ", scene, EntryPoints.mainMethods(), lookups);
+        report("public   ", scene, EntryPoints.publicApi(), lookups);
+        report("junit    ", scene, EntryPoints.junitTests(), lookups);
+    }
+
+    private static void report(String name, Scene scene, EntryPointProvider provider, int lookups) {
+        long start = System.nanoTime();
+        List<SootMethod> entryPoints = EntryPoints.of(scene, provider);
+        long discovery = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int i = 0; i < lookups; i++)
+            EntryPoints.of(scene, provider);
+        long lookup = (System.nanoTime() - start) / lookups;
+        System.out.printf("%s %6d us discovery, %4d ns lookup, %5d entry points%n", name, discovery / 1000, lookup, entryPoints.size());
+    }
+
+    private static void setOptions() {
+        String testClasses = System.getProperty("user.dir") + File.separator + "target" + File.separator + "test-classes";
+        G.reset();
+        Options.v().set_whole_program(true);
+        Options.v().set_soot_classpath(testClasses + File.pathSeparator + "lib" + File.separator + "rt.jar");
+        Options.v().set_no_bodies_for_excluded(true);
+        Options.v().set_full_resolver(true);
+        Options.v().set_process_dir(Lists.newArrayList(testClasses));
+        Options.v().set_exclude(Lists.newArrayList("exercises.*", "base.*", "bench.*"));
+        Options.v().set_allow_phantom_refs(true);
+        Options.v().set_app(true);
+        Options.v().set_include_all(true);
+        Options.v().set_prepend_classpath(false);
+        Options.v().set_output_format(Options.output_format_none);
+    }
+}
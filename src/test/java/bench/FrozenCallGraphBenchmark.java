@@ -0,0 +1,153 @@
+package bench;
+
+import analysis.CallGraph;
+import analysis.FrozenCallGraph;
+import soot.BooleanType;
+import soot.SootClass;
+import soot.SootMethod;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Query throughput of a {@link FrozenCallGraph} against the mutable {@link CallGraph} it was frozen from, over
+ * reader thread counts. Every reader runs the same mix on a random graph: edge lookups, half of them hits, and
+ * walks over the successors and predecessors of random nodes. The mutable graph is only read here as well, it
+ * just gives no guarantee that this is safe.
+ * <p>
+ * Arguments: reader thread counts (default 1 2 4 8 16 32).
+ */
+public class FrozenCallGraphBenchmark {
+    private static final int NODES = 200_000;
+    private static final int DEGREE = 8;
+    private static final int QUERIES = 2_000_000;
+
+    public static void main(String[] args) throws Exception {
+        int[] threadCounts = args.length > 0
+                ? Arrays.stream(args).mapToInt(Integer::parseInt).toArray()
+                : new int[]{1, 2, 4, 8, 16, 32};
+        System.out.println(Runtime.getRuntime().availableProcessors() + " cores");
+
+        Random random = new Random(42);
+        List<SootMethod> methods = new ArrayList<>();
+        SootClass benchClass = new SootClass("BenchClass");
+        for (int i = 0; i < NODES; i++) {
+            SootMethod method = new SootMethod("m" + i, null, BooleanType.v());
+            benchClass.addMethod(method);
+            methods.add(method);
+        }
+
+        long before = liveHeap();
+        CallGraph cg = new CallGraph("Bench");
+        for (SootMethod method : methods)
+            cg.addNode(method);
+        for (int i = 0; i < NODES; i++) {
+            for (int d = 0; d < DEGREE; d++)
+                cg.addEdgeIfAbsent(methods.get(i), methods.get(random.nextInt(NODES)));
+        }
+        long mutableBytes = liveHeap() - before;
+
+        before = liveHeap();
+        long start = System.nanoTime();
+        FrozenCallGraph frozen = cg.freeze();
+        long freezeNanos = System.nanoTime() - start;
+        long frozenBytes = liveHeap() - before;
+        System.out.printf("%d nodes, %d edges, mutable %d MB, frozen %d MB, freeze %d ms%n", cg.nodeCount(), cg.edgeCount(),
+                mutableBytes >> 20, frozenBytes >> 20, freezeNanos / 1_000_000);
+
+        for (int round = 0; round < 2; round++) {
+            for (int threads : threadCounts) {
+                double mutable = throughput(threads, seed -> mutableQueries(cg, methods, seed));
+                double snapshot = throughput(threads, seed -> frozenQueries(frozen, methods, seed));
+                System.out.printf("%2d readers: mutable %6.1f, frozen %6.1f million queries/s%n", threads, mutable, snapshot);
+            }
+        }
+    }
+
+    private interface Reader {
+        long run(long seed);
+    }
+
+    // every thread runs QUERIES queries, the result is the total rate
+    private static double throughput(int threads, Reader reader) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Callable<Long>> tasks = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                long seed = t;
+                tasks.add(() -> reader.run(seed));
+            }
+            long start = System.nanoTime();
+            long checksum = 0;
+            for (Future<Long> result : pool.invokeAll(tasks))
+                checksum += result.get();
+            long elapsed = System.nanoTime() - start;
+            if (checksum == 42) System.out.println();
+            return (double) threads * QUERIES / elapsed * 1000;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static long mutableQueries(CallGraph cg, List<SootMethod> methods, long seed) {
+        Random random = new Random(seed);
+        long[] found = {0};
+        for (int i = 0; i < QUERIES; i++) {
+            SootMethod node = methods.get(random.nextInt(NODES));
+            switch (i & 3) {
+                case 0:
+                    if (cg.hasEdge(node, methods.get(random.nextInt(NODES)))) found[0]++;
+                    break;
+                case 1:
+                    cg.forEachSuccessor(node, target -> {
+                        if (cg.hasEdge(node, target)) found[0]++;
+                    });
+                    break;
+                case 2:
+                    cg.forEachSuccessor(node, target -> found[0]++);
+                    break;
+                default:
+                    cg.forEachPredecessor(node, source -> found[0]++);
+            }
+        }
+        return found[0];
+    }
+
+    private static long frozenQueries(FrozenCallGraph cg, List<SootMethod> methods, long seed) {
+        Random random = new Random(seed);
+        long[] found = {0};
+        for (int i = 0; i < QUERIES; i++) {
+            SootMethod node = methods.get(random.nextInt(NODES));
+            switch (i & 3) {
+                case 0:
+                    if (cg.hasEdge(node, methods.get(random.nextInt(NODES)))) found[0]++;
+                    break;
+                case 1:
+                    cg.forEachSuccessor(node, target -> {
+                        if (cg.hasEdge(node, target)) found[0]++;
+                    });
+                    break;
+                case 2:
+                    for (SootMethod target : cg.successors(node))
+                        found[0]++;
+                    break;
+                default:
+                    cg.forEachPredecessor(node, source -> found[0]++);
+            }
+        }
+        return found[0];
+    }
+
+    private static long liveHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++)
+            System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,135 @@
+package bench;
+
+import analysis.HierarchyIndex;
+import base.TestSetup;
+import soot.FastHierarchy;
+import soot.Hierarchy;
+import soot.Scene;
+import soot.SootClass;
+import soot.SootMethod;
+import soot.Transformer;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares {@link HierarchyIndex} with Soot's {@link Hierarchy} and {@link FastHierarchy} on the scene of the
+ * tests (test classes plus everything they pull in from rt.jar). Run after {@code mvn test-compile} with the test
+ * classpath, from the project directory.
+ */
+public class HierarchyBenchmark extends TestSetup {
+    private static final int QUERIES = 2_000_000;
+
+    @Override
+    protected Transformer createAnalysisTransformer() {
+        throw new UnsupportedOperationException();
+    }
+
+    public static void main(String[] args) {
+        setupSoot();
+        Scene scene = Scene.v();
+        List<SootClass> classes = new ArrayList<>(scene.getClasses());
+        System.out.println(classes.size() + " classes");
+
+        long start = System.nanoTime();
+        Hierarchy hierarchy = new Hierarchy();
+        System.out.printf("build Hierarchy:      %6d ms%n", (System.nanoTime() - start) / 1_000_000);
+        start = System.nanoTime();
+        FastHierarchy fastHierarchy = new FastHierarchy();
+        System.out.printf("build FastHierarchy:  %6d ms%n", (System.nanoTime() - start) / 1_000_000);
+        start = System.nanoTime();
+        HierarchyIndex index = new HierarchyIndex(scene);
+        System.out.printf("build HierarchyIndex: %6d ms%n", (System.nanoTime() - start) / 1_000_000);
+
+        Random random = new Random(42);
+        SootClass[] subs = new SootClass[QUERIES];
+        SootClass[] sups = new SootClass[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            subs[i] = classes.get(random.nextInt(classes.size()));
+            // half random pairs, half walks up the hierarchy, so that not every answer is false
+            SootClass sup = subs[i];
+            if (random.nextBoolean()) {
+                sup = classes.get(random.nextInt(classes.size()));
+            } else {
+                while (random.nextInt(3) != 0 && sup.hasSuperclass())
+                    sup = random.nextBoolean() && sup.getInterfaceCount() > 0 ? sup.getInterfaces().getFirst() : sup.getSuperclass();
+            }
+            sups[i] = sup;
+        }
+
+        for (int round = 0; round < 3; round++) {
+            int mismatches = 0;
+            start = System.nanoTime();
+            int fastTrue = 0;
+            for (int i = 0; i < QUERIES; i++)
+                if (fastHierarchy.canStoreClass(subs[i], sups[i])) fastTrue++;
+            long fastTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            int indexTrue = 0;
+            for (int i = 0; i < QUERIES; i++)
+                if (index.isSubtypeIncluding(subs[i], sups[i])) indexTrue++;
+            long indexTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            int hierarchyCount = 0;
+            for (int i = 0; i < QUERIES; i++) {
+                // Hierarchy answers true as soon as a phantom class is on the way up, so only compare resolved chains
+                if (subs[i].isInterface() || sups[i].isInterface() || !resolvedChain(subs[i]) || sups[i].isPhantom()) continue;
+                hierarchyCount++;
+                if (hierarchy.isClassSubclassOfIncluding(subs[i], sups[i]) != index.isSubclassIncluding(subs[i], sups[i]))
+                    mismatches++;
+            }
+            long hierarchyTime = System.nanoTime() - start;
+
+            System.out.printf("subtype: FastHierarchy %d ns/query, HierarchyIndex %d ns/query (%d vs %d true), " +
+                            "Hierarchy+index class checks %d ns/query, %d mismatches with Hierarchy%n",
+                    fastTime / QUERIES, indexTime / QUERIES, fastTrue, indexTrue,
+                    hierarchyTime / Math.max(1, hierarchyCount), mismatches);
+        }
+
+        List<SootMethod> interfaceMethods = new ArrayList<>();
+        for (SootClass sootClass : classes) {
+            if (sootClass.isInterface() && !sootClass.isPhantom())
+                interfaceMethods.addAll(sootClass.getMethods());
+        }
+        int mismatches = 0;
+        start = System.nanoTime();
+        for (SootMethod method : interfaceMethods) {
+            try {
+                hierarchy.resolveAbstractDispatch(method.getDeclaringClass(), method);
+            } catch (RuntimeException e) {
+                // phantom classes in the hierarchy
+            }
+        }
+        long hierarchyTime = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (SootMethod method : interfaceMethods)
+            index.resolveAbstractDispatch(method.getDeclaringClass(), method);
+        long indexTime = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (SootMethod method : interfaceMethods)
+            index.resolveAbstractDispatch(method.getDeclaringClass(), method);
+        long cachedTime = System.nanoTime() - start;
+        for (SootMethod method : interfaceMethods) {
+            try {
+                if (!new HashSet<>(hierarchy.resolveAbstractDispatch(method.getDeclaringClass(), method))
+                        .equals(new HashSet<>(index.resolveAbstractDispatch(method.getDeclaringClass(), method))))
+                    mismatches++;
+            } catch (RuntimeException e) {
+                // not comparable
+            }
+        }
+        System.out.printf("dispatch of %d interface methods: Hierarchy %d ms, HierarchyIndex %d ms, cached %d ms, %d mismatches%n",
+                interfaceMethods.size(), hierarchyTime / 1_000_000, indexTime / 1_000_000, cachedTime / 1_000_000, mismatches);
+    }
+
+    private static boolean resolvedChain(SootClass sootClass) {
+        for (SootClass current = sootClass; current != null; current = current.getSuperclassUnsafe()) {
+            if (current.isPhantom()) return false;
+        }
+        return true;
+    }
+}
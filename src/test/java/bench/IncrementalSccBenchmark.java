@@ -0,0 +1,71 @@
+package bench;
+
+import analysis.CallGraph;
+import analysis.CallGraphCondensation;
+import analysis.IncrementalSccGraph;
+import soot.BooleanType;
+import soot.SootClass;
+import soot.SootMethod;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Inserts random edges in batches and keeps the SCCs current after every batch, once with
+ * {@link IncrementalSccGraph} and once by recomputing a {@link CallGraphCondensation}. Mostly forward edges, like
+ * the assignment edges VTA adds, with a share of back edges that close cycles.
+ */
+public class IncrementalSccBenchmark {
+    private static final int NODES = 20_000;
+    private static final int EDGES = 60_000;
+    private static final int BATCHES = 200;
+
+    public static void main(String[] args) {
+        Random random = new Random(42);
+        int[] sources = new int[EDGES];
+        int[] targets = new int[EDGES];
+        for (int i = 0; i < EDGES; i++) {
+            int a = random.nextInt(NODES);
+            int b = Math.min(NODES - 1, a + 1 + random.nextInt(50));
+            boolean back = random.nextInt(20) == 0;
+            sources[i] = back ? b : a;
+            targets[i] = back ? a : b;
+        }
+
+        List<SootMethod> methods = new ArrayList<>();
+        SootClass benchClass = new SootClass("BenchClass");
+        for (int i = 0; i < NODES; i++) {
+            SootMethod method = new SootMethod("m" + i, null, BooleanType.v());
+            benchClass.addMethod(method);
+            methods.add(method);
+        }
+
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            IncrementalSccGraph graph = new IncrementalSccGraph();
+            for (int i = 0; i < NODES; i++)
+                graph.addNode();
+            for (int i = 0; i < EDGES; i++)
+                graph.addEdge(sources[i], targets[i]);
+            long incremental = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            CallGraph cg = new CallGraph("Bench");
+            for (SootMethod method : methods)
+                cg.addNode(method);
+            int sccCount = 0;
+            int batchSize = EDGES / BATCHES;
+            for (int i = 0; i < EDGES; i++) {
+                cg.addEdgeIfAbsent(methods.get(sources[i]), methods.get(targets[i]));
+                if ((i + 1) % batchSize == 0) sccCount = new CallGraphCondensation(cg).sccCount();
+            }
+            long recompute = System.nanoTime() - start;
+
+            System.out.printf("%d nodes, %d edges: incremental %d ms (%d SCCs, %d merges, %d components reordered), " +
+                            "Tarjan after each of %d batches %d ms (%d SCCs)%n",
+                    NODES, graph.edgeCount(), incremental / 1_000_000, graph.sccCount(), graph.getMergeCount(),
+                    graph.getReorderedCount(), BATCHES, recompute / 1_000_000, sccCount);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package bench;
+
+import analysis.CallGraph;
+import analysis.LibraryHierarchy;
+import analysis.exercise1.CHAAlgorithm;
+import analysis.exercise2.RTAAlgorithm;
+import com.google.common.collect.Lists;
+import soot.G;
+import soot.Scene;
+import soot.options.Options;
+
+import java.io.File;
+import java.nio.file.Files;
+
+/**
+ * Time to a CHA and an RTA call graph of the test classes, with rt.jar resolved by Soot as in the tests and with
+ * its hierarchy installed from a {@link LibraryHierarchy} snapshot: the first snapshot run scans the jar and
+ * writes the snapshot, later runs read it. Startup is option setup up to the end of
+ * {@link Scene#loadNecessaryClasses()}.
+ * <p>
+ * Arguments: rounds (default 3).
+ */
+public class LibraryHierarchyBenchmark {
+    public static void main(String[] args) throws Exception {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+        String userdir = System.getProperty("user.dir");
+        String testClasses = userdir + File.separator + "target" + File.separator + "test-classes";
+        File jar = new File("lib" + File.separator + "rt.jar");
+        File cache = Files.createTempDirectory("hierarchy").toFile();
+
+        for (int round = 0; round < rounds; round++) {
+            long start = System.nanoTime();
+            setOptions(testClasses + File.pathSeparator + jar.getPath());
+            Scene.v().loadNecessaryClasses();
+            report("resolved jar", start, null);
+
+            start = System.nanoTime();
+            setOptions(testClasses);
+            LibraryHierarchy library = LibraryHierarchy.forJar(jar, cache);
+            library.install(Scene.v());
+            Scene.v().loadNecessaryClasses();
+            report(library.isFromCache() ? "snapshot     " : "scan + write ", start, library);
+        }
+    }
+
+    private static void report(String mode, long start, LibraryHierarchy library) {
+        long startup = System.nanoTime() - start;
+        long analysisStart = System.nanoTime();
+        CHAAlgorithm cha = new CHAAlgorithm();
+        cha.setLazyBodies(true);
+        CallGraph chaCg = cha.constructCallGraph(Scene.v());
+        RTAAlgorithm rta = new RTAAlgorithm();
+        rta.setLazyBodies(true);
+        CallGraph rtaCg = rta.constructCallGraph(Scene.v());
+        long analysis = System.nanoTime() - analysisStart;
+        System.out.printf("%s startup %5d ms, CHA + RTA %5d ms, %5d classes, CHA %d edges, RTA %d edges%s%n", mode,
+                startup / 1_000_000, analysis / 1_000_000, Scene.v().getClasses().size(), chaCg.edgeCount(), rtaCg.edgeCount(),
+                library == null ? "" : ", " + library.classCount() + " library classes");
+    }
+
+    private static void setOptions(String sootCp) {
+        G.reset();
+        Options.v().set_whole_program(true);
+        Options.v().set_soot_classpath(sootCp);
+        Options.v().set_no_bodies_for_excluded(true);
+        Options.v().set_full_resolver(true);
+        Options.v().set_process_dir(Lists.newArrayList(System.getProperty("user.dir") + File.separator + "target" + File.separator + "test-classes"));
+        Options.v().set_exclude(Lists.newArrayList("exercises.*", "base.*", "bench.*"));
+        Options.v().set_allow_phantom_refs(true);
+        Options.v().setPhaseOption("jb", "use-original-names:true");
+        Options.v().set_prepend_classpath(false);
+        Options.v().set_output_format(Options.output_format_none);
+    }
+}
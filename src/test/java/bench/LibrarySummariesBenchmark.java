@@ -0,0 +1,101 @@
+package bench;
+
+import analysis.CallGraph;
+import analysis.CallGraphAlgorithm;
+import analysis.LibrarySummaries;
+import analysis.MethodSummaries;
+import analysis.exercise1.CHAAlgorithm;
+import analysis.exercise2.RTAAlgorithm;
+import com.google.common.collect.Lists;
+import soot.G;
+import soot.Scene;
+import soot.SootMethod;
+import soot.options.Options;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * CHA and RTA over the test classes with and without {@link LibrarySummaries} of rt.jar. As in the tests, calls
+ * into the JDK end at the library boundary unless the JDK is loaded as application code with
+ * {@code -app -include-all}, in which case its bodies are walked too. Bodies is the number of Jimple bodies the
+ * two algorithms built, target nodes the methods of {@code target.*} in the CHA and RTA call graphs.
+ * <p>
+ * Arguments: none. The summaries are scanned into a temporary cache first, every mode reads them from there.
+ */
+public class LibrarySummariesBenchmark {
+    public static void main(String[] args) throws Exception {
+        File jar = new File("lib" + File.separator + "rt.jar");
+        File cache = Files.createTempDirectory("summaries").toFile();
+        long start = System.nanoTime();
+        LibrarySummaries scanned = LibrarySummaries.forJar(jar, cache);
+        long scan = System.nanoTime() - start;
+        start = System.nanoTime();
+        LibrarySummaries summaries = LibrarySummaries.forJar(jar, cache);
+        System.out.printf("%d methods, scan + write %d ms, read %d ms, %d KB%n", scanned.methodCount(), scan / 1_000_000,
+                (System.nanoTime() - start) / 1_000_000, new File(cache, summaries.getJarHash() + ".summaries").length() >> 10);
+
+        // CHAAlgorithm recurses along call chains, the JDK's are long
+        Thread thread = new Thread(null, () -> {
+            run("library cut off     ", false, null);
+            run("library summaries   ", false, summaries);
+            run("library bodies      ", true, null);
+            run("app mode, summaries ", true, summaries);
+        }, "bench", 1L << 30);
+        thread.start();
+        thread.join();
+    }
+
+    private static void run(String mode, boolean walkLibrary, LibrarySummaries summaries) {
+        long start = System.nanoTime();
+        setOptions(walkLibrary);
+        Scene.v().loadNecessaryClasses();
+        long load = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        CallGraph cha = construct(new CHAAlgorithm(), summaries);
+        long chaTime = System.nanoTime() - start;
+        start = System.nanoTime();
+        CallGraph rta = construct(new RTAAlgorithm(), summaries);
+        String rtaResult = String.format("RTA %5d ms, %5d nodes %6d edges, %d target nodes", (System.nanoTime() - start) / 1_000_000,
+                rta.nodeCount(), rta.edgeCount(), targetNodes(rta).size());
+        System.out.printf("%s load %5d ms, %5d bodies, CHA %5d ms, %5d nodes %6d edges, %d target nodes; %s%n", mode, load / 1_000_000,
+                MethodSummaries.forScene(Scene.v()).getBodiesIndexed(), chaTime / 1_000_000, cha.nodeCount(), cha.edgeCount(),
+                targetNodes(cha).size(), rtaResult);
+    }
+
+    private static CallGraph construct(CallGraphAlgorithm algorithm, LibrarySummaries summaries) {
+        algorithm.setLazyBodies(true);
+        algorithm.setBodyLoaderThreads(0);
+        if (summaries != null) algorithm.setLibrarySummaries(summaries);
+        return algorithm.constructCallGraph(Scene.v());
+    }
+
+    private static Set<String> targetNodes(CallGraph cg) {
+        Set<String> nodes = new TreeSet<>();
+        for (SootMethod node : cg.getNodes()) {
+            if (node.getDeclaringClass().getName().startsWith("target.")) nodes.add(node.getSignature());
+        }
+        return nodes;
+    }
+
+    private static void setOptions(boolean walkLibrary) {
+        String testClasses = System.getProperty("user.dir") + File.separator + "target" + File.separator + "test-classes";
+        G.reset();
+        Options.v().set_whole_program(true);
+        Options.v().set_soot_classpath(testClasses + File.pathSeparator + "lib" + File.separator + "rt.jar");
+        Options.v().set_no_bodies_for_excluded(true);
+        Options.v().set_full_resolver(true);
+        Options.v().set_process_dir(Lists.newArrayList(testClasses));
+        Options.v().set_exclude(Lists.newArrayList("exercises.*", "base.*", "bench.*"));
+        Options.v().set_allow_phantom_refs(true);
+        // every class Soot loads is an application class then, the JDK included
+        Options.v().set_app(walkLibrary);
+        Options.v().set_include_all(walkLibrary);
+        Options.v().setPhaseOption("jb", "use-original-names:true");
+        Options.v().set_prepend_classpath(false);
+        Options.v().set_output_format(Options.output_format_none);
+    }
+}
@@ -0,0 +1,371 @@
+package bench;
+
+import analysis.AnalysisProgress;
+import analysis.CallGraph;
+import analysis.CallGraphAlgorithm;
+import analysis.EntryPointProvider;
+import analysis.EntryPoints;
+import analysis.exercise1.CHAAlgorithm;
+import analysis.exercise2.RTAAlgorithm;
+import analysis.exercise3.VTAAlgorithm;
+import com.google.common.collect.Lists;
+import com.sun.management.GarbageCollectionNotificationInfo;
+import soot.G;
+import soot.Scene;
+import soot.SootClass;
+import soot.SootMethod;
+import soot.options.Options;
+
+import javax.management.NotificationEmitter;
+import javax.management.openmbean.CompositeData;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Performance regression check of call graph construction. CHA, RTA and VTA run on a fixed suite: the main methods
+ * of every {@code target.exercise*} package, with rt.jar on the classpath as in the tests, and two programs of
+ * {@link BodyRetentionBenchmark}'s generator.
+ * <p>
+ * The bodies of the application classes are built up front, as the packs do in the tests. Every algorithm runs
+ * once per program to warm up, then once per measured run, each measuring wall time, bytes allocated on the
+ * analysis thread, peak heap, methods processed and the nodes and edges of the call graph. Peak is the largest
+ * heap right after a collection during construction or with the finished call graph, above the heap before. Means
+ * and standard deviations are kept per metric.
+ * <p>
+ * {@code record} writes them to the baseline file, which is versioned with the sources. {@code check} measures
+ * again and compares: a mean regressed if it grew by more than the metric's relative tolerance and minimal
+ * difference and by more than three standard errors of the difference of both means, so neither a noisy run nor
+ * a tiny significant change fails. Counts are exact, any change fails until the baseline is recorded again. The
+ * report lists every metric; with a regression, a changed count or a measurement missing from the fresh run, the
+ * exit status is 1. After {@code mvn test-compile}, CI runs
+ * {@code java -XX:+UseParallelGC -Xmx2g -cp target/test-classes:target/classes:<dependencies> bench.RegressionHarness check}.
+ * With G1 the live heap after {@code System.gc()} alternated by a whole call graph from run to run, so the peaks
+ * were useless. The baseline notes the JVM it was recorded on, check warns if it runs on another one.
+ * <p>
+ * Arguments: record or check, the baseline file (default src/test/resources/bench/regression-baseline.tsv),
+ * measured runs (default 5).
+ */
+public class RegressionHarness {
+    private static final int VERSION = 1;
+    private static final String[] ALGORITHMS = {"CHA", "RTA", "VTA"};
+    private static final int[] GENERATED_CLASSES = {200, 1000};
+
+    private enum Metric {
+        // means of separate JVMs differed by up to a fifth on the same machine
+        TIME("wall ms", 0.25, 2),
+        ALLOCATED("allocated MB", 0.05, 1),
+        PEAK("peak heap MB", 0.10, 1),
+        METHODS("methods", 0, 0),
+        NODES("nodes", 0, 0),
+        EDGES("edges", 0, 0);
+
+        final String label;
+        // a mean regressed if it grew by more than both, a count if it changed at all
+        final double tolerance;
+        final double minimum;
+
+        Metric(String label, double tolerance, double minimum) {
+            this.label = label;
+            this.tolerance = tolerance;
+            this.minimum = minimum;
+        }
+
+        boolean isCount() {
+            return tolerance == 0;
+        }
+    }
+
+    /**
+     * Mean and standard deviation of the runs of one metric.
+     */
+    private static final class Stats {
+        final double mean;
+        final double deviation;
+        final int runs;
+
+        Stats(double mean, double deviation, int runs) {
+            this.mean = mean;
+            this.deviation = deviation;
+            this.runs = runs;
+        }
+
+        static Stats of(double[] samples) {
+            double mean = Arrays.stream(samples).average().orElse(0);
+            double squares = Arrays.stream(samples).map(s -> (s - mean) * (s - mean)).sum();
+            return new Stats(mean, samples.length > 1 ? Math.sqrt(squares / (samples.length - 1)) : 0, samples.length);
+        }
+
+        double standardError() {
+            return deviation / Math.sqrt(runs);
+        }
+
+        String format(Metric metric) {
+            return metric.isCount() ? String.format("%.0f", mean) : String.format("%.1f +- %.1f", mean, deviation);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0 || !args[0].equals("record") && !args[0].equals("check")) {
+            System.err.println("Usage: RegressionHarness record|check [baseline file] [runs]");
+            System.exit(2);
+        }
+        File baseline = new File(args.length > 1 ? args[1] : "src/test/resources/bench/regression-baseline.tsv");
+        int runs = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        // construction recurses along call chains
+        AtomicReference<Map<String, Stats>> fresh = new AtomicReference<>();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread thread = new Thread(null, () -> {
+            try {
+                fresh.set(measure(runs));
+            } catch (Throwable e) {
+                failure.set(e);
+            }
+        }, "bench", 1L << 30);
+        thread.start();
+        thread.join();
+        if (failure.get() != null) throw new IllegalStateException("Measuring failed", failure.get());
+
+        if (args[0].equals("record")) {
+            record(baseline, fresh.get());
+            System.out.println("Recorded " + fresh.get().size() + " measurements in " + baseline);
+        } else if (!check(baseline, fresh.get())) {
+            System.exit(1);
+        }
+    }
+
+    // measurements keyed by program, algorithm and metric, separated by tabs, in suite order
+    private static Map<String, Stats> measure(int runs) throws Exception {
+        AtomicLong peak = new AtomicLong();
+        // collections report metaspace and code cache as well
+        Set<String> heapPools = new HashSet<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) heapPools.add(pool.getName());
+        }
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            ((NotificationEmitter) collector).addNotificationListener((notification, handback) -> {
+                if (!notification.getType().equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION)) return;
+                GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+                long used = info.getGcInfo().getMemoryUsageAfterGc().entrySet().stream()
+                        .filter(pool -> heapPools.contains(pool.getKey())).mapToLong(pool -> pool.getValue().getUsed()).sum();
+                peak.accumulateAndGet(used, Math::max);
+            }, null, null);
+        }
+
+        Map<String, Stats> results = new LinkedHashMap<>();
+        String testClasses = System.getProperty("user.dir") + File.separator + "target" + File.separator + "test-classes";
+        setOptions(testClasses + File.pathSeparator + "lib" + File.separator + "rt.jar", testClasses);
+        Options.v().set_exclude(Lists.newArrayList("exercises.*", "base.*", "bench.*"));
+        Scene.v().loadNecessaryClasses();
+        buildBodies();
+        for (int exercise = 1; exercise <= 4; exercise++) {
+            String prefix = "target.exercise" + exercise + ".";
+            // one provider per program, so entry points are discovered once
+            EntryPointProvider mains = method -> method.getDeclaringClass().getName().startsWith(prefix)
+                    && EntryPoints.mainMethods().isEntryPoint(method);
+            for (String algorithm : ALGORITHMS)
+                measure("exercise" + exercise, algorithm, mains, runs, peak, results);
+        }
+
+        for (int classes : GENERATED_CLASSES) {
+            File dir = Files.createTempDirectory("synthetic").toFile();
+            try {
+                BodyRetentionBenchmark.generate(dir, classes);
+                setOptions(dir.getPath() + File.pathSeparator + "lib" + File.separator + "rt.jar", dir.getPath());
+                Scene.v().loadNecessaryClasses();
+                buildBodies();
+                for (String algorithm : ALGORITHMS)
+                    measure("synthetic-" + classes, algorithm, EntryPoints.mainMethods(), runs, peak, results);
+            } finally {
+                BodyRetentionBenchmark.delete(dir);
+            }
+        }
+        return results;
+    }
+
+    private static void setOptions(String classpath, String processDir) {
+        G.reset();
+        Options.v().set_whole_program(true);
+        Options.v().set_soot_classpath(classpath);
+        Options.v().set_no_bodies_for_excluded(true);
+        Options.v().set_full_resolver(true);
+        Options.v().set_process_dir(Lists.newArrayList(processDir));
+        Options.v().set_allow_phantom_refs(true);
+        Options.v().set_prepend_classpath(false);
+        Options.v().set_output_format(Options.output_format_none);
+    }
+
+    // the algorithms only walk methods with an active body, as the packs of the test setup build them
+    private static void buildBodies() {
+        for (SootClass sootClass : Scene.v().getApplicationClasses()) {
+            for (SootMethod method : sootClass.getMethods()) {
+                if (method.isConcrete()) method.retrieveActiveBody();
+            }
+        }
+    }
+
+    private static void measure(String program, String algorithm, EntryPointProvider entryPoints, int runs, AtomicLong peak,
+                                Map<String, Stats> results) {
+        Supplier<CallGraphAlgorithm> factory = algorithm.equals("CHA") ? CHAAlgorithm::new
+                : algorithm.equals("RTA") ? RTAAlgorithm::new : VTAAlgorithm::new;
+        double[][] samples = new double[Metric.values().length][runs];
+        // run -1 warms up
+        for (int run = -1; run < runs; run++) {
+            double[] values = new double[samples.length];
+            // algorithms keep state between runs, so every run gets its own
+            CallGraphAlgorithm cga = factory.get();
+            cga.setEntryPointProvider(entryPoints);
+            run(cga, peak, values);
+            if (run < 0) continue;
+            for (int metric = 0; metric < samples.length; metric++)
+                samples[metric][run] = values[metric];
+        }
+        for (Metric metric : Metric.values())
+            results.put(program + "\t" + algorithm + "\t" + metric.name(), Stats.of(samples[metric.ordinal()]));
+        System.out.printf("%-14s %-4s %8.1f ms%n", program, algorithm, results.get(program + "\t" + algorithm + "\t" + Metric.TIME.name()).mean);
+    }
+
+    // the call graph is only referenced in here, so the next run does not count it as heap before
+    private static void run(CallGraphAlgorithm cga, AtomicLong peak, double[] values) {
+        AtomicReference<AnalysisProgress> last = new AtomicReference<>();
+        cga.setProgressListener(last::set);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        long before = liveHeap();
+        peak.set(0);
+        long allocated = threads.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        CallGraph cg = cga.constructCallGraph(Scene.v());
+        long elapsed = System.nanoTime() - start;
+        allocated = threads.getThreadAllocatedBytes(threadId) - allocated;
+        long retained = liveHeap();
+
+        values[Metric.TIME.ordinal()] = elapsed / 1e6;
+        values[Metric.ALLOCATED.ordinal()] = allocated / 1048576.0;
+        values[Metric.PEAK.ordinal()] = Math.max(0, Math.max(peak.get(), retained) - before) / 1048576.0;
+        values[Metric.METHODS.ordinal()] = last.get().getMethodsProcessed();
+        values[Metric.NODES.ordinal()] = cg.nodeCount();
+        values[Metric.EDGES.ordinal()] = cg.edgeCount();
+    }
+
+    private static void record(File baseline, Map<String, Stats> results) throws IOException {
+        File parent = baseline.getAbsoluteFile().getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) throw new IOException("Cannot create " + parent);
+        try (BufferedWriter out = Files.newBufferedWriter(baseline.toPath(), StandardCharsets.UTF_8)) {
+            out.write("# call graph construction baseline, see bench.RegressionHarness\n");
+            out.write("version\t" + VERSION + "\n");
+            out.write("recorded\t" + LocalDate.now() + "\t" + environment() + "\n");
+            out.write("# program\talgorithm\tmetric\tmean\tdeviation\truns\n");
+            for (Map.Entry<String, Stats> entry : results.entrySet()) {
+                Stats stats = entry.getValue();
+                out.write(entry.getKey() + "\t" + stats.mean + "\t" + stats.deviation + "\t" + stats.runs + "\n");
+            }
+        }
+    }
+
+    /**
+     * Prints the report.
+     *
+     * @return true if nothing regressed or changed
+     */
+    private static boolean check(File baseline, Map<String, Stats> fresh) throws IOException {
+        Map<String, Stats> base = new LinkedHashMap<>();
+        String recorded = "";
+        String environment = "";
+        for (String line : Files.readAllLines(baseline.toPath(), StandardCharsets.UTF_8)) {
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            String[] fields = line.split("\t");
+            if (fields[0].equals("version")) {
+                if (Integer.parseInt(fields[1]) != VERSION)
+                    throw new IllegalStateException("Baseline " + baseline + " has version " + fields[1] + ", expected " + VERSION + ", record it again");
+            } else if (fields[0].equals("recorded")) {
+                recorded = fields[1];
+                environment = fields[2];
+            } else {
+                base.put(fields[0] + "\t" + fields[1] + "\t" + fields[2],
+                        new Stats(Double.parseDouble(fields[3]), Double.parseDouble(fields[4]), Integer.parseInt(fields[5])));
+            }
+        }
+
+        System.out.println("Baseline " + baseline + ", recorded " + recorded + " on " + environment);
+        if (!environment.equals(environment()))
+            System.out.println("Warning: this run is on " + environment() + ", times and heap are not comparable");
+        System.out.printf("%-14s %-4s %-13s %18s %18s %8s  %s%n", "program", "alg", "metric", "baseline", "fresh", "change", "verdict");
+        int regressions = 0;
+        int changes = 0;
+        int improvements = 0;
+        List<String> keys = new ArrayList<>(fresh.keySet());
+        for (String key : base.keySet()) {
+            if (!fresh.containsKey(key)) keys.add(key);
+        }
+        for (String key : keys) {
+            String[] parts = key.split("\t");
+            Metric metric = Metric.valueOf(parts[2]);
+            Stats before = base.get(key);
+            Stats after = fresh.get(key);
+            String verdict;
+            String change = "";
+            if (before == null) {
+                verdict = "new";
+            } else if (after == null) {
+                verdict = "MISSING";
+                changes++;
+            } else {
+                double delta = after.mean - before.mean;
+                change = before.mean == 0 ? "" : String.format("%+.1f%%", 100 * delta / before.mean);
+                double threshold = Math.max(metric.tolerance * before.mean, metric.minimum);
+                double standardErrors = 3 * Math.sqrt(before.standardError() * before.standardError() + after.standardError() * after.standardError());
+                if (metric.isCount()) {
+                    verdict = delta == 0 ? "ok" : "CHANGED";
+                    if (delta != 0) changes++;
+                } else if (Math.abs(delta) > threshold && Math.abs(delta) > standardErrors) {
+                    verdict = delta > 0 ? "REGRESSED" : "improved";
+                    if (delta > 0) regressions++;
+                    else improvements++;
+                } else {
+                    verdict = "ok";
+                }
+            }
+            System.out.printf("%-14s %-4s %-13s %18s %18s %8s  %s%n", parts[0], parts[1], metric.label,
+                    before == null ? "-" : before.format(metric), after == null ? "-" : after.format(metric), change, verdict);
+        }
+        System.out.println(regressions + " regressed, " + changes + " changed or missing, " + improvements + " improved");
+        return regressions == 0 && changes == 0;
+    }
+
+    private static String environment() {
+        List<String> collectors = new ArrayList<>();
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans())
+            collectors.add(collector.getName());
+        return "Java " + System.getProperty("java.version") + ", " + Runtime.getRuntime().availableProcessors() + " cores, max heap "
+                + (Runtime.getRuntime().maxMemory() >> 20) + " MB, " + String.join(" and ", collectors);
+    }
+
+    private static long liveHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            System.runFinalization();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
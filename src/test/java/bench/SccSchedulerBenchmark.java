@@ -0,0 +1,102 @@
+package bench;
+
+import analysis.CallGraph;
+import analysis.CallGraphCondensation;
+import analysis.SccScheduler;
+import soot.BooleanType;
+import soot.SootClass;
+import soot.SootMethod;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Bottom-up summary computation with {@link SccScheduler} over pool sizes, compared with the sequential walk over
+ * ascending SCC ids. The graph is random with mostly forward edges and some back edges that close cycles, the
+ * summary of a method mixes the summaries of its callees and burns a fixed amount of work, like a small
+ * intraprocedural analysis would.
+ * <p>
+ * Arguments: pool sizes (default 1 2 4 and the number of cores).
+ */
+public class SccSchedulerBenchmark {
+    private static final int NODES = 100_000;
+    private static final int DEGREE = 4;
+    private static final int WORK = 2_000;
+
+    public static void main(String[] args) {
+        int cores = Runtime.getRuntime().availableProcessors();
+        int[] poolSizes = args.length > 0
+                ? Arrays.stream(args).mapToInt(Integer::parseInt).toArray()
+                : new int[]{1, 2, 4, cores};
+        System.out.println(cores + " cores");
+
+        Random random = new Random(42);
+        List<SootMethod> methods = new ArrayList<>();
+        SootClass benchClass = new SootClass("BenchClass");
+        CallGraph cg = new CallGraph("Bench");
+        for (int i = 0; i < NODES; i++) {
+            SootMethod method = new SootMethod("m" + i, null, BooleanType.v());
+            benchClass.addMethod(method);
+            methods.add(method);
+            cg.addNode(method);
+        }
+        for (int i = 0; i < NODES; i++) {
+            for (int d = 0; d < DEGREE; d++) {
+                int target = random.nextInt(50) == 0 ? Math.max(0, i - 1 - random.nextInt(20)) : Math.min(NODES - 1, i + 1 + random.nextInt(500));
+                cg.addEdgeIfAbsent(methods.get(i), methods.get(target));
+            }
+        }
+        CallGraphCondensation condensation = new CallGraphCondensation(cg);
+        int[][] callees = new int[NODES][];
+        for (int i = 0; i < NODES; i++)
+            callees[i] = cg.edgesOutOf(condensation.methodOf(i)).stream().mapToInt(condensation::idOf).toArray();
+        System.out.println(NODES + " methods, " + cg.edgeCount() + " edges, " + condensation.sccCount() + " SCCs");
+
+        for (int round = 0; round < 3; round++) {
+            long[] summaries = new long[NODES];
+            long start = System.nanoTime();
+            for (int scc = 0; scc < condensation.sccCount(); scc++) {
+                boolean changed;
+                do {
+                    changed = summarize(condensation.members(scc), callees, summaries);
+                } while (changed && condensation.isCyclic(scc));
+            }
+            long sequential = System.nanoTime() - start;
+            long expected = Arrays.hashCode(summaries);
+            System.out.printf("sequential      %6d ms%n", sequential / 1_000_000);
+
+            for (int poolSize : poolSizes) {
+                ForkJoinPool pool = new ForkJoinPool(poolSize);
+                long[] parallel = new long[NODES];
+                SccScheduler scheduler = new SccScheduler(condensation, SccScheduler.Order.BOTTOM_UP);
+                start = System.nanoTime();
+                scheduler.run((scc, members) -> summarize(condensation.members(scc), callees, parallel), pool);
+                long elapsed = System.nanoTime() - start;
+                pool.shutdown();
+                System.out.printf("%2d threads      %6d ms, %d task runs, same summaries: %b%n", poolSize, elapsed / 1_000_000,
+                        scheduler.getTaskRuns(), Arrays.hashCode(parallel) == expected);
+            }
+        }
+    }
+
+    /**
+     * @return true if a summary changed. Summaries only grow by or-ing in callee bits, so cycles reach a fixpoint
+     */
+    private static boolean summarize(int[] members, int[][] callees, long[] summaries) {
+        boolean changed = false;
+        for (int method : members) {
+            long burn = method;
+            for (int i = 0; i < WORK; i++)
+                burn = burn * 6364136223846793005L + 1442695040888963407L;
+            long summary = summaries[method] | 1L << (burn >>> 58);
+            for (int callee : callees[method])
+                summary |= summaries[callee];
+            changed |= summary != summaries[method];
+            summaries[method] = summary;
+        }
+        return changed;
+    }
+}
@@ -0,0 +1,108 @@
+package bench;
+
+import analysis.CallGraph;
+import analysis.CallGraphAlgorithm;
+import analysis.exercise1.CHAAlgorithm;
+import analysis.exercise1.ShardedCHAAlgorithm;
+import com.google.common.collect.Lists;
+import soot.G;
+import soot.Scene;
+import soot.SootClass;
+import soot.SootMethod;
+import soot.options.Options;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Scaling report of {@link ShardedCHAAlgorithm} over shard counts, compared with {@link CHAAlgorithm}.
+ * <p>
+ * Arguments: a jar or directory that becomes the process dir (default lib/rt.jar), then shard counts (default
+ * 1 2 4 8). All bodies are built before the first run and every run uses the same scene. Soot names the classes
+ * it generates for lambdas in the order bodies are built, so only a shared scene makes the graphs comparable.
+ * The summaries are shared as well, an untimed warm-up run builds them.
+ */
+public class ShardedCHABenchmark {
+
+    public static void main(String[] args) throws InterruptedException {
+        // CHAAlgorithm recurses along call chains, the JDK needs far more than the default stack
+        Thread thread = new Thread(null, () -> report(args), "bench", 1L << 30);
+        thread.start();
+        thread.join();
+    }
+
+    private static void report(String[] args) {
+        String processDir = args.length > 0 ? args[0] : "lib" + File.separator + "rt.jar";
+        int[] shardCounts = args.length > 1
+                ? Arrays.stream(args, 1, args.length).mapToInt(Integer::parseInt).toArray()
+                : new int[]{1, 2, 4, 8};
+        System.out.println("process dir " + processDir + ", " + Runtime.getRuntime().availableProcessors() + " cores");
+        setupScene(processDir);
+        System.out.println(buildBodies() + " bodies built");
+
+        new CHAAlgorithm().constructCallGraph(Scene.v());
+        String expected = signatures(run(new CHAAlgorithm(), "unsharded"));
+        for (int shards : shardCounts) {
+            ShardedCHAAlgorithm sharded = new ShardedCHAAlgorithm(shards);
+            CallGraph actual = run(sharded, shards + " shards");
+            System.out.println("    methods per shard " + Arrays.toString(sharded.getMethodsPerShard())
+                    + ", cross-shard calls " + sharded.getCrossShardCalls()
+                    + ", identical to unsharded: " + expected.equals(signatures(actual)));
+        }
+    }
+
+    private static CallGraph run(CallGraphAlgorithm algorithm, String label) {
+        long start = System.nanoTime();
+        CallGraph cg = algorithm.constructCallGraph(Scene.v());
+        System.out.printf("%-10s %7d ms, %d nodes, %d edges%n", label, (System.nanoTime() - start) / 1_000_000, cg.nodeCount(), cg.edgeCount());
+        return cg;
+    }
+
+    private static void setupScene(String processDir) {
+        G.reset();
+        Options.v().set_whole_program(true);
+        Options.v().set_soot_classpath(processDir + File.pathSeparator + "lib" + File.separator + "rt.jar");
+        Options.v().set_process_dir(Lists.newArrayList(processDir));
+        // Soot excludes the JDK packages by default, benchmarking on the JDK needs them as application classes
+        Options.v().set_include_all(true);
+        Options.v().set_allow_phantom_refs(true);
+        Options.v().set_prepend_classpath(false);
+        Options.v().set_output_format(Options.output_format_none);
+        Scene.v().loadNecessaryClasses();
+    }
+
+    // building a body can add classes for lambdas, so this repeats until no new classes show up
+    private static int buildBodies() {
+        Set<SootClass> done = new HashSet<>();
+        int built = 0;
+        while (true) {
+            List<SootClass> classes = new ArrayList<>(Scene.v().getApplicationClasses());
+            classes.removeAll(done);
+            if (classes.isEmpty()) return built;
+            for (SootClass sootClass : classes) {
+                done.add(sootClass);
+                for (SootMethod method : new ArrayList<>(sootClass.getMethods())) {
+                    if (!method.isConcrete()) continue;
+                    try {
+                        method.retrieveActiveBody();
+                        built++;
+                    } catch (RuntimeException e) {
+                        // bodies Soot cannot build are skipped by both algorithms alike
+                    }
+                }
+            }
+        }
+    }
+
+    // nodes and edges in the order they were added
+    private static String signatures(CallGraph cg) {
+        StringBuilder result = new StringBuilder();
+        cg.getNodes().forEach(m -> result.append(m.getSignature()).append('\n'));
+        cg.forEachEdge((source, target) -> result.append(source.getSignature()).append(" -> ").append(target.getSignature()).append('\n'));
+        return result.toString();
+    }
+}
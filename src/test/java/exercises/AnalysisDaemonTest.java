@@ -0,0 +1,99 @@
+package exercises;
+
+import analysis.CallGraphAlgorithm;
+import analysis.daemon.AnalysisDaemon;
+import analysis.exercise1.CHAAlgorithm;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class AnalysisDaemonTest {
+
+	private static final String MAIN = "<target.exercise1.SimpleExample: void main(java.lang.String[])>";
+	private static final String MODIFY = "<target.exercise1.SimpleExample$Subject: void modify()>";
+	private static final String UPDATE = "<target.exercise1.SimpleExample: void update(target.exercise1.Observable,java.lang.Object)>";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private AnalysisDaemon daemon;
+	private BufferedReader in;
+	private BufferedWriter out;
+
+	@After
+	public void tearDown() throws Exception {
+		if (daemon != null) daemon.close();
+	}
+
+	@Test
+	public void answersQueriesAndReloads() throws Exception {
+		// the options of TestSetup, with rt.jar from a snapshot
+		String testClasses = System.getProperty("user.dir") + File.separator + "target" + File.separator + "test-classes";
+		List<String> sootArguments = Arrays.asList("-w", "-cp", testClasses, "-process-dir", testClasses,
+				"-x", "exercises.*", "-x", "base.*", "-x", "bench.*", "-no-bodies-for-excluded", "-allow-phantom-refs",
+				"-full-resolver", "-p", "jb", "use-original-names:true", "-f", "n");
+		daemon = new AnalysisDaemon(sootArguments, () -> {
+			CallGraphAlgorithm cha = new CHAAlgorithm();
+			cha.setLazyBodies(true);
+			return cha;
+		});
+		daemon.setLibrarySnapshot(new File("lib/rt.jar"), folder.newFolder("hierarchy"));
+		int port = daemon.start(0);
+
+		try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+			in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+			out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+
+			Assert.assertTrue(methods("CALLEES " + MAIN).contains(MODIFY));
+			Assert.assertEquals(Arrays.asList(MAIN), methods("CALLERS " + MODIFY));
+			Assert.assertEquals("YES", request("REACHES " + MAIN + " " + UPDATE));
+			Assert.assertEquals("NO", request("REACHES " + UPDATE + " " + MAIN));
+			Assert.assertEquals("UNKNOWN <a.B: void missing()>", request("CALLEES <a.B: void missing()>"));
+			Assert.assertTrue(request("FOO").startsWith("ERROR"));
+
+			String[] stats = request("STATS").split(" ");
+			Assert.assertEquals("1", stats[1]);
+			Assert.assertEquals(String.valueOf(daemon.getGeneration().nodeCount()), stats[2]);
+			Assert.assertEquals("5", stats[5]);
+
+			String[] reloaded = request("RELOAD").split(" ");
+			Assert.assertEquals("RELOADED", reloaded[0]);
+			Assert.assertEquals("2", reloaded[1]);
+			Assert.assertEquals(stats[2], reloaded[2]);
+			Assert.assertEquals(stats[3], reloaded[3]);
+			Assert.assertEquals(Arrays.asList(MAIN), methods("CALLERS " + MODIFY));
+
+			Assert.assertEquals("BYE", request("QUIT"));
+			Assert.assertNull(in.readLine());
+		}
+	}
+
+	private String request(String line) throws Exception {
+		out.write(line + "\n");
+		out.flush();
+		return in.readLine();
+	}
+
+	private List<String> methods(String line) throws Exception {
+		String answer = request(line);
+		Assert.assertTrue(answer, answer.startsWith("METHODS "));
+		List<String> methods = new ArrayList<>();
+		for (int i = Integer.parseInt(answer.substring("METHODS ".length())); i > 0; i--)
+			methods.add(in.readLine());
+		return methods;
+	}
+}
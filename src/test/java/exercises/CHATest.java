@@ -1,7 +1,15 @@
 package exercises;
 
+import analysis.AnalysisBudget;
+import analysis.AnalysisCancelledException;
+import analysis.AnalysisProgress;
 import analysis.CallGraph;
+import analysis.CancellationToken;
+import analysis.MethodSummaries;
 import analysis.exercise1.CHAAlgorithm;
+import analysis.exercise1.DemandDrivenCHA;
+import analysis.exercise1.ShardedCHAAlgorithm;
+import analysis.exercise2.RTAAlgorithm;
 import base.TestSetup;
 import org.junit.Assert;
 import org.junit.Before;
@@ -11,6 +19,8 @@ import soot.SceneTransformer;
 import soot.SootMethod;
 import soot.Transformer;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -89,4 +99,121 @@ public class CHATest extends TestSetup {
 		Assert.assertTrue(calledMethods.contains(exampleUpdate));
 	}
 
+	@Test
+	public void demandDrivenQueries() {
+		DemandDrivenCHA demand = new DemandDrivenCHA(scene);
+
+		Assert.assertEquals(cg.edgesOutOf(observableNotifyObserversSpecific), demand.calleesOf(observableNotifyObserversSpecific));
+		Assert.assertEquals(1, demand.getBodiesResolved());
+
+		Set<SootMethod> callersOfUpdate = demand.callersOf(exampleUpdate);
+		Assert.assertTrue(callersOfUpdate.contains(observableNotifyObserversSpecific));
+		Assert.assertTrue(cg.edgesInto(exampleUpdate).containsAll(callersOfUpdate));
+
+		// memoized, no further bodies are resolved
+		int resolved = demand.getBodiesResolved();
+		demand.calleesOf(observableNotifyObserversSpecific);
+		demand.callersOf(exampleUpdate);
+		Assert.assertEquals(resolved, demand.getBodiesResolved());
+	}
+
+	@Test
+	public void bodiesAreSummarizedOnce() {
+		MethodSummaries summaries = MethodSummaries.forScene(scene);
+		int indexed = summaries.getBodiesIndexed();
+		Assert.assertTrue(indexed > 0);
+
+		// RTA only visits methods CHA has visited before, so it can reuse all summaries
+		new RTAAlgorithm().constructCallGraph(scene);
+		Assert.assertEquals(indexed, summaries.getBodiesIndexed());
+	}
+
+	@Test
+	public void exhaustedBudgetWithoutFallback() {
+		Assert.assertFalse(cg.isDegraded());
+
+		// CHA has nothing cheaper to fall back to, so it returns what it has and marks the unfinished methods
+		CHAAlgorithm cha = new CHAAlgorithm();
+		cha.setBudget(AnalysisBudget.UNLIMITED.withMaxWork(2));
+		CallGraph partial = cha.constructCallGraph(scene);
+		Assert.assertEquals(AnalysisBudget.Limit.WORK, partial.getExhaustedLimit());
+		Assert.assertFalse(partial.getDegradedMethods().isEmpty());
+		Assert.assertTrue(partial.edgeCount() < cg.edgeCount());
+
+		// RTA falls back to CHA
+		RTAAlgorithm rta = new RTAAlgorithm();
+		rta.setBudget(AnalysisBudget.UNLIMITED.withMaxWork(2));
+		CallGraph degraded = rta.constructCallGraph(scene);
+		Assert.assertTrue(degraded.isDegraded(exampleMain));
+		Assert.assertEquals(CHAAlgorithm.soundFallback().constructCallGraph(scene).edgesOutOf(exampleMain), degraded.edgesOutOf(exampleMain));
+	}
+
+	@Test
+	public void followDispatchResolvesVirtualCalls() {
+		SootMethod main = scene.getMethod("<target.exercise1.VirtualCalls: void main(java.lang.String[])>");
+		SootMethod declared = scene.getMethod("<target.exercise2.Subclass: void doSomething()>");
+		SootMethod overriding = scene.getMethod("<target.exercise2.Specialization: void doSomething()>");
+		Assert.assertTrue(cg.hasEdge(main, declared));
+		Assert.assertFalse(cg.hasEdge(main, overriding));
+
+		CHAAlgorithm following = CHAAlgorithm.soundFallback();
+		CallGraph dispatched = following.constructCallGraph(scene);
+		Assert.assertTrue(dispatched.hasEdge(main, declared));
+		Assert.assertTrue(dispatched.hasEdge(main, overriding));
+		// plain CHA only loses edges
+		cg.forEachEdge((source, target) -> Assert.assertTrue(source + " -> " + target, dispatched.hasEdge(source, target)));
+	}
+
+	@Test
+	public void shardedMatchesUnsharded() {
+		for (boolean callSites : new boolean[]{false, true}) {
+			CHAAlgorithm cha = new CHAAlgorithm();
+			cha.setRecordCallSites(callSites);
+			CallGraph expected = cha.constructCallGraph(scene);
+			for (int shards = 1; shards <= 4; shards++) {
+				ShardedCHAAlgorithm sharded = new ShardedCHAAlgorithm(shards);
+				sharded.setRecordCallSites(callSites);
+				CallGraph actual = sharded.constructCallGraph(scene);
+
+				Assert.assertEquals(expected.algorithm, actual.algorithm);
+				// same nodes and edges, in the same order
+				Assert.assertEquals(new ArrayList<>(expected.getNodes()), new ArrayList<>(actual.getNodes()));
+				Assert.assertEquals(edgeList(expected), edgeList(actual));
+				for (SootMethod node : expected.getNodes()) {
+					for (SootMethod target : expected.edgesOutOf(node))
+						Assert.assertArrayEquals(expected.callSitesOf(node, target), actual.callSitesOf(node, target));
+				}
+			}
+		}
+	}
+
+	private static List<String> edgeList(CallGraph cg) {
+		List<String> edges = new ArrayList<>();
+		cg.forEachEdge((source, target) -> edges.add(source + " -> " + target));
+		return edges;
+	}
+
+	@Test
+	public void progressAndCancellation() {
+		List<AnalysisProgress> reports = new ArrayList<>();
+		CHAAlgorithm cha = new CHAAlgorithm();
+		cha.setProgressListener(reports::add);
+		cha.setCancellationToken(new CancellationToken());
+		CallGraph result = cha.constructCallGraph(scene);
+
+		AnalysisProgress last = reports.get(reports.size() - 1);
+		Assert.assertTrue(last.isDone());
+		Assert.assertEquals(result.edgeCount(), last.getEdgesFound());
+		Assert.assertTrue(last.getMethodsProcessed() > 0);
+
+		CancellationToken token = new CancellationToken();
+		token.cancel();
+		cha.setCancellationToken(token);
+		try {
+			cha.constructCallGraph(scene);
+			Assert.fail("Cancelled construction must not return a call graph");
+		} catch (AnalysisCancelledException expected) {
+		}
+	}
+
 }
@@ -0,0 +1,178 @@
+package exercises;
+
+import analysis.AnalysisCancelledException;
+import analysis.CallGraph;
+import analysis.CancellationToken;
+import analysis.CheckpointStore;
+import analysis.exercise4.ContextSensitivity;
+import analysis.exercise4.Contexts;
+import analysis.exercise4.SparkLikeAlgorithm;
+import base.TestSetup;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import soot.Scene;
+import soot.SootMethod;
+import soot.Transformer;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+public class ContextSensitivityTest extends TestSetup {
+
+	private static final String SCENARIO = "target.exercise4.ContextScenario";
+	private static final String LEAF = "<target.exercise2.LeafClass: void doSomething()>";
+	private static final String OTHER_LEAF = "<target.exercise2.OtherLeafClass: void doSomething()>";
+	private static final String FIFTH_LEAF = "<target.exercise2.FifthLeafClass: void doSomething()>";
+	private static final String SIXTH_LEAF = "<target.exercise2.SixthLeafClass: void doSomething()>";
+
+	private Scene scene;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Override
+	protected Transformer createAnalysisTransformer() {
+		throw new UnsupportedOperationException("The body packs are not run, bodies are built lazily");
+	}
+
+	@Before
+	public void setUp() {
+		setupSoot();
+		scene = Scene.v();
+	}
+
+	@Test
+	public void insensitiveMergesAllCallers() {
+		CallGraph cg = construct(ContextSensitivity.INSENSITIVE);
+		assertPrecision(cg, false, false, false);
+		// the same call graph as before, only the contexts are new
+		Assert.assertTrue(cg.hasEdge(scene.getMethod("<target.exercise3.SimpleScenario: void main(java.lang.String[])>"), scene.getMethod(LEAF)));
+	}
+
+	@Test
+	public void callSitesTellApartStaticCalls() {
+		assertPrecision(construct(ContextSensitivity.callSites(1)), true, true, false);
+		assertPrecision(construct(ContextSensitivity.callSites(2)), true, true, true);
+	}
+
+	@Test
+	public void objectsTellApartReceivers() {
+		assertPrecision(construct(ContextSensitivity.objects(1)), true, false, false);
+		assertPrecision(construct(ContextSensitivity.objects(2)), true, false, true);
+	}
+
+	@Test
+	public void moreContextsWithLongerContexts() {
+		SparkLikeAlgorithm insensitive = algorithm(ContextSensitivity.INSENSITIVE);
+		CallGraph coarse = insensitive.constructCallGraph(scene);
+		SparkLikeAlgorithm sensitive = algorithm(ContextSensitivity.callSites(2));
+		CallGraph fine = sensitive.constructCallGraph(scene);
+
+		Assert.assertEquals(1, insensitive.getContextCount());
+		Assert.assertEquals(coarse.nodeCount(), insensitive.getMethodCloneCount() + countNodesWithoutBody(coarse));
+		Assert.assertTrue(sensitive.getMethodCloneCount() > insensitive.getMethodCloneCount());
+		Assert.assertTrue(sensitive.getObjectCount() > insensitive.getObjectCount());
+		Assert.assertTrue(sensitive.getSolverBytes() > 0);
+		// the projection only loses edges
+		fine.forEachEdge((source, target) -> Assert.assertTrue(source + " -> " + target, coarse.hasEdge(source, target)));
+	}
+
+	@Test
+	public void resumesFromCheckpoint() throws Exception {
+		for (ContextSensitivity sensitivity : new ContextSensitivity[]{
+				ContextSensitivity.INSENSITIVE, ContextSensitivity.callSites(2), ContextSensitivity.objects(2)}) {
+			SparkLikeAlgorithm spark = algorithm(sensitivity);
+			CallGraph uninterrupted = spark.constructCallGraph(scene);
+			File file = new File(folder.getRoot(), "spark.checkpoint");
+			CancellationToken token = new CancellationToken();
+			// a snapshot every step, the analysis stops once it is well under way
+			CheckpointStore cancelling = new CheckpointStore(file) {
+				@Override
+				public synchronized void write(byte[] snapshot) {
+					super.write(snapshot);
+					if (getSnapshotsWritten() == 20) token.cancel();
+				}
+			};
+			SparkLikeAlgorithm interrupted = algorithm(sensitivity);
+			interrupted.setCheckpoints(cancelling, 0, TimeUnit.MILLISECONDS);
+			interrupted.setCancellationToken(token);
+			try {
+				interrupted.constructCallGraph(scene);
+				Assert.fail("Cancelled construction must not return a call graph");
+			} catch (AnalysisCancelledException expected) {
+			}
+			cancelling.close();
+			Assert.assertTrue(file.exists());
+
+			try (CheckpointStore store = new CheckpointStore(file)) {
+				SparkLikeAlgorithm resumed = algorithm(sensitivity);
+				resumed.setCheckpoints(store, 1, TimeUnit.HOURS);
+				CallGraph result = resumed.constructCallGraph(scene);
+
+				Assert.assertEquals(sensitivity.toString(), uninterrupted.getNodes(), result.getNodes());
+				Assert.assertEquals(uninterrupted.edgeCount(), result.edgeCount());
+				for (SootMethod node : uninterrupted.getNodes())
+					Assert.assertEquals(uninterrupted.edgesOutOf(node), result.edgesOutOf(node));
+				// restored ids that do not match make the solver tell apart more or fewer clones and objects
+				Assert.assertEquals(spark.getContextCount(), resumed.getContextCount());
+				Assert.assertEquals(spark.getMethodCloneCount(), resumed.getMethodCloneCount());
+				Assert.assertEquals(spark.getObjectCount(), resumed.getObjectCount());
+			}
+			Assert.assertFalse(file.exists());
+		}
+	}
+
+	@Test
+	public void contextsAreHashConsed() {
+		Contexts contexts = new Contexts();
+		int a = contexts.push(Contexts.EMPTY, 7, 2);
+		int ba = contexts.push(a, 8, 2);
+		Assert.assertEquals(a, contexts.push(Contexts.EMPTY, 7, 2));
+		Assert.assertEquals(ba, contexts.push(a, 8, 2));
+		Assert.assertArrayEquals(new int[]{8, 7}, contexts.elements(ba));
+		// the oldest element falls off
+		int cb = contexts.push(ba, 9, 2);
+		Assert.assertArrayEquals(new int[]{9, 8}, contexts.elements(cb));
+		Assert.assertEquals(contexts.push(contexts.push(Contexts.EMPTY, 8, 1), 9, 2), cb);
+		Assert.assertEquals(contexts.push(Contexts.EMPTY, 8, 1), contexts.truncate(ba, 1));
+		Assert.assertEquals(Contexts.EMPTY, contexts.truncate(cb, 0));
+	}
+
+	private SparkLikeAlgorithm algorithm(ContextSensitivity sensitivity) {
+		SparkLikeAlgorithm spark = new SparkLikeAlgorithm();
+		spark.setLazyBodies(true);
+		spark.setContextSensitivity(sensitivity);
+		return spark;
+	}
+
+	private CallGraph construct(ContextSensitivity sensitivity) {
+		return algorithm(sensitivity).constructCallGraph(scene);
+	}
+
+	// the callers in the scenario each see one implementation, unless their contexts are merged
+	private void assertPrecision(CallGraph cg, boolean boxes, boolean identity, boolean holders) {
+		assertTargets(cg, "useLeafBox", LEAF, OTHER_LEAF, boxes);
+		assertTargets(cg, "useOtherBox", OTHER_LEAF, LEAF, boxes);
+		assertTargets(cg, "useFifth", FIFTH_LEAF, SIXTH_LEAF, identity);
+		assertTargets(cg, "useSixth", SIXTH_LEAF, FIFTH_LEAF, identity);
+		assertTargets(cg, "useLeafHolder", LEAF, OTHER_LEAF, holders);
+		assertTargets(cg, "useOtherHolder", OTHER_LEAF, LEAF, holders);
+	}
+
+	private void assertTargets(CallGraph cg, String caller, String expected, String other, boolean precise) {
+		SootMethod method = scene.getMethod("<" + SCENARIO + ": void " + caller + "()>");
+		Assert.assertTrue(caller + " -> " + expected, cg.hasEdge(method, scene.getMethod(expected)));
+		Assert.assertEquals(caller + " -> " + other, !precise, cg.hasEdge(method, scene.getMethod(other)));
+	}
+
+	private static int countNodesWithoutBody(CallGraph cg) {
+		int count = 0;
+		for (SootMethod node : cg.getNodes()) {
+			if (!node.hasActiveBody()) count++;
+		}
+		return count;
+	}
+}
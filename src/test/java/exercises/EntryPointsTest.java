@@ -0,0 +1,100 @@
+package exercises;
+
+import analysis.CallGraph;
+import analysis.EntryPointProvider;
+import analysis.EntryPoints;
+import analysis.exercise1.CHAAlgorithm;
+import analysis.exercise2.RTAAlgorithm;
+import base.TestSetup;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import soot.Scene;
+import soot.SootMethod;
+import soot.Transformer;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class EntryPointsTest extends TestSetup {
+
+	private static final String SIMPLE_MAIN = "<target.exercise1.SimpleExample: void main(java.lang.String[])>";
+	private static final String INCREMENT_COUNTS = "<target.exercise1.CounterChecks: void incrementCounts()>";
+	private static final String CREATE_COUNTER = "<target.exercise1.CounterChecks: void createCounter()>";
+	private static final String INCREMENT = "<target.exercise1.CounterChecks$Counter: void increment()>";
+
+	private Scene scene;
+
+	@Override
+	protected Transformer createAnalysisTransformer() {
+		throw new UnsupportedOperationException("The body packs are not run, bodies are built lazily");
+	}
+
+	@Before
+	public void setUp() {
+		setupSoot();
+		scene = Scene.v();
+	}
+
+	@Test
+	public void mainMethodsOnly() {
+		List<SootMethod> entryPoints = EntryPoints.of(scene, EntryPoints.mainMethods());
+		Assert.assertTrue(signatures(entryPoints).contains(SIMPLE_MAIN));
+		for (SootMethod method : entryPoints) {
+			Assert.assertEquals("void main(java.lang.String[])", method.getSubSignature());
+			Assert.assertTrue(method.isStatic() && method.isPublic());
+		}
+		// discovered once per scene and provider
+		Assert.assertSame(entryPoints, EntryPoints.of(scene, EntryPoints.mainMethods()));
+	}
+
+	@Test
+	public void junitTestsAndFixtures() {
+		Assert.assertEquals(new HashSet<>(Arrays.asList(INCREMENT_COUNTS, CREATE_COUNTER)),
+				signatures(EntryPoints.of(scene, EntryPoints.junitTests())));
+
+		CHAAlgorithm cha = new CHAAlgorithm();
+		cha.setLazyBodies(true);
+		cha.setEntryPointProvider(EntryPoints.junitTests());
+		CallGraph cg = cha.constructCallGraph(scene);
+		Assert.assertTrue(cg.hasEdge(scene.getMethod(INCREMENT_COUNTS), scene.getMethod(INCREMENT)));
+		Assert.assertFalse(cg.hasNode(scene.getMethod(SIMPLE_MAIN)));
+	}
+
+	@Test
+	public void publicApiOfLibraries() {
+		Set<String> api = signatures(EntryPoints.of(scene, EntryPoints.publicApi()));
+		Assert.assertTrue(api.contains(SIMPLE_MAIN));
+		Assert.assertTrue(api.contains(INCREMENT_COUNTS));
+		Assert.assertTrue(api.contains(INCREMENT));
+		Assert.assertTrue(api.contains("<target.exercise1.CounterChecks$Counter: void <init>()>"));
+		Assert.assertFalse(api.contains("<target.exercise1.CounterChecks: void unused()>"));
+		Assert.assertFalse(api.contains("<target.exercise1.CounterChecks$Counter: int value()>"));
+	}
+
+	@Test
+	public void listedMethods() {
+		EntryPointProvider listed = EntryPoints.methods(Arrays.asList(INCREMENT, "<java.lang.Object: void <init>()>"));
+		// Object is not an application class
+		Assert.assertEquals(new HashSet<>(Arrays.asList(INCREMENT)), signatures(EntryPoints.of(scene, listed)));
+
+		RTAAlgorithm rta = new RTAAlgorithm();
+		rta.setLazyBodies(true);
+		rta.setEntryPointProvider(listed);
+		Assert.assertEquals(new HashSet<>(Arrays.asList(INCREMENT)), signatures(rta.constructCallGraph(scene).getNodes()));
+
+		// the same signatures, in whatever order, share the discovery
+		EntryPointProvider again = EntryPoints.methods(Arrays.asList("<java.lang.Object: void <init>()>", INCREMENT));
+		Assert.assertEquals(listed, again);
+		Assert.assertSame(EntryPoints.of(scene, listed), EntryPoints.of(scene, again));
+		Assert.assertNotEquals(listed, EntryPoints.methods(Arrays.asList(INCREMENT)));
+	}
+
+	private static Set<String> signatures(Iterable<SootMethod> methods) {
+		Set<String> signatures = new HashSet<>();
+		methods.forEach(m -> signatures.add(m.getSignature()));
+		return signatures;
+	}
+}
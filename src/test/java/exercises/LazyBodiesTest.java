@@ -0,0 +1,129 @@
+package exercises;
+
+import analysis.BodyLoader;
+import analysis.CallGraph;
+import analysis.distributed.DistributedCHAAlgorithm;
+import analysis.exercise1.CHAAlgorithm;
+import base.TestSetup;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import soot.Scene;
+import soot.SootMethod;
+import soot.Transformer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class LazyBodiesTest extends TestSetup {
+
+	private Scene scene;
+
+	@Override
+	protected Transformer createAnalysisTransformer() {
+		throw new UnsupportedOperationException("The body packs are not run in lazy mode");
+	}
+
+	@Before
+	public void setUp() {
+		// only load the classes, without running the packs no bodies are built
+		setupSoot();
+		scene = Scene.v();
+	}
+
+	@Test
+	public void onlyReachableBodiesAreBuilt() {
+		SootMethod exampleMain = scene.getMethod("<target.exercise1.SimpleExample: void main(java.lang.String[])>");
+		SootMethod exampleSubjectModify = scene.getMethod("<target.exercise1.SimpleExample$Subject: void modify()>");
+		SootMethod fourthLeafMethod = scene.getMethod("<target.exercise2.FourthLeafClass: void doSomething()>");
+		Assert.assertFalse(exampleMain.hasActiveBody());
+
+		CHAAlgorithm cha = new CHAAlgorithm();
+		cha.setLazyBodies(true);
+		cha.setBodyLoaderThreads(2);
+		CallGraph cg = cha.constructCallGraph(scene);
+
+		Assert.assertTrue(exampleMain.hasActiveBody());
+		Assert.assertTrue(cg.edgesOutOf(exampleMain).contains(exampleSubjectModify));
+		Assert.assertFalse(cg.edgesOutOf(exampleSubjectModify).isEmpty());
+		// only ever a dispatch target, CHA does not walk into it
+		Assert.assertFalse(fourthLeafMethod.hasActiveBody());
+	}
+
+	@Test
+	public void sameResultAsEagerMode() {
+		CHAAlgorithm lazy = new CHAAlgorithm();
+		lazy.setLazyBodies(true);
+		CallGraph lazyCg = lazy.constructCallGraph(scene);
+
+		// all bodies the eager run needs exist now
+		CallGraph eagerCg = new CHAAlgorithm().constructCallGraph(scene);
+		Assert.assertEquals(eagerCg.getNodes(), lazyCg.getNodes());
+		Assert.assertEquals(eagerCg.getEdges(), lazyCg.getEdges());
+	}
+
+	@Test
+	public void releasedBodiesAreRebuiltOnDemand() {
+		SootMethod exampleMain = scene.getMethod("<target.exercise1.SimpleExample: void main(java.lang.String[])>");
+		SootMethod exampleSubjectModify = scene.getMethod("<target.exercise1.SimpleExample$Subject: void modify()>");
+		// the Soot version of the build has the internals rebuilding needs, another one would keep all bodies
+		Assert.assertTrue(BodyLoader.canRelease());
+		CHAAlgorithm released = new CHAAlgorithm();
+		released.setLazyBodies(true);
+		released.setRecordCallSites(true);
+		released.setBodyRetention(BodyLoader.Retention.RELEASE);
+		CallGraph releasedCg = released.constructCallGraph(scene);
+
+		// every body the walk built was handed back once it was summarized
+		for (SootMethod node : releasedCg.getNodes())
+			Assert.assertFalse(node.hasActiveBody());
+		Assert.assertTrue(released.getBodiesReleased() > 0);
+		Assert.assertEquals(0, released.getBodiesRebuilt());
+		int callSite = releasedCg.callSitesOf(exampleMain, exampleSubjectModify)[0];
+		Assert.assertEquals(exampleSubjectModify, CallGraph.getCallSiteStmt(exampleMain, callSite).getInvokeExpr().getMethod());
+		Assert.assertTrue(exampleMain.hasActiveBody());
+
+		CHAAlgorithm kept = new CHAAlgorithm();
+		kept.setLazyBodies(true);
+		kept.setRecordCallSites(true);
+		CallGraph keptCg = kept.constructCallGraph(scene);
+		Assert.assertEquals(keptCg.getNodes(), releasedCg.getNodes());
+		Assert.assertEquals(edgeList(keptCg), edgeList(releasedCg));
+		Assert.assertEquals(0, kept.getBodiesReleased());
+	}
+
+	@Test
+	public void distributedMatchesSingleProcess() {
+		SootMethod exampleMain = scene.getMethod("<target.exercise1.SimpleExample: void main(java.lang.String[])>");
+		SootMethod exampleSubjectModify = scene.getMethod("<target.exercise1.SimpleExample$Subject: void modify()>");
+		DistributedCHAAlgorithm distributed = new DistributedCHAAlgorithm(2);
+		distributed.setLazyBodies(true);
+		distributed.setRecordCallSites(true);
+		CallGraph actual = distributed.constructCallGraph(scene);
+
+		// the workers built the bodies, the coordinator only those of the entry points
+		Assert.assertTrue(exampleMain.hasActiveBody());
+		Assert.assertFalse(exampleSubjectModify.hasActiveBody());
+		Assert.assertTrue(actual.edgesOutOf(exampleSubjectModify).size() > 0);
+		Assert.assertTrue(Arrays.stream(distributed.getBodiesPerWorker()).sum() > 0);
+
+		CHAAlgorithm cha = new CHAAlgorithm();
+		cha.setLazyBodies(true);
+		cha.setRecordCallSites(true);
+		CallGraph expected = cha.constructCallGraph(scene);
+		// same nodes and edges, in the same order
+		Assert.assertEquals(new ArrayList<>(expected.getNodes()), new ArrayList<>(actual.getNodes()));
+		Assert.assertEquals(edgeList(expected), edgeList(actual));
+		for (SootMethod node : expected.getNodes()) {
+			for (SootMethod target : expected.edgesOutOf(node))
+				Assert.assertArrayEquals(expected.callSitesOf(node, target), actual.callSitesOf(node, target));
+		}
+	}
+
+	private static List<String> edgeList(CallGraph cg) {
+		List<String> edges = new ArrayList<>();
+		cg.forEachEdge((source, target) -> edges.add(source + " -> " + target));
+		return edges;
+	}
+}
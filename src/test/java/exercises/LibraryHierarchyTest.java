@@ -0,0 +1,68 @@
+package exercises;
+
+import analysis.CallGraph;
+import analysis.CallGraphAlgorithm;
+import analysis.LibraryHierarchy;
+import analysis.exercise1.CHAAlgorithm;
+import analysis.exercise2.RTAAlgorithm;
+import base.TestSetup;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import soot.Scene;
+import soot.SootClass;
+import soot.Transformer;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.Set;
+
+public class LibraryHierarchyTest extends TestSetup {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Override
+	protected Transformer createAnalysisTransformer() {
+		throw new UnsupportedOperationException("The body packs are not run, bodies are built lazily");
+	}
+
+	@Test
+	public void secondLoadComesFromCache() throws Exception {
+		File cache = folder.newFolder("hierarchy");
+		LibraryHierarchy scanned = LibraryHierarchy.forJar(new File("lib/rt.jar"), cache);
+		Assert.assertFalse(scanned.isFromCache());
+		Assert.assertTrue(new File(cache, scanned.getJarHash() + ".hierarchy").exists());
+
+		LibraryHierarchy cached = LibraryHierarchy.forJar(new File("lib/rt.jar"), cache);
+		Assert.assertTrue(cached.isFromCache());
+		Assert.assertEquals(scanned.getJarHash(), cached.getJarHash());
+		Assert.assertEquals(scanned.classCount(), cached.classCount());
+	}
+
+	@Test
+	public void sameCallGraphsAsResolvingTheJar() throws Exception {
+		setupSoot();
+		Set<String> chaExpected = applicationEdges(new CHAAlgorithm());
+		Set<String> rtaExpected = applicationEdges(new RTAAlgorithm());
+
+		setupSootFromSnapshot(folder.newFolder("hierarchy"));
+		SootClass vector = Scene.v().getSootClass("java.util.Vector");
+		Assert.assertTrue(vector.isLibraryClass());
+		Assert.assertEquals("java.util.AbstractList", vector.getSuperclass().getName());
+		Assert.assertTrue(vector.declaresMethod("boolean contains(java.lang.Object)"));
+		Assert.assertEquals(chaExpected, applicationEdges(new CHAAlgorithm()));
+		Assert.assertEquals(rtaExpected, applicationEdges(new RTAAlgorithm()));
+	}
+
+	// library methods have no bodies either way, so these are all the edges
+	private static Set<String> applicationEdges(CallGraphAlgorithm algorithm) {
+		algorithm.setLazyBodies(true);
+		CallGraph cg = algorithm.constructCallGraph(Scene.v());
+		Set<String> edges = new HashSet<>();
+		cg.forEachEdge((source, target) -> edges.add(source + " -> " + target));
+		Assert.assertFalse(edges.isEmpty());
+		return edges;
+	}
+}
@@ -0,0 +1,125 @@
+package exercises;
+
+import analysis.CallGraph;
+import analysis.CallGraphAlgorithm;
+import analysis.LibrarySummaries;
+import analysis.exercise1.CHAAlgorithm;
+import analysis.exercise1.ShardedCHAAlgorithm;
+import analysis.exercise2.RTAAlgorithm;
+import base.TestSetup;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import soot.Scene;
+import soot.SootMethod;
+import soot.Transformer;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+public class LibrarySummariesTest extends TestSetup {
+
+	private static final String SORT = "<java.util.Arrays: void sort(java.lang.Object[])>";
+	private static final String COMPARE_TO = "<target.exercise1.SortExample: int compareTo(java.lang.Object)>";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Override
+	protected Transformer createAnalysisTransformer() {
+		throw new UnsupportedOperationException("The body packs are not run, bodies are built lazily");
+	}
+
+	@Test
+	public void libraryCallsBackIntoTheProgram() throws Exception {
+		File cache = folder.newFolder("summaries");
+		LibrarySummaries scanned = LibrarySummaries.forJar(new File("lib/rt.jar"), cache);
+		Assert.assertFalse(scanned.isFromCache());
+		Assert.assertTrue(new File(cache, scanned.getJarHash() + ".summaries").exists());
+		LibrarySummaries summaries = LibrarySummaries.forJar(new File("lib/rt.jar"), cache);
+		Assert.assertTrue(summaries.isFromCache());
+		Assert.assertEquals(scanned.methodCount(), summaries.methodCount());
+
+		setupSoot();
+		SootMethod sort = Scene.v().getMethod(SORT);
+		SootMethod compareTo = Scene.v().getMethod(COMPARE_TO);
+		Assert.assertTrue(summaries.covers(sort));
+		Assert.assertTrue(summaries.summaryOf(Scene.v(), sort, true).getInterfaceCalls()
+				.contains(Scene.v().getMethod("<java.lang.Comparable: int compareTo(java.lang.Object)>")));
+
+		for (CallGraphAlgorithm algorithm : new CallGraphAlgorithm[]{new CHAAlgorithm(), new RTAAlgorithm()}) {
+			algorithm.setLazyBodies(true);
+			CallGraph cut = algorithm.constructCallGraph(Scene.v());
+			Assert.assertTrue(cut.hasNode(sort));
+			Assert.assertFalse(cut.hasNode(compareTo));
+
+			algorithm.setLibrarySummaries(summaries);
+			CallGraph cg = algorithm.constructCallGraph(Scene.v());
+			Assert.assertTrue(cg.hasEdge(sort, compareTo));
+			// nothing the program calls itself goes missing
+			cut.forEachEdge((source, target) -> Assert.assertTrue(source + " -> " + target, cg.hasEdge(source, target)));
+		}
+	}
+
+	@Test
+	public void summaryCallSitesHaveNoStatement() throws Exception {
+		LibrarySummaries summaries = LibrarySummaries.forJar(new File("lib/rt.jar"), folder.newFolder("summaries"));
+		setupSoot();
+		SootMethod sort = Scene.v().getMethod(SORT);
+		SootMethod compareTo = Scene.v().getMethod(COMPARE_TO);
+
+		for (CallGraphAlgorithm algorithm : new CallGraphAlgorithm[]{new CHAAlgorithm(), new RTAAlgorithm()}) {
+			algorithm.setLazyBodies(true);
+			algorithm.setRecordCallSites(true);
+			algorithm.setLibrarySummaries(summaries);
+			CallGraph cg = algorithm.constructCallGraph(Scene.v());
+			int[] callSites = cg.callSitesOf(sort, compareTo);
+			Assert.assertTrue(callSites.length > 0);
+			for (int callSite : callSites) {
+				Assert.assertTrue(CallGraph.isSummaryCallSite(callSite));
+				try {
+					CallGraph.getCallSiteStmt(sort, callSite);
+					Assert.fail("A summary call site must not map to a statement of " + sort);
+				} catch (IllegalArgumentException expected) {
+				}
+			}
+		}
+	}
+
+	@Test
+	public void shardedAppliesSummariesLikeCHA() throws Exception {
+		LibrarySummaries summaries = LibrarySummaries.forJar(new File("lib/rt.jar"), folder.newFolder("summaries"));
+		setupSoot();
+		for (boolean callSites : new boolean[]{false, true}) {
+			CHAAlgorithm cha = new CHAAlgorithm();
+			cha.setLazyBodies(true);
+			cha.setRecordCallSites(callSites);
+			cha.setLibrarySummaries(summaries);
+			CallGraph expected = cha.constructCallGraph(Scene.v());
+			Assert.assertTrue(expected.hasEdge(Scene.v().getMethod(SORT), Scene.v().getMethod(COMPARE_TO)));
+			for (int shards = 1; shards <= 3; shards++) {
+				ShardedCHAAlgorithm sharded = new ShardedCHAAlgorithm(shards);
+				sharded.setLazyBodies(true);
+				sharded.setRecordCallSites(callSites);
+				sharded.setLibrarySummaries(summaries);
+				CallGraph actual = sharded.constructCallGraph(Scene.v());
+
+				// same nodes and edges, in the same order
+				Assert.assertEquals(new ArrayList<>(expected.getNodes()), new ArrayList<>(actual.getNodes()));
+				Assert.assertEquals(edgeList(expected), edgeList(actual));
+				for (SootMethod node : expected.getNodes()) {
+					for (SootMethod target : expected.edgesOutOf(node))
+						Assert.assertArrayEquals(expected.callSitesOf(node, target), actual.callSitesOf(node, target));
+				}
+			}
+		}
+	}
+
+	private static List<String> edgeList(CallGraph cg) {
+		List<String> edges = new ArrayList<>();
+		cg.forEachEdge((source, target) -> edges.add(source + " -> " + target));
+		return edges;
+	}
+}
@@ -1,6 +1,9 @@
 package exercises;
 
+import analysis.AnalysisBudget;
 import analysis.CallGraph;
+import analysis.EntryPointProvider;
+import analysis.EntryPoints;
 import analysis.exercise1.CHAAlgorithm;
 import analysis.exercise2.RTAAlgorithm;
 import base.TestSetup;
@@ -9,11 +12,16 @@ import org.junit.Before;
 import org.junit.Test;
 import soot.*;
 
+import java.util.Collections;
 import java.util.Map;
 import java.util.Set;
 
 public class RTATest extends TestSetup {
 
+    private static final String LATE = "target.exercise2.LateInitialization";
+    private static final EntryPointProvider LATE_MAIN =
+            EntryPoints.methods(Collections.singletonList("<" + LATE + ": void main(java.lang.String[])>"));
+
     private Scene scene;
     private CallGraph cg;
     private SootMethod interfaceMethod;
@@ -76,4 +84,45 @@ public class RTATest extends TestSetup {
         Assert.assertFalse(callsFromMain.contains(fourthLeafMethod));
     }
 
+    @Test
+    public void recursiveCallChainsTerminate() {
+        CallGraph late = lateInitialization(AnalysisBudget.UNLIMITED);
+        SootMethod countDown = scene.getMethod("<" + LATE + ": void countDown(int)>");
+        SootMethod isEven = scene.getMethod("<" + LATE + ": boolean isEven(int)>");
+        SootMethod isOdd = scene.getMethod("<" + LATE + ": boolean isOdd(int)>");
+
+        Assert.assertTrue(late.hasEdge(countDown, countDown));
+        Assert.assertTrue(late.hasEdge(isEven, isOdd));
+        Assert.assertTrue(late.hasEdge(isOdd, isEven));
+    }
+
+    @Test
+    public void classInitializedAfterTheCallSite() {
+        CallGraph late = lateInitialization(AnalysisBudget.UNLIMITED);
+        SootMethod use = scene.getMethod("<" + LATE + ": void use(target.exercise2.SomeInterface)>");
+        Set<SootMethod> callsFromUse = late.edgesOutOf(use);
+
+        // the call site was walked before the class was initialized, it gets the edge later
+        Assert.assertTrue(callsFromUse.contains(scene.getMethod("<target.exercise2.FifthLeafClass: void doSomething()>")));
+        Assert.assertFalse(callsFromUse.contains(leafMethod));
+        Assert.assertFalse(late.isDegraded());
+    }
+
+    @Test
+    public void exhaustedBudgetKeepsPendingEdges() {
+        CallGraph precise = lateInitialization(AnalysisBudget.UNLIMITED);
+        // stop after every amount of work, also while edges wait for their class to be initialized
+        for (long work = 1; ; work++) {
+            CallGraph degraded = lateInitialization(AnalysisBudget.UNLIMITED.withMaxWork(work));
+            precise.forEachEdge((source, target) -> Assert.assertTrue(source + " -> " + target, degraded.hasEdge(source, target)));
+            if (!degraded.isDegraded()) break;
+        }
+    }
+
+    private CallGraph lateInitialization(AnalysisBudget budget) {
+        RTAAlgorithm rta = new RTAAlgorithm();
+        rta.setEntryPointProvider(LATE_MAIN);
+        rta.setBudget(budget);
+        return rta.constructCallGraph(scene);
+    }
 }
@@ -1,24 +1,39 @@
 package exercises;
 
+import analysis.AnalysisBudget;
+import analysis.AnalysisCancelledException;
 import analysis.CallGraph;
+import analysis.CancellationToken;
+import analysis.CheckpointStore;
+import analysis.EntryPointProvider;
+import analysis.EntryPoints;
+import analysis.exercise1.CHAAlgorithm;
 import analysis.exercise3.VTAAlgorithm;
 import base.TestSetup;
 import org.junit.Assert;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import soot.Scene;
 import soot.SceneTransformer;
 import soot.SootMethod;
 import soot.Transformer;
 
+import java.io.File;
+import java.util.Arrays;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 public class VTATest extends TestSetup {
     private Scene scene;
     private CallGraph cg;
     private SootMethod scenarioMain;
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     @Override
     protected Transformer createAnalysisTransformer() {
         return new SceneTransformer() {
@@ -57,5 +72,115 @@ public class VTATest extends TestSetup {
         assertCallMissing(callsFromMain, "<target.exercise2.Specialization: void doSomething()>");
         assertCallMissing(callsFromMain, "<target.exercise2.Subclass: void doSomething()>");
         assertCallMissing(callsFromMain, "<target.exercise2.Superclass: void doSomething()>");
+        Assert.assertFalse(cg.isDegraded());
+    }
+
+    @Test
+    public void exhaustedBudgetFallsBackToCha() {
+        VTAAlgorithm vta = new VTAAlgorithm();
+        vta.setBudget(AnalysisBudget.UNLIMITED.withMaxWork(1));
+        CallGraph degraded = vta.constructCallGraph(scene);
+
+        Assert.assertTrue(degraded.isDegraded());
+        Assert.assertEquals(AnalysisBudget.Limit.WORK, degraded.getExhaustedLimit());
+        Assert.assertTrue(degraded.isDegraded(scenarioMain));
+
+        // CHA finished main, so its targets are a superset of the precise ones
+        Set<SootMethod> callsFromMain = degraded.edgesOutOf(scenarioMain);
+        Assert.assertTrue(callsFromMain.containsAll(cg.edgesOutOf(scenarioMain)));
+        Assert.assertEquals(CHAAlgorithm.soundFallback().constructCallGraph(scene).edgesOutOf(scenarioMain), callsFromMain);
+    }
+
+    @Test
+    public void fallbackKeepsEveryEdge() {
+        // whenever the budget runs out, the edges VTA would have found come from the fallback
+        for (long work = 1; ; work *= 2) {
+            VTAAlgorithm vta = new VTAAlgorithm();
+            vta.setBudget(AnalysisBudget.UNLIMITED.withMaxWork(work));
+            CallGraph degraded = vta.constructCallGraph(scene);
+            cg.forEachEdge((source, target) -> Assert.assertTrue(source + " -> " + target, degraded.hasEdge(source, target)));
+            if (!degraded.isDegraded()) break;
+        }
+    }
+
+    @Test
+    public void resumesFromCheckpoint() throws Exception {
+        File file = new File(folder.getRoot(), "vta.checkpoint");
+        CancellationToken token = new CancellationToken();
+        // stops the analysis right after its first snapshot
+        CheckpointStore cancelling = new CheckpointStore(file) {
+            @Override
+            public synchronized void write(byte[] snapshot) {
+                super.write(snapshot);
+                token.cancel();
+            }
+        };
+        VTAAlgorithm interrupted = new VTAAlgorithm();
+        interrupted.setCheckpoints(cancelling, 0, TimeUnit.MILLISECONDS);
+        interrupted.setCancellationToken(token);
+        try {
+            interrupted.constructCallGraph(scene);
+            Assert.fail("Cancelled construction must not return a call graph");
+        } catch (AnalysisCancelledException expected) {
+        }
+        cancelling.close();
+        Assert.assertEquals(1, cancelling.getSnapshotsWritten());
+        Assert.assertTrue(file.exists());
+
+        try (CheckpointStore store = new CheckpointStore(file)) {
+            VTAAlgorithm resumed = new VTAAlgorithm();
+            resumed.setCheckpoints(store, 1, TimeUnit.HOURS);
+            CallGraph result = resumed.constructCallGraph(scene);
+
+            Assert.assertEquals(cg.getNodes(), result.getNodes());
+            Assert.assertEquals(cg.edgeCount(), result.edgeCount());
+            for (SootMethod node : cg.getNodes())
+                Assert.assertEquals(cg.edgesOutOf(node), result.edgesOutOf(node));
+        }
+        Assert.assertFalse(file.exists());
+    }
+
+    @Test
+    public void resumesWithInstanceFieldTypes() throws Exception {
+        // the first entry point stores into an instance field, the second calls through it
+        EntryPointProvider entryPoints = EntryPoints.methods(Arrays.asList(
+                "<target.exercise3.FieldScenario: void store()>", "<target.exercise3.FieldScenario: void load()>"));
+        SootMethod load = scene.getMethod("<target.exercise3.FieldScenario: void load()>");
+        VTAAlgorithm uninterrupted = new VTAAlgorithm();
+        uninterrupted.setEntryPointProvider(entryPoints);
+        CallGraph expected = uninterrupted.constructCallGraph(scene);
+        assertCallExists(expected.edgesOutOf(load), "<target.exercise2.LeafClass: void doSomething()>");
+
+        File file = new File(folder.getRoot(), "vta.checkpoint");
+        CancellationToken token = new CancellationToken();
+        CheckpointStore cancelling = new CheckpointStore(file) {
+            @Override
+            public synchronized void write(byte[] snapshot) {
+                super.write(snapshot);
+                token.cancel();
+            }
+        };
+        VTAAlgorithm interrupted = new VTAAlgorithm();
+        interrupted.setEntryPointProvider(entryPoints);
+        interrupted.setCheckpoints(cancelling, 0, TimeUnit.MILLISECONDS);
+        interrupted.setCancellationToken(token);
+        try {
+            interrupted.constructCallGraph(scene);
+            Assert.fail("Cancelled construction must not return a call graph");
+        } catch (AnalysisCancelledException expectedCancellation) {
+        }
+        cancelling.close();
+
+        // the snapshot was taken after store(), the types of the field come from it
+        try (CheckpointStore store = new CheckpointStore(file)) {
+            VTAAlgorithm resumed = new VTAAlgorithm();
+            resumed.setEntryPointProvider(entryPoints);
+            resumed.setCheckpoints(store, 1, TimeUnit.HOURS);
+            CallGraph result = resumed.constructCallGraph(scene);
+
+            Assert.assertEquals(expected.getNodes(), result.getNodes());
+            for (SootMethod node : expected.getNodes())
+                Assert.assertEquals(expected.edgesOutOf(node), result.edgesOutOf(node));
+        }
     }
 }
@@ -0,0 +1,37 @@
+package target.exercise1;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+// a test class of the analyzed program, not one of ours: surefire does not pick up the name
+public class CounterChecks {
+    private Counter counter;
+
+    @Before
+    public void createCounter() {
+        counter = new Counter();
+    }
+
+    @Test
+    public void incrementCounts() {
+        counter.increment();
+        Assert.assertEquals(1, counter.value());
+    }
+
+    private void unused() {
+        counter.increment();
+    }
+
+    public static class Counter {
+        private int value;
+
+        public void increment() {
+            value++;
+        }
+
+        int value() {
+            return value;
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package target.exercise1;
+
+import java.util.Arrays;
+
+public class SortExample implements Comparable<SortExample> {
+    private final int rank;
+
+    public SortExample(int rank) {
+        this.rank = rank;
+    }
+
+    @Override
+    public int compareTo(SortExample other) {
+        return Integer.compare(rank, other.rank);
+    }
+
+    public static void main(String[] args) {
+        SortExample[] examples = {new SortExample(2), new SortExample(1)};
+        // the library calls compareTo, the program never does
+        Arrays.sort(examples);
+    }
+}
@@ -0,0 +1,12 @@
+package target.exercise1;
+
+import target.exercise2.Specialization;
+import target.exercise2.Subclass;
+
+public class VirtualCalls {
+    public static void main(String[] args) {
+        // a virtual call declared in Subclass, the receiver is a Specialization that overrides it
+        Subclass receiver = new Specialization();
+        receiver.doSomething();
+    }
+}
@@ -0,0 +1,28 @@
+package target.exercise2;
+
+public class LateInitialization {
+    public static void main(String[] args) {
+        // use is walked before any implementation of SomeInterface is initialized
+        use(null);
+        use(new FifthLeafClass());
+
+        countDown(3);
+        isEven(4);
+    }
+
+    private static void use(SomeInterface anObject) {
+        anObject.doSomething();
+    }
+
+    private static void countDown(int n) {
+        if (n > 0) countDown(n - 1);
+    }
+
+    private static boolean isEven(int n) {
+        return n == 0 || isOdd(n - 1);
+    }
+
+    private static boolean isOdd(int n) {
+        return n != 0 && isEven(n - 1);
+    }
+}
@@ -0,0 +1,19 @@
+package target.exercise3;
+
+import target.exercise2.*;
+
+public class FieldScenario {
+
+    private SomeInterface instanceField;
+
+    public static void store() {
+        FieldScenario scenario = new FieldScenario();
+        scenario.instanceField = new LeafClass();
+    }
+
+    public static void load() {
+        FieldScenario scenario = new FieldScenario();
+        scenario.instanceField.doSomething();
+    }
+
+}
@@ -0,0 +1,80 @@
+package target.exercise4;
+
+import target.exercise2.FifthLeafClass;
+import target.exercise2.LeafClass;
+import target.exercise2.OtherLeafClass;
+import target.exercise2.SixthLeafClass;
+import target.exercise2.SomeInterface;
+
+public class ContextScenario {
+
+    static class Box {
+        private SomeInterface item;
+
+        void set(SomeInterface item) {
+            this.item = item;
+        }
+
+        SomeInterface get() {
+            return item;
+        }
+    }
+
+    // one allocation site and one call site of Box for all holders, telling them apart takes a context of 2
+    static class Holder {
+        private final Box box = new Box();
+
+        void put(SomeInterface item) {
+            box.set(item);
+        }
+
+        SomeInterface take() {
+            return box.get();
+        }
+    }
+
+    public static void main(String[] args) {
+        useLeafBox();
+        useOtherBox();
+        useFifth();
+        useSixth();
+        useLeafHolder();
+        useOtherHolder();
+    }
+
+    static void useLeafBox() {
+        Box box = new Box();
+        box.set(new LeafClass());
+        box.get().doSomething();
+    }
+
+    static void useOtherBox() {
+        Box box = new Box();
+        box.set(new OtherLeafClass());
+        box.get().doSomething();
+    }
+
+    static SomeInterface id(SomeInterface item) {
+        return item;
+    }
+
+    static void useFifth() {
+        id(new FifthLeafClass()).doSomething();
+    }
+
+    static void useSixth() {
+        id(new SixthLeafClass()).doSomething();
+    }
+
+    static void useLeafHolder() {
+        Holder holder = new Holder();
+        holder.put(new LeafClass());
+        holder.take().doSomething();
+    }
+
+    static void useOtherHolder() {
+        Holder holder = new Holder();
+        holder.put(new OtherLeafClass());
+        holder.take().doSomething();
+    }
+}